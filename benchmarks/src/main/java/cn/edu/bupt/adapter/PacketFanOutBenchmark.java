@@ -0,0 +1,105 @@
+package cn.edu.bupt.adapter;
+
+import cn.edu.bupt.benchmark.SyntheticStreams;
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.listener.Listener;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: PacketFanOutBenchmark，packet模式下每个AVPacket分发给所有listener的开销
+ * （每个listener一次av_packet_alloc/av_packet_ref以及PacketEvent的创建），以及UnrefTask的释放开销
+ * @Author: czx
+ * @CreateDate: 2026-10-19 10:50
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketFanOutBenchmark {
+
+    @Param({"1", "2", "4"})
+    private int listenerCount;
+
+    private FFmpegFrameGrabber grabber;
+
+    private List<AVPacket> packets;
+
+    private AVPacket pkt;
+
+    private int index;
+
+    private RtspVideoAdapter adapter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        grabber = SyntheticStreams.packetGrabber(SyntheticStreams.h264Flv(1280, 720, 25, 10));
+        packets = SyntheticStreams.readPackets(grabber);
+        pkt = avcodec.av_packet_alloc();
+        adapter = new RtspVideoAdapter("benchmark");
+        for (int i = 0; i < listenerCount; i++) {
+            adapter.addListener(new ReleasingListener(adapter, "release-" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticStreams.release(packets);
+        avcodec.av_packet_free(pkt);
+        grabber.stop();
+        grabber.release();
+    }
+
+    /**
+     * grabPacket之后的完整路径：分发给所有listener，每个listener处理完成后立即执行UnrefTask
+     */
+    @Benchmark
+    public int fanOutAndRelease() throws Exception {
+        AVPacket source = packets.get(index++ % packets.size());
+        // 模拟grabPacket得到一个新的ref
+        avcodec.av_packet_ref(pkt, source);
+        adapter.dispatchPacket(pkt);
+        return adapter.getFrameFinishCount().size();
+    }
+
+    /**
+     * 处理完成后直接在当前线程执行UnrefTask，不经过adapter的线程池
+     */
+    static class ReleasingListener implements Listener {
+
+        private final RtspVideoAdapter adapter;
+
+        private final String name;
+
+        ReleasingListener(RtspVideoAdapter adapter, String name) {
+            this.adapter = adapter;
+            this.name = name;
+        }
+
+        @Override
+        public void fireAfterEventInvoked(Event event) {
+            adapter.new UnrefTask(adapter.getFrameFinishCount(), event, true).run();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
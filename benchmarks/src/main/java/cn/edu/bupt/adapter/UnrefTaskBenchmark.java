@@ -0,0 +1,84 @@
+package cn.edu.bupt.adapter;
+
+import cn.edu.bupt.benchmark.SyntheticStreams;
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.event.PacketEvent;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description: UnrefTaskBenchmark，listener处理完成后释放AVPacket的开销
+ * @Author: czx
+ * @CreateDate: 2026-10-19 10:55
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UnrefTaskBenchmark {
+
+    private static final int BATCH = 256;
+
+    @Param({"1", "4"})
+    private int listenerCount;
+
+    private FFmpegFrameGrabber grabber;
+
+    private List<AVPacket> packets;
+
+    private RtspVideoAdapter adapter;
+
+    private final Event[] events = new Event[BATCH];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        grabber = SyntheticStreams.packetGrabber(SyntheticStreams.h264Flv(1280, 720, 25, 4));
+        packets = SyntheticStreams.readPackets(grabber);
+        adapter = new RtspVideoAdapter("benchmark");
+    }
+
+    /**
+     * 与dispatchPacket一致：每个CountEvent对应listenerCount个各自ref的AVPacket
+     */
+    @Setup(Level.Invocation)
+    public void prepare() {
+        Map<Event, AtomicInteger> map = adapter.getFrameFinishCount();
+        PacketEvent.CountEvent countEvent = null;
+        for (int i = 0; i < BATCH; i++) {
+            if (i % listenerCount == 0) {
+                countEvent = new PacketEvent.CountEvent();
+                map.put(countEvent, new AtomicInteger(listenerCount));
+            }
+            AVPacket pkt = avcodec.av_packet_alloc();
+            avcodec.av_packet_ref(pkt, packets.get(i % packets.size()));
+            events[i] = new PacketEvent(adapter, pkt, countEvent);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        adapter.getFrameFinishCount().clear();
+        SyntheticStreams.release(packets);
+        grabber.stop();
+        grabber.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void unref() {
+        Map<Event, AtomicInteger> map = adapter.getFrameFinishCount();
+        for (int i = 0; i < BATCH; i++) {
+            adapter.new UnrefTask(map, events[i], false).run();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package cn.edu.bupt.benchmark;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.Frame;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: FrameCloneBenchmark，frame模式下RtspVideoAdapter对每一帧执行frame.clone()并通过PointerScope回收的开销
+ * @Author: czx
+ * @CreateDate: 2026-10-19 11:15
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameCloneBenchmark {
+
+    @Param({"640x360", "1280x720", "1920x1080"})
+    private String resolution;
+
+    private Frame frame;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String[] size = resolution.split("x");
+        frame = SyntheticStreams.testFrame(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 0);
+    }
+
+    @Benchmark
+    public void cloneAndRelease(Blackhole blackhole) {
+        try (PointerScope pointerScope = new PointerScope()) {
+            blackhole.consume(frame.clone());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package cn.edu.bupt.benchmark;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Description: SyntheticStreams，在内存中生成测试画面并编码为视频流，benchmark不依赖真实的摄像头。
+ * 没有使用lavfi的testsrc：libavdevice依赖X11相关的动态库，服务器上通常无法加载
+ * @Author: czx
+ * @CreateDate: 2026-10-19 10:40
+ * @Version: 1.0
+ */
+public final class SyntheticStreams {
+
+    private SyntheticStreams(){
+    }
+
+    static {
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+    }
+
+    /**
+     * @Description 生成一帧BGR24测试画面，画面为随index平移的渐变条纹，保证相邻帧之间存在运动
+     * @author czx
+     * @date 2026-10-19 10:40
+     * @param width
+     * @param height
+     * @param index 帧序号
+     * @return org.bytedeco.javacv.Frame
+     */
+    public static Frame testFrame(int width,int height,int index){
+        Frame frame = new Frame(width,height,Frame.DEPTH_UBYTE,3);
+        ByteBuffer image = (ByteBuffer)frame.image[0];
+        int stride = frame.imageStride;
+        for(int y = 0;y<height;y++){
+            int row = y*stride;
+            for(int x = 0;x<width;x++){
+                int i = row+x*3;
+                image.put(i,(byte)(x+index*4));
+                image.put(i+1,(byte)(y+index*2));
+                image.put(i+2,(byte)((x^y)+index));
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @Description 将测试画面编码为H.264，并封装为FLV保存在内存中，GOP为1秒
+     * @author czx
+     * @date 2026-10-19 10:40
+     * @param width
+     * @param height
+     * @param frameRate
+     * @param seconds
+     * @return byte[]
+     */
+    public static byte[] h264Flv(int width,int height,int frameRate,int seconds) throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(out,width,height,0);
+        recorder.setFormat("flv");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize(frameRate);
+        recorder.setVideoOption("preset","ultrafast");
+        recorder.setVideoOption("tune","zerolatency");
+        try {
+            recorder.start();
+            for(int i = 0;i<frameRate*seconds;i++){
+                recorder.record(testFrame(width,height,i),avutil.AV_PIX_FMT_BGR24);
+            }
+        }finally {
+            recorder.stop();
+            recorder.release();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @Description 将测试画面编码为裸H.264（Annex B），按access unit切分后返回，每个IDR前都带有SPS/PPS，可以循环发送
+     * @author czx
+     * @date 2026-10-19 14:05
+     * @param width
+     * @param height
+     * @param frameRate
+     * @param seconds
+     * @return java.util.List<byte[]>
+     */
+    public static List<byte[]> h264AccessUnits(int width,int height,int frameRate,int seconds) throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(out,width,height,0);
+        recorder.setFormat("h264");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize(frameRate);
+        recorder.setVideoOption("preset","ultrafast");
+        recorder.setVideoOption("tune","zerolatency");
+        try {
+            recorder.start();
+            for(int i = 0;i<frameRate*seconds;i++){
+                recorder.record(testFrame(width,height,i),avutil.AV_PIX_FMT_BGR24);
+            }
+        }finally {
+            recorder.stop();
+            recorder.release();
+        }
+
+        List<byte[]> accessUnits = new ArrayList<>();
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(new ByteArrayInputStream(out.toByteArray()));
+        grabber.setFormat("h264");
+        try {
+            grabber.start();
+            AVPacket pkt;
+            while((pkt = grabber.grabPacket())!=null){
+                byte[] data = new byte[pkt.size()];
+                pkt.data().get(data);
+                avcodec.av_packet_unref(pkt);
+                accessUnits.add(data);
+            }
+        }finally {
+            grabber.stop();
+            grabber.release();
+        }
+        return accessUnits;
+    }
+
+    /**
+     * @Description 打开内存中的FLV数据，grabPacket得到的就是拉流时的AVPacket
+     * @author czx
+     * @date 2026-10-19 10:40
+     * @param flv
+     * @return org.bytedeco.javacv.FFmpegFrameGrabber
+     */
+    public static FFmpegFrameGrabber packetGrabber(byte[] flv) throws Exception{
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(new ByteArrayInputStream(flv));
+        grabber.setFormat("flv");
+        grabber.start();
+        return grabber;
+    }
+
+    /**
+     * @Description 读出grabber中的全部AVPacket，每个AVPacket都持有一个独立的ref，需要调用release释放
+     * @author czx
+     * @date 2026-10-19 10:40
+     * @param grabber
+     * @return java.util.List<org.bytedeco.ffmpeg.avcodec.AVPacket>
+     */
+    public static List<AVPacket> readPackets(FFmpegFrameGrabber grabber) throws Exception{
+        List<AVPacket> packets = new ArrayList<>();
+        AVPacket pkt;
+        while((pkt = grabber.grabPacket())!=null){
+            AVPacket copy = avcodec.av_packet_alloc();
+            avcodec.av_packet_ref(copy,pkt);
+            avcodec.av_packet_unref(pkt);
+            packets.add(copy);
+        }
+        return packets;
+    }
+
+    public static void release(List<AVPacket> packets){
+        for(AVPacket pkt : packets){
+            avcodec.av_packet_free(pkt);
+        }
+        packets.clear();
+    }
+}
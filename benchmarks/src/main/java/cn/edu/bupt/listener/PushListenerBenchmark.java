@@ -0,0 +1,82 @@
+package cn.edu.bupt.listener;
+
+import cn.edu.bupt.adapter.RtspVideoAdapter;
+import cn.edu.bupt.benchmark.SyntheticStreams;
+import cn.edu.bupt.event.PacketEvent;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: PushListenerBenchmark，拉流线程调用PushListener.fireAfterEventInvoked的开销，
+ * 推流目标为临时FLV文件，处理线程与线上一致地执行recordPacket与unref
+ * @Author: czx
+ * @CreateDate: 2026-10-19 11:10
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PushListenerBenchmark {
+
+    private FFmpegFrameGrabber grabber;
+
+    private List<AVPacket> packets;
+
+    private RtspVideoAdapter adapter;
+
+    private PushListener pushListener;
+
+    private File output;
+
+    private int index;
+
+    private long loopOffset;
+
+    private long loopDuration;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        grabber = SyntheticStreams.packetGrabber(SyntheticStreams.h264Flv(1280, 720, 25, 10));
+        packets = SyntheticStreams.readPackets(grabber);
+        AVPacket last = packets.get(packets.size() - 1);
+        loopDuration = last.dts() + Math.max(1, last.duration());
+        output = File.createTempFile("push-benchmark", ".flv");
+        adapter = new RtspVideoAdapter("benchmark");
+        pushListener = new PushListener(output.getAbsolutePath(), grabber, adapter, true);
+        pushListener.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pushListener.close();
+        SyntheticStreams.release(packets);
+        grabber.stop();
+        grabber.release();
+        output.delete();
+    }
+
+    @Benchmark
+    public void fire() throws Exception {
+        int i = index++ % packets.size();
+        if (i == 0 && index > 1) {
+            loopOffset += loopDuration;
+        }
+        AVPacket pkt = avcodec.av_packet_alloc();
+        avcodec.av_packet_ref(pkt, packets.get(i));
+        // 循环发送时时间戳需要单调递增，否则会被PushListener当作过期的packet跳过
+        pkt.dts(pkt.dts() + loopOffset);
+        pkt.pts(pkt.pts() + loopOffset);
+        PacketEvent.CountEvent countEvent = new PacketEvent.CountEvent();
+        adapter.getFrameFinishCount().put(countEvent, new java.util.concurrent.atomic.AtomicInteger(1));
+        pushListener.fireAfterEventInvoked(new PacketEvent(adapter, pkt, countEvent));
+    }
+}
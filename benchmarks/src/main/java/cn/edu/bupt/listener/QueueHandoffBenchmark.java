@@ -0,0 +1,76 @@
+package cn.edu.bupt.listener;
+
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import cn.edu.bupt.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: QueueHandoffBenchmark，PushListener/RecordListener使用的EventQueue在拉流线程与处理线程之间交接event的开销
+ * @Author: czx
+ * @CreateDate: 2026-10-19 11:05
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class QueueHandoffBenchmark {
+
+    private static final int EVENT_POOL = 1024;
+
+    /**
+     * 与PushListener一致时为true（溢出时清空），与RecordListener一致时为false（溢出时丢弃新的event）
+     */
+    @Param({"true", "false"})
+    private boolean clearOnOverflow;
+
+    private EventQueue queue;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final Event[] events = new Event[EVENT_POOL];
+
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 所有event计入同一个listener的队列统计
+        ListenerMetrics metrics = MetricsRegistry.getInstance().getStream("benchmark").getListener("benchmark");
+        queue = new EventQueue("benchmark", 1024, 100L, clearOnOverflow, event -> dropped.increment(), event -> metrics);
+        for (int i = 0; i < EVENT_POOL; i++) {
+            events[i] = new Event(this);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        while (queue.poll() != null) {
+            // 清空剩余的event，保证每轮迭代从空队列开始
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer() {
+        return queue.offer(events[index++ & (EVENT_POOL - 1)]);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void poll(Blackhole blackhole) {
+        Event event = queue.poll();
+        if (event == null) {
+            Thread.yield();
+        }
+        blackhole.consume(event);
+    }
+}
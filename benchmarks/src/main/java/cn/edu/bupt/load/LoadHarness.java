@@ -0,0 +1,434 @@
+package cn.edu.bupt.load;
+
+import cn.edu.bupt.adapter.RtmpIngest;
+import cn.edu.bupt.adapter.RtspVideoAdapter;
+import cn.edu.bupt.adapter.VideoAdapter;
+import cn.edu.bupt.adapter.VideoAdapterManagement;
+import cn.edu.bupt.benchmark.SyntheticStreams;
+import cn.edu.bupt.codec.CodecTuning;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: LoadHarness，容量压测：进程内启动RTSP摄像头替身与RTMP服务器替身，
+ * 通过VideoAdapterManagement逐级启动N路RtspVideoAdapter，
+ * 统计每一级的端到端延迟、抖动、丢帧、CPU与native内存，并输出markdown与csv报告。
+ * 参数格式为key=value，例如 streams=1,2,4,8 warmup=5 duration=20 size=1280x720 fps=25 report=load-report。
+ * mode=frame时adapter解码并重新编码推流，codec=preset=superfast,bitrate=4000 指定编解码参数(见CodecTuning)，
+ * 此时SEI不会保留，只统计帧率，用每一路都能保持源帧率的最大路数衡量单节点能承载的Frame模式路数。
+ * ingest=netty或netty-udp时packet模式使用Netty拉流(见RtspVideoAdapter.setIngest)，用于和FFmpeg拉流对比；
+ * egress=netty时packet模式使用Netty推流(见RtspVideoAdapter.setEgress)；
+ * ingest=rtmp时每一路由RtmpRelay用FFmpeg推到进程内的RTMP接入服务(见RtmpIngest)，adapter由接入服务创建，延迟包含中转的一跳
+ * @Author: czx
+ * @CreateDate: 2026-10-19 15:35
+ * @Version: 1.0
+ */
+@Slf4j
+public class LoadHarness {
+
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final boolean usePacket;
+    private final String codec;
+    private String ingest;
+    private String egress;
+
+    private RtspSourceServer source;
+    private RtmpSinkServer sink;
+    private RtmpIngest rtmpIngest;
+    private final ResourceSampler sampler = new ResourceSampler();
+
+    public LoadHarness(int width, int height, int frameRate, int warmupSeconds, int durationSeconds) {
+        this(width,height,frameRate,warmupSeconds,durationSeconds,true,null);
+    }
+
+    public LoadHarness(int width, int height, int frameRate, int warmupSeconds, int durationSeconds, boolean usePacket, String codec) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+        this.usePacket = usePacket;
+        this.codec = codec;
+    }
+
+    /**
+     * @Description 拉流引擎，需要在start之前设置
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param ingest ffmpeg、netty或netty-udp，为null时使用ffmpeg
+     * @return void
+     */
+    public void setIngest(String ingest) {
+        this.ingest = ingest;
+    }
+
+    /**
+     * @Description 推流引擎，需要在start之前设置
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param egress ffmpeg或netty，为null时使用ffmpeg
+     * @return void
+     */
+    public void setEgress(String egress) {
+        this.egress = egress;
+    }
+
+    /**
+     * @Description 生成测试码流并启动两端的替身服务
+     * @author czx
+     * @date 2026-10-19 15:35
+     * @param
+     * @return void
+     */
+    public void start() throws Exception{
+        // 码流长度为2个GOP，循环发送
+        List<byte[]> accessUnits = SyntheticStreams.h264AccessUnits(width,height,frameRate,2);
+        source = new RtspSourceServer(accessUnits,frameRate);
+        // 只有Netty拉流时才接受UDP，FFmpeg的基线保持TCP不变
+        source.setUdp("netty-udp".equals(ingest));
+        source.start(0);
+        sink = new RtmpSinkServer();
+        sink.start(0);
+        if("rtmp".equals(ingest)){
+            rtmpIngest = RtmpIngest.start(0,sink.getUrl("{stream}"),false,egress);
+        }
+    }
+
+    public void stop(){
+        sampler.shutdown();
+        if(rtmpIngest!=null){
+            RtmpIngest.stop();
+        }
+        if(sink!=null){
+            sink.stop();
+        }
+        if(source!=null){
+            source.stop();
+        }
+    }
+
+    /**
+     * @Description 以streams路并发运行一级压测
+     * @author czx
+     * @date 2026-10-19 15:35
+     * @param streams
+     * @return cn.edu.bupt.load.LoadHarness.StepResult
+     */
+    public StepResult runStep(int streams) throws Exception{
+        log.info("Starting step with {} streams",streams);
+        List<String> names = new ArrayList<>(streams);
+        List<RtspVideoAdapter> adapters = new ArrayList<>(streams);
+        List<RtmpRelay> relays = new ArrayList<>(streams);
+        for(int i = 0;i<streams;i++){
+            String name = "n"+streams+"_cam"+i;
+            names.add(name);
+            if(rtmpIngest!=null){
+                // adapter由接入服务在publish时创建
+                RtmpRelay relay = new RtmpRelay(source.getUrl(name),"rtmp://127.0.0.1:"+rtmpIngest.getServer().getPort()+"/live/"+name);
+                relays.add(relay);
+                relay.start();
+                continue;
+            }
+            RtspVideoAdapter adapter = new RtspVideoAdapter(source.getUrl(name),sink.getUrl(name),false,usePacket);
+            adapter.setCodecTuning(CodecTuning.parse(codec));
+            adapter.setIngest(ingest);
+            adapter.setEgress(egress);
+            adapters.add(adapter);
+            VideoAdapterManagement.startAdapter(adapter);
+        }
+        StepResult result = new StepResult(streams);
+        try {
+            long deadline = System.currentTimeMillis()+TimeUnit.SECONDS.toMillis(30+2*streams);
+            for(String name : names){
+                while (sink.getStats(name)==null){
+                    if(System.currentTimeMillis()>deadline){
+                        throw new IllegalStateException("Stream ["+name+"] was not published in time");
+                    }
+                    Thread.sleep(100);
+                }
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+
+            for(String name : names){
+                sink.getStats(name).reset();
+            }
+            long sentBefore = source.getSentFrames();
+            long lateBefore = source.getLateFrames();
+            long windowStart = System.nanoTime();
+            sampler.begin(500);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            sampler.end();
+            double seconds = (System.nanoTime()-windowStart)/1e9;
+
+            for(String name : names){
+                result.streams.add(sink.getStats(name).snapshot());
+            }
+            result.sentFps = (source.getSentFrames()-sentBefore)/seconds;
+            result.lateFrames = source.getLateFrames()-lateBefore;
+            result.cpuAvg = sampler.getCpuAvgPercent();
+            result.cpuMax = sampler.getCpuMaxPercent();
+            result.physicalMb = sampler.getPhysicalMaxMb();
+            result.nativeMb = sampler.getNativeMaxMb();
+            result.heapMb = sampler.getHeapMaxMb();
+        }finally {
+            for(RtmpRelay relay : relays){
+                relay.stop();
+            }
+            if(rtmpIngest!=null){
+                for(String name : names){
+                    VideoAdapter adapter = VideoAdapterManagement.getVideoAdapter(sink.getUrl(name));
+                    if(adapter!=null){
+                        VideoAdapterManagement.stopAdapter(adapter);
+                    }
+                }
+            }
+            for(RtspVideoAdapter adapter : adapters){
+                VideoAdapterManagement.stopAdapter(adapter);
+            }
+            // grabber停止时会关闭RTSP连接，以此判断所有adapter都已经退出
+            long deadline = System.currentTimeMillis()+TimeUnit.SECONDS.toMillis(30);
+            while (source.getSessionCount()>0 && System.currentTimeMillis()<deadline){
+                Thread.sleep(100);
+            }
+            Thread.sleep(1000);
+            for(String name : names){
+                sink.removeStats(name);
+            }
+        }
+        log.info("Step finished : {}",result.summary());
+        return result;
+    }
+
+    /**
+     * 一级压测的结果
+     */
+    public static class StepResult {
+
+        private final int streamCount;
+        private final List<StreamStats.Snapshot> streams = new ArrayList<>();
+        private double sentFps;
+        private long lateFrames;
+        private double cpuAvg;
+        private double cpuMax;
+        private long physicalMb;
+        private long nativeMb;
+        private long heapMb;
+
+        StepResult(int streamCount) {
+            this.streamCount = streamCount;
+        }
+
+        double receivedFps(){
+            double fps = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                fps += snapshot.getFps();
+            }
+            return fps;
+        }
+
+        long drops(){
+            long drops = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                drops += snapshot.getDrops();
+            }
+            return drops;
+        }
+
+        long frames(){
+            long frames = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                frames += snapshot.getFrames();
+            }
+            return frames;
+        }
+
+        double dropRate(){
+            long total = frames()+drops();
+            return total==0 ? 0 : (double)drops()/total;
+        }
+
+        double minFps(){
+            double fps = Double.MAX_VALUE;
+            for(StreamStats.Snapshot snapshot : streams){
+                fps = Math.min(fps,snapshot.getFps());
+            }
+            return streams.isEmpty() ? 0 : fps;
+        }
+
+        double jitterAvg(){
+            double jitter = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                jitter += snapshot.getJitterMillis();
+            }
+            return streams.isEmpty() ? 0 : jitter/streams.size();
+        }
+
+        double jitterMax(){
+            double jitter = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                jitter = Math.max(jitter,snapshot.getJitterMillis());
+            }
+            return jitter;
+        }
+
+        /**
+         * 所有流合并之后的延迟分位数
+         */
+        double latency(double percentile){
+            int size = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                size += snapshot.getSortedLatencies().length;
+            }
+            if(size==0){
+                return Double.NaN;
+            }
+            long[] all = new long[size];
+            int offset = 0;
+            for(StreamStats.Snapshot snapshot : streams){
+                long[] latencies = snapshot.getSortedLatencies();
+                System.arraycopy(latencies,0,all,offset,latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(all);
+            int index = Math.max(0,Math.min(size-1,(int)Math.ceil(percentile/100*size)-1));
+            return all[index]/1e6;
+        }
+
+        String summary(){
+            return String.format(Locale.ROOT,"streams=%d sent=%.1ffps received=%.1ffps min=%.1ffps p50=%.1fms p99=%.1fms drops=%d(%.2f%%) cpu=%.0f%%",
+                    streamCount,sentFps,receivedFps(),minFps(),latency(50),latency(99),drops(),dropRate()*100,cpuAvg);
+        }
+    }
+
+    /**
+     * @Description 每一路都保持源帧率(允许5%的误差)的最大路数，从最小的一级开始，第一次不满足时停止
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param results
+     * @return int
+     */
+    int sustainedStreams(List<StepResult> results){
+        int sustained = 0;
+        for(StepResult r : results){
+            if(r.minFps()<frameRate*0.95){
+                break;
+            }
+            sustained = r.streamCount;
+        }
+        return sustained;
+    }
+
+    /**
+     * @Description 输出markdown报告，并在旁边输出同名的csv便于绘图
+     * @author czx
+     * @date 2026-10-19 15:35
+     * @param results
+     * @param basePath 不带扩展名的文件路径
+     * @return void
+     */
+    public void writeReport(List<StepResult> results,String basePath) throws IOException{
+        File markdown = new File(basePath+".md");
+        File csv = new File(basePath+".csv");
+        try (PrintWriter md = new PrintWriter(Files.newBufferedWriter(markdown.toPath(),StandardCharsets.UTF_8))) {
+            md.println("# Converter load report");
+            md.println();
+            md.println("- date: "+new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+            md.println("- host: "+Runtime.getRuntime().availableProcessors()+" cores, java "+System.getProperty("java.version")+", max heap "+Runtime.getRuntime().maxMemory()/(1024*1024)+"MB");
+            md.println("- source: "+width+"x"+height+" H.264 @ "+frameRate+"fps, "+(usePacket ? "packet mode" : "frame mode (decode + x264)")+", no recording");
+            md.println("- ingest: "+(ingest==null||ingest.isEmpty() ? "ffmpeg" : ingest));
+            md.println("- egress: "+(egress==null||egress.isEmpty() ? "ffmpeg" : egress));
+            if(!usePacket){
+                md.println("- codec: "+(codec==null||codec.isEmpty() ? "adaptive defaults" : codec));
+            }
+            md.println("- window: "+warmupSeconds+"s warmup + "+durationSeconds+"s measurement per step");
+            md.println("- latency: SEI timestamp inserted before RTP packetization to arrival at the RTMP sink"+(usePacket ? "" : " (not available in frame mode, the SEI is lost when re-encoding)"));
+            md.println("- sustained: "+sustainedStreams(results)+" streams with every stream at >= 95% of the source frame rate");
+            md.println();
+            md.println("| streams | sent fps | received fps | min stream fps | p50 ms | p95 ms | p99 ms | max ms | jitter avg/max ms | dropped | drop % | source late | cpu avg/max % | rss MB | javacpp MB | heap MB |");
+            md.println("|---|---|---|---|---|---|---|---|---|---|---|---|---|---|---|---|");
+            for(StepResult r : results){
+                md.println(String.format(Locale.ROOT,"| %d | %.1f | %.1f | %.1f | %.1f | %.1f | %.1f | %.1f | %.2f/%.2f | %d | %.2f | %d | %.0f/%.0f | %d | %d | %d |",
+                        r.streamCount,r.sentFps,r.receivedFps(),r.minFps(),r.latency(50),r.latency(95),r.latency(99),r.latency(100),
+                        r.jitterAvg(),r.jitterMax(),r.drops(),r.dropRate()*100,r.lateFrames,r.cpuAvg,r.cpuMax,r.physicalMb,r.nativeMb,r.heapMb));
+            }
+            md.println();
+            md.println("`source late` counts frames the in-process source could not send on time; when it is not zero the load generator itself is saturated.");
+            for(StepResult r : results){
+                md.println();
+                md.println("## "+r.streamCount+" streams");
+                md.println();
+                md.println("| stream | fps | p50 ms | p99 ms | max ms | jitter ms | dropped |");
+                md.println("|---|---|---|---|---|---|---|");
+                for(StreamStats.Snapshot s : r.streams){
+                    md.println(String.format(Locale.ROOT,"| %s | %.1f | %.1f | %.1f | %.1f | %.2f | %d |",
+                            s.getName(),s.getFps(),s.percentileMillis(50),s.percentileMillis(99),s.percentileMillis(100),s.getJitterMillis(),s.getDrops()));
+                }
+            }
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv.toPath(),StandardCharsets.UTF_8))) {
+            out.println("streams,sent_fps,received_fps,min_fps,p50_ms,p95_ms,p99_ms,max_ms,jitter_avg_ms,jitter_max_ms,dropped,drop_rate,source_late,cpu_avg,cpu_max,rss_mb,javacpp_mb,heap_mb");
+            for(StepResult r : results){
+                out.println(String.format(Locale.ROOT,"%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.3f,%.3f,%d,%.5f,%d,%.1f,%.1f,%d,%d,%d",
+                        r.streamCount,r.sentFps,r.receivedFps(),r.minFps(),r.latency(50),r.latency(95),r.latency(99),r.latency(100),
+                        r.jitterAvg(),r.jitterMax(),r.drops(),r.dropRate(),r.lateFrames,r.cpuAvg,r.cpuMax,r.physicalMb,r.nativeMb,r.heapMb));
+            }
+        }
+        log.info("Report written to {} and {}",markdown.getAbsolutePath(),csv.getAbsolutePath());
+    }
+
+    public static void main(String[] args) throws Exception{
+        Map<String,String> options = new HashMap<>();
+        for(String arg : args){
+            int index = arg.indexOf('=');
+            if(index>0){
+                options.put(arg.substring(0,index),arg.substring(index+1));
+            }
+        }
+        String[] size = options.getOrDefault("size","1280x720").split("x");
+        int frameRate = Integer.parseInt(options.getOrDefault("fps","25"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup","5"));
+        int duration = Integer.parseInt(options.getOrDefault("duration","20"));
+        String report = options.getOrDefault("report","load-report");
+        List<Integer> steps = new ArrayList<>();
+        for(String step : options.getOrDefault("streams","1,2,4,8").split(",")){
+            steps.add(Integer.parseInt(step.trim()));
+        }
+        // adapter启动时会在RootDir下创建目录，压测时放到临时目录
+        if(System.getProperty("RootDir")==null){
+            System.setProperty("RootDir",Files.createTempDirectory("converter-load").toString()+File.separator);
+        }
+
+        boolean usePacket = !"frame".equals(options.getOrDefault("mode","packet"));
+        LoadHarness harness = new LoadHarness(Integer.parseInt(size[0]),Integer.parseInt(size[1]),frameRate,warmup,duration,usePacket,options.get("codec"));
+        harness.setIngest(options.get("ingest"));
+        harness.setEgress(options.get("egress"));
+        List<StepResult> results = new ArrayList<>();
+        try {
+            harness.start();
+            for(int streams : steps){
+                results.add(harness.runStep(streams));
+            }
+        }catch (Exception e){
+            log.error("Load test aborted",e);
+        }finally {
+            if(!results.isEmpty()){
+                harness.writeReport(results,report);
+            }
+            harness.stop();
+        }
+        // adapter与listener的线程池都不是守护线程
+        System.exit(results.size()==steps.size() ? 0 : 1);
+    }
+}
@@ -0,0 +1,112 @@
+package cn.edu.bupt.load;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bytedeco.javacpp.Pointer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: ResourceSampler，统计窗口内定时采样进程CPU、常驻内存(RSS)、JavaCPP分配的native内存以及堆内存
+ * @Author: czx
+ * @CreateDate: 2026-10-19 15:20
+ * @Version: 1.0
+ */
+public class ResourceSampler {
+
+    private static final long MB = 1024*1024;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("Resource-sampler-%d").daemon(true).build());
+
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private ScheduledFuture<?> future;
+
+    private int samples;
+    private double cpuSum;
+    private double cpuMax;
+    private long physicalMax;
+    private long nativeMax;
+    private long heapMax;
+
+    /**
+     * @Description 开始新的采样窗口
+     * @author czx
+     * @date 2026-10-19 15:20
+     * @param periodMillis
+     * @return void
+     */
+    public synchronized void begin(long periodMillis){
+        end();
+        samples = 0;
+        cpuSum = 0;
+        cpuMax = 0;
+        physicalMax = 0;
+        nativeMax = 0;
+        heapMax = 0;
+        // 第一次调用getProcessCpuLoad的结果没有意义，先调用一次
+        processCpuLoad();
+        future = scheduler.scheduleAtFixedRate(this::sample,periodMillis,periodMillis,TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void end(){
+        if(future!=null){
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    private synchronized void sample(){
+        double cpu = processCpuLoad();
+        if(cpu>=0){
+            cpuSum += cpu;
+            cpuMax = Math.max(cpuMax,cpu);
+            samples++;
+        }
+        physicalMax = Math.max(physicalMax,Pointer.physicalBytes());
+        nativeMax = Math.max(nativeMax,Pointer.totalBytes());
+        heapMax = Math.max(heapMax,memory.getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * 进程CPU占用，按核数换算为百分比，单核跑满为100%
+     */
+    private double processCpuLoad(){
+        if(os instanceof com.sun.management.OperatingSystemMXBean){
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+            return load<0 ? -1 : load*100*os.getAvailableProcessors();
+        }
+        return -1;
+    }
+
+    public synchronized double getCpuAvgPercent(){
+        return samples==0 ? Double.NaN : cpuSum/samples;
+    }
+
+    public synchronized double getCpuMaxPercent(){
+        return samples==0 ? Double.NaN : cpuMax;
+    }
+
+    public synchronized long getPhysicalMaxMb(){
+        return physicalMax/MB;
+    }
+
+    public synchronized long getNativeMaxMb(){
+        return nativeMax/MB;
+    }
+
+    public synchronized long getHeapMaxMb(){
+        return heapMax/MB;
+    }
+
+    public void shutdown(){
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,93 @@
+package cn.edu.bupt.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+
+/**
+ * @Description: RtmpRelay，推流设备的替身：用FFmpeg从RTSP源拉流，原样以RTMP推到converter的接入服务，
+ * 用于在压测中验证RTMP接入(ingest=rtmp)，推流端使用的是libavformat自己的RTMP实现
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpRelay {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("Rtmp-relay-%d").daemon(true).build());
+
+    private final String rtspUrl;
+    private final String rtmpUrl;
+    private volatile boolean running;
+    private Future<?> future;
+
+    public RtmpRelay(String rtspUrl,String rtmpUrl){
+        this.rtspUrl = rtspUrl;
+        this.rtmpUrl = rtmpUrl;
+    }
+
+    public void start(){
+        running = true;
+        future = executor.submit(this::relay);
+    }
+
+    /**
+     * @Description 停止推流并等待拉流连接关闭
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param
+     * @return void
+     */
+    public void stop(){
+        running = false;
+        try {
+            future.get();
+        }catch (Exception e){
+            log.debug("Rtmp relay of {} ended with {}",rtspUrl,e.toString());
+        }
+    }
+
+    private void relay(){
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(rtspUrl);
+        grabber.setOption("rtsp_transport","tcp");
+        // 缩短探测时间，否则探测期间缓存的几秒帧会在开始推流时一次性涌入接入服务
+        grabber.setOption("analyzeduration","500000");
+        FFmpegFrameRecorder recorder = null;
+        try {
+            grabber.start();
+            recorder = new FFmpegFrameRecorder(rtmpUrl,grabber.getImageWidth(),grabber.getImageHeight(),0);
+            recorder.setFormat("flv");
+            recorder.setFrameRate(grabber.getFrameRate());
+            recorder.start(grabber.getFormatContext());
+            long lastDts = Long.MIN_VALUE;
+            while (running){
+                AVPacket packet = grabber.grabPacket();
+                // 与PushListener一样丢弃没有时间戳或时间戳回退的包，否则flv muxer直接报错
+                if(packet==null||packet.dts()==AV_NOPTS_VALUE||packet.dts()<lastDts){
+                    continue;
+                }
+                lastDts = packet.dts();
+                recorder.recordPacket(packet);
+            }
+        }catch (Exception e){
+            log.warn("Rtmp relay {} -> {} failed",rtspUrl,rtmpUrl,e);
+        }finally {
+            try {
+                if(recorder!=null){
+                    recorder.stop();
+                }
+                grabber.stop();
+            }catch (Exception e){
+                log.debug("Rtmp relay close failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package cn.edu.bupt.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @Description: RtmpSinkServer，进程内的RTMP服务器替身，只接受publish。
+ * 实现了握手、chunk stream的解析以及connect/createStream/publish三个命令，
+ * 收到的视频消息按AVCC拆分NAL并交给StreamStats统计，不做任何转发
+ * @Author: czx
+ * @CreateDate: 2026-10-19 14:55
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpSinkServer {
+
+    private static final int HANDSHAKE_SIZE = 1536;
+
+    private static final int MSG_SET_CHUNK_SIZE = 1;
+    private static final int MSG_WINDOW_ACK_SIZE = 5;
+    private static final int MSG_SET_PEER_BANDWIDTH = 6;
+    private static final int MSG_VIDEO = 9;
+    private static final int MSG_COMMAND_AMF3 = 17;
+    private static final int MSG_COMMAND_AMF0 = 20;
+
+    private static final int OUT_CHUNK_SIZE = 4096;
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    private final ExecutorService connections = Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("Rtmp-sink-%d").daemon(true).build());
+
+    private final Map<String,StreamStats> streams = new ConcurrentHashMap<>();
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    public void start(int port) throws IOException{
+        serverSocket = new ServerSocket(port,128,InetAddress.getLoopbackAddress());
+        running = true;
+        connections.submit(()->{
+            while (running){
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    connections.submit(new Connection(socket));
+                }catch (IOException e){
+                    if(running){
+                        log.warn("Rtmp sink accept failed",e);
+                    }
+                }
+            }
+        });
+        log.info("Rtmp sink started at {}",getUrl("cam"));
+    }
+
+    public void stop(){
+        running = false;
+        try {
+            serverSocket.close();
+        }catch (IOException e){
+            log.warn("Rtmp sink close failed");
+        }
+        for(Socket socket : sockets){
+            try {
+                socket.close();
+            }catch (IOException e){
+                log.debug("Rtmp connection close failed");
+            }
+        }
+        connections.shutdownNow();
+    }
+
+    public String getUrl(String streamName){
+        return "rtmp://127.0.0.1:"+serverSocket.getLocalPort()+"/live/"+streamName;
+    }
+
+    /**
+     * @Description 获取某个流的统计，流还没有publish时返回null
+     * @author czx
+     * @date 2026-10-19 14:55
+     * @param streamName
+     * @return cn.edu.bupt.load.StreamStats
+     */
+    public StreamStats getStats(String streamName){
+        return streams.get(streamName);
+    }
+
+    public void removeStats(String streamName){
+        streams.remove(streamName);
+    }
+
+    /**
+     * 一个publish连接
+     */
+    private class Connection implements Runnable{
+
+        private final Socket socket;
+
+        private DataInputStream in;
+
+        private OutputStream out;
+
+        private int inChunkSize = 128;
+
+        private final Map<Integer,ChunkState> chunkStates = new HashMap<>();
+
+        private StreamStats stats;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            sockets.add(socket);
+            try {
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream(),64*1024));
+                out = new BufferedOutputStream(socket.getOutputStream());
+                handshake();
+                while (running){
+                    readChunk();
+                }
+            }catch (EOFException e){
+                log.debug("Rtmp publisher disconnected");
+            }catch (IOException e){
+                log.debug("Rtmp connection closed : {}",e.getMessage());
+            }finally {
+                sockets.remove(socket);
+                try {
+                    socket.close();
+                }catch (IOException e){
+                    log.debug("Rtmp connection close failed");
+                }
+            }
+        }
+
+        /**
+         * 简单握手：S1不带digest，publish端的FFmpeg不会校验
+         */
+        private void handshake() throws IOException{
+            byte[] c1 = new byte[HANDSHAKE_SIZE];
+            in.readUnsignedByte();
+            in.readFully(c1);
+            byte[] s1 = new byte[HANDSHAKE_SIZE];
+            new Random().nextBytes(s1);
+            Arrays.fill(s1,0,8,(byte)0);
+            out.write(3);
+            out.write(s1);
+            out.write(c1);
+            out.flush();
+            in.readFully(new byte[HANDSHAKE_SIZE]);
+        }
+
+        private void readChunk() throws IOException{
+            int basic = in.readUnsignedByte();
+            int fmt = basic>>6;
+            int csid = basic & 0x3f;
+            if(csid==0){
+                csid = 64+in.readUnsignedByte();
+            }else if(csid==1){
+                csid = 64+in.readUnsignedByte()+(in.readUnsignedByte()<<8);
+            }
+            ChunkState state = chunkStates.computeIfAbsent(csid,k->new ChunkState());
+            if(fmt<=2){
+                long timestamp = readUInt24();
+                if(fmt<=1){
+                    state.length = (int)readUInt24();
+                    state.type = in.readUnsignedByte();
+                    if(fmt==0){
+                        state.streamId = Integer.reverseBytes(in.readInt());
+                    }
+                }
+                state.extendedTimestamp = timestamp==0xffffff;
+            }
+            if(state.extendedTimestamp){
+                in.readInt();
+            }
+            if(state.payload==null){
+                state.payload = new byte[state.length];
+                state.received = 0;
+            }
+            int size = Math.min(inChunkSize,state.length-state.received);
+            in.readFully(state.payload,state.received,size);
+            state.received += size;
+            if(state.received==state.length){
+                byte[] payload = state.payload;
+                state.payload = null;
+                handleMessage(state.type,payload);
+            }
+        }
+
+        private long readUInt24() throws IOException{
+            return (in.readUnsignedByte()<<16) | (in.readUnsignedByte()<<8) | in.readUnsignedByte();
+        }
+
+        private void handleMessage(int type,byte[] payload) throws IOException{
+            switch (type){
+                case MSG_SET_CHUNK_SIZE:
+                    inChunkSize = ((payload[0] & 0x7f)<<24) | ((payload[1] & 0xff)<<16) | ((payload[2] & 0xff)<<8) | (payload[3] & 0xff);
+                    break;
+                case MSG_VIDEO:
+                    onVideo(payload,System.nanoTime());
+                    break;
+                case MSG_COMMAND_AMF3:
+                    onCommand(new Amf0Reader(payload,1));
+                    break;
+                case MSG_COMMAND_AMF0:
+                    onCommand(new Amf0Reader(payload,0));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void onCommand(Amf0Reader reader) throws IOException{
+            String command = (String) reader.read();
+            Object transaction = reader.read();
+            double transactionId = transaction instanceof Double ? (Double) transaction : 0;
+            switch (command){
+                case "connect":
+                    sendControl(MSG_WINDOW_ACK_SIZE,intBytes(2500000));
+                    sendControl(MSG_SET_PEER_BANDWIDTH,new byte[]{0,0x26,0x25,(byte)0xa0,2});
+                    sendControl(MSG_SET_CHUNK_SIZE,intBytes(OUT_CHUNK_SIZE));
+                    Map<String,Object> properties = new LinkedHashMap<>();
+                    properties.put("fmsVer","FMS/3,0,1,123");
+                    properties.put("capabilities",31.0);
+                    Map<String,Object> information = new LinkedHashMap<>();
+                    information.put("level","status");
+                    information.put("code","NetConnection.Connect.Success");
+                    information.put("description","Connection succeeded.");
+                    information.put("objectEncoding",0.0);
+                    sendCommand(3,0,"_result",transactionId,properties,information);
+                    break;
+                case "createStream":
+                    sendCommand(3,0,"_result",transactionId,null,1.0);
+                    break;
+                case "publish":
+                    reader.read();
+                    String streamName = (String) reader.read();
+                    stats = new StreamStats(streamName);
+                    streams.put(streamName,stats);
+                    Map<String,Object> status = new LinkedHashMap<>();
+                    status.put("level","status");
+                    status.put("code","NetStream.Publish.Start");
+                    status.put("description",streamName+" is now published.");
+                    sendCommand(5,1,"onStatus",0.0,null,status);
+                    log.debug("Stream [{}] published",streamName);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * FLV视频tag：1字节帧类型/编码，1字节AVCPacketType，3字节CTS，之后是4字节长度前缀的NAL。
+         * 没有SEI时间戳的帧(Frame模式重新编码之后)只统计帧数
+         */
+        private void onVideo(byte[] body,long arrivalNanos){
+            if(stats==null || body.length<5 || (body[0] & 0x0f)!=7 || body[1]!=1){
+                return;
+            }
+            int offset = 5;
+            while (offset+4<=body.length){
+                int length = ((body[offset] & 0xff)<<24) | ((body[offset+1] & 0xff)<<16) | ((body[offset+2] & 0xff)<<8) | (body[offset+3] & 0xff);
+                offset += 4;
+                if(length<=0 || offset+length>body.length){
+                    return;
+                }
+                SeiTimestamp.Stamp stamp = SeiTimestamp.decode(body,offset,length);
+                if(stamp!=null){
+                    stats.record(stamp.getSendNanos(),stamp.getSequence(),arrivalNanos);
+                    return;
+                }
+                offset += length;
+            }
+            stats.recordUntimed(arrivalNanos);
+        }
+
+        private void sendControl(int type,byte[] payload) throws IOException{
+            sendMessage(2,0,type,payload);
+        }
+
+        private void sendCommand(int csid,int streamId,Object... values) throws IOException{
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            for(Object value : values){
+                writeAmf0(payload,value);
+            }
+            sendMessage(csid,streamId,MSG_COMMAND_AMF0,payload.toByteArray());
+        }
+
+        private void sendMessage(int csid,int streamId,int type,byte[] payload) throws IOException{
+            out.write(csid);
+            out.write(new byte[]{0,0,0});
+            out.write(payload.length>>16);
+            out.write(payload.length>>8);
+            out.write(payload.length);
+            out.write(type);
+            out.write(intBytes(Integer.reverseBytes(streamId)));
+            int offset = 0;
+            // 消息在set chunk size之前发出时仍然使用默认的128
+            int chunkSize = type==MSG_SET_CHUNK_SIZE ? 128 : OUT_CHUNK_SIZE;
+            while (true){
+                int size = Math.min(chunkSize,payload.length-offset);
+                out.write(payload,offset,size);
+                offset += size;
+                if(offset>=payload.length){
+                    break;
+                }
+                out.write(0xc0 | csid);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * 一个chunk stream上一次的消息头
+     */
+    private static class ChunkState {
+        int length;
+        int type;
+        int streamId;
+        boolean extendedTimestamp;
+        byte[] payload;
+        int received;
+    }
+
+    private static byte[] intBytes(int value){
+        return new byte[]{(byte)(value>>24),(byte)(value>>16),(byte)(value>>8),(byte)value};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeAmf0(ByteArrayOutputStream out,Object value){
+        if(value==null){
+            out.write(5);
+        }else if(value instanceof Double){
+            out.write(0);
+            long bits = Double.doubleToLongBits((Double) value);
+            for(int i = 7;i>=0;i--){
+                out.write((int)(bits>>(i*8)));
+            }
+        }else if(value instanceof String){
+            out.write(2);
+            writeAmf0String(out,(String) value);
+        }else if(value instanceof Map){
+            out.write(3);
+            for(Map.Entry<String,Object> entry : ((Map<String,Object>) value).entrySet()){
+                writeAmf0String(out,entry.getKey());
+                writeAmf0(out,entry.getValue());
+            }
+            out.write(0);
+            out.write(0);
+            out.write(9);
+        }else{
+            throw new IllegalArgumentException("Unsupported amf0 value "+value);
+        }
+    }
+
+    private static void writeAmf0String(ByteArrayOutputStream out,String value){
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes.length>>8);
+        out.write(bytes.length);
+        out.write(bytes,0,bytes.length);
+    }
+
+    /**
+     * 只支持命令消息中会出现的AMF0类型
+     */
+    private static class Amf0Reader {
+
+        private final byte[] buf;
+
+        private int position;
+
+        Amf0Reader(byte[] buf, int position) {
+            this.buf = buf;
+            this.position = position;
+        }
+
+        Object read(){
+            if(position>=buf.length){
+                return null;
+            }
+            int marker = buf[position++] & 0xff;
+            switch (marker){
+                case 0:
+                    long bits = 0;
+                    for(int i = 0;i<8;i++){
+                        bits = (bits<<8) | (buf[position++] & 0xff);
+                    }
+                    return Double.longBitsToDouble(bits);
+                case 1:
+                    return buf[position++]!=0;
+                case 2:
+                    return readString();
+                case 3:
+                    return readProperties();
+                case 8:
+                    position += 4;
+                    return readProperties();
+                case 5:
+                case 6:
+                    return null;
+                default:
+                    throw new IllegalArgumentException("Unsupported amf0 marker "+marker);
+            }
+        }
+
+        private String readString(){
+            int length = ((buf[position] & 0xff)<<8) | (buf[position+1] & 0xff);
+            position += 2;
+            String value = new String(buf,position,length,StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private Map<String,Object> readProperties(){
+            Map<String,Object> properties = new LinkedHashMap<>();
+            while (position+3<=buf.length){
+                if(buf[position]==0 && buf[position+1]==0 && buf[position+2]==9){
+                    position += 3;
+                    break;
+                }
+                String key = readString();
+                properties.put(key,read());
+            }
+            return properties;
+        }
+    }
+}
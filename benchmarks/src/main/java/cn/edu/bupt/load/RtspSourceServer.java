@@ -0,0 +1,477 @@
+package cn.edu.bupt.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.*;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: RtspSourceServer，进程内的RTSP摄像头替身。
+ * 所有路径共享同一段H.264 access unit并循环发送，默认只支持RTP over TCP(interleaved)，
+ * 客户端请求UDP时返回461，FFmpeg会自动退回TCP；setUdp(true)之后也接受UDP。每个access unit前插入SeiTimestamp
+ * @Author: czx
+ * @CreateDate: 2026-10-19 14:20
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtspSourceServer {
+
+    private static final int RTP_PAYLOAD_TYPE = 96;
+
+    private static final int RTP_CLOCK = 90000;
+
+    private static final int MAX_RTP_PAYLOAD = 1400;
+
+    private static final Pattern CLIENT_PORT = Pattern.compile("client_port=(\\d+)");
+
+    private final List<byte[][]> accessUnits;
+
+    private final int frameRate;
+
+    private final String spropParameterSets;
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    private volatile boolean udp;
+
+    private final ExecutorService connections = Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("Rtsp-source-%d").daemon(true).build());
+
+    private final ScheduledExecutorService senders = Executors.newScheduledThreadPool(Math.max(2,Runtime.getRuntime().availableProcessors()/2),new BasicThreadFactory.Builder().namingPattern("Rtsp-sender-%d").daemon(true).build());
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger sessionId = new AtomicInteger(1000);
+
+    private final AtomicLong sentFrames = new AtomicLong();
+
+    private final AtomicLong lateFrames = new AtomicLong();
+
+    public RtspSourceServer(List<byte[]> accessUnits,int frameRate){
+        this.frameRate = frameRate;
+        this.accessUnits = new ArrayList<>(accessUnits.size());
+        for(byte[] au : accessUnits){
+            this.accessUnits.add(splitAnnexB(au));
+        }
+        this.spropParameterSets = spropParameterSets(this.accessUnits.get(0));
+    }
+
+    /**
+     * @Description 在本地端口上启动服务，port为0时使用随机端口
+     * @author czx
+     * @date 2026-10-19 14:20
+     * @param port
+     * @return void
+     */
+    public void start(int port) throws IOException{
+        serverSocket = new ServerSocket(port,128,InetAddress.getLoopbackAddress());
+        running = true;
+        connections.submit(()->{
+            while (running){
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    connections.submit(new Session(socket));
+                }catch (IOException e){
+                    if(running){
+                        log.warn("Rtsp source accept failed",e);
+                    }
+                }
+            }
+        });
+        log.info("Rtsp source started at {}",getUrl("cam"));
+    }
+
+    public void stop(){
+        running = false;
+        try {
+            serverSocket.close();
+        }catch (IOException e){
+            log.warn("Rtsp source close failed");
+        }
+        for(Session session : sessions){
+            session.close();
+        }
+        senders.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    public String getUrl(String path){
+        return "rtsp://127.0.0.1:"+serverSocket.getLocalPort()+"/"+path;
+    }
+
+    /**
+     * @Description 是否接受RTP over UDP，需要在客户端SETUP之前设置
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param udp
+     * @return void
+     */
+    public void setUdp(boolean udp) {
+        this.udp = udp;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    /**
+     * 发送线程没能按时发送的帧数，不为0时说明压测机本身已经成为瓶颈
+     */
+    public long getLateFrames() {
+        return lateFrames.get();
+    }
+
+    public int getSessionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * 一个RTSP连接
+     */
+    private class Session implements Runnable{
+
+        private final Socket socket;
+
+        private final String id = String.valueOf(sessionId.incrementAndGet());
+
+        private final int ssrc = ThreadLocalRandom.current().nextInt();
+
+        private OutputStream out;
+
+        private ScheduledFuture<?> sender;
+
+        private DatagramSocket udpSocket;
+
+        private InetSocketAddress udpTarget;
+
+        private int rtpSequence;
+
+        private long frameIndex;
+
+        private long startNanos;
+
+        private Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            sessions.add(this);
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream(),64*1024);
+                while (running){
+                    int first = in.read();
+                    if(first<0){
+                        break;
+                    }
+                    if(first=='$'){
+                        // 客户端发来的RTCP，直接跳过
+                        in.read();
+                        int length = (in.read()<<8) | in.read();
+                        skip(in,length);
+                        continue;
+                    }
+                    Map<String,String> headers = new HashMap<>();
+                    String requestLine = (char)first+readLine(in);
+                    String line;
+                    while (!(line = readLine(in)).isEmpty()){
+                        int colon = line.indexOf(':');
+                        if(colon>0){
+                            headers.put(line.substring(0,colon).trim().toLowerCase(),line.substring(colon+1).trim());
+                        }
+                    }
+                    if(headers.containsKey("content-length")){
+                        skip(in,Integer.parseInt(headers.get("content-length")));
+                    }
+                    if(!handle(requestLine,headers)){
+                        break;
+                    }
+                }
+            }catch (IOException e){
+                log.debug("Rtsp session[{}] closed : {}",id,e.getMessage());
+            }finally {
+                close();
+            }
+        }
+
+        private boolean handle(String requestLine,Map<String,String> headers) throws IOException{
+            String[] parts = requestLine.split(" ");
+            String method = parts[0];
+            String url = parts.length>1 ? parts[1] : "";
+            String cseq = headers.getOrDefault("cseq","0");
+            switch (method){
+                case "OPTIONS":
+                    reply(cseq,200,"OK","Public: OPTIONS, DESCRIBE, SETUP, PLAY, TEARDOWN, GET_PARAMETER\r\n",null);
+                    return true;
+                case "DESCRIBE":
+                    String sdp = "v=0\r\n"
+                            + "o=- 0 0 IN IP4 127.0.0.1\r\n"
+                            + "s=Load harness\r\n"
+                            + "c=IN IP4 0.0.0.0\r\n"
+                            + "t=0 0\r\n"
+                            + "a=control:*\r\n"
+                            + "m=video 0 RTP/AVP "+RTP_PAYLOAD_TYPE+"\r\n"
+                            + "a=rtpmap:"+RTP_PAYLOAD_TYPE+" H264/"+RTP_CLOCK+"\r\n"
+                            + "a=fmtp:"+RTP_PAYLOAD_TYPE+" packetization-mode=1;sprop-parameter-sets="+spropParameterSets+"\r\n"
+                            + "a=framerate:"+frameRate+"\r\n"
+                            + "a=control:trackID=0\r\n";
+                    String base = url.endsWith("/") ? url : url+"/";
+                    reply(cseq,200,"OK","Content-Base: "+base+"\r\nContent-Type: application/sdp\r\n",sdp);
+                    return true;
+                case "SETUP":
+                    String transport = headers.getOrDefault("transport","");
+                    if(!transport.contains("TCP")){
+                        Matcher clientPort = CLIENT_PORT.matcher(transport);
+                        if(!udp || !clientPort.find()){
+                            reply(cseq,461,"Unsupported Transport","",null);
+                            return true;
+                        }
+                        int rtpPort = Integer.parseInt(clientPort.group(1));
+                        udpSocket = new DatagramSocket(0,InetAddress.getLoopbackAddress());
+                        udpSocket.setSendBufferSize(1024*1024);
+                        udpTarget = new InetSocketAddress(socket.getInetAddress(),rtpPort);
+                        int serverPort = udpSocket.getLocalPort();
+                        reply(cseq,200,"OK","Transport: RTP/AVP;unicast;client_port="+rtpPort+"-"+(rtpPort+1)
+                                +";server_port="+serverPort+"-"+(serverPort+1)+"\r\nSession: "+id+";timeout=60\r\n",null);
+                        return true;
+                    }
+                    reply(cseq,200,"OK","Transport: RTP/AVP/TCP;unicast;interleaved=0-1\r\nSession: "+id+";timeout=60\r\n",null);
+                    return true;
+                case "PLAY":
+                    reply(cseq,200,"OK","Session: "+id+"\r\nRange: npt=0.000-\r\n",null);
+                    startSending();
+                    return true;
+                case "TEARDOWN":
+                    reply(cseq,200,"OK","Session: "+id+"\r\n",null);
+                    return false;
+                default:
+                    reply(cseq,200,"OK","Session: "+id+"\r\n",null);
+                    return true;
+            }
+        }
+
+        private void reply(String cseq,int status,String reason,String headers,String body) throws IOException{
+            StringBuilder sb = new StringBuilder();
+            sb.append("RTSP/1.0 ").append(status).append(' ').append(reason).append("\r\n");
+            sb.append("CSeq: ").append(cseq).append("\r\n");
+            sb.append(headers);
+            byte[] content = body==null ? new byte[0] : body.getBytes(StandardCharsets.US_ASCII);
+            if(content.length>0){
+                sb.append("Content-Length: ").append(content.length).append("\r\n");
+            }
+            sb.append("\r\n");
+            synchronized (this){
+                out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+                out.write(content);
+                out.flush();
+            }
+        }
+
+        private synchronized void startSending(){
+            if(sender!=null){
+                return;
+            }
+            startNanos = System.nanoTime();
+            long period = TimeUnit.SECONDS.toNanos(1)/frameRate;
+            sender = senders.scheduleAtFixedRate(this::sendFrame,0,period,TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 发送一个access unit，RTP时间戳由帧序号计算，循环发送时保持单调递增
+         */
+        private void sendFrame(){
+            long now = System.nanoTime();
+            long expected = startNanos + frameIndex*TimeUnit.SECONDS.toNanos(1)/frameRate;
+            if(now-expected>TimeUnit.SECONDS.toNanos(1)/frameRate){
+                lateFrames.incrementAndGet();
+            }
+            byte[][] nals = accessUnits.get((int)(frameIndex % accessUnits.size()));
+            long rtpTimestamp = frameIndex*RTP_CLOCK/frameRate;
+            try {
+                synchronized (this){
+                    writeNal(SeiTimestamp.encode(now,frameIndex),rtpTimestamp,false);
+                    for(int i = 0;i<nals.length;i++){
+                        writeNal(nals[i],rtpTimestamp,i==nals.length-1);
+                    }
+                    out.flush();
+                }
+                frameIndex++;
+                sentFrames.incrementAndGet();
+            }catch (IOException e){
+                close();
+            }
+        }
+
+        /**
+         * 单个NAL不超过MAX_RTP_PAYLOAD时直接发送，否则按FU-A分片
+         */
+        private void writeNal(byte[] nal,long rtpTimestamp,boolean lastOfFrame) throws IOException{
+            if(nal.length<=MAX_RTP_PAYLOAD){
+                writeRtp(nal,0,nal.length,null,rtpTimestamp,lastOfFrame);
+                return;
+            }
+            byte indicator = (byte)((nal[0] & 0xe0) | 28);
+            int type = nal[0] & 0x1f;
+            int offset = 1;
+            while (offset<nal.length){
+                int length = Math.min(MAX_RTP_PAYLOAD-2,nal.length-offset);
+                boolean start = offset==1;
+                boolean end = offset+length==nal.length;
+                byte header = (byte)((start ? 0x80 : 0) | (end ? 0x40 : 0) | type);
+                writeRtp(nal,offset,length,new byte[]{indicator,header},rtpTimestamp,end && lastOfFrame);
+                offset += length;
+            }
+        }
+
+        private void writeRtp(byte[] payload,int offset,int length,byte[] prefix,long rtpTimestamp,boolean marker) throws IOException{
+            int prefixLength = prefix==null ? 0 : prefix.length;
+            int rtpLength = 12+prefixLength+length;
+            byte[] header = new byte[4+12];
+            header[0] = '$';
+            header[1] = 0;
+            header[2] = (byte)(rtpLength>>8);
+            header[3] = (byte)rtpLength;
+            header[4] = (byte)0x80;
+            header[5] = (byte)((marker ? 0x80 : 0) | RTP_PAYLOAD_TYPE);
+            header[6] = (byte)(rtpSequence>>8);
+            header[7] = (byte)rtpSequence;
+            header[8] = (byte)(rtpTimestamp>>24);
+            header[9] = (byte)(rtpTimestamp>>16);
+            header[10] = (byte)(rtpTimestamp>>8);
+            header[11] = (byte)rtpTimestamp;
+            header[12] = (byte)(ssrc>>24);
+            header[13] = (byte)(ssrc>>16);
+            header[14] = (byte)(ssrc>>8);
+            header[15] = (byte)ssrc;
+            rtpSequence = (rtpSequence+1) & 0xffff;
+            if(udpSocket!=null){
+                byte[] packet = new byte[rtpLength];
+                System.arraycopy(header,4,packet,0,12);
+                if(prefix!=null){
+                    System.arraycopy(prefix,0,packet,12,prefixLength);
+                }
+                System.arraycopy(payload,offset,packet,12+prefixLength,length);
+                udpSocket.send(new DatagramPacket(packet,rtpLength,udpTarget));
+                return;
+            }
+            out.write(header);
+            if(prefix!=null){
+                out.write(prefix);
+            }
+            out.write(payload,offset,length);
+        }
+
+        private void close(){
+            sessions.remove(this);
+            synchronized (this){
+                if(sender!=null){
+                    sender.cancel(false);
+                }
+            }
+            if(udpSocket!=null){
+                udpSocket.close();
+            }
+            try {
+                socket.close();
+            }catch (IOException e){
+                log.debug("Rtsp session[{}] close failed",id);
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException{
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read())>=0 && c!='\n'){
+            if(c!='\r'){
+                sb.append((char)c);
+            }
+        }
+        if(c<0 && sb.length()==0){
+            throw new EOFException();
+        }
+        return sb.toString();
+    }
+
+    private static void skip(InputStream in,int length) throws IOException{
+        while (length>0){
+            long skipped = in.skip(length);
+            if(skipped<=0){
+                if(in.read()<0){
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * @Description 按起始码切分Annex B数据，返回不含起始码的NAL
+     * @author czx
+     * @date 2026-10-19 14:20
+     * @param data
+     * @return byte[][]
+     */
+    static byte[][] splitAnnexB(byte[] data){
+        List<byte[]> nals = new ArrayList<>();
+        int start = -1;
+        int i = 0;
+        while (i+2<data.length){
+            if(data[i]==0 && data[i+1]==0 && data[i+2]==1){
+                if(start>=0){
+                    int end = i;
+                    while (end>start && data[end-1]==0){
+                        end--;
+                    }
+                    nals.add(Arrays.copyOfRange(data,start,end));
+                }
+                i += 3;
+                start = i;
+            }else{
+                i++;
+            }
+        }
+        if(start>=0 && start<data.length){
+            nals.add(Arrays.copyOfRange(data,start,data.length));
+        }
+        return nals.toArray(new byte[0][]);
+    }
+
+    private static String spropParameterSets(byte[][] nals){
+        String sps = null;
+        String pps = null;
+        for(byte[] nal : nals){
+            int type = nal[0] & 0x1f;
+            if(type==7 && sps==null){
+                sps = Base64.getEncoder().encodeToString(nal);
+            }else if(type==8 && pps==null){
+                pps = Base64.getEncoder().encodeToString(nal);
+            }
+        }
+        if(sps==null || pps==null){
+            throw new IllegalArgumentException("The first access unit must carry SPS and PPS");
+        }
+        return sps+","+pps;
+    }
+}
@@ -0,0 +1,136 @@
+package cn.edu.bupt.load;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @Description: SeiTimestamp，在H.264码流中以SEI(user_data_unregistered)嵌入发送时间与序号。
+ * packet模式下转发不会改动NAL，RTMP端取出SEI即可计算端到端延迟与丢帧
+ * @Author: czx
+ * @CreateDate: 2026-10-19 14:10
+ * @Version: 1.0
+ */
+public final class SeiTimestamp {
+
+    private static final int NAL_SEI = 6;
+
+    private static final int PAYLOAD_USER_DATA_UNREGISTERED = 5;
+
+    /**
+     * 用于识别harness自身SEI的UUID，避免与编码器写入的SEI混淆
+     */
+    private static final byte[] UUID = {
+            (byte)0x6c,(byte)0x6f,(byte)0x61,(byte)0x64,(byte)0x2d,(byte)0x68,(byte)0x61,(byte)0x72,
+            (byte)0x6e,(byte)0x65,(byte)0x73,(byte)0x73,(byte)0x2d,(byte)0x74,(byte)0x73,(byte)0x31
+    };
+
+    private static final int PAYLOAD_SIZE = UUID.length + 16;
+
+    private SeiTimestamp(){
+    }
+
+    /**
+     * 从SEI中解析出的发送时间与序号
+     */
+    public static class Stamp {
+
+        private final long sendNanos;
+
+        private final long sequence;
+
+        Stamp(long sendNanos, long sequence) {
+            this.sendNanos = sendNanos;
+            this.sequence = sequence;
+        }
+
+        public long getSendNanos() {
+            return sendNanos;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * @Description 生成一个SEI NAL（不含起始码），已经进行了防竞争字节处理
+     * @author czx
+     * @date 2026-10-19 14:10
+     * @param sendNanos 发送时的System.nanoTime()，收发两端在同一个进程中
+     * @param sequence 帧序号
+     * @return byte[]
+     */
+    public static byte[] encode(long sendNanos,long sequence){
+        byte[] rbsp = new byte[2 + PAYLOAD_SIZE + 1];
+        rbsp[0] = PAYLOAD_USER_DATA_UNREGISTERED;
+        rbsp[1] = (byte) PAYLOAD_SIZE;
+        System.arraycopy(UUID,0,rbsp,2,UUID.length);
+        putLong(rbsp,2+UUID.length,sendNanos);
+        putLong(rbsp,2+UUID.length+8,sequence);
+        rbsp[rbsp.length-1] = (byte)0x80;
+
+        ByteArrayOutputStream nal = new ByteArrayOutputStream(rbsp.length+8);
+        nal.write(NAL_SEI);
+        int zeros = 0;
+        for(byte b : rbsp){
+            if(zeros==2 && (b & 0xff)<=3){
+                nal.write(3);
+                zeros = 0;
+            }
+            nal.write(b);
+            zeros = b==0 ? zeros+1 : 0;
+        }
+        return nal.toByteArray();
+    }
+
+    /**
+     * @Description 解析一个NAL（不含起始码或长度前缀），不是harness写入的SEI时返回null
+     * @author czx
+     * @date 2026-10-19 14:10
+     * @param buf
+     * @param offset
+     * @param length
+     * @return cn.edu.bupt.load.SeiTimestamp.Stamp
+     */
+    public static Stamp decode(byte[] buf,int offset,int length){
+        if(length<3 || (buf[offset] & 0x1f)!=NAL_SEI){
+            return null;
+        }
+        // 去掉防竞争字节
+        byte[] rbsp = new byte[length-1];
+        int size = 0;
+        int zeros = 0;
+        for(int i = offset+1;i<offset+length;i++){
+            byte b = buf[i];
+            if(zeros==2 && b==3){
+                zeros = 0;
+                continue;
+            }
+            rbsp[size++] = b;
+            zeros = b==0 ? zeros+1 : 0;
+        }
+        if(size<2+PAYLOAD_SIZE || rbsp[0]!=PAYLOAD_USER_DATA_UNREGISTERED || (rbsp[1] & 0xff)!=PAYLOAD_SIZE){
+            return null;
+        }
+        for(int i = 0;i<UUID.length;i++){
+            if(rbsp[2+i]!=UUID[i]){
+                return null;
+            }
+        }
+        return new Stamp(getLong(rbsp,2+UUID.length),getLong(rbsp,2+UUID.length+8));
+    }
+
+    private static void putLong(byte[] buf,int offset,long value){
+        for(int i = 7;i>=0;i--){
+            buf[offset+i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] buf,int offset){
+        long value = 0;
+        for(int i = 0;i<8;i++){
+            value = (value<<8) | (buf[offset+i] & 0xff);
+        }
+        return value;
+    }
+}
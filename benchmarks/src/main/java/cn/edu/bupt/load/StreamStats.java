@@ -0,0 +1,175 @@
+package cn.edu.bupt.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: StreamStats，RTMP端按流统计到达的帧：端到端延迟、到达抖动（RFC 3550的算法）以及序号缺口
+ * @Author: czx
+ * @CreateDate: 2026-10-19 14:40
+ * @Version: 1.0
+ */
+public class StreamStats {
+
+    private final String name;
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long frames;
+
+    private long drops;
+
+    private long lastSequence = -1;
+
+    private long lastSendNanos;
+
+    private long lastArrivalNanos;
+
+    /**
+     * 平滑后的抖动，单位为纳秒
+     */
+    private double jitter;
+
+    private long windowStartNanos = System.nanoTime();
+
+    public StreamStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @Description 记录一帧，sendNanos与arrivalNanos都是System.nanoTime()
+     * @author czx
+     * @date 2026-10-19 14:40
+     * @param sendNanos
+     * @param sequence
+     * @param arrivalNanos
+     * @return void
+     */
+    public synchronized void record(long sendNanos,long sequence,long arrivalNanos){
+        if(lastSequence>=0){
+            if(sequence<=lastSequence){
+                // 推流端重连之后序号会回退，此时不计入丢帧
+                lastSequence = sequence;
+                lastSendNanos = sendNanos;
+                lastArrivalNanos = arrivalNanos;
+                return;
+            }
+            drops += sequence-lastSequence-1;
+            long d = (arrivalNanos-lastArrivalNanos)-(sendNanos-lastSendNanos);
+            jitter += (Math.abs(d)-jitter)/16;
+        }
+        lastSequence = sequence;
+        lastSendNanos = sendNanos;
+        lastArrivalNanos = arrivalNanos;
+        frames++;
+        if(count==latencies.length){
+            latencies = Arrays.copyOf(latencies,count*2);
+        }
+        latencies[count++] = arrivalNanos-sendNanos;
+    }
+
+    /**
+     * @Description 记录一帧没有SEI时间戳的帧。Frame模式下画面被重新编码，SEI不会保留，只能统计帧率
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param arrivalNanos
+     * @return void
+     */
+    public synchronized void recordUntimed(long arrivalNanos){
+        frames++;
+        lastArrivalNanos = arrivalNanos;
+    }
+
+    /**
+     * @Description 开始新的统计窗口，丢弃预热阶段的数据
+     * @author czx
+     * @date 2026-10-19 14:40
+     * @param
+     * @return void
+     */
+    public synchronized void reset(){
+        count = 0;
+        frames = 0;
+        drops = 0;
+        jitter = 0;
+        lastSequence = -1;
+        windowStartNanos = System.nanoTime();
+    }
+
+    public synchronized Snapshot snapshot(){
+        long[] sorted = Arrays.copyOf(latencies,count);
+        Arrays.sort(sorted);
+        double seconds = (System.nanoTime()-windowStartNanos)/1e9;
+        return new Snapshot(name,frames,drops,seconds,sorted,jitter);
+    }
+
+    /**
+     * 统计窗口结束时的结果，时间单位均为毫秒
+     */
+    public static class Snapshot {
+
+        private final String name;
+
+        private final long frames;
+
+        private final long drops;
+
+        private final double seconds;
+
+        private final long[] sortedLatencies;
+
+        private final double jitterMillis;
+
+        Snapshot(String name, long frames, long drops, double seconds, long[] sortedLatencies, double jitterNanos) {
+            this.name = name;
+            this.frames = frames;
+            this.drops = drops;
+            this.seconds = seconds;
+            this.sortedLatencies = sortedLatencies;
+            this.jitterMillis = jitterNanos/TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getDrops() {
+            return drops;
+        }
+
+        public double getFps(){
+            return seconds>0 ? frames/seconds : 0;
+        }
+
+        public double getJitterMillis() {
+            return jitterMillis;
+        }
+
+        public double getDropRate(){
+            return frames+drops==0 ? 0 : (double)drops/(frames+drops);
+        }
+
+        public double percentileMillis(double percentile){
+            if(sortedLatencies.length==0){
+                return Double.NaN;
+            }
+            int index = (int)Math.ceil(percentile/100*sortedLatencies.length)-1;
+            index = Math.max(0,Math.min(sortedLatencies.length-1,index));
+            return sortedLatencies[index]/1e6;
+        }
+
+        long[] getSortedLatencies() {
+            return sortedLatencies;
+        }
+    }
+}
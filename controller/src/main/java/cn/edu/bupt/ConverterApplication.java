@@ -1,5 +1,8 @@
 package cn.edu.bupt;
 
+import cn.edu.bupt.adapter.RtmpIngest;
+import cn.edu.bupt.discovery.DeviceInventory;
+import cn.edu.bupt.trigger.MotionRecordTrigger;
 import cn.edu.bupt.util.DirUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
@@ -24,6 +27,20 @@ public class ConverterApplication {
 		System.setProperty("org.bytedeco.javacpp.maxphysicalbytes", "0");
 		System.setProperty("org.bytedeco.javacpp.maxbytes", "0");
 		SpringApplication.run(ConverterApplication.class, args);
+		// 启动后立即开始监听摄像头的Hello/Bye
+		DeviceInventory.getInstance();
+		// 移动侦测事件触发录像
+		MotionRecordTrigger.register();
+		// 设置RtmpIngestPort时启动RTMP接入服务，推上来的流转推到RtmpIngestTarget
+		String ingestPort = System.getProperty("RtmpIngestPort");
+		if(ingestPort!=null){
+			try {
+				RtmpIngest.start(Integer.parseInt(ingestPort),System.getProperty("RtmpIngestTarget","rtmp://localhost/live/{stream}"),
+						Boolean.getBoolean("RtmpIngestSave"),System.getProperty("RtmpIngestEgress"));
+			}catch (Exception e){
+				log.error("Rtmp ingest failed to start on port {}",ingestPort,e);
+			}
+		}
 	}
 
 	public static void checkPath(String path){
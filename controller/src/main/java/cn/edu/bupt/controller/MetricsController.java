@@ -0,0 +1,24 @@
+package cn.edu.bupt.controller;
+
+import cn.edu.bupt.metrics.MetricsRegistry;
+import cn.edu.bupt.metrics.PrometheusFormatter;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * @Description: 监控指标的controller，供Prometheus抓取
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+@RestController
+public class MetricsController {
+
+    @ApiOperation("Prometheus格式的监控指标")
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = PrometheusFormatter.CONTENT_TYPE)
+    public String metrics(){
+        return MetricsRegistry.getInstance().scrape();
+    }
+}
@@ -0,0 +1,40 @@
+package cn.edu.bupt.controller;
+
+import cn.edu.bupt.status.StatusBus;
+import cn.edu.bupt.status.StreamStatus;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 推送视频流状态变化的controller(Server-Sent Events)，代替轮询/status与/feedback。
+ * 连接30分钟后由服务端结束，浏览器的EventSource会自动重连并重新收到全部流的状态
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+@RestController
+@CrossOrigin
+public class StatusController {
+
+    private static final long EMITTER_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    @ApiOperation("订阅视频流的状态变化")
+    @RequestMapping(value = "/statusEvents", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter statusEvents(@RequestParam(required = false) String rtmp,
+                                   @RequestParam(required = false, defaultValue = "1000") long interval){
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT);
+        StatusBus.Subscription subscription = StatusBus.getInstance().subscribe(rtmp,interval,statuses->{
+            for(StreamStatus status : statuses){
+                emitter.send(SseEmitter.event().name("status").data(status,MediaType.APPLICATION_JSON));
+            }
+        });
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e->subscription.close());
+        return emitter;
+    }
+}
@@ -1,8 +1,13 @@
 package cn.edu.bupt.controller;
 
-import cn.edu.bupt.discovery.DeviceDiscovery;
+import cn.edu.bupt.codec.CodecTuning;
+import cn.edu.bupt.discovery.DeviceInventory;
 import cn.edu.bupt.linux.HikUtil;
-import cn.edu.bupt.soap.OnvifDevice;
+import cn.edu.bupt.ptz.HikPtzBackend;
+import cn.edu.bupt.ptz.OnvifPtzBackend;
+import cn.edu.bupt.ptz.PtzAction;
+import cn.edu.bupt.ptz.PtzScheduler;
+import cn.edu.bupt.soap.events.PullPointManager;
 import cn.edu.bupt.util.Constants;
 import cn.edu.bupt.adapter.RtspVideoAdapter;
 import cn.edu.bupt.adapter.VideoAdapter;
@@ -16,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Description: 视频的controller
@@ -27,6 +33,16 @@ import java.util.concurrent.ConcurrentHashMap;
 @CrossOrigin
 public class VideoController {
 
+    /**
+     * 获取设备并创建事件订阅的等待时间，大于PullPointManager中单个SOAP请求的超时
+     */
+    private static final long SUBSCRIBE_TIMEOUT_SECONDS = 20;
+
+    /**
+     * 从设备清单获取设备与RTSP地址的等待时间，缓存失效时需要几次SOAP往返；小于transport路由的30秒超时
+     */
+    private static final long DEVICE_TIMEOUT_SECONDS = 20;
+
     @Autowired
     private HttpServletResponse response;
 
@@ -48,12 +64,24 @@ public class VideoController {
     public String convert(@RequestParam String rtsp,
                           @RequestParam String rtmp,
                           @RequestParam(required = false) Boolean save,
-                          @RequestParam(required = false) Boolean usePacket ) throws Exception{
+                          @RequestParam(required = false) Boolean usePacket,
+                          @RequestParam(required = false) Integer preRoll,
+                          @RequestParam(required = false) Integer postRoll,
+                          @RequestParam(required = false) String codec,
+                          @RequestParam(required = false) String ingest,
+                          @RequestParam(required = false) String egress) throws Exception{
         String rtmpPath = rtmp==null?"rtmp://localhost/oflaDemo/haikang1":rtmp;
         String rtspPath = rtsp==null?"rtsp://184.72.239.149/vod/mp4://BigBuckBunny_175k.mov":rtsp;
         boolean saveVideo = save==null?false:save;
         boolean isUsePacket = usePacket==null?true:usePacket;
-        VideoAdapterManagement.startAdapter(new RtspVideoAdapter(rtspPath,rtmpPath,saveVideo,isUsePacket));
+        RtspVideoAdapter adapter = new RtspVideoAdapter(rtspPath,rtmpPath,saveVideo,isUsePacket);
+        adapter.setCodecTuning(CodecTuning.parse(codec));
+        adapter.setIngest(ingest);
+        adapter.setEgress(egress);
+        if(postRoll!=null&&postRoll>0){
+            adapter.enableTriggerRecording(preRoll==null?10:preRoll,postRoll);
+        }
+        VideoAdapterManagement.startAdapter(adapter);
         setHeader(response);
         return "{rtsp:'"+rtspPath+"',"+"rtmp:'"+rtmpPath+"',"+"saveVideo:"+saveVideo+",usePacket:"+isUsePacket+"}";
     }
@@ -64,14 +92,25 @@ public class VideoController {
     public String convertWithIp(@RequestParam String ip,@RequestParam String username,
                           @RequestParam String password,@RequestParam String rtmp,
                                 @RequestParam(required = false) Boolean save,
-                                @RequestParam(required = false) Boolean usePacket) throws Exception{
+                                @RequestParam(required = false) Boolean usePacket,
+                                @RequestParam(required = false) Integer preRoll,
+                                @RequestParam(required = false) Integer postRoll,
+                                @RequestParam(required = false) String codec,
+                                @RequestParam(required = false) String ingest,
+                          @RequestParam(required = false) String egress) throws Exception{
         setHeader(response);
         boolean saveVideo = save==null?false:save;
         boolean isUsePacket = usePacket==null?true:usePacket;
-        OnvifDevice device = new OnvifDevice(ip,username,password,false);
-        String rtsp = device.getMedia().getRTSPStreamUri(device.getDevices().getProfiles().get(0).getToken());
+        String rtsp = DeviceInventory.getInstance().getRTSPStreamUri(ip,username,password).get(DEVICE_TIMEOUT_SECONDS,TimeUnit.SECONDS);
         String rtspPath = rtsp.replace("rtsp://","rtsp://"+username+":"+password+"@");
-        VideoAdapterManagement.startAdapter(new RtspVideoAdapter(rtspPath,rtmp,saveVideo,isUsePacket));
+        RtspVideoAdapter adapter = new RtspVideoAdapter(rtspPath,rtmp,saveVideo,isUsePacket);
+        adapter.setCodecTuning(CodecTuning.parse(codec));
+        adapter.setIngest(ingest);
+        adapter.setEgress(egress);
+        if(postRoll!=null&&postRoll>0){
+            adapter.enableTriggerRecording(preRoll==null?10:preRoll,postRoll);
+        }
+        VideoAdapterManagement.startAdapter(adapter);
         return "{rtsp:'"+rtspPath+"',"+"rtmp:'"+rtmp+"',"+"saveVideo:"+saveVideo+",usePacket:"+isUsePacket+"}";
     }
 
@@ -111,6 +150,32 @@ public class VideoController {
         }
     }
 
+    @ApiOperation("触发录像，需要在推流时指定postRoll(秒)开启触发录像模式")
+    @RequestMapping(value = "/trigger", method = RequestMethod.GET)
+    @ResponseBody
+    public boolean trigger(@RequestParam String rtmp) throws Exception{
+        RtspVideoAdapter videoAdapter = (RtspVideoAdapter)VideoAdapterManagement.getVideoAdapter(rtmp);
+        setHeader(response);
+        return videoAdapter!=null&&videoAdapter.trigger();
+    }
+
+    @ApiOperation("开启或关闭移动侦测，sensitivity为1~100，越大越灵敏")
+    @RequestMapping(value = "/motion", method = RequestMethod.GET)
+    @ResponseBody
+    public boolean motion(@RequestParam String rtmp,@RequestParam boolean enable,
+                          @RequestParam(required = false) Integer sensitivity) throws Exception{
+        RtspVideoAdapter videoAdapter = (RtspVideoAdapter)VideoAdapterManagement.getVideoAdapter(rtmp);
+        setHeader(response);
+        if(videoAdapter==null){
+            return false;
+        }
+        if(enable){
+            return videoAdapter.startMotionDetection(sensitivity==null?50:sensitivity);
+        }else {
+            return videoAdapter.stopMotionDetection();
+        }
+    }
+
     @ApiOperation("视频录制")
     @RequestMapping(value = "/re", method = RequestMethod.GET)
     @ResponseBody
@@ -165,7 +230,7 @@ public class VideoController {
     @ResponseBody
     public Set<String> discovery(){
         setHeader(response);
-        return DeviceDiscovery.discoverIpv4DevicesWithoutProxy();
+        return DeviceInventory.getInstance().discover();
     }
 
     @ApiOperation("获取设备的RTSP地址")
@@ -174,10 +239,7 @@ public class VideoController {
     public String getRtsp(@RequestParam String ip,@RequestParam String username,
                                @RequestParam String password) throws Exception{
         setHeader(response);
-        OnvifDevice device = new OnvifDevice(ip,username,password,false);
-        String info = device.getDevices().getDeviceInformation().toString();
-        System.out.println(info);
-        return device.getMedia().getRTSPStreamUri(device.getDevices().getProfiles().get(0).getToken());
+        return DeviceInventory.getInstance().getRTSPStreamUri(ip,username,password).get(DEVICE_TIMEOUT_SECONDS,TimeUnit.SECONDS);
     }
 
     //以下是视频控制
@@ -194,39 +256,60 @@ public class VideoController {
         }
     }
 
+    @ApiOperation("通过海康SDK控制云台，运动2秒后由调度器自动停止，请求不再等待")
     @RequestMapping(value = "/control", method = RequestMethod.GET)
     @ResponseBody
     public boolean control(@RequestParam String rtmp,@RequestParam String cmd,
                            @RequestParam int status) throws Exception{
         setHeader(response);
-        int command = 0;
-        switch(cmd){
-            case "up":
-                command=21;
-                break;
-            case "down":
-                command=22;
-                break;
-            case "left":
-                command=23;
-                break;
-            case "right":
-                command=24;
-                break;
-            default:
-                break;
-        }
-        if(command==0){
+        PtzAction action = PtzAction.parse(cmd);
+        if(action==null||action==PtzAction.STOP||action==PtzAction.ZOOM_IN||action==PtzAction.ZOOM_OUT){
             return false;
         }
         if(rtmp==null){
             rtmp = "";
         }
-        HikUtil.control(rtmp,command);
+        return PtzScheduler.getInstance().submit("hik:"+rtmp,new HikPtzBackend(rtmp),action,1.0f,2000)
+                .handle((v,e)->e==null).get();
+    }
+
+    @ApiOperation("通过ONVIF控制云台，同一摄像头上的命令串行执行并合并重复的运动，duration(毫秒)到时自动停止")
+    @RequestMapping(value = "/ptz", method = RequestMethod.GET)
+    @ResponseBody
+    public boolean ptz(@RequestParam String ip,@RequestParam String username,@RequestParam String password,
+                       @RequestParam String cmd,@RequestParam(required = false) Float speed,
+                       @RequestParam(required = false) Long duration) throws Exception{
+        setHeader(response);
+        PtzAction action = PtzAction.parse(cmd);
+        if(action==null){
+            return false;
+        }
+        float v = speed==null?0.5f:speed;
+        long d = duration==null?0:duration;
+        PtzScheduler.getInstance().submit("onvif:"+ip,new OnvifPtzBackend(ip,username,password),action,v,d).get();
+        return true;
+    }
+
+    @ApiOperation("订阅摄像头的ONVIF事件(移动侦测、遮挡等)，事件发布到OnvifEventBus")
+    @RequestMapping(value = "/subscribeEvents", method = RequestMethod.GET)
+    @ResponseBody
+    public boolean subscribeEvents(@RequestParam String ip,@RequestParam String username,
+                                   @RequestParam String password) throws Exception{
         setHeader(response);
+        DeviceInventory.getInstance().getDevice(ip,username,password)
+                .thenCompose(device->PullPointManager.getInstance().subscribe(device))
+                .get(SUBSCRIBE_TIMEOUT_SECONDS,TimeUnit.SECONDS);
         return true;
     }
 
+    @ApiOperation("取消摄像头的ONVIF事件订阅")
+    @RequestMapping(value = "/unsubscribeEvents", method = RequestMethod.GET)
+    @ResponseBody
+    public void unsubscribeEvents(@RequestParam String ip){
+        setHeader(response);
+        PullPointManager.getInstance().unsubscribe(ip);
+    }
+
     @RequestMapping(value = "/setEffect", method = RequestMethod.GET)
     @ResponseBody
     public boolean setEffect(@RequestParam String rtmp,@RequestParam int channel,
@@ -0,0 +1,54 @@
+package cn.edu.bupt.ptz;
+
+import cn.edu.bupt.linux.HikUtil;
+import com.sun.jna.NativeLong;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Description: HikPtzBackend，通过海康SDK控制云台，需要先通过HikUtil.subscribe登录。SDK调用是阻塞的，在PtzScheduler的线程中执行
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:37
+ * @Version: 1.0
+ */
+public class HikPtzBackend implements PtzBackend {
+
+    private static final NativeLong CHANNEL = new NativeLong(1L);
+
+    private final String rtmp;
+
+    public HikPtzBackend(String rtmp) {
+        this.rtmp = rtmp;
+    }
+
+    @Override
+    public CompletableFuture<Void> move(PtzAction action, float speed) {
+        // SDK的速度为1~7
+        int hikSpeed = Math.max(1, Math.min(7, Math.round(speed * 7)));
+        return control(action, 0, hikSpeed);
+    }
+
+    @Override
+    public CompletableFuture<Void> stop(PtzAction action) {
+        return control(action, 1, 1);
+    }
+
+    @Override
+    public boolean stopBeforeChange() {
+        return true;
+    }
+
+    private CompletableFuture<Void> control(PtzAction action, int stop, int speed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        NativeLong userId = HikUtil.getUserId(rtmp);
+        if (userId == null) {
+            future.completeExceptionally(new ConnectException("Hik device of " + rtmp + " is not subscribed"));
+        } else if (HikUtil.hCNetSDK.NET_DVR_PTZControlWithSpeed_Other(userId, CHANNEL, action.getHikCommand(), stop, speed)) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(new IllegalStateException("PTZ control failed, res code : " + HikUtil.hCNetSDK.NET_DVR_GetLastError()));
+        }
+        return future;
+    }
+}
@@ -0,0 +1,47 @@
+package cn.edu.bupt.ptz;
+
+import cn.edu.bupt.discovery.DeviceInventory;
+import cn.edu.bupt.soap.AsyncSOAP;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Description: OnvifPtzBackend，通过ONVIF ContinuousMove/Stop控制云台，profile token与设备会话来自设备清单，每次操作只有一次SOAP请求
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:37
+ * @Version: 1.0
+ */
+public class OnvifPtzBackend implements PtzBackend {
+
+    private final String ip;
+
+    private final String username;
+
+    private final String password;
+
+    public OnvifPtzBackend(String ip, String username, String password) {
+        this.ip = ip;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public CompletableFuture<Void> move(PtzAction action, float speed) {
+        DeviceInventory inventory = DeviceInventory.getInstance();
+        return inventory.getMainProfileToken(ip, username, password)
+                .thenCombine(inventory.getDevice(ip, username, password), (token, device) ->
+                        AsyncSOAP.getInstance().continuousMove(device, token, action.getPan() * speed, action.getTilt() * speed, action.getZoom() * speed))
+                .thenCompose(response -> response)
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> stop(PtzAction action) {
+        DeviceInventory inventory = DeviceInventory.getInstance();
+        return inventory.getMainProfileToken(ip, username, password)
+                .thenCombine(inventory.getDevice(ip, username, password), (token, device) ->
+                        AsyncSOAP.getInstance().stopMove(device, token))
+                .thenCompose(response -> response)
+                .thenApply(response -> null);
+    }
+}
@@ -0,0 +1,80 @@
+package cn.edu.bupt.ptz;
+
+/**
+ * @Description: PtzAction，云台动作，pan/tilt/zoom为ONVIF ContinuousMove的速度方向，hikCommand为海康SDK的云台命令
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:37
+ * @Version: 1.0
+ */
+public enum PtzAction {
+
+    UP(0, 1, 0, 21),
+    DOWN(0, -1, 0, 22),
+    LEFT(-1, 0, 0, 23),
+    RIGHT(1, 0, 0, 24),
+    ZOOM_IN(0, 0, 1, 11),
+    ZOOM_OUT(0, 0, -1, 12),
+    STOP(0, 0, 0, 0);
+
+    private final int pan;
+
+    private final int tilt;
+
+    private final int zoom;
+
+    private final int hikCommand;
+
+    PtzAction(int pan, int tilt, int zoom, int hikCommand) {
+        this.pan = pan;
+        this.tilt = tilt;
+        this.zoom = zoom;
+        this.hikCommand = hikCommand;
+    }
+
+    public int getPan() {
+        return pan;
+    }
+
+    public int getTilt() {
+        return tilt;
+    }
+
+    public int getZoom() {
+        return zoom;
+    }
+
+    public int getHikCommand() {
+        return hikCommand;
+    }
+
+    /**
+     * @Description 解析接口中的cmd参数(up/down/left/right/zoomIn/zoomOut/stop)
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param cmd
+     * @return cn.edu.bupt.ptz.PtzAction 无法识别时为null
+     */
+    public static PtzAction parse(String cmd) {
+        if (cmd == null) {
+            return null;
+        }
+        switch (cmd) {
+            case "up":
+                return UP;
+            case "down":
+                return DOWN;
+            case "left":
+                return LEFT;
+            case "right":
+                return RIGHT;
+            case "zoomIn":
+                return ZOOM_IN;
+            case "zoomOut":
+                return ZOOM_OUT;
+            case "stop":
+                return STOP;
+            default:
+                return null;
+        }
+    }
+}
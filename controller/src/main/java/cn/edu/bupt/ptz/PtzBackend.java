@@ -0,0 +1,43 @@
+package cn.edu.bupt.ptz;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Description: PtzBackend，对海康SDK与ONVIF云台控制的统一封装。
+ * 同一摄像头上的调用由PtzScheduler串行执行，实现不需要考虑并发
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:37
+ * @Version: 1.0
+ */
+public interface PtzBackend {
+
+    /**
+     * @Description 开始持续运动，替换当前的运动
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param action 不为STOP
+     * @param speed 0~1
+     * @return java.util.concurrent.CompletableFuture<java.lang.Void>
+     */
+    CompletableFuture<Void> move(PtzAction action, float speed);
+
+    /**
+     * @Description 停止运动
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param action 正在进行的动作，海康SDK需要用同一个命令停止
+     * @return java.util.concurrent.CompletableFuture<java.lang.Void>
+     */
+    CompletableFuture<Void> stop(PtzAction action);
+
+    /**
+     * @Description 改变方向前是否需要先停止原来的运动。海康SDK的每个方向是独立的命令，ONVIF的ContinuousMove直接替换速度
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param
+     * @return boolean
+     */
+    default boolean stopBeforeChange() {
+        return false;
+    }
+}
@@ -0,0 +1,294 @@
+package cn.edu.bupt.ptz;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * @Description: PtzScheduler，异步的云台命令调度。
+ * 每个摄像头一个串行队列，队列中只保留最新的一条未执行命令(连续点击只执行最后一次)；
+ * 与当前运动相同的命令只延长停止时间，不再发送请求；定时停止由时间轮调度，不占用请求线程
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:37
+ * @Version: 1.0
+ */
+@Slf4j
+public class PtzScheduler {
+
+    /**
+     * 执行线程已满时，定时停止在这个时间之后重试
+     */
+    private static final long REJECTED_RETRY_MILLIS = 100L;
+
+    private static volatile PtzScheduler instance;
+
+    private final Map<String, CameraQueue> queues = new ConcurrentHashMap<>();
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new BasicThreadFactory.Builder().namingPattern("Ptz-timer-%d").daemon(true).build(), 10, TimeUnit.MILLISECONDS);
+
+    /**
+     * 海康SDK的调用是阻塞的，所有命令都在这里执行；线程已满时拒绝，不在时间轮或SDK回调线程上执行
+     */
+    private final ExecutorService executor = new ThreadPoolExecutor(0, 8, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new BasicThreadFactory.Builder().namingPattern("Ptz-%d").daemon(true).build(), new ThreadPoolExecutor.AbortPolicy());
+
+    private PtzScheduler() {
+    }
+
+    public static PtzScheduler getInstance() {
+        if (instance == null) {
+            synchronized (PtzScheduler.class) {
+                if (instance == null) {
+                    instance = new PtzScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @Description 提交一条云台命令，立即返回
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param camera 摄像头的唯一标识
+     * @param backend 执行命令的后端，替换该摄像头原来的后端(例如账号变化)
+     * @param action
+     * @param speed 0~1
+     * @param durationMillis 运动持续的时间，到时自动停止；小于等于0时持续运动直到STOP
+     * @return java.util.concurrent.CompletableFuture<java.lang.Void> 命令执行(或者被更新的命令合并)后完成
+     */
+    public CompletableFuture<Void> submit(String camera, PtzBackend backend, PtzAction action, float speed, long durationMillis) {
+        CameraQueue queue = queues.computeIfAbsent(camera, CameraQueue::new);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        queue.offer(backend, new PtzCommand(action, speed, durationMillis, -1), future);
+        return future;
+    }
+
+    public CompletableFuture<Void> stop(String camera, PtzBackend backend) {
+        return submit(camera, backend, PtzAction.STOP, 0, 0);
+    }
+
+    /**
+     * @Description 摄像头当前的运动，没有运动时为STOP
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param camera
+     * @return cn.edu.bupt.ptz.PtzAction
+     */
+    public PtzAction getMoving(String camera) {
+        CameraQueue queue = queues.get(camera);
+        return queue == null || queue.moving == null ? PtzAction.STOP : queue.moving;
+    }
+
+    public void close() {
+        timer.stop();
+        executor.shutdown();
+    }
+
+    private static class PtzCommand {
+
+        final PtzAction action;
+
+        final float speed;
+
+        final long durationMillis;
+
+        /**
+         * 定时停止对应的运动序号，用户命令为-1
+         */
+        final long generation;
+
+        PtzCommand(PtzAction action, float speed, long durationMillis, long generation) {
+            this.action = action;
+            this.speed = speed;
+            this.durationMillis = durationMillis;
+            this.generation = generation;
+        }
+
+        boolean isScheduledStop() {
+            return generation >= 0;
+        }
+    }
+
+    private class CameraQueue {
+
+        private final String camera;
+
+        private PtzBackend backend;
+
+        private PtzCommand pending;
+
+        private List<CompletableFuture<Void>> pendingFutures = new ArrayList<>();
+
+        private boolean running;
+
+        /**
+         * 以下状态只在串行执行的命令中修改
+         */
+        private volatile PtzAction moving;
+
+        private float movingSpeed;
+
+        private long generation;
+
+        private Timeout stopTimeout;
+
+        CameraQueue(String camera) {
+            this.camera = camera;
+        }
+
+        void offer(PtzBackend backend, PtzCommand command, CompletableFuture<Void> future) {
+            synchronized (this) {
+                if (backend != null) {
+                    this.backend = backend;
+                }
+                if (pending != null && command.isScheduledStop()) {
+                    // 已经有新的用户命令在等待，定时停止已经过时
+                    return;
+                }
+                if (pending != null) {
+                    log.debug("Coalesce PTZ command {} into {} on [{}]", pending.action, command.action, camera);
+                }
+                pending = command;
+                if (future != null) {
+                    pendingFutures.add(future);
+                }
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                rejected();
+            }
+        }
+
+        /**
+         * 执行线程已满或调度器已关闭：定时停止稍后重试，用户命令直接失败
+         */
+        private void rejected() {
+            PtzCommand command;
+            List<CompletableFuture<Void>> futures;
+            synchronized (this) {
+                command = pending;
+                futures = pendingFutures;
+                pending = null;
+                pendingFutures = new ArrayList<>();
+                running = false;
+            }
+            if (command == null) {
+                return;
+            }
+            if (command.isScheduledStop() && !executor.isShutdown()) {
+                log.warn("PTZ executor is busy, retry the scheduled stop on [{}] in {}ms", camera, REJECTED_RETRY_MILLIS);
+                try {
+                    timer.newTimeout(timeout -> offer(null, command, null), REJECTED_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (IllegalStateException e) {
+                    // 时间轮已经停止
+                }
+            }
+            log.warn("PTZ executor is busy, reject command {} on [{}]", command.action, camera);
+            RejectedExecutionException exception = new RejectedExecutionException("PTZ executor is busy");
+            for (CompletableFuture<Void> future : futures) {
+                future.completeExceptionally(exception);
+            }
+        }
+
+        private void drain() {
+            PtzCommand command;
+            List<CompletableFuture<Void>> futures;
+            PtzBackend backend;
+            synchronized (this) {
+                command = pending;
+                futures = pendingFutures;
+                backend = this.backend;
+                pending = null;
+                pendingFutures = new ArrayList<>();
+                if (command == null) {
+                    running = false;
+                    return;
+                }
+            }
+            CompletableFuture<Void> result;
+            try {
+                result = execute(backend, command);
+            } catch (Exception e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+            result.whenComplete((v, e) -> {
+                if (e != null) {
+                    log.warn("PTZ command {} failed on [{}] : {}", command.action, camera, e.getMessage());
+                    cancelStop();
+                    moving = null;
+                }
+                for (CompletableFuture<Void> future : futures) {
+                    if (e == null) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                }
+                // 异步后端在其他线程完成，回到调度线程执行下一条
+                schedule();
+            });
+        }
+
+        private CompletableFuture<Void> execute(PtzBackend backend, PtzCommand command) {
+            if (command.action == PtzAction.STOP) {
+                if (command.isScheduledStop() && command.generation != generation) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                cancelStop();
+                PtzAction current = moving;
+                if (current == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                moving = null;
+                return backend.stop(current);
+            }
+            if (command.action == moving && command.speed == movingSpeed) {
+                // 重复的运动命令只延长停止时间
+                scheduleStop(command.durationMillis);
+                return CompletableFuture.completedFuture(null);
+            }
+            PtzAction previous = moving;
+            CompletableFuture<Void> stopped = previous != null && backend.stopBeforeChange()
+                    ? backend.stop(previous) : CompletableFuture.completedFuture(null);
+            moving = command.action;
+            movingSpeed = command.speed;
+            scheduleStop(command.durationMillis);
+            return stopped.thenCompose(v -> backend.move(command.action, command.speed));
+        }
+
+        private void scheduleStop(long durationMillis) {
+            cancelStop();
+            long stopGeneration = ++generation;
+            if (durationMillis > 0) {
+                stopTimeout = timer.newTimeout(timeout ->
+                        offer(null, new PtzCommand(PtzAction.STOP, 0, 0, stopGeneration), null), durationMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void cancelStop() {
+            if (stopTimeout != null) {
+                stopTimeout.cancel();
+                stopTimeout = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cn.edu.bupt.trigger;
+
+import cn.edu.bupt.adapter.RtspVideoAdapter;
+import cn.edu.bupt.adapter.VideoAdapter;
+import cn.edu.bupt.adapter.VideoAdapterManagement;
+import cn.edu.bupt.soap.events.OnvifEvent;
+import cn.edu.bupt.soap.events.OnvifEventBus;
+import cn.edu.bupt.soap.events.OnvifEventListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+
+/**
+ * @Description: MotionRecordTrigger，收到摄像头的ONVIF移动侦测事件时，触发该摄像头上所有开启了触发录像的adapter。
+ * 只处理状态变为true的事件(VideoSource/MotionAlarm的State、CellMotionDetector的IsMotion)，结束事件由post-roll自然结束
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:30
+ * @Version: 1.0
+ */
+@Slf4j
+public class MotionRecordTrigger implements OnvifEventListener {
+
+    private static volatile MotionRecordTrigger instance;
+
+    private MotionRecordTrigger() {
+    }
+
+    /**
+     * @Description 注册到OnvifEventBus，重复调用只注册一次
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param
+     * @return void
+     */
+    public static void register() {
+        if (instance == null) {
+            synchronized (MotionRecordTrigger.class) {
+                if (instance == null) {
+                    instance = new MotionRecordTrigger();
+                    OnvifEventBus.getInstance().subscribe(instance);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onEvent(OnvifEvent event) {
+        if (!isMotion(event)) {
+            return;
+        }
+        String ip = stripPort(event.getHost());
+        for (VideoAdapter adapter : VideoAdapterManagement.map.values()) {
+            RtspVideoAdapter rtspVideoAdapter = (RtspVideoAdapter) adapter;
+            if (ip.equals(rtspHost(rtspVideoAdapter.getRtspPath())) && rtspVideoAdapter.trigger()) {
+                log.debug("Motion on [{}] triggers recording of [{}]", ip, rtspVideoAdapter.getRtmpPath());
+            }
+        }
+    }
+
+    private static boolean isMotion(OnvifEvent event) {
+        if (event.getTopic() == null || !event.getTopic().contains("Motion")) {
+            return false;
+        }
+        return event.getDataItems().values().stream().anyMatch("true"::equalsIgnoreCase);
+    }
+
+    private static String rtspHost(String rtspPath) {
+        try {
+            return new URI(rtspPath).getHost();
+        } catch (Exception e) {
+            // 密码中含有特殊字符时URI无法解析，退化为手动截取
+            String authority = rtspPath.substring(rtspPath.indexOf("://") + 3);
+            int slash = authority.indexOf('/');
+            if (slash >= 0) {
+                authority = authority.substring(0, slash);
+            }
+            return stripPort(authority.substring(authority.lastIndexOf('@') + 1));
+        }
+    }
+
+    private static String stripPort(String host) {
+        int colon = host.lastIndexOf(':');
+        return colon < 0 ? host : host.substring(0, colon);
+    }
+}
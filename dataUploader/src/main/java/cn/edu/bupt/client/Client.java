@@ -2,9 +2,16 @@ package cn.edu.bupt.client;
 
 import cn.edu.bupt.data.CameraInfo;
 
+import java.util.Collection;
+
 public interface Client {
 
     void sendTelemetries(String cameraName,String key,String value);
 
     void sendAttributes(CameraInfo cameraInfo);
+
+    /**
+     * 批量注册摄像头并发送属性，新的token在一个事务中写入数据库
+     */
+    void sendAttributes(Collection<CameraInfo> cameraInfos);
 }
@@ -1,12 +1,14 @@
 package cn.edu.bupt.client;
 
+import cn.edu.bupt.dao.DAO;
 import cn.edu.bupt.data.CameraInfo;
 import cn.edu.bupt.util.Publish;
 import cn.edu.bupt.util.TokenUtil;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 
 public class ClientImpl implements Client{
@@ -33,27 +35,26 @@ public class ClientImpl implements Client{
         Publish.sendAttributes(cameraInfo,token);
     }
 
+    @Override
+    public void sendAttributes(Collection<CameraInfo> cameraInfos) {
+        List<String> cameraNames = new ArrayList<>();
+        for (CameraInfo cameraInfo : cameraInfos) {
+            cameraNames.add(cameraInfo.getName());
+        }
+        Map<String,String> tokens = TokenUtil.registerAll(cameraNames);
+        for (CameraInfo cameraInfo : cameraInfos) {
+            String token = tokens.get(cameraInfo.getName());
+            if (token != null) {
+                Publish.sendAttributes(cameraInfo,token);
+            }
+        }
+    }
+
     public static Client getClient(){
         return CLIENT_INSTANCE;
     }
 
     private void tableInit(){
-        try {
-            Connection c;
-            Statement stmt;
-            Class.forName("org.sqlite.JDBC");
-            c = DriverManager.getConnection("jdbc:sqlite::resource:cameras.db");
-            System.out.println("Opened database successfully");
-
-            stmt = c.createStatement();
-            String sql = "CREATE TABLE camera " +
-                    "(serialNumber text PRIMARY KEY     NOT NULL," +
-                    " token           CHAR(50)    NOT NULL)";
-            stmt.executeUpdate(sql);
-            stmt.close();
-            c.close();
-        } catch ( Exception e ) {
-            System.err.println( e.getClass().getName() + ": " + e.getMessage() );
-        }
+        DAO.createTable();
     }
 }
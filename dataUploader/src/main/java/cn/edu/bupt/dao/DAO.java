@@ -1,80 +1,174 @@
 package cn.edu.bupt.dao;
 
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by zyf on 2018/6/14.
+ * 连接从固定大小的连接池中获取，SQL全部使用参数化的PreparedStatement，并在连接上复用
  */
 public class DAO {
-    
-        private static Connection connection;
-        
-        private static Connection getConn() {
-            connection = null;
+
+        //url为本地创建数据库表的目录文件
+        private static final String URL = "jdbc:sqlite::resource:cameras.db";
+
+        private static final int POOL_SIZE = 4;
+
+        private static final long BORROW_TIMEOUT = 5000L;
+
+        private static final String CREATE_SQL = "create table if not exists camera (serialNumber text PRIMARY KEY NOT NULL, token CHAR(50) NOT NULL)";
+        private static final String INSERT_SQL = "insert into camera (serialNumber,token) values(?,?)";
+        private static final String UPSERT_SQL = "insert or replace into camera (serialNumber,token) values(?,?)";
+        private static final String UPDATE_SQL = "update camera set token=? where serialNumber=?";
+        private static final String SELECT_SQL = "select token from camera where serialNumber=?";
+        private static final String DELETE_SQL = "delete from camera where serialNumber=?";
+
+        private static final BlockingQueue<PooledConnection> pool = new LinkedBlockingQueue<>();
+
+        private static final AtomicInteger created = new AtomicInteger();
+
+        static {
             try {
                 Class.forName("org.sqlite.JDBC"); //加载对应驱动
             } catch (ClassNotFoundException e) {
                 e.printStackTrace();
             }
-            //url为本地创建数据库表的目录文件
-            String url = "jdbc:sqlite::resource:cameras.db";
+        }
+
+        /**
+         * 从连接池中获取连接，连接数未达到上限时新建连接，否则等待其他线程归还
+         */
+        private static PooledConnection borrow() throws SQLException {
+            PooledConnection conn = pool.poll();
+            if(conn==null){
+                if(created.incrementAndGet()<=POOL_SIZE){
+                    try {
+                        Connection connection = DriverManager.getConnection(URL);
+                        try (Statement stmt = connection.createStatement()) {
+                            // 多个连接同时写入时等待锁，而不是直接返回SQLITE_BUSY
+                            stmt.execute("PRAGMA busy_timeout = 3000");
+                        }
+                        return new PooledConnection(connection);
+                    }catch (SQLException e){
+                        created.decrementAndGet();
+                        throw e;
+                    }
+                }
+                created.decrementAndGet();
+                try {
+                    conn = pool.poll(BORROW_TIMEOUT,TimeUnit.MILLISECONDS);
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                if(conn==null){
+                    throw new SQLException("Timeout waiting for a sqlite connection");
+                }
+            }
+            if(conn.isBroken()){
+                conn.close();
+                created.decrementAndGet();
+                return borrow();
+            }
+            return conn;
+        }
+
+        private static void release(PooledConnection conn){
+            if(conn!=null){
+                pool.offer(conn);
+            }
+        }
+
+        /**
+         * 执行出错的连接直接关闭，不再放回连接池
+         */
+        private static void discard(PooledConnection conn){
+            if(conn!=null){
+                conn.close();
+                created.decrementAndGet();
+            }
+        }
 
+        //建表
+        public static void createTable() {
+            PooledConnection conn = null;
             try {
-                connection = DriverManager.getConnection(url);
+                conn = borrow();
+                conn.prepare(CREATE_SQL).executeUpdate();
+                release(conn);
             } catch (SQLException e) {
+                discard(conn);
                 e.printStackTrace();
             }
-            return connection;
         }
-        
+
        //增加数据
         public static int insert(String serialNumber, String token) {
-            Connection conn = getConn();
-            int i = 0;
-            String sql = "insert into camera (serialNumber,token) values(?,?)";
-            PreparedStatement pstmt;
+            return executeUpdate(INSERT_SQL, serialNumber, token);
+        }
+
+        //批量增加数据，在一个事务中完成，已经存在的serialNumber会被覆盖
+        public static int insertAll(Map<String,String> tokens) {
+            if(tokens.isEmpty()){
+                return 0;
+            }
+            PooledConnection conn = null;
             try {
-                pstmt = conn.prepareStatement(sql);
-                pstmt.setString(1, serialNumber);
-                pstmt.setString(2, token);
-                i = pstmt.executeUpdate();
-                pstmt.close();
-                conn.close();
+                conn = borrow();
+                Connection connection = conn.getConnection();
+                connection.setAutoCommit(false);
+                int count = 0;
+                try {
+                    PreparedStatement pstmt = conn.prepare(UPSERT_SQL);
+                    for(Map.Entry<String,String> entry : tokens.entrySet()){
+                        pstmt.setString(1, entry.getKey());
+                        pstmt.setString(2, entry.getValue());
+                        pstmt.addBatch();
+                    }
+                    for(int i : pstmt.executeBatch()){
+                        count += Math.max(i,0);
+                    }
+                    connection.commit();
+                }catch (SQLException e){
+                    connection.rollback();
+                    throw e;
+                }finally {
+                    connection.setAutoCommit(true);
+                }
+                release(conn);
+                return count;
             } catch (SQLException e) {
+                discard(conn);
                 e.printStackTrace();
             }
-            return i;
+            return 0;
         }
+
         //更新数据
         public static int update(String serialNumber, String token) {
-            Connection conn = getConn();
-            int i = 0;
-            String sql = "update camera set serialNumber='" + serialNumber + "' where token=" + token ;
-            PreparedStatement pstmt;
-            try {
-                pstmt = conn.prepareStatement(sql);
-                i = pstmt.executeUpdate();
-                System.out.println("result: " + i);
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-            return i;
+            return executeUpdate(UPDATE_SQL, token, serialNumber);
         }
+
         //获取数据
         public static String getAll(String serialNumber) {
-            String token = null;
-            Connection conn = getConn();
-            String sql = "select token from camera where serialNumber='" + serialNumber + "'";
-            PreparedStatement pstmt;
+            PooledConnection conn = null;
             try {
-                pstmt = conn.prepareStatement(sql);
-                ResultSet rs = pstmt.executeQuery();
-                while (rs.next()) {
-                    token = rs.getString("token");
+                conn = borrow();
+                PreparedStatement pstmt = conn.prepare(SELECT_SQL);
+                pstmt.setString(1, serialNumber);
+                String token = null;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        token = rs.getString("token");
+                    }
                 }
-                rs.close();
+                release(conn);
                 return token;
             } catch (SQLException e) {
+                discard(conn);
                 e.printStackTrace();
             }
             return null;
@@ -82,16 +176,24 @@ public class DAO {
 
         //删除数据
         public static int delete(String serialNumber) {
-            Connection conn = getConn();
-            int i = 0;
-            String sql = "delete from camera where serialNumber='" + serialNumber + "'";
-            PreparedStatement pstmt;
+            return executeUpdate(DELETE_SQL, serialNumber);
+        }
+
+        private static int executeUpdate(String sql, String... params) {
+            PooledConnection conn = null;
             try {
-                pstmt = conn.prepareStatement(sql);
-                i = pstmt.executeUpdate();
+                conn = borrow();
+                PreparedStatement pstmt = conn.prepare(sql);
+                for(int i = 0;i<params.length;i++){
+                    pstmt.setString(i+1, params[i]);
+                }
+                int i = pstmt.executeUpdate();
+                release(conn);
+                return i;
             } catch (SQLException e) {
+                discard(conn);
                 e.printStackTrace();
             }
-            return i;
+            return 0;
         }
 }
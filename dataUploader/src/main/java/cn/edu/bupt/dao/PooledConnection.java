@@ -0,0 +1,70 @@
+package cn.edu.bupt.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Description: PooledConnection，连接池中的一个SQLite连接，同时缓存该连接上已经编译好的PreparedStatement
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:37
+ * @Version: 1.0
+ */
+class PooledConnection {
+
+    private final Connection connection;
+
+    private final Map<String,PreparedStatement> statements = new HashMap<>();
+
+    PooledConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @Description 获取sql对应的PreparedStatement，同一个连接上只编译一次
+     * @author czx
+     * @date 2026-10-19 16:37
+     * @param sql
+     * @return java.sql.PreparedStatement
+     */
+    PreparedStatement prepare(String sql) throws SQLException{
+        PreparedStatement statement = statements.get(sql);
+        if(statement==null || statement.isClosed()){
+            statement = connection.prepareStatement(sql);
+            statements.put(sql,statement);
+        }else{
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    boolean isBroken(){
+        try {
+            return connection.isClosed();
+        }catch (SQLException e){
+            return true;
+        }
+    }
+
+    void close(){
+        for(PreparedStatement statement : statements.values()){
+            try {
+                statement.close();
+            }catch (SQLException e){
+                // 连接也会被关闭，这里忽略
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        }catch (SQLException e){
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package cn.edu.bupt.dao;
 
+import java.util.Map;
+
 /**
  * Created by zyf on 2018/6/13.
  */
 public interface dbToken {
 
     public void insert(String serialNumber, String token);
+    public int insertAll(Map<String,String> tokens);
     public boolean delete(String serialNumber);
     public boolean update(String serialNumber, String token);
     public String get(String serialNumber);
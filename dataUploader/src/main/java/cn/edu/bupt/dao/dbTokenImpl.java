@@ -1,5 +1,6 @@
 package cn.edu.bupt.dao;
 
+import java.util.Map;
 
 /**
  * Created by zyf on 2018/6/13.
@@ -11,6 +12,11 @@ public class dbTokenImpl implements dbToken {
         DAO.insert(serialNumber, token);
     }
 
+    //批量添加数据
+    public int insertAll(Map<String,String> tokens){
+        return DAO.insertAll(tokens);
+    }
+
     //删除数据
     public boolean delete(String serialNumber){
         DAO.delete(serialNumber);
@@ -1,5 +1,7 @@
 package cn.edu.bupt.mqtt;
 
+import java.io.File;
+
 public class Config {
 
     public static String HOST = "tcp://39.104.189.84:30011";
@@ -7,4 +9,31 @@ public class Config {
     public static String RPC_TOPIC = "v1/devices/me/rpc/request/+";
     public static String datatopic = "v1/devices/me/telemetry";
     public static String attributetopic = "v1/devices/me/attributes";
+
+    /**
+     * 遥测数据合并发送的间隔，单位ms
+     */
+    public static long TELEMETRY_INTERVAL = 1000L;
+    /**
+     * 等待发送的遥测数据的最大条数，超过后直接丢弃
+     */
+    public static int TELEMETRY_QUEUE_SIZE = 10000;
+    /**
+     * 断线期间每个设备本地缓存的最大消息数
+     */
+    public static int OFFLINE_BUFFER_SIZE = 5000;
+
+    /**
+     * broker地址，可以通过-Dmqtt.host覆盖，例如指向本地broker进行测试
+     */
+    public static String getHost(){
+        return System.getProperty("mqtt.host",HOST);
+    }
+
+    /**
+     * 断线缓存与QoS 1消息的本地持久化目录，可以通过-Dmqtt.persistence覆盖
+     */
+    public static String getPersistenceDir(){
+        return System.getProperty("mqtt.persistence",System.getProperty("java.io.tmpdir")+File.separator+"converter-mqtt");
+    }
 }
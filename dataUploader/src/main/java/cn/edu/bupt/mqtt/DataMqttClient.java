@@ -1,47 +1,15 @@
 package cn.edu.bupt.mqtt;
 
-import org.eclipse.paho.client.mqttv3.MqttClient;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
-
+/**
+ * 兼容原有的调用方式，消息统一通过TelemetryPublisher的长连接发送，不再每条消息都建立并断开连接
+ */
 public class DataMqttClient {
 
-    public static MqttClient client;
-
-    static{
-        try{
-            client = new MqttClient(Config.HOST, "data", new MemoryPersistence());
-        }catch(Exception e){
-            e.printStackTrace();
-        }
-
-    }
-    public static synchronized void publishData(String token,String data) throws  Exception{
-        clientConnect(token);
-        client.publish(Config.datatopic, newMsg(data));
-        client.disconnect();
-    }
-
-    public static synchronized  void publishAttribute(String token,String data)throws  Exception{
-        clientConnect(token);
-        client.publish(Config.attributetopic, newMsg(data));
-        client.disconnect();
-    }
-
-    private static void clientConnect(String token) throws Exception{
-        MqttConnectOptions options = new MqttConnectOptions();
-        options.setCleanSession(true);
-        options.setUserName(token);
-        options.setConnectionTimeout(10);
-        client.setCallback(new DataMessageCallBack());
-        client.connect(options);
+    public static void publishData(String token,String data) throws  Exception{
+        TelemetryPublisher.getInstance().publish(token,Config.datatopic,data);
     }
 
-    private static MqttMessage newMsg(String data){
-        MqttMessage msg = new MqttMessage(data.getBytes());
-        msg.setRetained(false);
-        msg.setQos(0);
-        return msg;
+    public static void publishAttribute(String token,String data)throws  Exception{
+        TelemetryPublisher.getInstance().publish(token,Config.attributetopic,data);
     }
 }
@@ -0,0 +1,380 @@
+package cn.edu.bupt.mqtt;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: TelemetryPublisher，遥测数据的异步批量发送。
+ * 每个设备token保持一条长连接（自动重连），遥测数据先进入有界队列，
+ * 每个间隔内同一设备的数据合并为一条ThingsBoard格式的消息：[{"ts":..,"values":{..}},..]。
+ * 消息使用QoS 1，断线期间的消息由paho写入本地文件缓存，重连后补发
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:34
+ * @Version: 1.0
+ */
+@Slf4j
+public class TelemetryPublisher {
+
+    private static final int QOS = 1;
+
+    private static final int MAX_INFLIGHT = 100;
+
+    private static final long MAX_RETRY_DELAY = 60000L;
+
+    private static volatile TelemetryPublisher instance;
+
+    private final String host;
+
+    private final long intervalMillis;
+
+    private final String persistenceDir;
+
+    private final BlockingQueue<Telemetry> queue;
+
+    /**
+     * 所有的发送与连接管理都在这一个线程中进行，DeviceConnection不需要额外加锁
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("Telemetry-%d").daemon(true).build());
+
+    private final Map<String,DeviceConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * 创建连接失败的token -> 下次尝试的时间，只在executor线程中访问
+     */
+    private final Map<String,Long> createRetryAt = new HashMap<>();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    public TelemetryPublisher(String host, int queueSize, long intervalMillis, String persistenceDir) {
+        this.host = host;
+        this.intervalMillis = intervalMillis;
+        this.persistenceDir = persistenceDir;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        executor.scheduleWithFixedDelay(this::flush,intervalMillis,intervalMillis,TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @Description 使用Config中的配置创建全局实例，JVM退出前会尽量发送剩余数据
+     * @author czx
+     * @date 2026-10-19 16:34
+     * @param
+     * @return cn.edu.bupt.mqtt.TelemetryPublisher
+     */
+    public static TelemetryPublisher getInstance(){
+        if(instance==null){
+            synchronized (TelemetryPublisher.class){
+                if(instance==null){
+                    TelemetryPublisher publisher = new TelemetryPublisher(Config.getHost(),Config.TELEMETRY_QUEUE_SIZE,Config.TELEMETRY_INTERVAL,Config.getPersistenceDir());
+                    Runtime.getRuntime().addShutdownHook(new Thread(publisher::close,"Telemetry-shutdown"));
+                    instance = publisher;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @Description 提交一条遥测数据，不阻塞，队列已满时丢弃并返回false
+     * @author czx
+     * @date 2026-10-19 16:34
+     * @param token 设备token
+     * @param key
+     * @param value 数字、布尔值或字符串
+     * @return boolean
+     */
+    public boolean offer(String token,String key,Object value){
+        if(token==null){
+            return false;
+        }
+        if(!queue.offer(new Telemetry(token,System.currentTimeMillis(),key,value))){
+            if(dropped.incrementAndGet()%1000==1){
+                log.warn("Telemetry queue is full, dropped={}",dropped.get());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @Description 立即发送一条消息（不参与合并），例如设备属性
+     * @author czx
+     * @date 2026-10-19 16:34
+     * @param token
+     * @param topic
+     * @param payload
+     * @return void
+     */
+    public void publish(String token,String topic,String payload){
+        if(token==null){
+            return;
+        }
+        executor.execute(()->{
+            DeviceConnection connection = connection(token);
+            if(connection!=null){
+                connection.publish(topic,payload);
+            }else{
+                dropped.incrementAndGet();
+            }
+        });
+    }
+
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * 取出队列中的全部数据，按token与时间戳分组后每个设备发送一条消息
+     */
+    private void flush(){
+        try {
+            List<Telemetry> batch = new ArrayList<>(queue.size());
+            queue.drainTo(batch);
+            if(batch.isEmpty()){
+                return;
+            }
+            Map<String,Map<Long,JsonObject>> grouped = new HashMap<>();
+            for(Telemetry telemetry : batch){
+                JsonObject values = grouped.computeIfAbsent(telemetry.token,k->new TreeMap<>())
+                        .computeIfAbsent(telemetry.ts,k->new JsonObject());
+                if(telemetry.value instanceof Number){
+                    values.addProperty(telemetry.key,(Number) telemetry.value);
+                }else if(telemetry.value instanceof Boolean){
+                    values.addProperty(telemetry.key,(Boolean) telemetry.value);
+                }else{
+                    values.addProperty(telemetry.key,String.valueOf(telemetry.value));
+                }
+            }
+            for(Map.Entry<String,Map<Long,JsonObject>> device : grouped.entrySet()){
+                JsonArray payload = new JsonArray();
+                for(Map.Entry<Long,JsonObject> entry : device.getValue().entrySet()){
+                    JsonObject item = new JsonObject();
+                    item.addProperty("ts",entry.getKey());
+                    item.add("values",entry.getValue());
+                    payload.add(item);
+                }
+                DeviceConnection connection = connection(device.getKey());
+                if(connection!=null){
+                    connection.publish(Config.datatopic,payload.toString());
+                }else{
+                    dropped.incrementAndGet();
+                }
+            }
+        }catch (Exception e){
+            // 定时任务抛出异常后不会再被调度
+            log.warn("Telemetry flush failed",e);
+        }
+    }
+
+    /**
+     * @Description 发送剩余数据并断开所有连接
+     * @author czx
+     * @date 2026-10-19 16:34
+     * @param
+     * @return void
+     */
+    public void close(){
+        try {
+            executor.submit(this::flush).get(intervalMillis+5000,TimeUnit.MILLISECONDS);
+        }catch (Exception e){
+            log.warn("Telemetry final flush failed");
+        }
+        executor.shutdownNow();
+        for(DeviceConnection connection : connections.values()){
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * 获取token对应的连接，只在executor线程中调用。创建失败时不缓存，
+     * MAX_RETRY_DELAY之内返回null，之后再次创建
+     */
+    private DeviceConnection connection(String token){
+        DeviceConnection connection = connections.get(token);
+        if(connection!=null){
+            return connection;
+        }
+        Long retryAt = createRetryAt.get(token);
+        if(retryAt!=null && System.currentTimeMillis()<retryAt){
+            return null;
+        }
+        try {
+            connection = new DeviceConnection(token);
+        }catch (MqttException e){
+            log.error("Failed to create mqtt client for token [{}], retry in {}ms",token,MAX_RETRY_DELAY,e);
+            createRetryAt.put(token,System.currentTimeMillis()+MAX_RETRY_DELAY);
+            return null;
+        }
+        createRetryAt.remove(token);
+        connections.put(token,connection);
+        return connection;
+    }
+
+    private static class Telemetry {
+        final String token;
+        final long ts;
+        final String key;
+        final Object value;
+
+        Telemetry(String token, long ts, String key, Object value) {
+            this.token = token;
+            this.ts = ts;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 一个设备token对应的长连接
+     */
+    private class DeviceConnection implements MqttCallbackExtended {
+
+        private final String token;
+
+        private final MqttAsyncClient client;
+
+        /**
+         * 首次连接成功之前paho不会缓存消息，这段时间的消息暂存在这里
+         */
+        private final Deque<String[]> pending = new ArrayDeque<>();
+
+        private volatile boolean everConnected;
+
+        private long retryDelay = 1000L;
+
+        DeviceConnection(String token) throws MqttException {
+            this.token = token;
+            client = new MqttAsyncClient(host,"cv-"+token,new MqttDefaultFilePersistence(persistenceDir));
+            client.setCallback(this);
+            DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+            bufferOptions.setBufferEnabled(true);
+            bufferOptions.setBufferSize(Config.OFFLINE_BUFFER_SIZE);
+            bufferOptions.setPersistBuffer(true);
+            bufferOptions.setDeleteOldestMessages(true);
+            client.setBufferOpts(bufferOptions);
+            connect();
+        }
+
+        private void connect(){
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setUserName(token);
+            options.setCleanSession(false);
+            options.setAutomaticReconnect(true);
+            options.setConnectionTimeout(10);
+            options.setKeepAliveInterval(60);
+            options.setMaxInflight(MAX_INFLIGHT);
+            try {
+                client.connect(options,null,new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken asyncActionToken) {
+                        retryDelay = 1000L;
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                        // 自动重连只在连接成功过之后才生效，首次连接失败需要自己重试
+                        log.warn("Mqtt connect failed for token [{}], retry in {}ms",token,retryDelay);
+                        scheduleRetry();
+                    }
+                });
+            }catch (MqttException e){
+                log.warn("Mqtt connect failed for token [{}]",token,e);
+                scheduleRetry();
+            }
+        }
+
+        private void scheduleRetry(){
+            if(executor.isShutdown()){
+                return;
+            }
+            long delay = retryDelay;
+            retryDelay = Math.min(retryDelay*2,MAX_RETRY_DELAY);
+            executor.schedule(this::connect,delay,TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 只在executor线程中调用
+         */
+        void publish(String topic,String payload){
+            if(!everConnected){
+                addPending(topic,payload);
+                return;
+            }
+            try {
+                client.publish(topic,newMessage(payload));
+            }catch (MqttException e){
+                int reason = e.getReasonCode();
+                if(reason==MqttException.REASON_CODE_CLIENT_NOT_CONNECTED || reason==MqttException.REASON_CODE_MAX_INFLIGHT){
+                    addPending(topic,payload);
+                }else{
+                    log.warn("Mqtt publish failed for token [{}] : {}",token,e.getMessage());
+                }
+            }
+        }
+
+        private void addPending(String topic,String payload){
+            if(pending.size()>=Config.OFFLINE_BUFFER_SIZE){
+                pending.pollFirst();
+                dropped.incrementAndGet();
+            }
+            pending.addLast(new String[]{topic,payload});
+        }
+
+        private void flushPending(){
+            int size = pending.size();
+            for(int i = 0;i<size && client.isConnected();i++){
+                String[] message = pending.pollFirst();
+                publish(message[0],message[1]);
+            }
+        }
+
+        private MqttMessage newMessage(String payload){
+            MqttMessage message = new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
+            message.setRetained(false);
+            message.setQos(QOS);
+            return message;
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            log.info("Mqtt connected for token [{}], reconnect={}",token,reconnect);
+            everConnected = true;
+            if(!executor.isShutdown()){
+                executor.execute(this::flushPending);
+            }
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            log.warn("Mqtt connection lost for token [{}] : {}",token,cause==null ? "" : cause.getMessage());
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+
+        void close(){
+            try {
+                if(client.isConnected()){
+                    client.disconnect(2000).waitForCompletion(3000);
+                }
+                client.close();
+            }catch (MqttException e){
+                log.debug("Mqtt close failed for token [{}]",token);
+            }
+        }
+    }
+}
@@ -2,8 +2,8 @@ package cn.edu.bupt.util;
 
 import cn.edu.bupt.data.CameraInfo;
 import cn.edu.bupt.mqtt.DataMqttClient;
+import cn.edu.bupt.mqtt.TelemetryPublisher;
 import com.google.gson.Gson;
-import org.json.simple.JSONObject;
 
 public class Publish {
 
@@ -25,14 +25,7 @@ public class Publish {
     发送遥测
      */
     public static void sendTelemetries(String token,String key,String value){
-        try {
-            JSONObject info = new JSONObject();
-            info.put(key,value);
-            String data = info.toString();
-            DataMqttClient.publishData(token,data);
-        } catch (Exception e){
-            e.printStackTrace();
-        }
-
+        // 进入队列后按间隔合并发送
+        TelemetryPublisher.getInstance().offer(token,key,value);
     }
 }
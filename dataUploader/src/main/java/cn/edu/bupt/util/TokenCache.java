@@ -0,0 +1,141 @@
+package cn.edu.bupt.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * @Description: TokenCache，设备token的内存缓存。
+ * 命中时只读内存；未命中时同一个key只有一个线程去加载，其他线程等待同一个结果。
+ * 加载结果为null时也会缓存一小段时间，避免注册失败的摄像头每次都去访问数据库和平台
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:37
+ * @Version: 1.0
+ */
+public class TokenCache {
+
+    private final long ttlMillis;
+
+    private final long negativeTtlMillis;
+
+    private final int maximumSize;
+
+    private final Function<String,String> loader;
+
+    private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String,FutureTask<String>> loading = new ConcurrentHashMap<>();
+
+    public TokenCache(long ttlMillis, long negativeTtlMillis, int maximumSize, Function<String,String> loader) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.maximumSize = maximumSize;
+        this.loader = loader;
+    }
+
+    /**
+     * @Description 获取key对应的token，缓存中没有或已过期时调用loader加载
+     * @author czx
+     * @date 2026-10-19 16:37
+     * @param key
+     * @return java.lang.String
+     */
+    public String get(String key){
+        Entry entry = entries.get(key);
+        if(entry!=null && !entry.isExpired(System.currentTimeMillis())){
+            return entry.value;
+        }
+        FutureTask<String> task = new FutureTask<>(()->loader.apply(key));
+        FutureTask<String> running = loading.putIfAbsent(key,task);
+        if(running==null){
+            running = task;
+            try {
+                task.run();
+                put(key,task.get());
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }catch (ExecutionException e){
+                // 加载异常时不缓存，下次调用重新加载
+            }finally {
+                loading.remove(key,task);
+            }
+        }
+        try {
+            return running.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
+        }catch (ExecutionException e){
+            return null;
+        }
+    }
+
+    /**
+     * @Description 写入缓存，value为null时按negativeTtl缓存
+     * @author czx
+     * @date 2026-10-19 16:37
+     * @param key
+     * @param value
+     * @return void
+     */
+    public void put(String key,String value){
+        long ttl = value==null ? negativeTtlMillis : ttlMillis;
+        if(ttl<=0){
+            entries.remove(key);
+            return;
+        }
+        if(entries.size()>=maximumSize && !entries.containsKey(key)){
+            evict();
+        }
+        entries.put(key,new Entry(value,System.currentTimeMillis()+ttl));
+    }
+
+    public void invalidate(String key){
+        entries.remove(key);
+    }
+
+    public void invalidateAll(){
+        entries.clear();
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * 先清理过期的条目，仍然超过上限时移除最早过期的条目
+     */
+    private void evict(){
+        long now = System.currentTimeMillis();
+        String oldest = null;
+        long oldestExpire = Long.MAX_VALUE;
+        Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<String,Entry> next = iterator.next();
+            if(next.getValue().isExpired(now)){
+                iterator.remove();
+            }else if(next.getValue().expiresAt<oldestExpire){
+                oldestExpire = next.getValue().expiresAt;
+                oldest = next.getKey();
+            }
+        }
+        if(oldest!=null && entries.size()>=maximumSize){
+            entries.remove(oldest);
+        }
+    }
+
+    private static class Entry {
+        final String value;
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now){
+            return now>=expiresAt;
+        }
+    }
+}
@@ -2,6 +2,11 @@ package cn.edu.bupt.util;
 
 import cn.edu.bupt.dao.dbTokenImpl;
 import cn.edu.bupt.data.CameraInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @Description: TokenUtil
@@ -9,31 +14,99 @@ import cn.edu.bupt.data.CameraInfo;
  * @CreateDate: 2019-05-24 14:35
  * @Version: 1.0
  */
+@Slf4j
 public class TokenUtil {
 
     public static final dbTokenImpl db = new dbTokenImpl();
 
+    private static final long TOKEN_TTL = 10 * 60 * 1000L;
+
+    private static final long NEGATIVE_TTL = 30 * 1000L;
+
+    private static final int MAX_TOKENS = 10000;
+
+    private static final TokenCache cache = new TokenCache(TOKEN_TTL, NEGATIVE_TTL, MAX_TOKENS, TokenUtil::loadToken);
+
     public static String getToken(String cameraName){
-        String token;
-        if(db.get(cameraName) == null){ //SQLite里没有token
+        return cache.get(cameraName);
+    }
+
+    /**
+     * @Description 批量注册摄像头，已有token的直接从数据库获取，新的token在一个事务中写入数据库；
+     * 没有拿到token的摄像头跳过，事务失败时新的token不进入缓存，缓存始终与数据库一致
+     * @author czx
+     * @date 2026-10-19 16:37
+     * @param cameraNames
+     * @return java.util.Map<java.lang.String,java.lang.String>
+     */
+    public static Map<String,String> registerAll(Collection<String> cameraNames){
+        Map<String,String> tokens = new HashMap<>();
+        Map<String,String> created = new HashMap<>();
+        String session = null;
+        for(String cameraName : cameraNames){
+            String token = db.get(cameraName);
+            if(token!=null){
+                tokens.put(cameraName, token);
+                continue;
+            }
             try {
-                String session = HttpUtil.login();
-                String id = HttpUtil.createDevice(cameraName, session);
-                if (id == null || id.equals("")) {
-                    id = HttpUtil.findDeviceId(cameraName,session);
-                    System.out.println("new id : "+id);
+                if(session==null){
+                    session = HttpUtil.login();
                 }
-                token = HttpUtil.findToken(id, session);
-                System.out.println(token);
-                db.insert(cameraName, token);
+                token = register(cameraName, session);
             }catch (Exception e){
                 e.printStackTrace();
-                return null;
-            }//存入DB
-            return token;
-        }else{//SQLite里有token，从表中拿token
-            token = db.get(cameraName);
+                continue;
+            }
+            if(token==null){
+                log.warn("No token for camera [{}], skip it",cameraName);
+                continue;
+            }
+            created.put(cameraName, token);
+        }
+        if(!created.isEmpty()){
+            if(db.insertAll(created)>0){
+                tokens.putAll(created);
+            }else{
+                log.warn("Failed to save {} new tokens",created.size());
+            }
+        }
+        for(Map.Entry<String,String> entry : tokens.entrySet()){
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        return tokens;
+    }
+
+    public static void invalidate(String cameraName){
+        cache.invalidate(cameraName);
+    }
+
+    private static String loadToken(String cameraName){
+        String token = db.get(cameraName);
+        if(token != null){ //SQLite里有token
             return token;
         }
+        try {
+            token = register(cameraName, HttpUtil.login());
+            if(token == null){
+                return null;
+            }
+            db.insert(cameraName, token);//存入DB
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+        return token;
+    }
+
+    private static String register(String cameraName, String session) throws Exception{
+        String id = HttpUtil.createDevice(cameraName, session);
+        if (id == null || id.equals("")) {
+            id = HttpUtil.findDeviceId(cameraName,session);
+            log.debug("Found existing device id [{}] for camera [{}]",id,cameraName);
+        }
+        String token = HttpUtil.findToken(id, session);
+        log.debug("Token of camera [{}] {}",cameraName,token==null?"not found":"received");
+        return token;
     }
 }
@@ -76,6 +76,15 @@ public class HikUtil {
         return UserIDMap.get(rtmp);
     }
 
+    /**
+     * @Description 云台运动2秒后停止，期间阻塞调用线程。接口中已经改为使用controller模块的PtzScheduler异步调度
+     * @author czx
+     * @date 2026-10-19 17:37
+     * @param rtmp
+     * @param command
+     * @return void
+     */
+    @Deprecated
     public static void control(String rtmp,int command){
         NativeLong nativeLong = new NativeLong(1L);
         hCNetSDK.NET_DVR_PTZControl_Other(HikUtil.getUserId(rtmp),nativeLong,command,0);
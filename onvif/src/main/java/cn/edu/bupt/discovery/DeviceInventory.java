@@ -0,0 +1,456 @@
+package cn.edu.bupt.discovery;
+
+import cn.edu.bupt.soap.AsyncSOAP;
+import cn.edu.bupt.soap.OnvifDevice;
+import cn.edu.bupt.soap.OnvifSessionPool;
+import cn.edu.bupt.util.URLClassifier;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import javax.xml.soap.SOAPException;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * @Description: DeviceInventory，ONVIF设备清单。
+ * 被动监听WS-Discovery的Hello/Bye组播，缓存每个设备的服务地址(GetCapabilities)与RTSP地址(GetProfiles+GetStreamUri)，
+ * 在TTL内、scopes/metadataVersion没有变化、设备没有发出Bye时直接使用缓存，推流前不再需要3~4次SOAP往返；
+ * 清单定期写入本地文件，重启后仍然有效
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:33
+ * @Version: 1.0
+ */
+@Slf4j
+public class DeviceInventory {
+
+    /**
+     * 缓存的服务地址与RTSP地址的有效期
+     */
+    private static final long TTL_MILLIS = Long.getLong("onvif.inventory.ttl", TimeUnit.HOURS.toMillis(1));
+
+    /**
+     * 两次主动探测的最小间隔，间隔内的/discovery直接返回清单
+     */
+    private static final long PROBE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long SAVE_INTERVAL_SECONDS = 5;
+
+    private static volatile DeviceInventory instance;
+
+    private final Path file;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * host -> 记录
+     */
+    private final ConcurrentHashMap<String, DeviceRecord> records = new ConcurrentHashMap<>();
+
+    /**
+     * endpoint -> host，设备更换IP后通过endpoint找到旧记录
+     */
+    private final ConcurrentHashMap<String, String> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * 正在进行的刷新，同一设备同一账号的并发请求只发一次SOAP请求
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<DeviceRecord>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("Inventory-%d").daemon(true).build());
+
+    private volatile MulticastSocket socket;
+
+    private volatile long lastProbe;
+
+    public DeviceInventory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @Description 全局实例，第一次获取时加载本地文件并开始监听Hello/Bye。
+     * 文件位置由系统属性onvif.inventory指定，默认在临时目录下
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param
+     * @return cn.edu.bupt.discovery.DeviceInventory
+     */
+    public static DeviceInventory getInstance() {
+        if (instance == null) {
+            synchronized (DeviceInventory.class) {
+                if (instance == null) {
+                    DeviceInventory inventory = new DeviceInventory(Paths.get(System.getProperty("onvif.inventory",
+                            System.getProperty("java.io.tmpdir") + File.separator + "converter-onvif-inventory.json")));
+                    inventory.start();
+                    instance = inventory;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @Description 加载本地文件，开始监听Hello/Bye并定期保存
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param
+     * @return void
+     */
+    public synchronized void start() {
+        if (socket != null) {
+            return;
+        }
+        load();
+        try {
+            socket = openListener();
+            Thread listener = new Thread(this::listen, "Inventory-listener");
+            listener.setDaemon(true);
+            listener.start();
+        } catch (IOException e) {
+            // 端口被其他程序独占时只能依赖主动探测
+            log.warn("Cannot listen for WS-Discovery Hello/Bye : {}", e.getMessage());
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (dirty.compareAndSet(true, false)) {
+                save();
+            }
+        }, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (dirty.get()) {
+                save();
+            }
+        }, "Inventory-save"));
+    }
+
+    /**
+     * @Description 设备第一个profile的RTSP地址。缓存有效时不访问设备
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param host ip[:port]
+     * @param user
+     * @param password
+     * @return java.util.concurrent.CompletableFuture<java.lang.String>
+     */
+    public CompletableFuture<String> getRTSPStreamUri(String host, String user, String password) {
+        String digest = digest(host, user, password);
+        DeviceRecord record = records.get(host);
+        if (record != null && record.hasStreams(digest, System.currentTimeMillis(), TTL_MILLIS)) {
+            return CompletableFuture.completedFuture(record.getMainStreamUri());
+        }
+        return refreshStreams(host, user, password, digest).thenApply(DeviceRecord::getMainStreamUri);
+    }
+
+    /**
+     * @Description 设备第一个profile的token，用于PTZ等需要profile的操作。缓存有效时不访问设备
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param host
+     * @param user
+     * @param password
+     * @return java.util.concurrent.CompletableFuture<java.lang.String>
+     */
+    public CompletableFuture<String> getMainProfileToken(String host, String user, String password) {
+        String digest = digest(host, user, password);
+        DeviceRecord record = records.get(host);
+        if (record != null && record.hasStreams(digest, System.currentTimeMillis(), TTL_MILLIS)) {
+            return CompletableFuture.completedFuture(record.getMainProfileToken());
+        }
+        return refreshStreams(host, user, password, digest).thenApply(DeviceRecord::getMainProfileToken);
+    }
+
+    /**
+     * @Description 可以直接发送请求的OnvifDevice，来自会话池；新建会话时用缓存的服务地址代替GetCapabilities
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param host
+     * @param user
+     * @param password
+     * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.soap.OnvifDevice>
+     */
+    public CompletableFuture<OnvifDevice> getDevice(String host, String user, String password) {
+        return OnvifSessionPool.getInstance().acquire(host, user, password, device -> {
+            DeviceRecord record = records.get(host);
+            if (record != null && record.hasCapabilities(System.currentTimeMillis(), TTL_MILLIS)) {
+                device.applyCapabilities(record.toCapabilities());
+                return CompletableFuture.completedFuture(device);
+            }
+            return AsyncSOAP.getInstance().getCapabilities(device).thenApply(capabilities -> {
+                device.applyCapabilities(capabilities);
+                update(host, old -> old.withCapabilities(capabilities, device.isProxy(), System.currentTimeMillis()));
+                return device;
+            });
+        });
+    }
+
+    /**
+     * @Description 局域网内没有使用代理的设备IP。距离上次主动探测不到5分钟时直接返回清单中在线的设备，
+     * 期间设备的上下线由Hello/Bye维护
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param
+     * @return java.util.Set<java.lang.String>
+     */
+    public Set<String> discover() {
+        if (System.currentTimeMillis() - lastProbe >= PROBE_INTERVAL_MILLIS) {
+            probe();
+        }
+        Set<String> ips = new LinkedHashSet<>();
+        for (DeviceRecord record : records.values()) {
+            if (record.isOnline() && record.getEndpoint() != null && record.hasServiceAddresses() && !record.isProxy()) {
+                String host = record.getHost();
+                ips.add(host.contains(":") ? host.substring(0, host.indexOf(':')) : host);
+            }
+        }
+        return ips;
+    }
+
+    /**
+     * @Description 主动探测一次，新设备立即并行获取服务地址
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param
+     * @return void
+     */
+    public void probe() {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<?>> checks = Collections.synchronizedList(new ArrayList<>());
+        DeviceDiscovery.discover(device -> {
+            String host = seen(device);
+            if (host != null) {
+                // 没有账号时GetCapabilities一般也可以访问，用于判断是否经过代理
+                checks.add(getDevice(host, "", "").whenComplete((d, e) -> {
+                    if (e != null) {
+                        log.warn("discovery exception : {} {}", host, e.getMessage());
+                    }
+                }));
+            }
+        }).join();
+        synchronized (checks) {
+            CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        }
+        // 没有回应探测、也没有发出Bye的设备（断电、断网）
+        for (DeviceRecord record : records.values()) {
+            if (record.isOnline() && record.getEndpoint() != null && record.getLastSeen() < start) {
+                log.info("Device {} at {} did not answer the probe", record.getEndpoint(), record.getHost());
+                records.computeIfPresent(record.getHost(), (key, old) -> old.bye());
+                dirty.set(true);
+            }
+        }
+        lastProbe = System.currentTimeMillis();
+    }
+
+    public Collection<DeviceRecord> getRecords() {
+        return Collections.unmodifiableCollection(records.values());
+    }
+
+    public DeviceRecord getRecord(String host) {
+        return records.get(host);
+    }
+
+    /**
+     * @Description 使某个设备的缓存失效，例如推流失败时
+     * @author czx
+     * @date 2026-10-19 19:33
+     * @param host
+     * @return void
+     */
+    public void invalidate(String host) {
+        if (records.computeIfPresent(host, (key, old) -> old.invalidate()) != null) {
+            dirty.set(true);
+        }
+        OnvifSessionPool.getInstance().invalidate(host);
+    }
+
+    private CompletableFuture<DeviceRecord> refreshStreams(String host, String user, String password, String digest) {
+        String key = host + "|" + digest;
+        CompletableFuture<DeviceRecord> future = loading.computeIfAbsent(key, k -> fetchStreams(host, user, password, digest));
+        // the future may already be complete here, so never remove from inside the mapping function
+        future.whenComplete((r, e) -> loading.remove(key, future));
+        return future;
+    }
+
+    private CompletableFuture<DeviceRecord> fetchStreams(String host, String user, String password, String digest) {
+        AsyncSOAP soap = AsyncSOAP.getInstance();
+        return getDevice(host, user, password)
+                .thenCompose(device -> soap.getProfiles(device).thenCompose(profiles -> {
+                    if (profiles == null || profiles.isEmpty()) {
+                        throw new CompletionException(new SOAPException("No media profile on " + host));
+                    }
+                    String token = profiles.get(0).getToken();
+                    return soap.getRTSPStreamUri(device, token).thenApply(uri -> {
+                        Map<String, String> streams = new LinkedHashMap<>();
+                        streams.put(token, uri);
+                        return update(host, old -> old.withStreams(streams, digest, System.currentTimeMillis()));
+                    });
+                }));
+    }
+
+    /**
+     * 收到Hello或ProbeMatch
+     *
+     * @return 设备的host，没有IPv4地址时为null
+     */
+    private String seen(DiscoveredDevice device) {
+        String host = hostOf(device);
+        if (host == null) {
+            return null;
+        }
+        String previous = endpoints.put(device.getEndpoint(), host);
+        if (previous != null && !previous.equals(host)) {
+            // 设备更换了IP，旧地址上的缓存不再可用
+            log.info("Device {} moved from {} to {}", device.getEndpoint(), previous, host);
+            records.computeIfPresent(previous, (key, old) -> old.bye());
+            OnvifSessionPool.getInstance().invalidate(previous);
+        }
+        long now = System.currentTimeMillis();
+        DeviceRecord record = update(host, old -> old.seen(device, now));
+        if (record.isStale()) {
+            // 会话中的服务地址可能已经失效
+            OnvifSessionPool.getInstance().invalidate(host);
+            log.info("Device {} at {} changed, cached services will be refreshed", device.getEndpoint(), host);
+        }
+        return host;
+    }
+
+    private void bye(DiscoveredDevice device) {
+        String host = endpoints.get(device.getEndpoint());
+        if (host != null && records.computeIfPresent(host, (key, old) -> old.bye()) != null) {
+            OnvifSessionPool.getInstance().invalidate(host);
+            log.info("Device {} at {} left", device.getEndpoint(), host);
+            dirty.set(true);
+        }
+    }
+
+    private DeviceRecord update(String host, UnaryOperator<DeviceRecord> change) {
+        DeviceRecord record = records.compute(host, (key, old) -> change.apply(old == null ? new DeviceRecord(host) : old));
+        dirty.set(true);
+        return record;
+    }
+
+    private static String hostOf(DiscoveredDevice device) {
+        for (URL url : device.getUrls()) {
+            if (URLClassifier.isIPv4Address(url.getHost())) {
+                return url.getPort() == -1 || url.getPort() == 80 ? url.getHost() : url.getHost() + ":" + url.getPort();
+            }
+        }
+        return null;
+    }
+
+    private static String digest(String host, String user, String password) {
+        return DigestUtils.sha256Hex(host + "\n" + (user == null ? "" : user) + "\n" + (password == null ? "" : password));
+    }
+
+    private MulticastSocket openListener() throws IOException {
+        MulticastSocket multicastSocket = new MulticastSocket(DiscoveryEngine.WS_DISCOVERY_PORT);
+        InetSocketAddress group = new InetSocketAddress(DiscoveryEngine.WS_DISCOVERY_ADDRESS_IPv4, DiscoveryEngine.WS_DISCOVERY_PORT);
+        Set<NetworkInterface> joined = new HashSet<>();
+        for (InterfaceAddress address : DiscoveryEngine.findInterfaceAddresses()) {
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(address.getAddress());
+            if (networkInterface != null && joined.add(networkInterface)) {
+                try {
+                    multicastSocket.joinGroup(group, networkInterface);
+                } catch (IOException e) {
+                    log.debug("Cannot join {} on {} : {}", group, networkInterface.getName(), e.getMessage());
+                }
+            }
+        }
+        if (joined.isEmpty()) {
+            multicastSocket.joinGroup(group.getAddress());
+        }
+        return multicastSocket;
+    }
+
+    private void listen() {
+        byte[] buffer = new byte[65535];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                WsDiscoveryMessage message = WsDiscoveryMessage.parse(packet.getData(), packet.getLength(),
+                        (InetSocketAddress) packet.getSocketAddress());
+                for (DiscoveredDevice device : message.getDevices()) {
+                    if (message.getType() == WsDiscoveryMessage.Type.HELLO) {
+                        seen(device);
+                    } else if (message.getType() == WsDiscoveryMessage.Type.BYE) {
+                        bye(device);
+                    }
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.warn("WS-Discovery listener error : {}", e.getMessage());
+                }
+            } catch (Exception e) {
+                // 组播上的Probe以及其他程序的报文
+                log.debug("Ignored WS-Discovery message : {}", e.getMessage());
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            List<DeviceRecord> saved = gson.fromJson(reader, new TypeToken<List<DeviceRecord>>() {
+            }.getType());
+            if (saved != null) {
+                for (DeviceRecord record : saved) {
+                    if (record.getHost() == null) {
+                        continue;
+                    }
+                    records.put(record.getHost(), record);
+                    if (record.getEndpoint() != null) {
+                        endpoints.put(record.getEndpoint(), record.getHost());
+                    }
+                }
+            }
+            log.info("Loaded {} devices from {}", records.size(), file);
+        } catch (Exception e) {
+            log.warn("Cannot load device inventory {} : {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = Files.createTempFile(parent, "inventory", ".tmp");
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8)) {
+                gson.toJson(new ArrayList<>(records.values()), writer);
+            }
+            // 先写临时文件再替换，进程中途退出也不会留下半个文件
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.warn("Cannot save device inventory {} : {}", file, e.getMessage());
+        }
+    }
+
+    public void close() {
+        MulticastSocket multicastSocket = socket;
+        if (multicastSocket != null) {
+            multicastSocket.close();
+        }
+        scheduler.shutdown();
+        if (dirty.getAndSet(false)) {
+            save();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package cn.edu.bupt.discovery;
+
+import org.onvif.ver10.schema.Capabilities;
+import org.onvif.ver10.schema.DeviceCapabilities;
+import org.onvif.ver10.schema.EventCapabilities;
+import org.onvif.ver10.schema.ImagingCapabilities;
+import org.onvif.ver10.schema.MediaCapabilities;
+import org.onvif.ver10.schema.PTZCapabilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: DeviceRecord，设备清单中的一条记录，保存WS-Discovery信息、GetCapabilities得到的服务地址以及各profile的RTSP地址。
+ * 记录本身不可变，任何变化都生成一条新记录替换旧记录，读线程拿到的总是一致的快照；使用gson持久化
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:14
+ * @Version: 1.0
+ */
+public class DeviceRecord {
+
+    /**
+     * ip[:port]，OnvifDevice使用的地址，也是清单的键
+     */
+    private String host;
+
+    /**
+     * WS-Discovery中的endpoint(urn:uuid:...)，没有经过发现的设备为null
+     */
+    private String endpoint;
+
+    private List<String> scopes = new ArrayList<>();
+
+    private long metadataVersion;
+
+    /**
+     * GetCapabilities返回的原始服务地址，恢复时重新经过代理地址替换
+     */
+    private String deviceXAddr, mediaXAddr, ptzXAddr, imagingXAddr, eventsXAddr;
+
+    private boolean proxy;
+
+    private long capabilitiesFetchedAt;
+
+    /**
+     * profile token -> RTSP地址，按GetProfiles的顺序
+     */
+    private LinkedHashMap<String, String> streamUris = new LinkedHashMap<>();
+
+    /**
+     * 获取streamUris时使用的用户名与密码的摘要，不同的账号需要重新验证
+     */
+    private String credentialDigest;
+
+    private long streamsFetchedAt;
+
+    private long lastSeen;
+
+    private boolean online = true;
+
+    /**
+     * Hello中的scopes或metadataVersion发生变化、或者设备发出Bye之后，缓存的服务地址与码流地址都需要重新获取
+     */
+    private boolean stale;
+
+    DeviceRecord() {
+    }
+
+    DeviceRecord(String host) {
+        this.host = host;
+    }
+
+    private DeviceRecord copy() {
+        DeviceRecord record = new DeviceRecord(host);
+        record.endpoint = endpoint;
+        record.scopes = scopes;
+        record.metadataVersion = metadataVersion;
+        record.deviceXAddr = deviceXAddr;
+        record.mediaXAddr = mediaXAddr;
+        record.ptzXAddr = ptzXAddr;
+        record.imagingXAddr = imagingXAddr;
+        record.eventsXAddr = eventsXAddr;
+        record.proxy = proxy;
+        record.capabilitiesFetchedAt = capabilitiesFetchedAt;
+        record.streamUris = streamUris;
+        record.credentialDigest = credentialDigest;
+        record.streamsFetchedAt = streamsFetchedAt;
+        record.lastSeen = lastSeen;
+        record.online = online;
+        record.stale = stale;
+        return record;
+    }
+
+    /**
+     * @Description 收到Hello或ProbeMatch。scopes或metadataVersion变化时标记为过期
+     * @author czx
+     * @date 2026-10-19 17:14
+     * @param device
+     * @param now
+     * @return cn.edu.bupt.discovery.DeviceRecord
+     */
+    DeviceRecord seen(DiscoveredDevice device, long now) {
+        DeviceRecord record = copy();
+        boolean changed = endpoint != null
+                && (device.getMetadataVersion() != metadataVersion || !device.getScopes().equals(scopes));
+        record.endpoint = device.getEndpoint();
+        record.scopes = new ArrayList<>(device.getScopes());
+        record.metadataVersion = device.getMetadataVersion();
+        record.lastSeen = now;
+        record.online = true;
+        record.stale = stale || changed;
+        return record;
+    }
+
+    DeviceRecord bye() {
+        DeviceRecord record = copy();
+        record.online = false;
+        record.stale = true;
+        return record;
+    }
+
+    DeviceRecord invalidate() {
+        DeviceRecord record = copy();
+        record.stale = true;
+        return record;
+    }
+
+    DeviceRecord withCapabilities(Capabilities capabilities, boolean proxy, long now) {
+        DeviceRecord record = copy();
+        record.deviceXAddr = capabilities.getDevice() == null ? null : capabilities.getDevice().getXAddr();
+        record.mediaXAddr = capabilities.getMedia() == null ? null : capabilities.getMedia().getXAddr();
+        record.ptzXAddr = capabilities.getPTZ() == null ? null : capabilities.getPTZ().getXAddr();
+        record.imagingXAddr = capabilities.getImaging() == null ? null : capabilities.getImaging().getXAddr();
+        record.eventsXAddr = capabilities.getEvents() == null ? null : capabilities.getEvents().getXAddr();
+        record.proxy = proxy;
+        record.capabilitiesFetchedAt = now;
+        record.lastSeen = now;
+        record.online = true;
+        // 服务地址已经重新获取，但码流地址需要用新的服务地址再取一次
+        record.stale = false;
+        record.streamUris = new LinkedHashMap<>();
+        record.streamsFetchedAt = 0;
+        return record;
+    }
+
+    DeviceRecord withStreams(Map<String, String> streamUris, String credentialDigest, long now) {
+        DeviceRecord record = copy();
+        record.streamUris = new LinkedHashMap<>(streamUris);
+        record.credentialDigest = credentialDigest;
+        record.streamsFetchedAt = now;
+        record.lastSeen = now;
+        record.online = true;
+        return record;
+    }
+
+    /**
+     * @Description 由缓存的服务地址构造Capabilities，用于OnvifDevice.applyCapabilities
+     * @author czx
+     * @date 2026-10-19 17:14
+     * @param
+     * @return org.onvif.ver10.schema.Capabilities 没有缓存时为null
+     */
+    Capabilities toCapabilities() {
+        if (deviceXAddr == null) {
+            return null;
+        }
+        Capabilities capabilities = new Capabilities();
+        DeviceCapabilities device = new DeviceCapabilities();
+        device.setXAddr(deviceXAddr);
+        capabilities.setDevice(device);
+        if (mediaXAddr != null) {
+            MediaCapabilities media = new MediaCapabilities();
+            media.setXAddr(mediaXAddr);
+            capabilities.setMedia(media);
+        }
+        if (ptzXAddr != null) {
+            PTZCapabilities ptz = new PTZCapabilities();
+            ptz.setXAddr(ptzXAddr);
+            capabilities.setPTZ(ptz);
+        }
+        if (imagingXAddr != null) {
+            ImagingCapabilities imaging = new ImagingCapabilities();
+            imaging.setXAddr(imagingXAddr);
+            capabilities.setImaging(imaging);
+        }
+        if (eventsXAddr != null) {
+            EventCapabilities events = new EventCapabilities();
+            events.setXAddr(eventsXAddr);
+            capabilities.setEvents(events);
+        }
+        return capabilities;
+    }
+
+    boolean hasServiceAddresses() {
+        return deviceXAddr != null;
+    }
+
+    boolean hasCapabilities(long now, long ttlMillis) {
+        return deviceXAddr != null && !stale && now - capabilitiesFetchedAt < ttlMillis;
+    }
+
+    boolean hasStreams(String credentialDigest, long now, long ttlMillis) {
+        return !streamUris.isEmpty() && !stale && credentialDigest.equals(this.credentialDigest) && now - streamsFetchedAt < ttlMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public List<String> getScopes() {
+        return Collections.unmodifiableList(scopes);
+    }
+
+    public long getMetadataVersion() {
+        return metadataVersion;
+    }
+
+    public boolean isProxy() {
+        return proxy;
+    }
+
+    /**
+     * 第一个profile（通常是主码流）的RTSP地址
+     */
+    public String getMainStreamUri() {
+        return streamUris.isEmpty() ? null : streamUris.values().iterator().next();
+    }
+
+    public String getMainProfileToken() {
+        return streamUris.isEmpty() ? null : streamUris.keySet().iterator().next();
+    }
+
+    public Map<String, String> getStreamUris() {
+        return Collections.unmodifiableMap(streamUris);
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,89 @@
+package cn.edu.bupt.discovery;
+
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Description: DiscoveredDevice，WS-Discovery中ProbeMatch/Hello/Bye描述的一个设备，以EndpointReference中的地址(urn:uuid:...)唯一标识
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:09
+ * @Version: 1.0
+ */
+public class DiscoveredDevice {
+
+    private final String endpoint;
+
+    private final List<String> xAddrs;
+
+    private final List<String> scopes;
+
+    private final String types;
+
+    private final long metadataVersion;
+
+    private final InetSocketAddress source;
+
+    public DiscoveredDevice(String endpoint, List<String> xAddrs, List<String> scopes, String types, long metadataVersion, InetSocketAddress source) {
+        this.endpoint = endpoint;
+        this.xAddrs = Collections.unmodifiableList(xAddrs);
+        this.scopes = Collections.unmodifiableList(scopes);
+        this.types = types;
+        this.metadataVersion = metadataVersion;
+        this.source = source;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public List<String> getXAddrs() {
+        return xAddrs;
+    }
+
+    public List<String> getScopes() {
+        return scopes;
+    }
+
+    public String getTypes() {
+        return types;
+    }
+
+    public long getMetadataVersion() {
+        return metadataVersion;
+    }
+
+    /**
+     * 发出该报文的地址
+     */
+    public InetSocketAddress getSource() {
+        return source;
+    }
+
+    /**
+     * @Description 可以解析的设备服务地址
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param
+     * @return java.util.List<java.net.URL>
+     */
+    public List<URL> getUrls() {
+        List<URL> urls = new ArrayList<>(xAddrs.size());
+        for (String xAddr : xAddrs) {
+            try {
+                urls.add(new URL(xAddr));
+            } catch (MalformedURLException e) {
+                // 有的设备会带上IPv6或者链路本地地址之外的奇怪内容，忽略
+            }
+        }
+        return urls;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " " + xAddrs;
+    }
+}
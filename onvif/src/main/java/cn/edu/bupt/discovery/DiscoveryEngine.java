@@ -0,0 +1,313 @@
+package cn.edu.bupt.discovery;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * @Description: DiscoveryEngine，并行的WS-Discovery。
+ * 每个网卡地址一个非阻塞的DatagramChannel，同时发出Probe后在同一个Selector上接收所有的ProbeMatches，
+ * 按设备的endpoint地址去重，每发现一个新设备立即回调，整个探测只占用一个超时窗口
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:09
+ * @Version: 1.0
+ */
+@Slf4j
+public class DiscoveryEngine {
+
+    public static final int WS_DISCOVERY_PORT = 3702;
+
+    public static final String WS_DISCOVERY_ADDRESS_IPv4 = "239.255.255.250";
+
+    private static final String PROBE_MESSAGE = "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:wsa=\"http://schemas.xmlsoap.org/ws/2004/08/addressing\" xmlns:tns=\"http://schemas.xmlsoap.org/ws/2005/04/discovery\" xmlns:dn=\"http://www.onvif.org/ver10/network/wsdl\"><soap:Header><wsa:Action>http://schemas.xmlsoap.org/ws/2005/04/discovery/Probe</wsa:Action><wsa:MessageID>urn:uuid:%s</wsa:MessageID><wsa:To>urn:schemas-xmlsoap-org:ws:2005:04:discovery</wsa:To></soap:Header><soap:Body><tns:Probe><tns:Types>dn:NetworkVideoTransmitter</tns:Types></tns:Probe></soap:Body></soap:Envelope>";
+
+    /**
+     * 单个UDP报文的最大长度
+     */
+    private static final int MAX_DATAGRAM = 65535;
+
+    /**
+     * 单播扫描时只展开不大于/24的子网
+     */
+    private static final int MIN_SCAN_PREFIX = 24;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("Discovery-%d").daemon(true).build());
+
+    private DiscoveryEngine() {
+    }
+
+    /**
+     * @Description 向所有网卡所在的网络组播Probe
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param timeoutMillis 等待响应的时间
+     * @param listener 每发现一个新设备调用一次，在探测线程中执行
+     * @return java.util.concurrent.CompletableFuture<java.util.Collection<cn.edu.bupt.discovery.DiscoveredDevice>> 超时窗口结束时完成
+     */
+    public static CompletableFuture<Collection<DiscoveredDevice>> probe(long timeoutMillis, Consumer<DiscoveredDevice> listener) {
+        return probe(findInterfaceAddresses(), false, timeoutMillis, listener);
+    }
+
+    /**
+     * @Description 探测指定网卡，scanSubnet为true时除组播外还向子网内每个地址单播Probe，用于屏蔽了组播的网络
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param interfaces 网卡地址
+     * @param scanSubnet 是否单播扫描子网(/24及更小的子网)
+     * @param timeoutMillis
+     * @param listener
+     * @return java.util.concurrent.CompletableFuture<java.util.Collection<cn.edu.bupt.discovery.DiscoveredDevice>>
+     */
+    public static CompletableFuture<Collection<DiscoveredDevice>> probe(List<InterfaceAddress> interfaces, boolean scanSubnet, long timeoutMillis,
+                                                                         Consumer<DiscoveredDevice> listener) {
+        Map<InetSocketAddress, List<InetSocketAddress>> targets = new LinkedHashMap<>();
+        InetSocketAddress multicast = new InetSocketAddress(WS_DISCOVERY_ADDRESS_IPv4, WS_DISCOVERY_PORT);
+        for (InterfaceAddress address : interfaces) {
+            List<InetSocketAddress> to = new ArrayList<>();
+            to.add(multicast);
+            if (scanSubnet) {
+                to.addAll(subnetHosts(address));
+            }
+            targets.put(new InetSocketAddress(address.getAddress(), 0), to);
+        }
+        return probeTargets(targets, timeoutMillis, listener);
+    }
+
+    /**
+     * @Description 最底层的探测：从每个本地地址向对应的目标发送Probe，在一个Selector上接收
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param targets 本地地址 -> 目标地址(组播地址或单播地址)
+     * @param timeoutMillis
+     * @param listener
+     * @return java.util.concurrent.CompletableFuture<java.util.Collection<cn.edu.bupt.discovery.DiscoveredDevice>>
+     */
+    public static CompletableFuture<Collection<DiscoveredDevice>> probeTargets(Map<InetSocketAddress, List<InetSocketAddress>> targets, long timeoutMillis,
+                                                                               Consumer<DiscoveredDevice> listener) {
+        CompletableFuture<Collection<DiscoveredDevice>> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(run(targets, timeoutMillis, listener));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static Collection<DiscoveredDevice> run(Map<InetSocketAddress, List<InetSocketAddress>> targets, long timeoutMillis,
+                                                    Consumer<DiscoveredDevice> listener) throws IOException {
+        Map<String, DiscoveredDevice> found = new LinkedHashMap<>();
+        Set<String> messageIds = new HashSet<>();
+        List<DatagramChannel> channels = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try (Selector selector = Selector.open()) {
+            for (Map.Entry<InetSocketAddress, List<InetSocketAddress>> entry : targets.entrySet()) {
+                DatagramChannel channel;
+                try {
+                    channel = open(entry.getKey());
+                } catch (IOException e) {
+                    log.warn("Cannot probe from {} : {}", entry.getKey(), e.getMessage());
+                    continue;
+                }
+                channels.add(channel);
+                String messageId = "urn:uuid:" + UUID.randomUUID();
+                messageIds.add(messageId);
+                ByteBuffer probe = ByteBuffer.wrap(String.format(PROBE_MESSAGE, messageId.substring("urn:uuid:".length())).getBytes(StandardCharsets.UTF_8));
+                // 发送与接收在同一个循环中交替进行，单播扫描时等待ARP的报文不会推迟接收
+                channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, new PendingProbes(probe, entry.getValue()));
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+            long remaining;
+            while (!channels.isEmpty() && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                if (selector.select(remaining) == 0) {
+                    continue;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    if (key.isValid() && key.isWritable()) {
+                        PendingProbes pending = (PendingProbes) key.attachment();
+                        if (pending.send(channel)) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        SocketAddress source;
+                        while ((source = receive(channel, buffer)) != null) {
+                            handle(buffer, (InetSocketAddress) source, messageIds, found, listener);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (DatagramChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return found.values();
+    }
+
+    /**
+     * 一个通道上还没有发出的Probe
+     */
+    private static class PendingProbes {
+
+        private final ByteBuffer probe;
+
+        private final Iterator<InetSocketAddress> targets;
+
+        private InetSocketAddress current;
+
+        PendingProbes(ByteBuffer probe, List<InetSocketAddress> targets) {
+            this.probe = probe;
+            this.targets = targets.iterator();
+        }
+
+        /**
+         * @return 是否已经全部发出
+         */
+        boolean send(DatagramChannel channel) {
+            while (current != null || targets.hasNext()) {
+                if (current == null) {
+                    current = targets.next();
+                }
+                probe.rewind();
+                try {
+                    if (channel.send(probe, current) == 0) {
+                        // 发送缓冲区满，等下次可写
+                        return false;
+                    }
+                } catch (IOException e) {
+                    log.debug("Probe to {} failed : {}", current, e.getMessage());
+                }
+                current = null;
+            }
+            return true;
+        }
+    }
+
+    private static DatagramChannel open(InetSocketAddress local) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.configureBlocking(false);
+            channel.bind(local);
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(local.getAddress());
+            if (networkInterface != null) {
+                // 组播从这个网卡发出，而不是由路由表决定
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private static SocketAddress receive(DatagramChannel channel, ByteBuffer buffer) {
+        buffer.clear();
+        try {
+            return channel.receive(buffer);
+        } catch (IOException e) {
+            // 单播扫描时没有设备的地址会返回ICMP端口不可达
+            return null;
+        }
+    }
+
+    private static void handle(ByteBuffer buffer, InetSocketAddress source, Set<String> messageIds, Map<String, DiscoveredDevice> found,
+                               Consumer<DiscoveredDevice> listener) {
+        buffer.flip();
+        WsDiscoveryMessage message;
+        try {
+            message = WsDiscoveryMessage.parse(buffer.array(), buffer.limit(), source);
+        } catch (Exception e) {
+            log.debug("Bad discovery response from {} : {}", source, e.getMessage());
+            return;
+        }
+        if (message.getType() != WsDiscoveryMessage.Type.PROBE_MATCHES
+                || (message.getRelatesTo() != null && !messageIds.contains(message.getRelatesTo()))) {
+            return;
+        }
+        for (DiscoveredDevice device : message.getDevices()) {
+            // 同一个设备会从多个网卡、组播与单播各回复一次
+            if (found.putIfAbsent(device.getEndpoint(), device) == null && listener != null) {
+                try {
+                    listener.accept(device);
+                } catch (Exception e) {
+                    log.warn("Discovery listener failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @Description 所有非回环、已启用网卡的IPv4地址
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param
+     * @return java.util.List<java.net.InterfaceAddress>
+     */
+    public static List<InterfaceAddress> findInterfaceAddresses() {
+        List<InterfaceAddress> addressList = new ArrayList<>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            if (interfaces != null) {
+                while (interfaces.hasMoreElements()) {
+                    NetworkInterface anInterface = interfaces.nextElement();
+                    if (!anInterface.isLoopback() && anInterface.isUp()) {
+                        for (InterfaceAddress address : anInterface.getInterfaceAddresses()) {
+                            if (address.getAddress() instanceof Inet4Address) {
+                                addressList.add(address);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+        return addressList;
+    }
+
+    private static List<InetSocketAddress> subnetHosts(InterfaceAddress address) {
+        short prefix = address.getNetworkPrefixLength();
+        if (prefix < MIN_SCAN_PREFIX || prefix > 30) {
+            return Collections.emptyList();
+        }
+        byte[] bytes = address.getAddress().getAddress();
+        int ip = ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+        int mask = -1 << (32 - prefix);
+        int network = ip & mask;
+        int size = 1 << (32 - prefix);
+        List<InetSocketAddress> hosts = new ArrayList<>(size);
+        // 跳过网络地址与广播地址
+        for (int i = 1; i < size - 1; i++) {
+            int host = network + i;
+            if (host == ip) {
+                continue;
+            }
+            try {
+                hosts.add(new InetSocketAddress(InetAddress.getByAddress(new byte[]{(byte) (host >>> 24), (byte) (host >>> 16), (byte) (host >>> 8), (byte) host}),
+                        WS_DISCOVERY_PORT));
+            } catch (UnknownHostException ignored) {
+            }
+        }
+        return hosts;
+    }
+}
@@ -0,0 +1,142 @@
+package cn.edu.bupt.discovery;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Description: WsDiscoveryMessage，一个WS-Discovery报文(ProbeMatches/Hello/Bye)。
+ * 使用StAX按元素的local name解析，只取需要的字段，不构建SOAPMessage与DOM，也兼容2005/04与1.1两个版本的命名空间
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:09
+ * @Version: 1.0
+ */
+public class WsDiscoveryMessage {
+
+    public enum Type {
+        PROBE_MATCHES, HELLO, BYE, OTHER
+    }
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final Type type;
+
+    private final String relatesTo;
+
+    private final List<DiscoveredDevice> devices;
+
+    private WsDiscoveryMessage(Type type, String relatesTo, List<DiscoveredDevice> devices) {
+        this.type = type;
+        this.relatesTo = relatesTo;
+        this.devices = devices;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * ProbeMatches对应的Probe的MessageID
+     */
+    public String getRelatesTo() {
+        return relatesTo;
+    }
+
+    public List<DiscoveredDevice> getDevices() {
+        return devices;
+    }
+
+    /**
+     * @Description 解析一个UDP报文
+     * @author czx
+     * @date 2026-10-19 17:09
+     * @param data
+     * @param length
+     * @param source 发送方地址
+     * @return cn.edu.bupt.discovery.WsDiscoveryMessage
+     */
+    public static WsDiscoveryMessage parse(byte[] data, int length, InetSocketAddress source) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(data, 0, length));
+        try {
+            Type type = Type.OTHER;
+            String relatesTo = null;
+            List<DiscoveredDevice> devices = new ArrayList<>(1);
+
+            String endpoint = null;
+            List<String> xAddrs = Collections.emptyList();
+            List<String> scopes = Collections.emptyList();
+            String types = null;
+            long metadataVersion = 0;
+            boolean inBody = false;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("Body".equals(name)) {
+                        inBody = true;
+                    } else if (!inBody) {
+                        if ("RelatesTo".equals(name)) {
+                            relatesTo = reader.getElementText().trim();
+                        }
+                    } else if ("ProbeMatches".equals(name)) {
+                        type = Type.PROBE_MATCHES;
+                    } else if ("Hello".equals(name)) {
+                        type = Type.HELLO;
+                    } else if ("Bye".equals(name)) {
+                        type = Type.BYE;
+                    } else if ("Address".equals(name)) {
+                        endpoint = reader.getElementText().trim();
+                    } else if ("XAddrs".equals(name)) {
+                        xAddrs = split(reader.getElementText());
+                    } else if ("Scopes".equals(name)) {
+                        scopes = split(reader.getElementText());
+                    } else if ("Types".equals(name)) {
+                        types = reader.getElementText().trim();
+                    } else if ("MetadataVersion".equals(name)) {
+                        try {
+                            metadataVersion = Long.parseLong(reader.getElementText().trim());
+                        } catch (NumberFormatException e) {
+                            metadataVersion = 0;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inBody) {
+                    String name = reader.getLocalName();
+                    // 一个ProbeMatches中可能有多个ProbeMatch
+                    if (endpoint != null && ("ProbeMatch".equals(name) || "Hello".equals(name) || "Bye".equals(name))) {
+                        devices.add(new DiscoveredDevice(endpoint, xAddrs, scopes, types, metadataVersion, source));
+                        endpoint = null;
+                        xAddrs = Collections.emptyList();
+                        scopes = Collections.emptyList();
+                        types = null;
+                        metadataVersion = 0;
+                    }
+                }
+            }
+            return new WsDiscoveryMessage(type, relatesTo, devices);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<String> split(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(trimmed.split("\\s+"));
+    }
+}
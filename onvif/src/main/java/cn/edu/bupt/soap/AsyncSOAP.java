@@ -0,0 +1,386 @@
+package cn.edu.bupt.soap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.onvif.ver10.device.wsdl.GetCapabilities;
+import org.onvif.ver10.device.wsdl.GetCapabilitiesResponse;
+import org.onvif.ver10.device.wsdl.GetSystemDateAndTime;
+import org.onvif.ver10.device.wsdl.GetSystemDateAndTimeResponse;
+import org.onvif.ver10.media.wsdl.*;
+import org.onvif.ver10.schema.Capabilities;
+import org.onvif.ver10.schema.DateTime;
+import org.onvif.ver10.schema.PTZSpeed;
+import org.onvif.ver10.schema.Profile;
+import org.onvif.ver10.schema.StreamSetup;
+import org.onvif.ver10.schema.StreamType;
+import org.onvif.ver10.schema.Transport;
+import org.onvif.ver10.schema.TransportProtocol;
+import org.onvif.ver10.schema.Vector1D;
+import org.onvif.ver10.schema.Vector2D;
+import org.onvif.ver20.ptz.wsdl.ContinuousMove;
+import org.onvif.ver20.ptz.wsdl.ContinuousMoveResponse;
+import org.onvif.ver20.ptz.wsdl.Stop;
+import org.onvif.ver20.ptz.wsdl.StopResponse;
+
+import org.w3c.dom.Element;
+
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * @Description: AsyncSOAP，SOAP的异步版本，所有请求立即返回CompletableFuture。
+ * 网络IO在Netty的IO线程中完成，响应的反序列化在单独的解析线程池中完成，回调不会占用IO线程。
+ * 设备的创建也不再阻塞：new OnvifDevice(host, user, password, false, false)之后调用connect()
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:04
+ * @Version: 1.0
+ */
+@Slf4j
+public class AsyncSOAP {
+
+	private static final int MAX_CONNECTIONS_PER_DEVICE = 2;
+
+	private static final long TIMEOUT_MILLIS = 10000L;
+
+	private static final String WSA_NAMESPACE = "http://www.w3.org/2005/08/addressing";
+
+	private static volatile AsyncSOAP instance;
+
+	private final NettySoapClient client;
+
+	private final ExecutorService parser;
+
+	public AsyncSOAP(int ioThreads, int maxConnectionsPerDevice, long timeoutMillis) {
+		this.client = new NettySoapClient(ioThreads, maxConnectionsPerDevice, timeoutMillis);
+		int parsers = Runtime.getRuntime().availableProcessors();
+		this.parser = new ThreadPoolExecutor(parsers, parsers, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				new BasicThreadFactory.Builder().namingPattern("OnvifParser-%d").daemon(true).build());
+	}
+
+	/**
+	 * @Description 全局实例，每个设备最多2个并发请求，超时10s
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param
+	 * @return cn.edu.bupt.soap.AsyncSOAP
+	 */
+	public static AsyncSOAP getInstance() {
+		if (instance == null) {
+			synchronized (AsyncSOAP.class) {
+				if (instance == null) {
+					instance = new AsyncSOAP(0, MAX_CONNECTIONS_PER_DEVICE, TIMEOUT_MILLIS);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @Description 发送一个SOAP请求
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param device
+	 * @param soapRequestElem 请求对象
+	 * @param responseType 响应对象的类型
+	 * @param soapUri 服务地址
+	 * @return java.util.concurrent.CompletableFuture<T> 设备返回SOAP Fault时以SOAPFaultResponse结束
+	 */
+	public <T> CompletableFuture<T> request(OnvifDevice device, Object soapRequestElem, Class<T> responseType, String soapUri) {
+		return request(device, soapRequestElem, responseType, soapUri, null, Collections.emptyList());
+	}
+
+	/**
+	 * @Description 带WS-Addressing头的请求，订阅管理器(PullMessages、Renew、Unsubscribe)一般要求Action与To，
+	 * 部分设备还要求原样带回订阅地址中的ReferenceParameters
+	 * @author czx
+	 * @date 2026-10-19 17:25
+	 * @param device
+	 * @param soapRequestElem
+	 * @param responseType
+	 * @param soapUri
+	 * @param action wsa:Action，为null时不加WS-Addressing头
+	 * @param referenceParameters 需要作为头部带回的元素
+	 * @return java.util.concurrent.CompletableFuture<T>
+	 */
+	public <T> CompletableFuture<T> request(OnvifDevice device, Object soapRequestElem, Class<T> responseType, String soapUri,
+			String action, List<Element> referenceParameters) {
+		if (soapUri == null) {
+			return failed(new SOAPException("Service uri is null, the device may not support this service."));
+		}
+		byte[] body;
+		String contentType;
+		try {
+			SOAPMessage message;
+			// 鉴权头使用设备对象中的nonce与时间，同一设备的并发请求需要串行生成
+			synchronized (device) {
+				message = device.getSoap().createSoapMessage(soapRequestElem, true);
+			}
+			if (action != null) {
+				addAddressingHeaders(message, soapUri, action, referenceParameters);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+			message.writeTo(out);
+			body = out.toByteArray();
+			String[] types = message.getMimeHeaders().getHeader("Content-Type");
+			contentType = types == null || types.length == 0 ? "application/soap+xml; charset=utf-8" : types[0];
+		}
+		catch (Exception e) {
+			return failed(e);
+		}
+		return client.post(soapUri, contentType, body).thenApplyAsync(response -> {
+			String type = response.getContentType();
+			if (type == null || !type.contains("xml")) {
+				throw new CompletionException(new SOAPException("Bad response: HTTP " + response.getStatus()));
+			}
+			try {
+				return StaxResponseReader.read(new ByteArrayInputStream(response.getContent()), responseType);
+			}
+			catch (SOAPException e) {
+				throw new CompletionException(e);
+			}
+		}, parser);
+	}
+
+	private static void addAddressingHeaders(SOAPMessage message, String to, String action, List<Element> referenceParameters) throws SOAPException {
+		message.getSOAPPart().getEnvelope().addNamespaceDeclaration("wsa", WSA_NAMESPACE);
+		SOAPHeader header = message.getSOAPHeader();
+		header.addChildElement("Action", "wsa").setTextContent(action);
+		header.addChildElement("MessageID", "wsa").setTextContent("urn:uuid:" + UUID.randomUUID());
+		header.addChildElement("To", "wsa").setTextContent(to);
+		for (Element parameter : referenceParameters) {
+			Element imported = (Element) header.getOwnerDocument().importNode(parameter, true);
+			imported.setAttributeNS(WSA_NAMESPACE, "wsa:IsReferenceParameter", "true");
+			header.appendChild(imported);
+		}
+		message.saveChanges();
+	}
+
+	public <T> CompletableFuture<T> device(OnvifDevice device, Object soapRequestElem, Class<T> responseType) {
+		return request(device, soapRequestElem, responseType, device.getDeviceUri());
+	}
+
+	public <T> CompletableFuture<T> media(OnvifDevice device, Object soapRequestElem, Class<T> responseType) {
+		return request(device, soapRequestElem, responseType, device.getMediaUri());
+	}
+
+	public <T> CompletableFuture<T> ptz(OnvifDevice device, Object soapRequestElem, Class<T> responseType) {
+		return request(device, soapRequestElem, responseType, device.getPtzUri());
+	}
+
+	public <T> CompletableFuture<T> imaging(OnvifDevice device, Object soapRequestElem, Class<T> responseType) {
+		return request(device, soapRequestElem, responseType, device.getImagingUri());
+	}
+
+	public <T> CompletableFuture<T> events(OnvifDevice device, Object soapRequestElem, Class<T> responseType) {
+		return request(device, soapRequestElem, responseType, device.getEventsUri());
+	}
+
+	/**
+	 * @Description 通过GetCapabilities获取设备的各个服务地址，相当于同步构造函数中的init()
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param device 以connect=false创建的设备
+	 * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.soap.OnvifDevice>
+	 */
+	public CompletableFuture<OnvifDevice> connect(OnvifDevice device) {
+		return getCapabilities(device).thenApply(capabilities -> {
+			device.applyCapabilities(capabilities);
+			return device;
+		});
+	}
+
+	/**
+	 * @Description 只获取设备的Capabilities，不修改设备对象，供需要缓存服务地址的调用方使用
+	 * @author czx
+	 * @date 2026-10-19 17:14
+	 * @param device
+	 * @return java.util.concurrent.CompletableFuture<org.onvif.ver10.schema.Capabilities>
+	 */
+	public CompletableFuture<Capabilities> getCapabilities(OnvifDevice device) {
+		return device(device, new GetCapabilities(), GetCapabilitiesResponse.class).thenApply(response -> {
+			if (response.getCapabilities() == null) {
+				throw new CompletionException(new ConnectException("Capabilities not reachable."));
+			}
+			return response.getCapabilities();
+		});
+	}
+
+	public CompletableFuture<OnvifDevice> connect(String hostIp, String user, String password) {
+		try {
+			return connect(new OnvifDevice(hostIp, user, password, false, false));
+		}
+		catch (ConnectException | SOAPException e) {
+			// connect=false时不会抛出
+			return failed(e);
+		}
+	}
+
+	/**
+	 * @Description 设备的UTC时间(GetSystemDateAndTime)，按照ONVIF规范设备应允许匿名访问该接口
+	 * @author czx
+	 * @date 2026-10-19 17:20
+	 * @param device
+	 * @return java.util.concurrent.CompletableFuture<java.util.Date>
+	 */
+	public CompletableFuture<Date> getDate(OnvifDevice device) {
+		return device(device, new GetSystemDateAndTime(), GetSystemDateAndTimeResponse.class).thenApply(response -> {
+			if (response.getSystemDateAndTime() == null || response.getSystemDateAndTime().getUTCDateTime() == null) {
+				throw new CompletionException(new SOAPException("No UTC time from " + device.getDeviceUri()));
+			}
+			DateTime utc = response.getSystemDateAndTime().getUTCDateTime();
+			Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+			calendar.clear();
+			calendar.set(utc.getDate().getYear(), utc.getDate().getMonth() - 1, utc.getDate().getDay(),
+					utc.getTime().getHour(), utc.getTime().getMinute(), utc.getTime().getSecond());
+			return calendar.getTime();
+		});
+	}
+
+	public CompletableFuture<List<Profile>> getProfiles(OnvifDevice device) {
+		return media(device, new GetProfiles(), GetProfilesResponse.class).thenApply(GetProfilesResponse::getProfiles);
+	}
+
+	public CompletableFuture<String> getStreamUri(OnvifDevice device, String profileToken, StreamSetup streamSetup) {
+		GetStreamUri request = new GetStreamUri();
+		request.setProfileToken(profileToken);
+		request.setStreamSetup(streamSetup);
+		return media(device, request, GetStreamUriResponse.class)
+				.thenApply(response -> device.replaceLocalIpWithProxyIp(response.getMediaUri().getUri()));
+	}
+
+	/**
+	 * @Description 与MediaDevices.getRTSPStreamUri相同，RTP over RTSP/TCP
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param device
+	 * @param profileToken
+	 * @return java.util.concurrent.CompletableFuture<java.lang.String>
+	 */
+	public CompletableFuture<String> getRTSPStreamUri(OnvifDevice device, String profileToken) {
+		StreamSetup setup = new StreamSetup();
+		setup.setStream(StreamType.RTP_UNICAST);
+		Transport transport = new Transport();
+		transport.setProtocol(TransportProtocol.TCP);
+		setup.setTransport(transport);
+		return getStreamUri(device, profileToken, setup);
+	}
+
+	/**
+	 * 第一个profile（通常是主码流）的RTSP地址
+	 */
+	public CompletableFuture<String> getRTSPStreamUri(OnvifDevice device) {
+		return getProfiles(device).thenCompose(profiles -> {
+			if (profiles == null || profiles.isEmpty()) {
+				return failed(new SOAPException("No media profile on " + device.getDeviceUri()));
+			}
+			return getRTSPStreamUri(device, profiles.get(0).getToken());
+		});
+	}
+
+	public CompletableFuture<ContinuousMoveResponse> continuousMove(OnvifDevice device, String profileToken, float x, float y, float zoom) {
+		ContinuousMove request = new ContinuousMove();
+		Vector2D panTiltVector = new Vector2D();
+		panTiltVector.setX(x);
+		panTiltVector.setY(y);
+		Vector1D zoomVector = new Vector1D();
+		zoomVector.setX(zoom);
+		PTZSpeed ptzSpeed = new PTZSpeed();
+		ptzSpeed.setPanTilt(panTiltVector);
+		ptzSpeed.setZoom(zoomVector);
+		request.setVelocity(ptzSpeed);
+		request.setProfileToken(profileToken);
+		return ptz(device, request, ContinuousMoveResponse.class);
+	}
+
+	public CompletableFuture<StopResponse> stopMove(OnvifDevice device, String profileToken) {
+		Stop request = new Stop();
+		request.setPanTilt(true);
+		request.setZoom(true);
+		request.setProfileToken(profileToken);
+		return ptz(device, request, StopResponse.class);
+	}
+
+	/**
+	 * @Description 并发连接一批设备，连接失败的设备不在结果中
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param hosts host -> [user, password]
+	 * @return java.util.concurrent.CompletableFuture<java.util.Map<java.lang.String,cn.edu.bupt.soap.OnvifDevice>>
+	 */
+	public CompletableFuture<Map<String,OnvifDevice>> connectAll(Map<String,String[]> hosts) {
+		Map<String,CompletableFuture<OnvifDevice>> futures = new LinkedHashMap<>();
+		for (Map.Entry<String,String[]> host : hosts.entrySet()) {
+			futures.put(host.getKey(), connect(host.getKey(), host.getValue()[0], host.getValue()[1]));
+		}
+		return collect(futures);
+	}
+
+	/**
+	 * @Description 并发获取所有设备第一个profile的RTSP地址，失败的设备不在结果中
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param devices
+	 * @return java.util.concurrent.CompletableFuture<java.util.Map<cn.edu.bupt.soap.OnvifDevice,java.lang.String>>
+	 */
+	public CompletableFuture<Map<OnvifDevice,String>> getRTSPStreamUris(Collection<OnvifDevice> devices) {
+		return forAll(devices, this::getRTSPStreamUri);
+	}
+
+	/**
+	 * @Description 对每个设备执行同一个异步操作，全部完成（成功或失败）后返回成功的结果
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param devices
+	 * @param operation
+	 * @return java.util.concurrent.CompletableFuture<java.util.Map<cn.edu.bupt.soap.OnvifDevice,R>>
+	 */
+	public <R> CompletableFuture<Map<OnvifDevice,R>> forAll(Collection<OnvifDevice> devices, Function<OnvifDevice,CompletableFuture<R>> operation) {
+		Map<OnvifDevice,CompletableFuture<R>> futures = new LinkedHashMap<>();
+		for (OnvifDevice device : devices) {
+			futures.put(device, operation.apply(device));
+		}
+		return collect(futures);
+	}
+
+	public void close() {
+		client.close();
+		parser.shutdown();
+	}
+
+	private static <K, R> CompletableFuture<Map<K,R>> collect(Map<K,CompletableFuture<R>> futures) {
+		CompletableFuture<?>[] all = new CompletableFuture<?>[futures.size()];
+		int i = 0;
+		for (CompletableFuture<R> future : futures.values()) {
+			// 单个失败不影响其他设备
+			all[i++] = future.handle((r, e) -> null);
+		}
+		return CompletableFuture.allOf(all).thenApply(v -> {
+			Map<K,R> results = new LinkedHashMap<>();
+			for (Map.Entry<K,CompletableFuture<R>> entry : futures.entrySet()) {
+				CompletableFuture<R> future = entry.getValue();
+				if (!future.isCompletedExceptionally()) {
+					results.put(entry.getKey(), future.join());
+				}
+				else {
+					Object key = entry.getKey() instanceof OnvifDevice ? ((OnvifDevice) entry.getKey()).getDeviceUri() : entry.getKey();
+					future.whenComplete((r, e) -> log.warn("Onvif request to {} failed: {}", key, e.getMessage()));
+				}
+			}
+			return results;
+		});
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+}
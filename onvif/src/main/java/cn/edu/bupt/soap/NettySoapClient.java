@@ -0,0 +1,189 @@
+package cn.edu.bupt.soap;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.*;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @Description: NettySoapClient，非阻塞的HTTP客户端。
+ * 每个设备(host:port)一个FixedChannelPool，连接数即该设备的并发上限，超出的请求在池中排队；连接保持keep-alive复用。
+ * 每个请求有一个总的超时时间，包括排队、建立连接与等待响应
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:04
+ * @Version: 1.0
+ */
+@Slf4j
+public class NettySoapClient {
+
+	private static final AttributeKey<CompletableFuture<SoapHttpResponse>> PENDING = AttributeKey.valueOf("soapPending");
+
+	private static final int MAX_CONTENT_LENGTH = 8 * 1024 * 1024;
+
+	private static final int MAX_PENDING_PER_DEVICE = 256;
+
+	private final NioEventLoopGroup group;
+
+	private final AbstractChannelPoolMap<InetSocketAddress,FixedChannelPool> pools;
+
+	private final long timeoutMillis;
+
+	/**
+	 * @param ioThreads IO线程数
+	 * @param maxConnectionsPerDevice 每个设备的最大并发请求数，大部分摄像头同时处理的请求数很少
+	 * @param timeoutMillis 单个请求的超时时间
+	 */
+	public NettySoapClient(int ioThreads, final int maxConnectionsPerDevice, long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		this.group = new NioEventLoopGroup(ioThreads, new BasicThreadFactory.Builder().namingPattern("OnvifIO-%d").daemon(true).build());
+		final Bootstrap bootstrap = new Bootstrap()
+				.group(group)
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.option(ChannelOption.SO_KEEPALIVE, true)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(timeoutMillis, 5000));
+		this.pools = new AbstractChannelPoolMap<InetSocketAddress,FixedChannelPool>() {
+			@Override
+			protected FixedChannelPool newPool(InetSocketAddress key) {
+				return new FixedChannelPool(bootstrap.clone().remoteAddress(key), new SoapChannelPoolHandler(), ChannelHealthChecker.ACTIVE,
+						null, -1, maxConnectionsPerDevice, MAX_PENDING_PER_DEVICE);
+			}
+		};
+	}
+
+	/**
+	 * @Description 发送一个POST请求，响应在IO线程中完成
+	 * @author czx
+	 * @date 2026-10-19 17:04
+	 * @param uri 服务地址
+	 * @param contentType
+	 * @param body
+	 * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.soap.SoapHttpResponse>
+	 */
+	public CompletableFuture<SoapHttpResponse> post(String uri, String contentType, byte[] body) {
+		final CompletableFuture<SoapHttpResponse> future = new CompletableFuture<>();
+		final URI target;
+		try {
+			target = URI.create(uri);
+		}
+		catch (IllegalArgumentException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		int port = target.getPort() == -1 ? 80 : target.getPort();
+		final FixedChannelPool pool = pools.get(InetSocketAddress.createUnresolved(target.getHost(), port));
+
+		final ScheduledFuture<?> timeout = group.next().schedule(() -> {
+			future.completeExceptionally(new TimeoutException("No response from " + uri + " in " + timeoutMillis + "ms"));
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+		future.whenComplete((r, e) -> timeout.cancel(false));
+
+		pool.acquire().addListener((io.netty.util.concurrent.Future<Channel> acquired) -> {
+			if (!acquired.isSuccess()) {
+				future.completeExceptionally(new ConnectException(uri + ": " + acquired.cause().getMessage()));
+				return;
+			}
+			final Channel channel = acquired.getNow();
+			if (future.isDone()) {
+				// 排队期间已经超时
+				pool.release(channel);
+				return;
+			}
+			channel.attr(PENDING).set(future);
+			future.whenComplete((r, e) -> {
+				if (e != null) {
+					// 超时或出错的连接上可能还会收到迟到的响应，不再复用
+					channel.close();
+				}
+				if (channel.attr(PENDING).compareAndSet(future, null) || e != null) {
+					pool.release(channel);
+				}
+			});
+
+			String path = target.getRawPath() == null || target.getRawPath().isEmpty() ? "/" : target.getRawPath();
+			if (target.getRawQuery() != null) {
+				path += "?" + target.getRawQuery();
+			}
+			ByteBuf content = Unpooled.wrappedBuffer(body);
+			FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path, content);
+			request.headers().set(HttpHeaderNames.HOST, port == 80 ? target.getHost() : target.getHost() + ":" + port);
+			request.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+			request.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+			request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+			channel.writeAndFlush(request).addListener((ChannelFutureListener) written -> {
+				if (!written.isSuccess()) {
+					future.completeExceptionally(new ConnectException(uri + ": " + written.cause().getMessage()));
+				}
+			});
+		});
+		return future;
+	}
+
+	public void close() {
+		pools.close();
+		group.shutdownGracefully(100, 2000, TimeUnit.MILLISECONDS);
+	}
+
+	private static class SoapChannelPoolHandler extends AbstractChannelPoolHandler {
+		@Override
+		public void channelCreated(Channel ch) {
+			ch.pipeline().addLast(new HttpClientCodec());
+			ch.pipeline().addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+			ch.pipeline().addLast(new SoapResponseHandler());
+		}
+	}
+
+	private static class SoapResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) {
+			CompletableFuture<SoapHttpResponse> future = ctx.channel().attr(PENDING).get();
+			if (future == null) {
+				return;
+			}
+			byte[] content = new byte[msg.content().readableBytes()];
+			msg.content().readBytes(content);
+			future.complete(new SoapHttpResponse(msg.status().code(), msg.headers().get(HttpHeaderNames.CONTENT_TYPE), content));
+			if (!HttpUtil.isKeepAlive(msg)) {
+				// 连接已经放回连接池，下次获取时健康检查会丢弃这个连接
+				ctx.close();
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			CompletableFuture<SoapHttpResponse> future = ctx.channel().attr(PENDING).get();
+			if (future != null) {
+				future.completeExceptionally(new ConnectException("Connection closed by " + ctx.channel().remoteAddress()));
+			}
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			CompletableFuture<SoapHttpResponse> future = ctx.channel().attr(PENDING).get();
+			if (future != null) {
+				future.completeExceptionally(cause);
+			}
+			else {
+				log.debug("Onvif channel error: {}", cause.getMessage());
+			}
+			ctx.close();
+		}
+	}
+}
@@ -38,6 +38,12 @@ public class OnvifDevice {
 
 	private SOAP soap;
 
+	/**
+	 * Device clock minus local clock in milliseconds, used for the
+	 * WS-UsernameToken timestamp, see {@link OnvifSessionPool}.
+	 */
+	private volatile long timeOffset;
+
 	private InitialDevices initialDevices;
 	private PtzDevices ptzDevices;
 	private MediaDevices mediaDevices;
@@ -64,13 +70,21 @@ public class OnvifDevice {
 	}
 
 	public OnvifDevice(String hostIp, String user, String password,boolean isLogging) throws ConnectException, SOAPException {
+		this(hostIp, user, password, isLogging, true);
+	}
 
+	/**
+	 * Initializes an Onvif device.
+	 * 
+	 * @param connect
+	 *            If false, no network access happens here and the service
+	 *            addresses stay unknown until
+	 *            {@link #applyCapabilities(Capabilities)} is called, e.g. by
+	 *            {@link AsyncSOAP#connect(OnvifDevice)}
+	 */
+	public OnvifDevice(String hostIp, String user, String password, boolean isLogging, boolean connect) throws ConnectException, SOAPException {
 		this.HOST_IP = hostIp;
 
-		if (!isOnline()) {
-			throw new ConnectException("Host not available.");
-		}
-
 		this.serverDeviceUri = "http://" + HOST_IP + "/onvif/device_service";
 
 		this.username = user;
@@ -83,7 +97,13 @@ public class OnvifDevice {
 		this.mediaDevices = new MediaDevices(this);
 		this.imagingDevices = new ImagingDevices(this);
 
-		init();
+		if (connect) {
+			if (!isOnline()) {
+				throw new ConnectException("Host not available.");
+			}
+
+			init();
+		}
 	}
 
 	/**
@@ -148,6 +168,14 @@ public class OnvifDevice {
 			throw new ConnectException("Capabilities not reachable.");
 		}
 
+		applyCapabilities(capabilities);
+	}
+
+	/**
+	 * Sets the service addresses from a GetCapabilities answer, either a
+	 * fresh one or one restored from the device inventory.
+	 */
+	public void applyCapabilities(Capabilities capabilities) {
 		String localDeviceUri = capabilities.getDevice().getXAddr();
 
 		if (localDeviceUri.startsWith("http://")) {
@@ -174,7 +202,7 @@ public class OnvifDevice {
 			serverImagingUri = replaceLocalIpWithProxyIp(capabilities.getImaging().getXAddr());
 		}
 
-		if (capabilities.getMedia() != null && capabilities.getEvents().getXAddr() != null) {
+		if (capabilities.getEvents() != null && capabilities.getEvents().getXAddr() != null) {
 			serverEventsUri = replaceLocalIpWithProxyIp(capabilities.getEvents().getXAddr());
 		}
 	}
@@ -254,15 +282,26 @@ public class OnvifDevice {
 	}
 
 	public String getUTCTime() {
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-d'T'HH:mm:ss'Z'");
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 		sdf.setTimeZone(new SimpleTimeZone(SimpleTimeZone.UTC_TIME, "UTC"));
 
-		Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-		String utcTime = sdf.format(cal.getTime());
+		String utcTime = sdf.format(new Date(System.currentTimeMillis() + timeOffset));
 		this.utcTime = utcTime;
 		return utcTime;
 	}
 
+	public long getTimeOffset() {
+		return timeOffset;
+	}
+
+	/**
+	 * Sets the difference between the device clock and the local clock, so
+	 * that devices with a wrong clock still accept the WS-UsernameToken.
+	 */
+	public void setTimeOffset(long timeOffset) {
+		this.timeOffset = timeOffset;
+	}
+
 	public SOAP getSoap() {
 		return soap;
 	}
@@ -313,7 +352,10 @@ public class OnvifDevice {
 		return serverImagingUri;
 	}
 
-	protected String getEventsUri() {
+	/**
+	 * Address of the event service, null if the device has none.
+	 */
+	public String getEventsUri() {
 		return serverEventsUri;
 	}
 	
@@ -0,0 +1,263 @@
+package cn.edu.bupt.soap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import javax.xml.soap.SOAPException;
+import java.net.ConnectException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * @Description: OnvifSessionPool，按(host, user, 密码摘要)复用已经初始化的OnvifDevice，密码错误的请求不会替换其他调用方正在使用的会话。
+ * 第一次使用时先用GetSystemDateAndTime校准WS-Security时间戳的时钟偏差，再获取服务地址，之后同一摄像头上的每个操作只需要一次SOAP请求；
+ * 时钟偏差定期重新校准，空闲的会话定期清除，会话数量有上限，超出时淘汰最久没有使用的会话
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:33
+ * @Version: 1.0
+ */
+@Slf4j
+public class OnvifSessionPool {
+
+	private static final int MAX_SESSIONS = 256;
+
+	private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final long OFFSET_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+	private static volatile OnvifSessionPool instance;
+
+	private final AsyncSOAP soap;
+
+	private final int maxSessions;
+
+	private final long idleMillis;
+
+	/**
+	 * 按访问顺序排列，最久没有使用的在最前
+	 */
+	private final LinkedHashMap<String,Session> sessions;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+			new BasicThreadFactory.Builder().namingPattern("OnvifSession-%d").daemon(true).build());
+
+	public OnvifSessionPool(AsyncSOAP soap, int maxSessions, long idleMillis) {
+		this.soap = soap;
+		this.maxSessions = maxSessions;
+		this.idleMillis = idleMillis;
+		this.sessions = new LinkedHashMap<String,Session>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Session> eldest) {
+				return size() > OnvifSessionPool.this.maxSessions;
+			}
+		};
+		long period = Math.max(idleMillis / 4, 1000);
+		scheduler.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @Description 全局实例，最多256个会话，空闲10分钟清除
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param
+	 * @return cn.edu.bupt.soap.OnvifSessionPool
+	 */
+	public static OnvifSessionPool getInstance() {
+		if (instance == null) {
+			synchronized (OnvifSessionPool.class) {
+				if (instance == null) {
+					instance = new OnvifSessionPool(AsyncSOAP.getInstance(), MAX_SESSIONS, IDLE_MILLIS);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @Description 获取会话，没有时通过GetCapabilities初始化
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host ip[:port]
+	 * @param user
+	 * @param password
+	 * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.soap.OnvifDevice>
+	 */
+	public CompletableFuture<OnvifDevice> acquire(String host, String user, String password) {
+		return acquire(host, user, password, soap::connect);
+	}
+
+	/**
+	 * @Description 获取会话，没有时由initializer设置服务地址，例如使用设备清单中缓存的Capabilities
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host
+	 * @param user
+	 * @param password
+	 * @param initializer 对以connect=false创建的设备设置服务地址
+	 * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.soap.OnvifDevice>
+	 */
+	public CompletableFuture<OnvifDevice> acquire(String host, String user, String password,
+			Function<OnvifDevice,CompletableFuture<OnvifDevice>> initializer) {
+		String key = key(host, user, password);
+		long now = System.currentTimeMillis();
+		Session session;
+		synchronized (sessions) {
+			session = sessions.get(key);
+			if (session == null) {
+				session = new Session(key, password);
+				sessions.put(key, session);
+				session.start(host, user, initializer);
+			}
+			session.lastUsed = now;
+		}
+		if (session.device.isDone() && !session.device.isCompletedExceptionally()
+				&& now - session.offsetRefreshedAt >= OFFSET_REFRESH_MILLIS) {
+			// 后台校准，不阻塞本次请求
+			session.offsetRefreshedAt = now;
+			refreshOffset(session.device.join()).exceptionally(e -> null);
+		}
+		return session.device;
+	}
+
+	/**
+	 * @Description acquire的同步版本，供使用同步SOAP接口(PtzDevices、MediaDevices等)的调用方
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host
+	 * @param user
+	 * @param password
+	 * @return cn.edu.bupt.soap.OnvifDevice
+	 */
+	public OnvifDevice get(String host, String user, String password) throws ConnectException, SOAPException {
+		try {
+			return acquire(host, user, password).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConnectException("Interrupted while connecting to " + host);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SOAPException) {
+				throw (SOAPException) cause;
+			}
+			ConnectException exception = new ConnectException(host + ": " + cause.getMessage());
+			exception.initCause(cause);
+			throw exception;
+		}
+	}
+
+	/**
+	 * @Description 丢弃某个设备上的所有会话，例如设备重启、地址变化或者请求失败时
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host
+	 * @return void
+	 */
+	public void invalidate(String host) {
+		String prefix = host + "\n";
+		synchronized (sessions) {
+			sessions.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	public int size() {
+		synchronized (sessions) {
+			return sessions.size();
+		}
+	}
+
+	public void close() {
+		scheduler.shutdown();
+		synchronized (sessions) {
+			sessions.clear();
+		}
+	}
+
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		synchronized (sessions) {
+			Iterator<Session> iterator = sessions.values().iterator();
+			while (iterator.hasNext()) {
+				Session session = iterator.next();
+				if (now - session.lastUsed > idleMillis) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	private CompletableFuture<Void> refreshOffset(OnvifDevice device) {
+		long sent = System.currentTimeMillis();
+		return soap.getDate(device).handle((date, e) -> {
+			if (e != null) {
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				if (!(cause instanceof SOAPException)) {
+					// 设备不可达，不必再等待后续请求超时
+					throw new CompletionException(cause);
+				}
+				// 不支持或者不允许匿名访问时保持原来的偏差
+				log.debug("Cannot get time of {} : {}", device.getDeviceUri(), cause.getMessage());
+				return null;
+			}
+			long received = System.currentTimeMillis();
+			// 设备时间只精确到秒，取请求往返的中点作为本地时间
+			device.setTimeOffset(date.getTime() - (sent + received) / 2);
+			return null;
+		});
+	}
+
+	private void remove(Session session) {
+		synchronized (sessions) {
+			sessions.remove(session.key, session);
+		}
+	}
+
+	private static String key(String host, String user, String password) {
+		// 只保存密码的摘要，不同密码各自是独立的会话，初始化失败的会话会被移除
+		return host + "\n" + (user == null ? "" : user) + "\n" + DigestUtils.sha256Hex(password == null ? "" : password);
+	}
+
+	private class Session {
+
+		private final String key;
+
+		private final String password;
+
+		private CompletableFuture<OnvifDevice> device;
+
+		private volatile long lastUsed;
+
+		private volatile long offsetRefreshedAt;
+
+		Session(String key, String password) {
+			this.key = key;
+			this.password = password == null ? "" : password;
+		}
+
+		void start(String host, String user, Function<OnvifDevice,CompletableFuture<OnvifDevice>> initializer) {
+			OnvifDevice onvifDevice;
+			try {
+				onvifDevice = new OnvifDevice(host, user, password, false, false);
+			}
+			catch (ConnectException | SOAPException e) {
+				// connect=false时不会抛出
+				device = new CompletableFuture<>();
+				device.completeExceptionally(e);
+				return;
+			}
+			offsetRefreshedAt = System.currentTimeMillis();
+			// 先校准时间，之后需要鉴权的请求才不会因为时间戳被拒绝
+			device = refreshOffset(onvifDevice).thenCompose(v -> initializer.apply(onvifDevice));
+			device.whenComplete((d, e) -> {
+				if (e != null) {
+					remove(this);
+				}
+			});
+		}
+	}
+}
@@ -4,9 +4,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.w3c.dom.Document;
 
 import javax.xml.bind.*;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.soap.*;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketException;
@@ -57,15 +57,13 @@ public class SOAP {
 	 */
 	public Object createSOAPRequest(Object soapRequestElem, Object soapResponseElem, String soapUri, boolean needsAuthentification) throws ConnectException,
 			SOAPException {
-		SOAPConnection soapConnection = null;
-		SOAPMessage soapResponse = null;
 
 		try {
-			// Create SOAP Connection
-			SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
-			soapConnection = soapConnectionFactory.createConnection();
-
-			SOAPMessage soapMessage = createSoapMessage(soapRequestElem, needsAuthentification);
+			SOAPMessage soapMessage;
+			// 池化的设备会被多个线程共享，nonce与时间戳需要与密码摘要一致
+			synchronized (onvifDevice) {
+				soapMessage = createSoapMessage(soapRequestElem, needsAuthentification);
+			}
 
 			// Print the request message
 			if (isLogging()) {
@@ -74,35 +72,26 @@ public class SOAP {
 				System.out.println();
 			}
 
-			soapResponse = soapConnection.call(soapMessage, soapUri);
-
-			// print SOAP Response
-			if (isLogging()) {
-				System.out.print("Response SOAP Message (" + soapResponseElem.getClass().getSimpleName() + "): ");
-				soapResponse.writeTo(System.out);
-				System.out.println();
-			}
-
 			if (soapResponseElem == null) {
 				throw new NullPointerException("Improper SOAP Response Element given (is null).");
 			}
 
-			Unmarshaller unmarshaller = JAXBContext.newInstance(soapResponseElem.getClass()).createUnmarshaller();
+			// Streaming path: unmarshal the body element straight from the HTTP stream,
+			// when logging the raw response is buffered and printed before it is parsed
+			ByteArrayOutputStream copy = isLogging() ? new ByteArrayOutputStream() : null;
 			try {
-				try {
-					soapResponseElem = unmarshaller.unmarshal(soapResponse.getSOAPBody().extractContentAsDocument());
-				}
-				catch (SOAPException e) {
-					// Second try for SOAP 1.2
-					// Sorry, I don't know why it works, it just does o.o
-					soapResponseElem = unmarshaller.unmarshal(soapResponse.getSOAPBody().extractContentAsDocument());
-				}
+				soapResponseElem = SoapHttpClient.call(soapMessage, soapUri, soapResponseElem.getClass(), copy);
+			}
+			catch (SOAPFaultResponse e) {
+				log.warn("Could not unmarshal, ended in SOAP fault: " + e.getMessage());
 			}
-			catch (UnmarshalException e) {
-				// Fault soapFault = (Fault)
-				// unmarshaller.unmarshal(soapResponse.getSOAPBody().extractContentAsDocument());
-				log.warn("Could not unmarshal, ended in SOAP fault.");
-				// throw new SOAPFaultException(soapFault);
+			finally {
+				// print SOAP Response
+				if (copy != null && copy.size() > 0) {
+					System.out.print("Response SOAP Message (" + soapResponseElem.getClass().getSimpleName() + "): ");
+					copy.writeTo(System.out);
+					System.out.println();
+				}
 			}
 
 			return soapResponseElem;
@@ -112,7 +101,7 @@ public class SOAP {
 		}
 		catch (SOAPException e) {
 			log.error(
-					"Unexpected response. Response should be from class " + soapResponseElem.getClass() + ", but response is: " + soapResponse);
+					"Unexpected response from " + soapUri + ". Response should be from class " + soapResponseElem.getClass() + ": " + e.getMessage());
 			throw e;
 		}
 		catch (ParserConfigurationException | JAXBException | IOException e) {
@@ -120,22 +109,14 @@ public class SOAP {
 			e.printStackTrace();
 			return null;
 		}
-		finally {
-			try {
-				soapConnection.close();
-			}
-			catch (SOAPException e) {
-			}
-		}
 	}
 
 	protected SOAPMessage createSoapMessage(Object soapRequestElem, boolean needAuthentification) throws SOAPException, ParserConfigurationException,
 			JAXBException {
-		MessageFactory messageFactory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
-		SOAPMessage soapMessage = messageFactory.createMessage();
+		SOAPMessage soapMessage = SoapContext.getRequestFactory().createMessage();
 
-		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-		Marshaller marshaller = JAXBContext.newInstance(soapRequestElem.getClass()).createMarshaller();
+		Document document = SoapContext.getDocumentBuilder().newDocument();
+		Marshaller marshaller = SoapContext.getMarshaller(soapRequestElem.getClass());
 		marshaller.marshal(soapRequestElem, document);
 		soapMessage.getSOAPBody().addDocument(document);
 
@@ -0,0 +1,16 @@
+package cn.edu.bupt.soap;
+
+import javax.xml.soap.SOAPException;
+
+/**
+ * @Description: SOAPFaultResponse，设备返回了SOAP Fault（例如鉴权失败或不支持的操作）
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:58
+ * @Version: 1.0
+ */
+public class SOAPFaultResponse extends SOAPException {
+
+	public SOAPFaultResponse(String reason) {
+		super(reason);
+	}
+}
@@ -0,0 +1,119 @@
+package cn.edu.bupt.soap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: SoapContext，SOAP请求中代价较高的对象的缓存。
+ * JAXBContext是线程安全的，每个类只创建一次；Marshaller、Unmarshaller、DocumentBuilder与MessageFactory不是线程安全的，每个线程各保存一份
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:46
+ * @Version: 1.0
+ */
+public final class SoapContext {
+
+	private static final ConcurrentHashMap<Class<?>,JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<Map<Class<?>,Marshaller>> MARSHALLERS = ThreadLocal.withInitial(HashMap::new);
+
+	private static final ThreadLocal<Map<Class<?>,Unmarshaller>> UNMARSHALLERS = ThreadLocal.withInitial(HashMap::new);
+
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<>();
+
+	private static final ThreadLocal<MessageFactory> REQUEST_FACTORIES = new ThreadLocal<>();
+
+	private static final ThreadLocal<MessageFactory> RESPONSE_FACTORIES = new ThreadLocal<>();
+
+	private SoapContext(){
+	}
+
+	/**
+	 * @Description 获取clazz对应的JAXBContext，第一次调用时创建
+	 * @author czx
+	 * @date 2026-10-19 16:46
+	 * @param clazz
+	 * @return javax.xml.bind.JAXBContext
+	 */
+	public static JAXBContext getContext(Class<?> clazz) throws JAXBException {
+		JAXBContext context = CONTEXTS.get(clazz);
+		if(context==null){
+			// 不使用computeIfAbsent，JAXBException是受检异常；并发时多创建一次也没有关系
+			context = JAXBContext.newInstance(clazz);
+			JAXBContext previous = CONTEXTS.putIfAbsent(clazz,context);
+			if(previous!=null){
+				context = previous;
+			}
+		}
+		return context;
+	}
+
+	public static Marshaller getMarshaller(Class<?> clazz) throws JAXBException {
+		Map<Class<?>,Marshaller> marshallers = MARSHALLERS.get();
+		Marshaller marshaller = marshallers.get(clazz);
+		if(marshaller==null){
+			marshaller = getContext(clazz).createMarshaller();
+			marshallers.put(clazz,marshaller);
+		}
+		return marshaller;
+	}
+
+	public static Unmarshaller getUnmarshaller(Class<?> clazz) throws JAXBException {
+		Map<Class<?>,Unmarshaller> unmarshallers = UNMARSHALLERS.get();
+		Unmarshaller unmarshaller = unmarshallers.get(clazz);
+		if(unmarshaller==null){
+			unmarshaller = getContext(clazz).createUnmarshaller();
+			unmarshallers.put(clazz,unmarshaller);
+		}
+		return unmarshaller;
+	}
+
+	public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = DOCUMENT_BUILDERS.get();
+		if(builder==null){
+			synchronized (DOCUMENT_BUILDER_FACTORY){
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			DOCUMENT_BUILDERS.set(builder);
+		}else{
+			builder.reset();
+		}
+		return builder;
+	}
+
+	/**
+	 * 请求使用SOAP 1.2
+	 */
+	public static MessageFactory getRequestFactory() throws SOAPException {
+		MessageFactory factory = REQUEST_FACTORIES.get();
+		if(factory==null){
+			factory = MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+			REQUEST_FACTORIES.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * 响应可能是SOAP 1.1或1.2，根据Content-Type决定
+	 */
+	public static MessageFactory getResponseFactory() throws SOAPException {
+		MessageFactory factory = RESPONSE_FACTORIES.get();
+		if(factory==null){
+			factory = MessageFactory.newInstance(SOAPConstants.DYNAMIC_SOAP_PROTOCOL);
+			RESPONSE_FACTORIES.set(factory);
+		}
+		return factory;
+	}
+}
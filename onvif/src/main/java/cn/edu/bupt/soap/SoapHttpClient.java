@@ -0,0 +1,120 @@
+package cn.edu.bupt.soap;
+
+import okhttp3.*;
+
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: SoapHttpClient，所有设备共用的HTTP客户端。
+ * 连接池保持与摄像头之间的长连接，同一台设备的连续请求（例如PTZ控制）不需要重新建立TCP连接
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:46
+ * @Version: 1.0
+ */
+public final class SoapHttpClient {
+
+	private static final int MAX_IDLE_CONNECTIONS = 64;
+
+	private static final long KEEP_ALIVE_MINUTES = 5;
+
+	private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+			.connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,KEEP_ALIVE_MINUTES,TimeUnit.MINUTES))
+			.connectTimeout(5,TimeUnit.SECONDS)
+			.readTimeout(10,TimeUnit.SECONDS)
+			.writeTimeout(10,TimeUnit.SECONDS)
+			.followRedirects(false)
+			.build();
+
+	private SoapHttpClient(){
+	}
+
+	public static OkHttpClient getClient(){
+		return CLIENT;
+	}
+
+	/**
+	 * @Description 发送SOAP消息并解析响应，HTTP 500的SOAP Fault同样作为响应返回
+	 * @author czx
+	 * @date 2026-10-19 16:46
+	 * @param message
+	 * @param uri
+	 * @return javax.xml.soap.SOAPMessage
+	 */
+	public static SOAPMessage call(SOAPMessage message,String uri) throws SOAPException, ConnectException {
+		try (Response response = execute(message,uri)) {
+			MimeHeaders headers = new MimeHeaders();
+			headers.addHeader("Content-Type",response.header("Content-Type"));
+			return SoapContext.getResponseFactory().createMessage(headers,new ByteArrayInputStream(response.body().bytes()));
+		}catch (IOException e){
+			throw new ConnectException(e.getMessage());
+		}
+	}
+
+	/**
+	 * @Description 发送SOAP消息，响应体不经过SOAPMessage与DOM，边接收边反序列化为type
+	 * @author czx
+	 * @date 2026-10-19 16:58
+	 * @param message
+	 * @param uri
+	 * @param type 响应元素的类型
+	 * @return T
+	 * @throws SOAPFaultResponse 设备返回了SOAP Fault
+	 */
+	public static <T> T call(SOAPMessage message,String uri,Class<T> type) throws SOAPException, ConnectException {
+		return call(message,uri,type,null);
+	}
+
+	/**
+	 * @Description 同上，copy不为null时先把响应体读入内存并写入copy(用于打印日志)，再从内存中解析
+	 * @author czx
+	 * @date 2026-10-19 19:18
+	 * @param message
+	 * @param uri
+	 * @param type 响应元素的类型
+	 * @param copy 响应体的副本，为null时边接收边解析
+	 * @return T
+	 * @throws SOAPFaultResponse 设备返回了SOAP Fault
+	 */
+	public static <T> T call(SOAPMessage message,String uri,Class<T> type,OutputStream copy) throws SOAPException, ConnectException {
+		try (Response response = execute(message,uri)) {
+			if(copy==null){
+				return StaxResponseReader.read(response.body().byteStream(),type);
+			}
+			byte[] body = response.body().bytes();
+			copy.write(body);
+			return StaxResponseReader.read(new ByteArrayInputStream(body),type);
+		}catch (IOException e){
+			throw new ConnectException(e.getMessage());
+		}
+	}
+
+	private static Response execute(SOAPMessage message,String uri) throws SOAPException, IOException {
+		if(uri==null){
+			throw new SOAPException("Service uri is null, the device may not support this service.");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		message.writeTo(out);
+		String[] types = message.getMimeHeaders().getHeader("Content-Type");
+		String contentType = types==null || types.length==0 ? "application/soap+xml; charset=utf-8" : types[0];
+
+		Request request = new Request.Builder()
+				.url(uri)
+				.post(RequestBody.create(MediaType.parse(contentType),out.toByteArray()))
+				.build();
+		Response response = CLIENT.newCall(request).execute();
+		String responseType = response.header("Content-Type");
+		if(response.body()==null || responseType==null || !responseType.contains("xml")){
+			response.close();
+			throw new SOAPException("Bad response: HTTP " + response.code() + " " + response.message());
+		}
+		return response;
+	}
+}
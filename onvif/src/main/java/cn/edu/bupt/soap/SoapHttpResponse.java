@@ -0,0 +1,34 @@
+package cn.edu.bupt.soap;
+
+/**
+ * @Description: SoapHttpResponse，NettySoapClient收到的完整HTTP响应
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:04
+ * @Version: 1.0
+ */
+public class SoapHttpResponse {
+
+	private final int status;
+
+	private final String contentType;
+
+	private final byte[] content;
+
+	public SoapHttpResponse(int status, String contentType, byte[] content) {
+		this.status = status;
+		this.contentType = contentType;
+		this.content = content;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+}
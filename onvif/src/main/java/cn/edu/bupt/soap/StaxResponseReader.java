@@ -0,0 +1,132 @@
+package cn.edu.bupt.soap;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.soap.SOAPException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * @Description: StaxResponseReader，直接从HTTP响应流中解析SOAP响应。
+ * 只把Body中的第一个元素交给JAXB反序列化，不再经过SAAJ的SOAPMessage与DOM，大的GetProfiles/GetCapabilities响应可以减少大量的内存分配
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:58
+ * @Version: 1.0
+ */
+public final class StaxResponseReader {
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	static {
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private StaxResponseReader(){
+	}
+
+	/**
+	 * @Description 解析SOAP 1.1或1.2的响应，返回Body中第一个元素反序列化后的对象
+	 * @author czx
+	 * @date 2026-10-19 16:58
+	 * @param in 响应流，由调用者关闭
+	 * @param type 响应元素的类型
+	 * @return T
+	 * @throws SOAPFaultResponse 响应是SOAP Fault
+	 */
+	public static <T> T read(InputStream in, Class<T> type) throws SOAPException {
+		XMLStreamReader reader = null;
+		try {
+			// XMLInputFactory配置完成之后创建reader是线程安全的
+			reader = INPUT_FACTORY.createXMLStreamReader(in);
+			nextElement(reader, "Envelope");
+			moveToBody(reader);
+			// nextTag()停在下一个子元素的开始标签，或Body的结束标签
+			if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+				throw new SOAPException("Empty SOAP body.");
+			}
+			if ("Fault".equals(reader.getLocalName())) {
+				throw new SOAPFaultResponse(readFault(reader));
+			}
+			Unmarshaller unmarshaller = SoapContext.getUnmarshaller(type);
+			return unmarshaller.unmarshal(reader, type).getValue();
+		}
+		catch (XMLStreamException | JAXBException e) {
+			throw new SOAPException(e);
+		}
+		finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 跳过Header，停在Body的开始标签上
+	 */
+	private static void moveToBody(XMLStreamReader reader) throws XMLStreamException, SOAPException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if ("Body".equals(reader.getLocalName())) {
+				return;
+			}
+			skipElement(reader);
+		}
+		throw new SOAPException("SOAP body not found.");
+	}
+
+	private static void nextElement(XMLStreamReader reader, String localName) throws XMLStreamException, SOAPException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				if (localName.equals(reader.getLocalName())) {
+					return;
+				}
+				throw new SOAPException("Expected " + localName + " but was " + reader.getLocalName());
+			}
+		}
+		throw new SOAPException("Unexpected end of SOAP response.");
+	}
+
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * 取出Fault中的说明文字，SOAP 1.1为faultstring，SOAP 1.2为Reason/Text
+	 */
+	private static String readFault(XMLStreamReader reader) throws XMLStreamException {
+		String reason = null;
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String name = reader.getLocalName();
+				if (reason == null && ("faultstring".equals(name) || "Text".equals(name))) {
+					reason = reader.getElementText();
+					depth--;
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		return reason == null ? "SOAP fault" : reason;
+	}
+}
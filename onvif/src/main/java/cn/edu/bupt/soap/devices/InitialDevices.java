@@ -12,6 +12,7 @@ import java.net.ConnectException;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.TimeZone;
 
 public class InitialDevices {
 
@@ -38,7 +39,9 @@ public class InitialDevices {
 
 		Date date = response.getSystemDateAndTime().getUTCDateTime().getDate();
 		Time time = response.getSystemDateAndTime().getUTCDateTime().getTime();
-		cal = new GregorianCalendar(date.getYear(), date.getMonth() - 1, date.getDay(), time.getHour(), time.getMinute(), time.getSecond());
+		cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		cal.clear();
+		cal.set(date.getYear(), date.getMonth() - 1, date.getDay(), time.getHour(), time.getMinute(), time.getSecond());
 
 		return cal.getTime();
 	}
@@ -0,0 +1,97 @@
+package cn.edu.bupt.soap.events;
+
+import cn.edu.bupt.soap.SoapContext;
+import lombok.extern.slf4j.Slf4j;
+import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
+import org.onvif.ver10.schema.ItemList;
+import org.onvif.ver10.schema.Message;
+import org.w3c.dom.Element;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import java.util.*;
+
+/**
+ * @Description: NotificationDecoder，把WS-Notification消息解码为OnvifEvent。
+ * tt:Message不在PullMessagesResponse的JAXBContext中，会以DOM元素的形式出现，这时用缓存的Message上下文再解一次
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:25
+ * @Version: 1.0
+ */
+@Slf4j
+class NotificationDecoder {
+
+	private NotificationDecoder() {
+	}
+
+	static List<OnvifEvent> decode(String host, List<NotificationMessageHolderType> notifications) {
+		List<OnvifEvent> events = new ArrayList<>(notifications.size());
+		for (NotificationMessageHolderType notification : notifications) {
+			try {
+				Message message = message(notification);
+				if (message == null) {
+					continue;
+				}
+				Date utcTime = message.getUtcTime() == null ? null : message.getUtcTime().toGregorianCalendar().getTime();
+				String operation = message.getPropertyOperation() == null ? null : message.getPropertyOperation().value();
+				events.add(new OnvifEvent(host, topic(notification), utcTime, operation, items(message.getSource()), items(message.getData())));
+			}
+			catch (JAXBException | RuntimeException e) {
+				log.debug("Cannot decode notification from {} : {}", host, e.getMessage());
+			}
+		}
+		return events;
+	}
+
+	private static Message message(NotificationMessageHolderType notification) throws JAXBException {
+		if (notification.getMessage() == null) {
+			return null;
+		}
+		Object any = notification.getMessage().getAny();
+		if (any instanceof JAXBElement) {
+			any = ((JAXBElement<?>) any).getValue();
+		}
+		if (any instanceof Message) {
+			return (Message) any;
+		}
+		if (any instanceof Element) {
+			return SoapContext.getUnmarshaller(Message.class).unmarshal((Element) any, Message.class).getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * 去掉每一级的命名空间前缀，例如tns1:RuleEngine/tnsaxis:Motion -> RuleEngine/Motion，
+	 * 不同厂商对同一命名空间使用的前缀不同
+	 */
+	private static String topic(NotificationMessageHolderType notification) {
+		if (notification.getTopic() == null) {
+			return null;
+		}
+		StringBuilder raw = new StringBuilder();
+		for (Object content : notification.getTopic().getContent()) {
+			if (content instanceof String) {
+				raw.append((String) content);
+			}
+		}
+		StringBuilder topic = new StringBuilder();
+		for (String segment : raw.toString().trim().split("/")) {
+			if (topic.length() > 0) {
+				topic.append('/');
+			}
+			topic.append(segment.substring(segment.indexOf(':') + 1));
+		}
+		return topic.toString();
+	}
+
+	private static Map<String, String> items(ItemList list) {
+		if (list == null || list.getSimpleItem().isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> items = new LinkedHashMap<>();
+		for (ItemList.SimpleItem item : list.getSimpleItem()) {
+			items.put(item.getName(), item.getValue());
+		}
+		return items;
+	}
+}
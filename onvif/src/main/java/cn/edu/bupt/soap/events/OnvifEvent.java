@@ -0,0 +1,73 @@
+package cn.edu.bupt.soap.events;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EventObject;
+import java.util.Map;
+
+/**
+ * @Description: OnvifEvent，从摄像头拉取到的一条事件，source为设备的host。
+ * topic去掉了命名空间前缀，例如VideoSource/MotionAlarm、RuleEngine/CellMotionDetector/Motion、VideoSource/GlobalSceneChange/ImagingService(遮挡)
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:25
+ * @Version: 1.0
+ */
+public class OnvifEvent extends EventObject {
+
+	private final String topic;
+
+	private final Date utcTime;
+
+	/**
+	 * Initialized/Changed/Deleted
+	 */
+	private final String propertyOperation;
+
+	private final Map<String, String> sourceItems;
+
+	private final Map<String, String> dataItems;
+
+	public OnvifEvent(String host, String topic, Date utcTime, String propertyOperation, Map<String, String> sourceItems, Map<String, String> dataItems) {
+		super(host);
+		this.topic = topic;
+		this.utcTime = utcTime;
+		this.propertyOperation = propertyOperation;
+		this.sourceItems = Collections.unmodifiableMap(sourceItems);
+		this.dataItems = Collections.unmodifiableMap(dataItems);
+	}
+
+	public String getHost() {
+		return (String) getSource();
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public Date getUtcTime() {
+		return utcTime;
+	}
+
+	public String getPropertyOperation() {
+		return propertyOperation;
+	}
+
+	/**
+	 * 事件来源，例如VideoSourceConfigurationToken
+	 */
+	public Map<String, String> getSourceItems() {
+		return sourceItems;
+	}
+
+	/**
+	 * 事件数据，例如IsMotion=true、State=true
+	 */
+	public Map<String, String> getDataItems() {
+		return dataItems;
+	}
+
+	@Override
+	public String toString() {
+		return getHost() + " " + topic + " " + propertyOperation + " " + sourceItems + " " + dataItems;
+	}
+}
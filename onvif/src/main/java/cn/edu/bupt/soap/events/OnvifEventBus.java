@@ -0,0 +1,105 @@
+package cn.edu.bupt.soap.events;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * @Description: OnvifEventBus，进程内的事件总线。
+ * 拉取事件的IO线程只负责入队，由单独的分发线程按到达顺序回调监听器；监听器可以按topic前缀过滤。
+ * 分发跟不上时丢弃新事件并告警，不会反压到拉取线程
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:25
+ * @Version: 1.0
+ */
+@Slf4j
+public class OnvifEventBus {
+
+	private static final int QUEUE_CAPACITY = 10000;
+
+	private static volatile OnvifEventBus instance;
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private final ThreadPoolExecutor dispatcher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(QUEUE_CAPACITY), new BasicThreadFactory.Builder().namingPattern("OnvifEventBus-%d").daemon(true).build(),
+			(task, executor) -> log.warn("Onvif event queue is full, event dropped"));
+
+	public static OnvifEventBus getInstance() {
+		if (instance == null) {
+			synchronized (OnvifEventBus.class) {
+				if (instance == null) {
+					instance = new OnvifEventBus();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @Description 订阅所有事件
+	 * @author czx
+	 * @date 2026-10-19 17:25
+	 * @param listener
+	 * @return void
+	 */
+	public void subscribe(OnvifEventListener listener) {
+		subscribe(null, listener);
+	}
+
+	/**
+	 * @Description 订阅topic以topicPrefix开头的事件，例如"VideoSource/MotionAlarm"
+	 * @author czx
+	 * @date 2026-10-19 17:25
+	 * @param topicPrefix 为null时订阅所有事件
+	 * @param listener
+	 * @return void
+	 */
+	public void subscribe(String topicPrefix, OnvifEventListener listener) {
+		subscriptions.add(new Subscription(topicPrefix, listener));
+	}
+
+	public void unsubscribe(OnvifEventListener listener) {
+		subscriptions.removeIf(subscription -> subscription.listener == listener);
+	}
+
+	public void publish(OnvifEvent event) {
+		if (subscriptions.isEmpty()) {
+			return;
+		}
+		dispatcher.execute(() -> {
+			for (Subscription subscription : subscriptions) {
+				if (subscription.matches(event)) {
+					try {
+						subscription.listener.onEvent(event);
+					}
+					catch (Exception e) {
+						log.warn("Onvif event listener failed on {}", event, e);
+					}
+				}
+			}
+		});
+	}
+
+	public int getQueueSize() {
+		return dispatcher.getQueue().size();
+	}
+
+	private static class Subscription {
+
+		private final String topicPrefix;
+
+		private final OnvifEventListener listener;
+
+		Subscription(String topicPrefix, OnvifEventListener listener) {
+			this.topicPrefix = topicPrefix;
+			this.listener = listener;
+		}
+
+		boolean matches(OnvifEvent event) {
+			return topicPrefix == null || (event.getTopic() != null && event.getTopic().startsWith(topicPrefix));
+		}
+	}
+}
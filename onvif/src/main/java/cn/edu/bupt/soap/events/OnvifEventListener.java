@@ -0,0 +1,21 @@
+package cn.edu.bupt.soap.events;
+
+import java.util.EventListener;
+
+/**
+ * @Description: OnvifEventListener
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:25
+ * @Version: 1.0
+ */
+public interface OnvifEventListener extends EventListener {
+
+	/**
+	 * @Description 收到事件时调用，在事件总线的分发线程中执行，不应长时间阻塞
+	 * @author czx
+	 * @date 2026-10-19 17:25
+	 * @param event
+	 * @return void
+	 */
+	void onEvent(OnvifEvent event);
+}
@@ -0,0 +1,344 @@
+package cn.edu.bupt.soap.events;
+
+import cn.edu.bupt.soap.AsyncSOAP;
+import cn.edu.bupt.soap.OnvifDevice;
+import cn.edu.bupt.soap.OnvifSessionPool;
+import cn.edu.bupt.soap.SOAPFaultResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.oasis_open.docs.wsn.b_2.Renew;
+import org.oasis_open.docs.wsn.b_2.RenewResponse;
+import org.oasis_open.docs.wsn.b_2.Unsubscribe;
+import org.oasis_open.docs.wsn.b_2.UnsubscribeResponse;
+import org.onvif.ver10.events.wsdl.CreatePullPointSubscription;
+import org.onvif.ver10.events.wsdl.CreatePullPointSubscriptionResponse;
+import org.onvif.ver10.events.wsdl.ObjectFactory;
+import org.onvif.ver10.events.wsdl.PullMessages;
+import org.onvif.ver10.events.wsdl.PullMessagesResponse;
+import org.w3._2005._08.addressing.EndpointReferenceType;
+import org.w3c.dom.Element;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.soap.SOAPException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @Description: PullPointManager，ONVIF事件(PullPoint)订阅管理。
+ * 每个设备一个PullPoint订阅，在到期前续订，失败时退避重试，订阅失效时重新创建。
+ * PullMessages长轮询完全异步：所有设备的请求复用少量Netty IO线程，每次响应后立即发起下一次轮询，不为每个设备占用线程；
+ * 拉取到的事件解码后发布到OnvifEventBus
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:33
+ * @Version: 1.0
+ */
+@Slf4j
+public class PullPointManager {
+
+	private static final String ACTION_CREATE = "http://www.onvif.org/ver10/events/wsdl/EventPortType/CreatePullPointSubscriptionRequest";
+
+	private static final String ACTION_PULL = "http://www.onvif.org/ver10/events/wsdl/PullPointSubscription/PullMessagesRequest";
+
+	private static final String ACTION_RENEW = "http://docs.oasis-open.org/wsn/bw-2/SubscriptionManager/RenewRequest";
+
+	private static final String ACTION_UNSUBSCRIBE = "http://docs.oasis-open.org/wsn/bw-2/SubscriptionManager/UnsubscribeRequest";
+
+	private static final long POLL_TIMEOUT_MILLIS = 10000L;
+
+	private static final long SUBSCRIPTION_MILLIS = 60000L;
+
+	private static final int MESSAGE_LIMIT = 100;
+
+	private static final long RETRY_MILLIS = 2000L;
+
+	private static final long MAX_RETRY_MILLIS = 60000L;
+
+	/**
+	 * 连续失败这么多次后放弃当前订阅，重新创建
+	 */
+	private static final int MAX_FAILURES = 3;
+
+	private static volatile PullPointManager instance;
+
+	private final AsyncSOAP soap;
+
+	private final OnvifEventBus bus;
+
+	private final long pollTimeoutMillis;
+
+	private final long subscriptionMillis;
+
+	private final DatatypeFactory datatypeFactory;
+
+	private final ConcurrentHashMap<String,Subscription> subscriptions = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+			new BasicThreadFactory.Builder().namingPattern("PullPoint-%d").daemon(true).build());
+
+	/**
+	 * @param soap 长轮询会占用连接，应使用单独的实例，其超时时间要大于pollTimeoutMillis
+	 * @param bus
+	 * @param pollTimeoutMillis PullMessages的Timeout，设备在这段时间内没有事件时返回空响应
+	 * @param subscriptionMillis 订阅与续订的时长
+	 */
+	public PullPointManager(AsyncSOAP soap, OnvifEventBus bus, long pollTimeoutMillis, long subscriptionMillis) {
+		this.soap = soap;
+		this.bus = bus;
+		this.pollTimeoutMillis = pollTimeoutMillis;
+		this.subscriptionMillis = subscriptionMillis;
+		try {
+			this.datatypeFactory = DatatypeFactory.newInstance();
+		}
+		catch (DatatypeConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @Description 全局实例：2个IO线程，每个设备最多2个连接（长轮询与续订各一个），轮询10s，订阅60s
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param
+	 * @return cn.edu.bupt.soap.events.PullPointManager
+	 */
+	public static PullPointManager getInstance() {
+		if (instance == null) {
+			synchronized (PullPointManager.class) {
+				if (instance == null) {
+					instance = new PullPointManager(new AsyncSOAP(2, 2, POLL_TIMEOUT_MILLIS + 5000L), OnvifEventBus.getInstance(),
+							POLL_TIMEOUT_MILLIS, SUBSCRIPTION_MILLIS);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @Description 订阅设备的事件，已经订阅的设备直接返回
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param device 已经获取了服务地址的设备
+	 * @return java.util.concurrent.CompletableFuture<java.lang.Void> 第一次创建订阅成功时完成，第一次创建失败时异常完成并移除订阅；之后的失败由管理器自动重试
+	 */
+	public CompletableFuture<Void> subscribe(OnvifDevice device) {
+		String host = host(device);
+		Subscription subscription = subscriptions.computeIfAbsent(host, key -> new Subscription(key, device));
+		subscription.start();
+		return subscription.created;
+	}
+
+	/**
+	 * @Description 通过会话池获取设备后订阅
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host
+	 * @param user
+	 * @param password
+	 * @return java.util.concurrent.CompletableFuture<java.lang.Void>
+	 */
+	public CompletableFuture<Void> subscribe(String host, String user, String password) {
+		return OnvifSessionPool.getInstance().acquire(host, user, password).thenCompose(this::subscribe);
+	}
+
+	/**
+	 * @Description 停止轮询并取消设备上的订阅
+	 * @author czx
+	 * @date 2026-10-19 19:33
+	 * @param host
+	 * @return void
+	 */
+	public void unsubscribe(String host) {
+		Subscription subscription = subscriptions.remove(host);
+		if (subscription != null) {
+			subscription.close();
+		}
+	}
+
+	public Set<String> getSubscribedHosts() {
+		return Collections.unmodifiableSet(subscriptions.keySet());
+	}
+
+	public void close() {
+		for (String host : new ArrayList<>(subscriptions.keySet())) {
+			unsubscribe(host);
+		}
+		scheduler.shutdown();
+	}
+
+	private static String host(OnvifDevice device) {
+		String uri = device.getDeviceUri();
+		String rest = uri.substring(uri.indexOf("://") + 3);
+		return rest.contains("/") ? rest.substring(0, rest.indexOf('/')) : rest;
+	}
+
+	/**
+	 * 一个设备上的订阅。状态只在上一个请求完成后的回调中修改，同一时刻只有一个请求在进行
+	 */
+	private class Subscription {
+
+		private final String host;
+
+		private final OnvifDevice device;
+
+		private final CompletableFuture<Void> created = new CompletableFuture<>();
+
+		private volatile boolean started;
+
+		private volatile boolean closed;
+
+		/**
+		 * 订阅管理器的地址，为null表示需要创建订阅
+		 */
+		private String address;
+
+		private List<Element> referenceParameters = Collections.emptyList();
+
+		/**
+		 * 本地时钟下的订阅到期时间
+		 */
+		private long expiresAt;
+
+		private int failures;
+
+		Subscription(String host, OnvifDevice device) {
+			this.host = host;
+			this.device = device;
+		}
+
+		synchronized void start() {
+			if (!started) {
+				started = true;
+				next();
+			}
+		}
+
+		void close() {
+			closed = true;
+			String current = address;
+			if (current != null) {
+				soap.request(device, new Unsubscribe(), UnsubscribeResponse.class, current, ACTION_UNSUBSCRIBE, referenceParameters)
+						.whenComplete((r, e) -> log.debug("Unsubscribed {} : {}", host, e == null ? "ok" : e.getMessage()));
+			}
+		}
+
+		/**
+		 * 决定下一步：创建订阅、续订或者拉取
+		 */
+		private void next() {
+			if (closed) {
+				return;
+			}
+			CompletableFuture<?> step;
+			if (address == null) {
+				step = create();
+			}
+			else if (expiresAt - System.currentTimeMillis() < 2 * pollTimeoutMillis) {
+				step = renew();
+			}
+			else {
+				step = pull();
+			}
+			step.whenComplete((r, e) -> {
+				if (e == null) {
+					failures = 0;
+					next();
+				}
+				else {
+					failed(e);
+				}
+			});
+		}
+
+		private void failed(Throwable e) {
+			if (closed) {
+				return;
+			}
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (!created.isDone()) {
+				// 第一次创建就失败（设备没有事件服务或者拒绝订阅），不再重试，交给调用者处理
+				closed = true;
+				subscriptions.remove(host, this);
+				log.warn("PullPoint subscription on {} failed : {}", host, cause.getMessage());
+				created.completeExceptionally(cause);
+				return;
+			}
+			failures++;
+			if (cause instanceof SOAPFaultResponse || failures >= MAX_FAILURES) {
+				// 订阅已经被设备删除（重启、过期）或者连续失败
+				address = null;
+			}
+			long delay = Math.min(RETRY_MILLIS << Math.min(failures - 1, 5), MAX_RETRY_MILLIS);
+			log.warn("PullPoint on {} failed ({} times), retry in {}ms : {}", host, failures, delay, cause.getMessage());
+			scheduler.schedule(this::next, delay, TimeUnit.MILLISECONDS);
+		}
+
+		private CompletableFuture<?> create() {
+			CreatePullPointSubscription request = new CreatePullPointSubscription();
+			request.setInitialTerminationTime(new ObjectFactory().createCreatePullPointSubscriptionInitialTerminationTime(duration(subscriptionMillis)));
+			return soap.request(device, request, CreatePullPointSubscriptionResponse.class, device.getEventsUri(), ACTION_CREATE,
+					Collections.emptyList()).thenAccept(response -> {
+						EndpointReferenceType reference = response.getSubscriptionReference();
+						if (reference == null || reference.getAddress() == null || reference.getAddress().getValue() == null) {
+							throw new CompletionException(new SOAPException("No subscription reference from " + host));
+						}
+						address = reference.getAddress().getValue().trim();
+						referenceParameters = referenceParameters(reference);
+						expiresAt = expiresAt(response.getCurrentTime(), response.getTerminationTime());
+						log.info("PullPoint subscription on {} : {}", host, address);
+						created.complete(null);
+					});
+		}
+
+		private CompletableFuture<?> renew() {
+			Renew request = new Renew();
+			request.setTerminationTime(duration(subscriptionMillis));
+			return soap.request(device, request, RenewResponse.class, address, ACTION_RENEW, referenceParameters)
+					.thenAccept(response -> expiresAt = expiresAt(response.getCurrentTime(), response.getTerminationTime()));
+		}
+
+		private CompletableFuture<?> pull() {
+			PullMessages request = new PullMessages();
+			request.setTimeout(datatypeFactory.newDuration(pollTimeoutMillis));
+			request.setMessageLimit(MESSAGE_LIMIT);
+			return soap.request(device, request, PullMessagesResponse.class, address, ACTION_PULL, referenceParameters).thenAccept(response -> {
+				if (response.getTerminationTime() != null) {
+					expiresAt = expiresAt(response.getCurrentTime(), response.getTerminationTime());
+				}
+				if (response.getNotificationMessage() != null && !closed) {
+					for (OnvifEvent event : NotificationDecoder.decode(host, response.getNotificationMessage())) {
+						bus.publish(event);
+					}
+				}
+			});
+		}
+
+		private long expiresAt(XMLGregorianCalendar current, XMLGregorianCalendar termination) {
+			if (termination == null) {
+				return System.currentTimeMillis() + subscriptionMillis;
+			}
+			long terminationMillis = termination.toGregorianCalendar().getTimeInMillis();
+			// 用设备自己的CurrentTime计算剩余时间，不受两边时钟偏差影响
+			long currentMillis = current == null ? System.currentTimeMillis() : current.toGregorianCalendar().getTimeInMillis();
+			return System.currentTimeMillis() + (terminationMillis - currentMillis);
+		}
+	}
+
+	private static List<Element> referenceParameters(EndpointReferenceType reference) {
+		if (reference.getReferenceParameters() == null) {
+			return Collections.emptyList();
+		}
+		List<Element> parameters = new ArrayList<>();
+		for (Object any : reference.getReferenceParameters().getAny()) {
+			if (any instanceof Element) {
+				parameters.add((Element) any);
+			}
+		}
+		return parameters;
+	}
+
+	private String duration(long millis) {
+		return datatypeFactory.newDuration(millis).toString();
+	}
+}
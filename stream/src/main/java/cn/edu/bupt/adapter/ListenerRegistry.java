@@ -0,0 +1,140 @@
+package cn.edu.bupt.adapter;
+
+import cn.edu.bupt.listener.Listener;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * @Description: ListenerRegistry，adapter的listener集合，copy-on-write的不可变数组，整体原子替换。
+ * 拉流线程每次分发时取一次快照，遍历时不加锁，也不会出现ConcurrentModificationException；
+ * 新增的listener在下一个关键帧才加入分发快照，录像文件与推流都从关键帧开始；删除立即生效
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:54
+ * @Version: 1.0
+ */
+class ListenerRegistry {
+
+    private static final Listener[] EMPTY = new Listener[0];
+
+    /**
+     * 最新的listener集合，所有的修改都作用在这里
+     */
+    private final AtomicReference<Listener[]> listeners = new AtomicReference<>(EMPTY);
+
+    /**
+     * 分发使用的快照，在关键帧处与listeners同步
+     */
+    private final AtomicReference<Listener[]> active = new AtomicReference<>(EMPTY);
+
+    /**
+     * @Description 添加listener
+     * @author czx
+     * @date 2026-10-19 17:54
+     * @param listener
+     * @param immediate 是否立即加入分发快照，不等待关键帧(例如已经写入了预录缓存的触发录像)
+     * @return boolean 已经存在时返回false
+     */
+    boolean add(Listener listener, boolean immediate) {
+        if (!update(listeners, listener, true)) {
+            return false;
+        }
+        if (immediate) {
+            update(active, listener, true);
+        }
+        return true;
+    }
+
+    boolean remove(Listener listener) {
+        boolean removed = update(listeners, listener, false);
+        update(active, listener, false);
+        return removed;
+    }
+
+    /**
+     * @Description 分发一个packet或frame之前调用，返回本次分发的listener快照，引用计数按快照的长度固定
+     * @author czx
+     * @date 2026-10-19 17:54
+     * @param keyframe 是否为视频关键帧(frame模式下每一帧都是)
+     * @return cn.edu.bupt.listener.Listener[] 调用者不能修改
+     */
+    Listener[] snapshot(boolean keyframe) {
+        Listener[] current = active.get();
+        if (keyframe) {
+            Listener[] latest = listeners.get();
+            // 删除与立即添加会同时修改active，CAS失败时保留它们的结果，下一个关键帧再同步
+            if (latest != current && active.compareAndSet(current, latest)) {
+                return latest;
+            }
+            return active.get();
+        }
+        return current;
+    }
+
+    Listener find(Predicate<Listener> predicate) {
+        for (Listener listener : listeners.get()) {
+            if (predicate.test(listener)) {
+                return listener;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @Description 当前的全部listener，包括还没有进入分发快照的
+     * @author czx
+     * @date 2026-10-19 17:54
+     * @param
+     * @return cn.edu.bupt.listener.Listener[] 调用者不能修改
+     */
+    Listener[] getListeners() {
+        return listeners.get();
+    }
+
+    /**
+     * @Description 清空，返回清空前的listener
+     * @author czx
+     * @date 2026-10-19 17:54
+     * @param
+     * @return cn.edu.bupt.listener.Listener[]
+     */
+    Listener[] clear() {
+        active.set(EMPTY);
+        return listeners.getAndSet(EMPTY);
+    }
+
+    private static boolean update(AtomicReference<Listener[]> reference, Listener listener, boolean add) {
+        while (true) {
+            Listener[] current = reference.get();
+            int index = indexOf(current, listener);
+            Listener[] next;
+            if (add) {
+                if (index >= 0) {
+                    return false;
+                }
+                next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = listener;
+            } else {
+                if (index < 0) {
+                    return false;
+                }
+                next = new Listener[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            }
+            if (reference.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    private static int indexOf(Listener[] listeners, Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,125 @@
+package cn.edu.bupt.adapter;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @Description: PreRollBuffer，在内存中滚动保存最近N秒的AVPacket，用于触发录像时补录触发之前的画面。
+ * 以GOP为单位淘汰，缓存总是从视频关键帧开始，录像文件第一帧即可解码；每个缓存的packet都是单独的ref，淘汰时free。
+ * 只由adapter线程访问，不需要同步
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:30
+ * @Version: 1.0
+ */
+class PreRollBuffer {
+
+    private final long preRollMillis;
+
+    private final int videoStreamIndex;
+
+    private final Deque<Gop> gops = new ArrayDeque<>();
+
+    private long bytes;
+
+    PreRollBuffer(long preRollMillis, int videoStreamIndex) {
+        this.preRollMillis = preRollMillis;
+        this.videoStreamIndex = videoStreamIndex;
+    }
+
+    /**
+     * @Description 缓存pkt的一个新ref，第一个关键帧之前的packet无法解码，直接忽略
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param pkt
+     * @param now 到达时间
+     * @return void
+     */
+    void add(AVPacket pkt, long now) {
+        boolean key = pkt.stream_index() == videoStreamIndex && (pkt.flags() & avcodec.AV_PKT_FLAG_KEY) != 0;
+        if (key) {
+            gops.addLast(new Gop(now));
+        }
+        evict(now);
+        Gop gop = gops.peekLast();
+        if (gop == null) {
+            return;
+        }
+        // 关键帧间隔异常大(或者丢失关键帧)时GOP会无限增长，最早的GOP超过4倍的缓存时长后放弃，等待下一个关键帧
+        if (now - gops.peekFirst().start > 4 * preRollMillis) {
+            clear();
+            return;
+        }
+        AVPacket ref = avcodec.av_packet_alloc();
+        avcodec.av_packet_ref(ref, pkt);
+        gop.packets.add(ref);
+        bytes += pkt.size();
+    }
+
+    /**
+     * @Description 为缓存中的每个packet创建新的ref，按到达顺序返回，缓存本身保持不变
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param
+     * @return java.util.List<org.bytedeco.ffmpeg.avcodec.AVPacket>
+     */
+    List<AVPacket> snapshot() {
+        List<AVPacket> packets = new ArrayList<>();
+        for (Gop gop : gops) {
+            for (AVPacket pkt : gop.packets) {
+                AVPacket ref = avcodec.av_packet_alloc();
+                avcodec.av_packet_ref(ref, pkt);
+                packets.add(ref);
+            }
+        }
+        return packets;
+    }
+
+    void clear() {
+        while (!gops.isEmpty()) {
+            free(gops.pollFirst());
+        }
+        bytes = 0;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 保留最少的GOP，使第一个GOP的起点不晚于now-preRoll
+     */
+    private void evict(long now) {
+        while (gops.size() > 1) {
+            Iterator<Gop> iterator = gops.iterator();
+            iterator.next();
+            if (iterator.next().start > now - preRollMillis) {
+                break;
+            }
+            free(gops.pollFirst());
+        }
+    }
+
+    private void free(Gop gop) {
+        for (AVPacket pkt : gop.packets) {
+            bytes -= pkt.size();
+            avcodec.av_packet_free(pkt);
+        }
+    }
+
+    private static class Gop {
+
+        final long start;
+
+        final List<AVPacket> packets = new ArrayList<>();
+
+        Gop(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cn.edu.bupt.adapter;
+
+import cn.edu.bupt.rtmp.PublishedStream;
+import cn.edu.bupt.rtmp.RtmpServer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @Description: RtmpIngest，RTMP接入服务与adapter之间的粘合：设备每推上来一路流，就在VideoAdapterManagement中启动一个packet模式的adapter，
+ * 走与拉流相同的推流、录像、触发录像、解码等listener。推流地址由模板生成，{app}与{stream}替换为推流的app与流名。
+ * 推流端断开后adapter按空帧阈值自行结束，在此之前同名重新推流会接着送给原来的adapter
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpIngest implements RtmpServer.PublishListener {
+
+    private static volatile RtmpIngest instance;
+
+    private final RtmpServer server;
+
+    private final String target;
+
+    private final boolean save;
+
+    private final String egress;
+
+    private RtmpIngest(int port, String target, boolean save, String egress) {
+        this.server = new RtmpServer(port, this);
+        this.target = target;
+        this.save = save;
+        this.egress = egress;
+    }
+
+    /**
+     * @Description 启动RTMP接入服务，重复调用返回已经启动的实例
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param port 监听端口
+     * @param target 推流地址模板，例如rtmp://localhost/live/{stream}
+     * @param save 是否同时录像
+     * @param egress 推流引擎，ffmpeg或netty，见RtspVideoAdapter.setEgress
+     * @return cn.edu.bupt.adapter.RtmpIngest
+     */
+    public static synchronized RtmpIngest start(int port, String target, boolean save, String egress) throws InterruptedException {
+        if (instance == null) {
+            RtmpIngest ingest = new RtmpIngest(port, target, save, egress);
+            ingest.server.start();
+            instance = ingest;
+            log.info("Rtmp ingest started on port {}, pushing to {}", ingest.server.getPort(), target);
+        }
+        return instance;
+    }
+
+    public static RtmpIngest getInstance() {
+        return instance;
+    }
+
+    /**
+     * @Description 停止接入服务，已经在运行的adapter不受影响
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param
+     * @return void
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.server.close();
+            instance = null;
+        }
+    }
+
+    public RtmpServer getServer() {
+        return server;
+    }
+
+    @Override
+    public boolean onPublish(PublishedStream stream) {
+        String rtmpPath = target.replace("{app}", stream.getApp()).replace("{stream}", stream.getName());
+        RtspVideoAdapter adapter = new RtspVideoAdapter(stream.getUrl(), rtmpPath, save, true);
+        adapter.setPublishedSource(stream);
+        adapter.setEgress(egress);
+        try {
+            VideoAdapterManagement.startAdapter(adapter);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to start adapter for published stream {}: {}", stream.getKey(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -2,17 +2,36 @@ package cn.edu.bupt.adapter;
 
 import cn.edu.bupt.client.Client;
 import cn.edu.bupt.client.ClientImpl;
+import cn.edu.bupt.codec.CodecTuning;
 import cn.edu.bupt.event.Event;
 import cn.edu.bupt.event.GrabEvent;
 import cn.edu.bupt.event.PacketEvent;
+import cn.edu.bupt.listener.DecodeListener;
+import cn.edu.bupt.listener.FrameConsumer;
 import cn.edu.bupt.listener.Listener;
+import cn.edu.bupt.listener.MotionListener;
 import cn.edu.bupt.listener.PushListener;
 import cn.edu.bupt.listener.RecordListener;
+import cn.edu.bupt.metrics.MetricsRegistry;
+import cn.edu.bupt.metrics.StreamMetrics;
+import cn.edu.bupt.rtmp.PublishedStream;
+import cn.edu.bupt.rtmp.RtmpIngestGrabber;
+import cn.edu.bupt.rtsp.NettyRtspGrabber;
+import cn.edu.bupt.rtsp.RtspClient;
+import cn.edu.bupt.status.StatusBus;
+import cn.edu.bupt.status.StreamState;
+import cn.edu.bupt.status.StreamStatus;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
 import org.bytedeco.javacpp.PointerScope;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
@@ -22,8 +41,14 @@ import org.bytedeco.opencv.opencv_core.Mat;
 import cn.edu.bupt.util.Constants;
 import cn.edu.bupt.util.DirUtil;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import static cn.edu.bupt.util.Constants.TRIGGER_RECORD_LISTENER_NAME;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.swscale.SWS_BILINEAR;
+import static org.bytedeco.ffmpeg.global.swscale.sws_freeContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_getContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_scale;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -42,16 +67,28 @@ public class RtspVideoAdapter extends VideoAdapter{
     private String name;
     private static long timestamp;
     private String videoRootDir;
-    private boolean isRecording;
-    private boolean isPushing;
-    private boolean stop;
+    private volatile boolean isRecording;
+    private volatile boolean isPushing;
+    private volatile boolean stop;
     private FFmpegFrameGrabber grabber;
     private String rtspPath;
     private String rtmpPath;
-    private List<Listener> listeners;
+    private final ListenerRegistry listeners = new ListenerRegistry();
+    /**
+     * 视频流的下标，用于判断关键帧，没有视频流时为-1
+     */
+    private int videoStreamIndex = -1;
     private boolean save;
     private AtomicBoolean capture = new AtomicBoolean(false);
     private final int NULL_FRAME_THRESHOLD = 10;
+    /**
+     * packet模式下抓拍需要等待下一个关键帧
+     */
+    private static final long CAPTURE_TIMEOUT = 10000L;
+    /**
+     * 连续的空packet达到这个数量时发布STALLED状态，偶尔出现的空packet不算卡顿
+     */
+    private final int STALL_FRAME_THRESHOLD = 3;
     private Long lastFrameTime = System.currentTimeMillis();
     /**
      * 是否使用AVPacket的方式直接进行拉流与推流
@@ -59,6 +96,10 @@ public class RtspVideoAdapter extends VideoAdapter{
     private boolean usePacket;
     private static final OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
     private static ExecutorService executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("Rtsp-pool-%d").daemon(false).build());
+    /**
+     * 关闭触发录像的RecordListener，close最多等待10秒写完文件，不能占用所有adapter共享的executor
+     */
+    private static ExecutorService recordCloseExecutor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder().namingPattern("Trigger-close-%d").daemon(false).build());
     /**
      * 用于获取capture的future
      */
@@ -66,11 +107,45 @@ public class RtspVideoAdapter extends VideoAdapter{
     /**
      * 用于记录每一个frame需要完成的listeners个数，在全部listener完成任务后，调用PointerScope进行内存回收
      */
-    private Map<Event, AtomicInteger> frameFinishCount = new HashMap<>();
+    private Map<Event, AtomicInteger> frameFinishCount = new ConcurrentHashMap<>();
     private Future<Boolean> captureFuture;
+    private StreamMetrics metrics;
+    /**
+     * 触发录像：平时只在内存中保留最近preRoll的packet，触发后把预录内容写入文件，并在最后一次触发之后继续录制postRoll
+     */
+    private long preRollMillis;
+    private long postRollMillis;
+    private PreRollBuffer preRollBuffer;
+    private volatile long triggerDeadline;
+    private RecordListener triggerRecordListener;
+    /**
+     * 发布到StatusBus的状态，start之前为null
+     */
+    private volatile StreamState state;
+    private volatile MotionListener motionListener;
+    /**
+     * packet模式下按需创建的共享解码器，没有FrameConsumer时为null
+     */
+    private DecodeListener decodeListener;
+    private final Object decodeLock = new Object();
+    /**
+     * 编解码参数，需要在start之前设置
+     */
+    private CodecTuning codecTuning = new CodecTuning();
+    /**
+     * packet模式下使用Netty拉流时的传输方式，为null时使用FFmpeg拉流，需要在start之前设置
+     */
+    private RtspClient.Transport nettyTransport;
+    /**
+     * packet模式下是否使用Netty推流，需要在start之前设置
+     */
+    private boolean nettyEgress;
+    /**
+     * 推到RtmpServer上的源，不为null时从推流中取帧而不是拉流，只在packet模式下生效，需要在start之前设置
+     */
+    private PublishedStream publishedSource;
 
     public RtspVideoAdapter(){
-        listeners = new ArrayList<>();
         isRecording = false;
         stop = false;
         videoRootDir = Constants.getRootDir();
@@ -118,6 +193,10 @@ public class RtspVideoAdapter extends VideoAdapter{
         return stop;
     }
 
+    public boolean isTriggerRecording() {
+        return triggerRecordListener != null;
+    }
+
 
     public boolean isUsePacket() {
         return usePacket;
@@ -139,6 +218,66 @@ public class RtspVideoAdapter extends VideoAdapter{
         return grabber;
     }
 
+    public CodecTuning getCodecTuning() {
+        return codecTuning;
+    }
+
+    public void setCodecTuning(CodecTuning codecTuning) {
+        this.codecTuning = codecTuning==null?new CodecTuning():codecTuning;
+    }
+
+    public RtspClient.Transport getNettyTransport() {
+        return nettyTransport;
+    }
+
+    /**
+     * @Description 选择拉流引擎，需要在start之前调用。Netty拉流只在packet模式下生效，frame模式仍然使用FFmpeg
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param ingest ffmpeg(默认)、netty(TCP interleaved)或netty-udp
+     * @return void
+     */
+    public void setIngest(String ingest){
+        if(ingest==null || ingest.isEmpty() || "ffmpeg".equalsIgnoreCase(ingest)){
+            this.nettyTransport = null;
+        }else if("netty".equalsIgnoreCase(ingest) || "netty-tcp".equalsIgnoreCase(ingest)){
+            this.nettyTransport = RtspClient.Transport.TCP;
+        }else if("netty-udp".equalsIgnoreCase(ingest)){
+            this.nettyTransport = RtspClient.Transport.UDP;
+        }else{
+            throw new IllegalArgumentException("Unknown ingest: "+ingest+", expected ffmpeg, netty or netty-udp");
+        }
+    }
+
+    public boolean isNettyEgress() {
+        return nettyEgress;
+    }
+
+    /**
+     * @Description 选择推流引擎，需要在start之前调用。Netty推流只在packet模式下对H.264生效，其余情况仍然使用FFmpeg
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param egress ffmpeg(默认)或netty
+     * @return void
+     */
+    public void setEgress(String egress){
+        if(egress==null || egress.isEmpty() || "ffmpeg".equalsIgnoreCase(egress)){
+            this.nettyEgress = false;
+        }else if("netty".equalsIgnoreCase(egress)){
+            this.nettyEgress = true;
+        }else{
+            throw new IllegalArgumentException("Unknown egress: "+egress+", expected ffmpeg or netty");
+        }
+    }
+
+    public PublishedStream getPublishedSource() {
+        return publishedSource;
+    }
+
+    public void setPublishedSource(PublishedStream publishedSource) {
+        this.publishedSource = publishedSource;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -149,10 +288,17 @@ public class RtspVideoAdapter extends VideoAdapter{
         this.name = name;
     }
 
+    /**
+     * @Description 添加listener，可以在任意线程调用，在下一个关键帧开始收到数据
+     * @author czx
+     * @date 2026-10-19 17:54
+     * @param listener
+     * @return boolean
+     */
     @Override
     public boolean addListener(Listener listener){
         log.info("Add cn.edu.bupt.listener[{}] from VideoAdapter[{}]",listener.getName(),getName());
-        return listeners.add(listener);
+        return listeners.add(listener,false);
     }
 
     @Override
@@ -172,8 +318,15 @@ public class RtspVideoAdapter extends VideoAdapter{
     @Override
     public void start() throws Exception{
         log.info("RtspVideoAdapter is starting : [rtsp is {},rtmp is {}]",rtspPath,rtmpPath);
+        metrics = MetricsRegistry.getInstance().getStream(name);
+        metrics.started();
+        publishStatus(metrics.getReconnects()>0 ? StreamState.RECONNECTING : StreamState.STARTING);
         grabberInit();
         log.info("Grabber started [{}]",rtspPath);
+        videoStreamIndex = findVideoStreamIndex();
+        if(preRollMillis>0 && usePacket){
+            preRollBuffer = new PreRollBuffer(preRollMillis,videoStreamIndex);
+        }
         startAllListeners();
 
         String filePath = videoRootDir+rtmpPath.substring(rtmpPath.lastIndexOf("/")+1)+"/";
@@ -187,6 +340,7 @@ public class RtspVideoAdapter extends VideoAdapter{
         }
 
         startPushing();
+        publishStatus(StreamState.RUNNING);
 
         int count = 0;
         int nullFrames = 0;
@@ -208,6 +362,11 @@ public class RtspVideoAdapter extends VideoAdapter{
                     });
                 }
 
+                //触发录像的开始与结束都在拉流线程中进行，保证预录的packet先于新的packet进入录像队列
+                if (postRollMillis > 0) {
+                    checkTriggerRecording(videoPath);
+                }
+
                 //使用AVPacket进行推流，目前这种模式下不能对数据帧进行处理
                 if (usePacket) {
                     AVPacket pkt = null;
@@ -215,12 +374,16 @@ public class RtspVideoAdapter extends VideoAdapter{
                         pkt = grabber.grabPacket();
                         lastFrameTime = System.currentTimeMillis();
                     }catch (Exception e){
+                        metrics.grabError();
                         log.warn("Grab Packet Exception!");
                     }
 
                     // 检查是否接收到数据
                     if (pkt==null || pkt.size()<=0 || pkt.data()==null) {
                         nullFrames++;
+                        if(nullFrames==STALL_FRAME_THRESHOLD){
+                            publishStatus(StreamState.STALLED);
+                        }
                         if(nullFrames%50==0){
                             log.info("Null Frame number is [{}] and rtmp : [{}]",nullFrames, rtmpPath);
                         }
@@ -230,34 +393,29 @@ public class RtspVideoAdapter extends VideoAdapter{
                             log.info("Video[{}] stopped!", rtmpPath);
                         }
                         continue;
-                    } else {
+                    } else if (nullFrames > 0) {
                         nullFrames = 0;
+                        if (state == StreamState.STALLED) {
+                            publishStatus(StreamState.RUNNING);
+                        }
                     }
 
-                    PacketEvent.CountEvent countEvent = new PacketEvent.CountEvent();
-                    frameFinishCount.put(countEvent,new AtomicInteger(listeners.size()));
-
-                    //AVPacket采用计数法进行内存的回收，因此在每一个listener进行处理时，
-                    //都需要创建一个新的ref。由于JavaCV中的方法自带unref，如果没有创建
-                    //ref，一个listener处理完后就有可能回收内存。为了保险起见，自己实现了一个
-                    //Unref的逻辑
-                    for (Listener listener : listeners) {
-                        AVPacket newPkt = avcodec.av_packet_alloc();
-                        avcodec.av_packet_ref(newPkt, pkt);
-                        PacketEvent grabEvent = new PacketEvent(this, newPkt,countEvent);
-                        listener.fireAfterEventInvoked(grabEvent);
-                    }
-                    avcodec.av_packet_unref(pkt);
+                    metrics.ingest(pkt.size());
+                    dispatchPacket(pkt);
                 } else {//使用传统方式进行处理，效率较低（增加了编解码的时间），但是可以对画面frame进行处理
                     Frame frame = null;
                     try {
                         frame = grabber.grabImage();
                         lastFrameTime = System.currentTimeMillis();
                     } catch (Exception e) {
+                        metrics.grabError();
                         log.warn("Grab Image Exception!");
                     }
                     if (frame == null || frame.image==null) {
                         nullFrames++;
+                        if(nullFrames==STALL_FRAME_THRESHOLD){
+                            publishStatus(StreamState.STALLED);
+                        }
                         if(nullFrames%5==0){
                             log.info("Null Frame number is [{}] and rtmp : [{}]",nullFrames, rtmpPath);
                         }
@@ -267,12 +425,26 @@ public class RtspVideoAdapter extends VideoAdapter{
                         }
                         continue;
                     }
+                    if (nullFrames > 0) {
+                        nullFrames = 0;
+                        if (state == StreamState.STALLED) {
+                            publishStatus(StreamState.RUNNING);
+                        }
+                    }
+                    metrics.ingest(0);
 
                     // PointScope用于释放frame的内存
                     // Pointer会自动attach到PointerScope上。
                     // 同样，clone获得的frame需要进行unref并且释放内存
                     PointerScope pointerScope = new PointerScope();
-                    Frame newFrame = frame.clone();
+                    Frame newFrame;
+                    try {
+                        newFrame = frame.clone();
+                    } finally {
+                        // scope只在clone期间生效，之后由最后一个完成的listener调用deallocate释放。
+                        // 不能留在拉流线程的scope栈上，否则后续的分配(包括复用该线程的下一个adapter)会attach到已经释放的scope
+                        pointerScope.deallocateOnClose(false).close();
+                    }
 
                     //进行抓拍操作
                     if (capture.get() && newFrame != null) {
@@ -280,9 +452,11 @@ public class RtspVideoAdapter extends VideoAdapter{
                         capture.set(false);
                     }
 
+                    //解码后的每一帧都可以独立使用，listener的变化在下一帧生效
+                    Listener[] snapshot = listeners.snapshot(true);
                     GrabEvent grabEvent = new GrabEvent(this,newFrame,pointerScope,grabber.getTimestamp());
-                    frameFinishCount.put(grabEvent,new AtomicInteger(listeners.size()));
-                    for (Listener listener : listeners) {
+                    frameFinishCount.put(grabEvent,new AtomicInteger(snapshot.length));
+                    for (Listener listener : snapshot) {
                         listener.fireAfterEventInvoked(grabEvent);
                     }
                 }
@@ -291,9 +465,17 @@ public class RtspVideoAdapter extends VideoAdapter{
             log.warn("Adapter [{}] throws an Exception!",name);
             e.printStackTrace();
         }finally {
+            metrics.stopped();
             closeAllListeners();
+            closeFrameConsumers();
+            triggerRecordListener = null;
+            if(preRollBuffer!=null){
+                preRollBuffer.clear();
+            }
             grabber.stop();
             VideoAdapterManagement.stopAdapter(this);
+            publishStatus(StreamState.STOPPED);
+            MetricsRegistry.getInstance().removeStream(metrics);
             log.info("Grabber ends for video rtmp:{}",rtmpPath);
         }
     }
@@ -318,6 +500,9 @@ public class RtspVideoAdapter extends VideoAdapter{
      * @return void
      */
     public boolean capture(){
+        if(usePacket){
+            return captureFromDecoder();
+        }
         if(capture.compareAndSet(false,true)){
             try{
                 countDownLatch.await(3000,TimeUnit.MILLISECONDS);
@@ -334,6 +519,183 @@ public class RtspVideoAdapter extends VideoAdapter{
         }
     }
 
+    /**
+     * @Description packet模式下的抓拍：临时订阅共享解码器，保存下一个关键帧后取消订阅
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param
+     * @return boolean
+     */
+    private boolean captureFromDecoder(){
+        String capturesPath = videoRootDir+rtmpPath.substring(rtmpPath.lastIndexOf("/")+1)+"/captures/";
+        CaptureConsumer consumer = new CaptureConsumer(capturesPath);
+        if(!attachFrameConsumer(consumer)){
+            log.info("Capture failed! No decoder for [{}]",rtmpPath);
+            return false;
+        }
+        try {
+            return consumer.result.get(CAPTURE_TIMEOUT,TimeUnit.MILLISECONDS);
+        }catch (Exception e){
+            log.info("Capture failed! {}",e.toString());
+            return false;
+        }finally {
+            detachFrameConsumer(consumer);
+        }
+    }
+
+    /**
+     * @Description 将拉取到的AVPacket分发给所有listener，分发完成后释放pkt本身的引用
+     * @author czx
+     * @date 2026-10-19 10:12
+     * @param pkt
+     * @return void
+     */
+    void dispatchPacket(AVPacket pkt) throws Exception{
+        //引用计数在分发时按快照固定，分发过程中listener的增删不影响本次分发
+        Listener[] snapshot = listeners.snapshot(isKeyframe(pkt));
+        if (snapshot.length > 0) {
+            PacketEvent.CountEvent countEvent = new PacketEvent.CountEvent();
+            frameFinishCount.put(countEvent,new AtomicInteger(snapshot.length));
+
+            //AVPacket采用计数法进行内存的回收，因此在每一个listener进行处理时，
+            //都需要创建一个新的ref。由于JavaCV中的方法自带unref，如果没有创建
+            //ref，一个listener处理完后就有可能回收内存。为了保险起见，自己实现了一个
+            //Unref的逻辑
+            for (Listener listener : snapshot) {
+                AVPacket newPkt = avcodec.av_packet_alloc();
+                avcodec.av_packet_ref(newPkt, pkt);
+                PacketEvent grabEvent = new PacketEvent(this, newPkt,countEvent);
+                listener.fireAfterEventInvoked(grabEvent);
+            }
+        }
+        if(preRollBuffer!=null){
+            preRollBuffer.add(pkt,System.currentTimeMillis());
+        }
+        avcodec.av_packet_unref(pkt);
+    }
+
+    /**
+     * @Description 开启触发录像模式，需要在start之前调用。预录只在usePacket模式下生效，Frame模式下触发后从当前画面开始录制
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param preRollSeconds 触发之前保留的秒数，实际会向前对齐到关键帧
+     * @param postRollSeconds 最后一次触发之后继续录制的秒数
+     * @return void
+     */
+    public void enableTriggerRecording(int preRollSeconds,int postRollSeconds){
+        this.preRollMillis = TimeUnit.SECONDS.toMillis(preRollSeconds);
+        this.postRollMillis = TimeUnit.SECONDS.toMillis(postRollSeconds);
+    }
+
+    /**
+     * @Description 触发一次录像(API调用、ONVIF事件或者移动侦测)。正在录制时延长结束时间，可以在任意线程调用
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param
+     * @return boolean 没有开启触发录像模式或者adapter已经停止时返回false
+     */
+    public boolean trigger(){
+        if(postRollMillis<=0 || stop){
+            return false;
+        }
+        triggerDeadline = System.currentTimeMillis()+postRollMillis;
+        return true;
+    }
+
+    /**
+     * @Description 根据触发的截止时间开始或结束触发录像
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param videoPath
+     * @return void
+     */
+    private void checkTriggerRecording(String videoPath) throws Exception{
+        long now = System.currentTimeMillis();
+        if(triggerRecordListener==null){
+            if(triggerDeadline>now){
+                startTriggerRecording(videoPath+DirUtil.generateFilenameByDate()+"_event.flv");
+            }
+        }else if(triggerDeadline<=now){
+            stopTriggerRecording();
+        }
+    }
+
+    /**
+     * @Description 创建触发录像的RecordListener，先写入预录缓存，之后的packet由dispatchPacket正常分发
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param filename
+     * @return void
+     */
+    private void startTriggerRecording(String filename) throws Exception{
+        RecordListener recordListener = new RecordListener(TRIGGER_RECORD_LISTENER_NAME,filename,getGrabber(),this,usePacket);
+        recordListener.start();
+        //预录缓存已经到达当前packet，不能等待关键帧，否则会丢失中间的画面
+        log.info("Add cn.edu.bupt.listener[{}] from VideoAdapter[{}]",recordListener.getName(),getName());
+        listeners.add(recordListener,true);
+        triggerRecordListener = recordListener;
+        publishStatus();
+        if(preRollBuffer!=null){
+            List<AVPacket> packets = preRollBuffer.snapshot();
+            log.info("Trigger recording [{}] starts with {} pre-roll packets ({} bytes)",filename,packets.size(),preRollBuffer.getBytes());
+            for(AVPacket newPkt : packets){
+                PacketEvent.CountEvent countEvent = new PacketEvent.CountEvent();
+                frameFinishCount.put(countEvent,new AtomicInteger(1));
+                recordListener.fireAfterEventInvoked(new PacketEvent(this,newPkt,countEvent));
+            }
+        }else{
+            log.info("Trigger recording [{}] starts",filename);
+        }
+    }
+
+    /**
+     * @Description 结束触发录像。close会等待录像队列写完，放到executor中执行，不阻塞拉流
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param
+     * @return void
+     */
+    private void stopTriggerRecording(){
+        RecordListener recordListener = triggerRecordListener;
+        triggerRecordListener = null;
+        removeListener(recordListener);
+        recordCloseExecutor.submit(recordListener::close);
+        publishStatus();
+        log.info("Trigger recording [{}] ends",recordListener.getFileName());
+    }
+
+    /**
+     * @Description 是否为视频流的关键帧，音频packet也带有KEY标记，需要按视频流的下标过滤
+     * @author czx
+     * @date 2026-10-19 17:30
+     * @param pkt
+     * @return boolean 不知道视频流的下标时只看KEY标记
+     */
+    private boolean isKeyframe(AVPacket pkt){
+        return (pkt.flags() & avcodec.AV_PKT_FLAG_KEY) != 0
+                && (videoStreamIndex < 0 || pkt.stream_index() == videoStreamIndex);
+    }
+
+    /**
+     * @Description 视频流的下标
+     * @author czx
+     * @date 2026-10-19 19:14
+     * @param
+     * @return int 没有视频流时为-1
+     */
+    private int findVideoStreamIndex(){
+        AVFormatContext fc = grabber==null?null:grabber.getFormatContext();
+        if(fc==null){
+            return -1;
+        }
+        for(int i=0;i<fc.nb_streams();i++){
+            if(fc.streams(i).codecpar().codec_type()==avutil.AVMEDIA_TYPE_VIDEO){
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * @Description 启动所有的listener
      * @author czx
@@ -343,7 +705,7 @@ public class RtspVideoAdapter extends VideoAdapter{
      */
     private void startAllListeners(){
         log.info("Start all listeners");
-        for(Listener listener:listeners){
+        for(Listener listener:listeners.getListeners()){
             listener.start();
         }
     }
@@ -357,10 +719,9 @@ public class RtspVideoAdapter extends VideoAdapter{
      */
     private void closeAllListeners(){
         log.info("Close all listeners");
-        for(Listener listener:listeners){
+        for(Listener listener:listeners.clear()){
             listener.close();
         }
-        listeners = new ArrayList<>();
     }
 
 
@@ -375,9 +736,19 @@ public class RtspVideoAdapter extends VideoAdapter{
     private void grabberInit(){
         try {
             // 使用rtsp的时候需要使用 FFmpegFrameGrabber，不能再用FrameGrabber
-            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(rtspPath);
+            FFmpegFrameGrabber grabber;
+            if(usePacket && publishedSource!=null){
+                grabber = new RtmpIngestGrabber(publishedSource);
+            }else if(usePacket && nettyTransport!=null){
+                grabber = new NettyRtspGrabber(rtspPath,nettyTransport);
+            }else{
+                grabber = new FFmpegFrameGrabber(rtspPath);
+            }
+            codecTuning.applyTo(grabber,!usePacket);
             this.grabber = grabber;
             this.grabber.start();
+            // 解码器在拿到分辨率之前就已经打开，记录实际分辨率供重连时使用
+            codecTuning.setExpectedResolution(grabber.getImageWidth(),grabber.getImageHeight());
 
             // TODO:设置回调函数后,虚拟机会崩溃
 
@@ -413,13 +784,7 @@ public class RtspVideoAdapter extends VideoAdapter{
      * @return boolean
      */
     private boolean removeListener(Class listenerClass){
-        Listener removedListener = null;
-        for(Listener listener:listeners){
-            if(listener.getClass()==listenerClass){
-                removedListener = listener;
-                break;
-            }
-        }
+        Listener removedListener = listeners.find(listener->listener.getClass()==listenerClass && listener!=triggerRecordListener);
         if(removedListener==null){
             return false;
         }
@@ -460,6 +825,7 @@ public class RtspVideoAdapter extends VideoAdapter{
             addListener(recordListener);
             recordListener.start();
             isRecording = true;
+            publishStatus();
         }
     }
 
@@ -473,6 +839,7 @@ public class RtspVideoAdapter extends VideoAdapter{
             recordListener.start();
             addListener(recordListener);
             isRecording = true;
+            publishStatus();
         }
     }
     
@@ -489,6 +856,7 @@ public class RtspVideoAdapter extends VideoAdapter{
         }else {
             removeListener(RecordListener.class);
             isRecording = false;
+            publishStatus();
         }
     }
 
@@ -526,6 +894,160 @@ public class RtspVideoAdapter extends VideoAdapter{
         }
     }
 
+    /**
+     * @Description 开始移动侦测，已经开启时只更新灵敏度。检测到运动时会触发录像(需要开启触发录像模式)。
+     * packet模式下订阅共享解码器的关键帧
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param sensitivity 1~100，越大越灵敏
+     * @return boolean packet模式下没有可用的解码器时返回false
+     */
+    public synchronized boolean startMotionDetection(int sensitivity){
+        MotionListener motionListener = this.motionListener;
+        if(motionListener!=null){
+            motionListener.setSensitivity(sensitivity);
+            return true;
+        }
+        motionListener = new MotionListener(this,sensitivity);
+        motionListener.start();
+        if(!usePacket){
+            addListener(motionListener);
+        }else if(!attachFrameConsumer(motionListener)){
+            motionListener.close();
+            return false;
+        }
+        this.motionListener = motionListener;
+        publishStatus();
+        return true;
+    }
+
+    /**
+     * @Description 停止移动侦测
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param
+     * @return boolean
+     */
+    public synchronized boolean stopMotionDetection(){
+        MotionListener motionListener = this.motionListener;
+        if(motionListener==null){
+            return false;
+        }
+        this.motionListener = null;
+        if(usePacket){
+            detachFrameConsumer(motionListener);
+            motionListener.close();
+        }else{
+            removeListener(MotionListener.class);
+        }
+        publishStatus();
+        return true;
+    }
+
+    public MotionListener getMotionListener(){
+        return motionListener;
+    }
+
+    /**
+     * @Description 订阅解码后的画面。packet模式下第一个consumer到来时创建共享解码器，在下一个关键帧开始解码；
+     * frame模式下adapter本身已经在解码，不支持订阅
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param consumer
+     * @return boolean adapter没有启动、不是packet模式或者没有可用的解码器时返回false
+     */
+    public boolean attachFrameConsumer(FrameConsumer consumer){
+        if(!usePacket || stop || grabber==null){
+            return false;
+        }
+        synchronized (decodeLock){
+            if(decodeListener==null){
+                DecodeListener listener = new DecodeListener(getGrabber(),this);
+                if(!listener.isAvailable()){
+                    listener.close();
+                    return false;
+                }
+                listener.start();
+                listener.addConsumer(consumer);
+                decodeListener = listener;
+                addListener(listener);
+            }else{
+                decodeListener.addConsumer(consumer);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @Description 取消订阅，最后一个consumer离开后关闭共享解码器，回到只转发packet的状态
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param consumer
+     * @return void
+     */
+    public void detachFrameConsumer(FrameConsumer consumer){
+        synchronized (decodeLock){
+            if(decodeListener==null || !decodeListener.removeConsumer(consumer)){
+                return;
+            }
+            if(!decodeListener.hasConsumers()){
+                removeListener(decodeListener);
+                decodeListener.close();
+                decodeListener = null;
+            }
+        }
+    }
+
+    /**
+     * @Description adapter停止时调用，共享解码器已经随其他listener关闭，这里关闭订阅它的consumer
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param
+     * @return void
+     */
+    private void closeFrameConsumers(){
+        synchronized (decodeLock){
+            decodeListener = null;
+        }
+        MotionListener motionListener = this.motionListener;
+        this.motionListener = null;
+        if(motionListener!=null && usePacket){
+            motionListener.close();
+        }
+    }
+
+    public StreamState getState(){
+        return state;
+    }
+
+    /**
+     * @Description 发布新的状态到StatusBus
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param newState
+     * @return void
+     */
+    private void publishStatus(StreamState newState){
+        state = newState;
+        publishStatus();
+    }
+
+    /**
+     * @Description 录像、移动侦测等开关变化后重新发布当前状态，adapter没有启动时忽略
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param
+     * @return void
+     */
+    private void publishStatus(){
+        StreamMetrics streamMetrics = metrics;
+        if(state==null || streamMetrics==null){
+            return;
+        }
+        StatusBus.getInstance().publish(name,()->new StreamStatus(name,rtspPath,state,isRecording,isTriggerRecording(),
+                motionListener!=null,streamMetrics.getIngestFps(),streamMetrics.getIngestBitrate()));
+    }
+
     /**
      * @Description 根据rtmp获取该视频流下的所有录像文件
      * @author CZX
@@ -557,6 +1079,53 @@ public class RtspVideoAdapter extends VideoAdapter{
         executor.submit(new UnrefTask(frameFinishCount,event,isSuccess));
     }
 
+    // packet模式的抓拍，只需要一个关键帧
+    class CaptureConsumer implements FrameConsumer {
+
+        private final String capturesPath;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private CaptureConsumer(String capturesPath) {
+            this.capturesPath = capturesPath;
+        }
+
+        @Override
+        public boolean isKeyframesOnly() {
+            return true;
+        }
+
+        @Override
+        public void onFrame(AVFrame frame, long createNanos) {
+            if (result.isDone()) {
+                return;
+            }
+            SwsContext swsContext = null;
+            Mat mat = null;
+            try {
+                DirUtil.judeDirExists(capturesPath);
+                int width = frame.width(), height = frame.height();
+                mat = new Mat(height, width, CV_8UC3);
+                swsContext = sws_getContext(width, height, frame.format(), width, height, AV_PIX_FMT_BGR24,
+                        SWS_BILINEAR, null, null, (DoublePointer) null);
+                // swscale按4个plane读取目标地址与步长，没有用到的plane置0
+                sws_scale(swsContext, frame.data(), frame.linesize(), 0, height,
+                        new PointerPointer<>(mat.data(), null, null, null), new IntPointer((int) mat.step(), 0, 0, 0));
+                log.info("Video capture is storing in [{}]!", capturesPath);
+                result.complete(opencv_imgcodecs.imwrite(capturesPath + System.currentTimeMillis() + ".png", mat));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (swsContext != null) {
+                    sws_freeContext(swsContext);
+                }
+                if (mat != null) {
+                    mat.release();
+                }
+            }
+        }
+    }
+
     // 抓拍任务
     class CaptureTask implements Callable<Boolean> {
 
@@ -619,14 +1188,13 @@ public class RtspVideoAdapter extends VideoAdapter{
             }else if(event instanceof PacketEvent){
                 AVPacket avPacket = ((PacketEvent) event).getFrame();
                 int count = map.get(((PacketEvent) event).getCountEvent()).decrementAndGet();
-                if(!success){
-                    avcodec.av_packet_unref(avPacket);
-                }
                 if(count==0){
                     map.remove(((PacketEvent) event).getCountEvent());
-                    if(!avPacket.isNull()){
-                        avcodec.av_packet_free(avPacket);
-                    }
+                }
+                // 每个listener持有的都是各自alloc出来的AVPacket，处理完成后都需要free，
+                // av_packet_free会先进行unref，因此处理失败时的引用也会在这里释放
+                if(!avPacket.isNull()){
+                    avcodec.av_packet_free(avPacket);
                 }
             }else{
                 log.warn("Unknown cn.edu.bupt.event type!");
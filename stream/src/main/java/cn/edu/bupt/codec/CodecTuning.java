@@ -0,0 +1,326 @@
+package cn.edu.bupt.codec;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.util.Locale;
+
+/**
+ * @Description: CodecTuning，每一路流的编解码参数。
+ * JavaCV默认把解码器与编码器的thread_count设为0(每个核一个线程)，多路流时线程数远超核数；Frame模式的flv推流与录像默认使用FLV1编码。
+ * 这里按分辨率与可用核数给出默认值：解码线程数与线程类型，x264的preset/tune、GOP、B帧与码率控制。
+ * 所有参数为0或null时使用自适应的默认值，显式设置的参数优先
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:24
+ * @Version: 1.0
+ */
+@Slf4j
+public class CodecTuning {
+
+    /**
+     * 解码器的多线程方式。FRAME吞吐高，但每多一个线程多一帧延迟；SLICE没有额外延迟，但只对多slice编码的码流有效
+     */
+    public enum ThreadType {
+        FRAME("frame"), SLICE("slice");
+
+        private final String option;
+
+        ThreadType(String option) {
+            this.option = option;
+        }
+    }
+
+    /**
+     * CRF：恒定质量，用bitrate作为峰值上限；ABR：平均码率；CBR：恒定码率，VBV缓冲为1秒
+     */
+    public enum RateControl {
+        CRF, ABR, CBR
+    }
+
+    /**
+     * 分辨率档位：像素上限、解码线程、编码线程、preset与每像素每帧的比特数
+     */
+    private enum Tier {
+        SD(1280 * 720, 1, 2, "veryfast", 0.08),
+        HD(1920 * 1088, 2, 4, "superfast", 0.07),
+        UHD(Integer.MAX_VALUE, 4, 8, "ultrafast", 0.06);
+
+        final int maxPixels;
+        final int decoderThreads;
+        final int encoderThreads;
+        final String preset;
+        final double bitsPerPixel;
+
+        Tier(int maxPixels, int decoderThreads, int encoderThreads, String preset, double bitsPerPixel) {
+            this.maxPixels = maxPixels;
+            this.decoderThreads = decoderThreads;
+            this.encoderThreads = encoderThreads;
+            this.preset = preset;
+            this.bitsPerPixel = bitsPerPixel;
+        }
+
+        static Tier of(int width, int height) {
+            long pixels = (long) width * height;
+            for (Tier tier : values()) {
+                if (pixels <= tier.maxPixels) {
+                    return tier;
+                }
+            }
+            return UHD;
+        }
+    }
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final double DEFAULT_FRAME_RATE = 25;
+    private static final int DEFAULT_CRF = 23;
+
+    private int decoderThreads;
+    private ThreadType decoderThreadType;
+    private int encoderThreads;
+    private String preset;
+    private String tune;
+    private double gopSeconds;
+    private int maxBFrames = -1;
+    private RateControl rateControl;
+    /**
+     * kbit/s
+     */
+    private int bitrate;
+    private int crf = -1;
+    /**
+     * 解码器在拉流之前打开，此时还不知道分辨率，使用这里的预期分辨率；adapter拉流成功后会更新为实际分辨率，重连时生效
+     */
+    private int expectedWidth = 1920;
+    private int expectedHeight = 1080;
+
+    /**
+     * @Description 解析形如 preset=superfast,bitrate=4000,gop=2 的参数，为空时全部使用默认值
+     * 支持的key：decodeThreads, threadType(frame|slice), encodeThreads, preset, tune, gop(秒), bframes, rc(crf|abr|cbr), bitrate(kbit/s), crf, size(宽x高)
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param spec
+     * @return cn.edu.bupt.codec.CodecTuning
+     */
+    public static CodecTuning parse(String spec) {
+        CodecTuning tuning = new CodecTuning();
+        if (spec == null || spec.trim().isEmpty()) {
+            return tuning;
+        }
+        for (String item : spec.split(",")) {
+            int index = item.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Illegal codec option [" + item + "]");
+            }
+            String key = item.substring(0, index).trim();
+            String value = item.substring(index + 1).trim();
+            switch (key) {
+                case "decodeThreads":
+                    tuning.setDecoderThreads(Integer.parseInt(value));
+                    break;
+                case "threadType":
+                    tuning.setDecoderThreadType(ThreadType.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "encodeThreads":
+                    tuning.setEncoderThreads(Integer.parseInt(value));
+                    break;
+                case "preset":
+                    tuning.setPreset(value);
+                    break;
+                case "tune":
+                    tuning.setTune(value);
+                    break;
+                case "gop":
+                    tuning.setGopSeconds(Double.parseDouble(value));
+                    break;
+                case "bframes":
+                    tuning.setMaxBFrames(Integer.parseInt(value));
+                    break;
+                case "rc":
+                    tuning.setRateControl(RateControl.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "bitrate":
+                    tuning.setBitrate(Integer.parseInt(value));
+                    break;
+                case "crf":
+                    tuning.setCrf(Integer.parseInt(value));
+                    break;
+                case "size":
+                    String[] size = value.split("x");
+                    tuning.setExpectedResolution(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown codec option [" + key + "]");
+            }
+        }
+        return tuning;
+    }
+
+    /**
+     * @Description 在grabber.start之前调用。packet模式下grabber打开的解码器不会被使用，只给一个线程
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param grabber
+     * @param decode 是否在拉流线程中解码(Frame模式)
+     * @return void
+     */
+    public void applyTo(FFmpegFrameGrabber grabber, boolean decode) {
+        if (!decode) {
+            grabber.setVideoOption("threads", "1");
+            return;
+        }
+        Tier tier = Tier.of(expectedWidth, expectedHeight);
+        int threads = decoderThreads > 0 ? decoderThreads : Math.min(CORES, tier.decoderThreads);
+        grabber.setVideoOption("threads", String.valueOf(threads));
+        if (threads > 1) {
+            grabber.setVideoOption("thread_type", (decoderThreadType == null ? ThreadType.FRAME : decoderThreadType).option);
+        }
+    }
+
+    /**
+     * @Description Frame模式下在recorder.start之前调用，使用grabber的实际分辨率与帧率计算默认值
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param recorder
+     * @param grabber
+     * @param live 推流为true，默认zerolatency、无B帧、CBR；录像为false，默认CRF并允许B帧
+     * @return void
+     */
+    public void applyTo(FFmpegFrameRecorder recorder, FFmpegFrameGrabber grabber, boolean live) {
+        int width = grabber.getImageWidth(), height = grabber.getImageHeight();
+        double frameRate = grabber.getFrameRate() > 0 && grabber.getFrameRate() <= 120 ? grabber.getFrameRate() : DEFAULT_FRAME_RATE;
+        Tier tier = Tier.of(width, height);
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(frameRate);
+        recorder.setVideoOption("threads", String.valueOf(encoderThreads > 0 ? encoderThreads : Math.min(CORES, tier.encoderThreads)));
+        recorder.setVideoOption("preset", preset != null ? preset : tier.preset);
+        String tune = this.tune != null ? this.tune : live ? "zerolatency" : null;
+        if (tune != null && !tune.isEmpty() && !"none".equals(tune)) {
+            recorder.setVideoOption("tune", tune);
+        }
+        recorder.setGopSize(Math.max(1, (int) Math.round((gopSeconds > 0 ? gopSeconds : 2) * frameRate)));
+        int bFrames = maxBFrames >= 0 ? maxBFrames : live ? 0 : 2;
+        recorder.setMaxBFrames(bFrames);
+        if (bFrames > 0) {
+            // JavaCV默认使用constrained baseline，不支持B帧
+            recorder.setVideoOption("profile", "high");
+        }
+
+        long bitsPerSecond = bitrate > 0 ? bitrate * 1000L : Math.round(width * height * frameRate * tier.bitsPerPixel);
+        RateControl rc = rateControl != null ? rateControl : live ? RateControl.CBR : RateControl.CRF;
+        switch (rc) {
+            case CRF:
+                recorder.setVideoBitrate(0);
+                recorder.setVideoQuality(crf >= 0 ? crf : DEFAULT_CRF);
+                recorder.setVideoOption("maxrate", String.valueOf(bitsPerSecond * 2));
+                recorder.setVideoOption("bufsize", String.valueOf(bitsPerSecond * 4));
+                break;
+            case ABR:
+                recorder.setVideoBitrate((int) bitsPerSecond);
+                recorder.setVideoOption("maxrate", String.valueOf(bitsPerSecond * 3 / 2));
+                recorder.setVideoOption("bufsize", String.valueOf(bitsPerSecond * 2));
+                break;
+            default:
+                recorder.setVideoBitrate((int) bitsPerSecond);
+                recorder.setVideoOption("maxrate", String.valueOf(bitsPerSecond));
+                recorder.setVideoOption("bufsize", String.valueOf(bitsPerSecond));
+                break;
+        }
+        log.info("Encoder tuning for {}x{}@{}: {} {}", width, height, frameRate, rc, recorder.getVideoOptions());
+    }
+
+    public int getDecoderThreads() {
+        return decoderThreads;
+    }
+
+    public void setDecoderThreads(int decoderThreads) {
+        this.decoderThreads = decoderThreads;
+    }
+
+    public ThreadType getDecoderThreadType() {
+        return decoderThreadType;
+    }
+
+    public void setDecoderThreadType(ThreadType decoderThreadType) {
+        this.decoderThreadType = decoderThreadType;
+    }
+
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    public void setEncoderThreads(int encoderThreads) {
+        this.encoderThreads = encoderThreads;
+    }
+
+    public String getPreset() {
+        return preset;
+    }
+
+    public void setPreset(String preset) {
+        this.preset = preset;
+    }
+
+    public String getTune() {
+        return tune;
+    }
+
+    /**
+     * @Description 设置x264的tune，"none"表示不使用tune(推流默认为zerolatency)
+     * @author czx
+     * @date 2026-10-19 18:24
+     * @param tune
+     * @return void
+     */
+    public void setTune(String tune) {
+        this.tune = tune;
+    }
+
+    public double getGopSeconds() {
+        return gopSeconds;
+    }
+
+    public void setGopSeconds(double gopSeconds) {
+        this.gopSeconds = gopSeconds;
+    }
+
+    public int getMaxBFrames() {
+        return maxBFrames;
+    }
+
+    public void setMaxBFrames(int maxBFrames) {
+        this.maxBFrames = maxBFrames;
+    }
+
+    public RateControl getRateControl() {
+        return rateControl;
+    }
+
+    public void setRateControl(RateControl rateControl) {
+        this.rateControl = rateControl;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    public int getCrf() {
+        return crf;
+    }
+
+    public void setCrf(int crf) {
+        this.crf = crf;
+    }
+
+    public void setExpectedResolution(int width, int height) {
+        if (width > 0 && height > 0) {
+            this.expectedWidth = width;
+            this.expectedHeight = height;
+        }
+    }
+}
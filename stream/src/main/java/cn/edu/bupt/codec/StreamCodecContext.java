@@ -0,0 +1,46 @@
+package cn.edu.bupt.codec;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_free_context;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_parameters_to_context;
+
+/**
+ * @Description: StreamCodecContext，为自行构造的AVStream（Netty拉流、RTMP接收）生成codec context。
+ * JavaCV 1.5的recorder在packet模式下从输入流的AVStream.codec复制编码参数，而avformat_new_stream只分配了一个空的context，
+ * 这里按codecpar与time_base填好一个新的context并替换它，对AVStream.codec的访问只保留在这一处
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:35
+ * @Version: 1.0
+ */
+public final class StreamCodecContext {
+
+    private StreamCodecContext() {
+    }
+
+    /**
+     * @Description 按stream的codecpar与time_base生成codec context并交给stream，之后随avformat_free_context一起释放
+     * @author czx
+     * @date 2026-10-19 19:35
+     * @param stream
+     * @return void
+     */
+    @SuppressWarnings("deprecation")
+    public static void attach(AVStream stream) {
+        AVCodecContext context = avcodec_alloc_context3(null);
+        if (context == null) {
+            throw new IllegalStateException("avcodec_alloc_context3() failed");
+        }
+        int ret = avcodec_parameters_to_context(context, stream.codecpar());
+        if (ret < 0) {
+            avcodec_free_context(context);
+            throw new IllegalStateException("avcodec_parameters_to_context() error " + ret);
+        }
+        context.time_base(stream.time_base());
+        AVCodecContext empty = stream.codec();
+        stream.codec(context);
+        avcodec_free_context(empty);
+    }
+}
@@ -0,0 +1,39 @@
+package cn.edu.bupt.event;
+
+/**
+ * @Description: MotionEvent，移动侦测的结果，source为产生该事件的adapter。
+ * 只在状态变化(开始运动/恢复静止)时产生
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:33
+ * @Version: 1.0
+ */
+public class MotionEvent extends Event {
+
+    private final boolean motion;
+
+    /**
+     * 变化像素占画面的比例，0~1
+     */
+    private final double score;
+
+    private final long timestamp;
+
+    public MotionEvent(Object source, boolean motion, double score, long timestamp) {
+        super(source);
+        this.motion = motion;
+        this.score = score;
+        this.timestamp = timestamp;
+    }
+
+    public boolean isMotion() {
+        return motion;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -12,6 +12,11 @@ public class RTSPEvent extends Event {
 
     private Listener listener;
 
+    /**
+     * event创建（拉流）时的System.nanoTime()，用于统计输出延迟
+     */
+    private final long createNanos = System.nanoTime();
+
     public RTSPEvent(Object source) {
         super(source);
     }
@@ -24,4 +29,8 @@ public class RTSPEvent extends Event {
         this.listener = listener;
         return this;
     }
+
+    public long getCreateNanos() {
+        return createNanos;
+    }
 }
@@ -0,0 +1,295 @@
+package cn.edu.bupt.listener;
+
+import cn.edu.bupt.adapter.RtspVideoAdapter;
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.event.PacketEvent;
+import cn.edu.bupt.event.RTSPEvent;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import cn.edu.bupt.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static cn.edu.bupt.util.Constants.DECODE_LISTENER_NAME;
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+/**
+ * @Description: DecodeListener，packet模式下按需解码的共享解码器。
+ * 只在有FrameConsumer订阅时才加入adapter(从下一个关键帧开始)，解码出的画面分发给所有consumer，最后一个consumer离开后关闭；
+ * 所有consumer都只需要关键帧时，非关键帧在拉流线程中直接丢弃，不进入解码器。解码在独立的线程中进行，队列满时丢弃到下一个关键帧
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:07
+ * @Version: 1.0
+ */
+@Slf4j
+public class DecodeListener extends RtspListener {
+
+    private static final int QUEUE_THRESHOLD = 128;
+
+    private final String name;
+    private final RtspVideoAdapter rtspVideoAdapter;
+    private final ListenerMetrics metrics;
+    private final EventQueue queue;
+    private final List<Subscriber> consumers = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * consumer的变化在关键帧处生效，以下两个状态只在拉流线程中修改
+     */
+    private boolean keyframesOnly = true;
+    private boolean waitKeyframe = true;
+    /**
+     * 队列丢弃过packet，解码线程需要清空解码器并等待下一个关键帧
+     */
+    private volatile boolean gap;
+
+    private int videoStreamIndex = -1;
+    private AVCodecContext codecContext;
+    private AVFrame decoded;
+
+    public DecodeListener(FFmpegFrameGrabber grabber, RtspVideoAdapter rtspVideoAdapter) {
+        this.name = DECODE_LISTENER_NAME;
+        this.rtspVideoAdapter = rtspVideoAdapter;
+        this.metrics = MetricsRegistry.getInstance().getStream(rtspVideoAdapter.getName()).getListener(name);
+        this.queue = new EventQueue(name + "-" + rtspVideoAdapter.getName(), QUEUE_THRESHOLD, 0L, false, this::dropEvent, event -> metrics);
+        decoderInit(grabber.getFormatContext());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @Description 是否找到了视频流并成功打开了解码器
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param
+     * @return boolean
+     */
+    public boolean isAvailable() {
+        return codecContext != null;
+    }
+
+    public void addConsumer(FrameConsumer consumer) {
+        consumers.add(new Subscriber(consumer));
+    }
+
+    public boolean removeConsumer(FrameConsumer consumer) {
+        return consumers.removeIf(subscriber -> subscriber.consumer == consumer);
+    }
+
+    public boolean hasConsumers() {
+        return !consumers.isEmpty();
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("Decoder-%d").daemon(true).build());
+        executor.execute(this::decodeLoop);
+        log.info("Shared decoder started for [{}]", rtspVideoAdapter.getName());
+    }
+
+    /**
+     * @Description 关闭解码器，队列中剩余的event被unref，解码器在解码线程退出时释放
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param
+     * @return void
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        } else {
+            release();
+        }
+        log.info("Shared decoder stopped for [{}]", rtspVideoAdapter.getName());
+    }
+
+    /**
+     * @Description 在拉流线程中调用，非视频packet、关键帧之前的packet以及只需要关键帧时的非关键帧直接unref
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param event
+     * @return void
+     */
+    @Override
+    public void fireAfterEventInvoked(Event event) throws Exception {
+        ((RTSPEvent) event).setListener(this);
+        AVPacket pkt = ((PacketEvent) event).getFrame();
+        if (closed || pkt.stream_index() != videoStreamIndex) {
+            rtspVideoAdapter.unref(event, true);
+            return;
+        }
+        if ((pkt.flags() & AV_PKT_FLAG_KEY) != 0) {
+            keyframesOnly = isKeyframesOnly();
+            waitKeyframe = false;
+        } else if (waitKeyframe || keyframesOnly) {
+            rtspVideoAdapter.unref(event, true);
+            return;
+        }
+        if (!queue.offer(event)) {
+            waitKeyframe = true;
+        }
+    }
+
+    private boolean isKeyframesOnly() {
+        for (Subscriber subscriber : consumers) {
+            if (!subscriber.consumer.isKeyframesOnly()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dropEvent(Event event) {
+        gap = true;
+        metrics.dropped();
+        rtspVideoAdapter.unref(event, false);
+    }
+
+    private void decodeLoop() {
+        try {
+            while (!closed) {
+                Event event = queue.take();
+                boolean success = false;
+                try {
+                    decode((PacketEvent) event);
+                    success = true;
+                } catch (Exception e) {
+                    log.warn("Decode failed for [{}] : {}", rtspVideoAdapter.getName(), e.getMessage());
+                } finally {
+                    if (success) {
+                        metrics.output(((RTSPEvent) event).getCreateNanos());
+                    } else {
+                        metrics.outputError();
+                    }
+                    rtspVideoAdapter.unref(event, success);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Event event;
+            while ((event = queue.poll()) != null) {
+                rtspVideoAdapter.unref(event, false);
+            }
+            release();
+        }
+    }
+
+    private void decode(PacketEvent event) {
+        AVPacket pkt = event.getFrame();
+        boolean key = (pkt.flags() & AV_PKT_FLAG_KEY) != 0;
+        if (gap) {
+            // 丢失的packet之后的非关键帧无法正确解码
+            gap = false;
+            avcodec_flush_buffers(codecContext);
+            if (!key) {
+                return;
+            }
+        }
+        if (avcodec_send_packet(codecContext, pkt) < 0) {
+            return;
+        }
+        while (avcodec_receive_frame(codecContext, decoded) == 0) {
+            try {
+                dispatch(decoded, event.getCreateNanos());
+            } finally {
+                av_frame_unref(decoded);
+            }
+        }
+    }
+
+    private void dispatch(AVFrame frame, long createNanos) {
+        boolean key = frame.key_frame() != 0;
+        for (Subscriber subscriber : consumers) {
+            // 每个consumer都从订阅之后的第一个关键帧开始
+            if (key) {
+                subscriber.started = true;
+            }
+            if (!subscriber.started || !key && subscriber.consumer.isKeyframesOnly()) {
+                continue;
+            }
+            try {
+                subscriber.consumer.onFrame(frame, createNanos);
+            } catch (Exception e) {
+                log.warn("Frame consumer failed for [{}] : {}", rtspVideoAdapter.getName(), e.getMessage());
+            }
+        }
+    }
+
+    private void decoderInit(AVFormatContext fc) {
+        if (fc == null) {
+            return;
+        }
+        for (int i = 0; i < fc.nb_streams(); i++) {
+            if (fc.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_VIDEO) {
+                videoStreamIndex = i;
+                break;
+            }
+        }
+        if (videoStreamIndex < 0) {
+            log.warn("No video stream in [{}], decoding disabled", rtspVideoAdapter.getName());
+            return;
+        }
+        AVCodecParameters parameters = fc.streams(videoStreamIndex).codecpar();
+        AVCodec codec = avcodec_find_decoder(parameters.codec_id());
+        if (codec == null) {
+            log.warn("No decoder for [{}], decoding disabled", rtspVideoAdapter.getName());
+            return;
+        }
+        AVCodecContext context = avcodec_alloc_context3(codec);
+        avcodec_parameters_to_context(context, parameters);
+        context.thread_count(1);
+        if (avcodec_open2(context, codec, (AVDictionary) null) < 0) {
+            avcodec_free_context(context);
+            log.warn("Failed to open decoder for [{}], decoding disabled", rtspVideoAdapter.getName());
+            return;
+        }
+        codecContext = context;
+        decoded = av_frame_alloc();
+    }
+
+    private void release() {
+        if (codecContext != null) {
+            avcodec_free_context(codecContext);
+            codecContext = null;
+        }
+        if (decoded != null) {
+            av_frame_free(decoded);
+            decoded = null;
+        }
+    }
+
+    private static class Subscriber {
+
+        final FrameConsumer consumer;
+
+        /**
+         * 只在解码线程中访问
+         */
+        boolean started;
+
+        Subscriber(FrameConsumer consumer) {
+            this.consumer = consumer;
+        }
+    }
+}
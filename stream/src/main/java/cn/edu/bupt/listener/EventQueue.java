@@ -0,0 +1,116 @@
+package cn.edu.bupt.listener;
+
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @Description: EventQueue，listener与处理线程之间交接event的队列。
+ * 队列长度超过阈值时告警，超过两倍阈值时丢弃event，被丢弃的event交给dropHandler进行unref；
+ * 队列可能由多路流共享，每个event进出队列时更新其所属listener的ListenerMetrics，队列长度按流与listener统计
+ * @Author: czx
+ * @CreateDate: 2026-10-19 10:20
+ * @Version: 1.0
+ */
+@Slf4j
+public class EventQueue {
+
+    private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+
+    private final String name;
+
+    private final int queueThreshold;
+
+    private final long offerTimeout;
+
+    /**
+     * 超过两倍阈值时是否清空整个队列（推流时旧数据没有意义，录像则只丢弃新的event）
+     */
+    private final boolean clearOnOverflow;
+
+    private final Consumer<Event> dropHandler;
+
+    private final Function<Event,ListenerMetrics> metricsOf;
+
+    public EventQueue(String name, int queueThreshold, long offerTimeout, boolean clearOnOverflow, Consumer<Event> dropHandler,
+                      Function<Event,ListenerMetrics> metricsOf) {
+        this.name = name;
+        this.queueThreshold = queueThreshold;
+        this.offerTimeout = offerTimeout;
+        this.clearOnOverflow = clearOnOverflow;
+        this.dropHandler = dropHandler;
+        this.metricsOf = metricsOf;
+    }
+
+    /**
+     * @Description 将event推入队列，没有被接受的event会交给dropHandler处理
+     * @author czx
+     * @date 2026-10-19 10:20
+     * @param event
+     * @return boolean event是否进入队列
+     */
+    public boolean offer(Event event){
+        int size = queue.size();
+        if(size > queueThreshold) {
+            log.warn("Queue[{}] size is greater than threshold. queue size={} threshold={}", name, size, queueThreshold);
+        }
+        if(size >= 2 * queueThreshold){
+            if(clearOnOverflow){
+                log.warn("clear queue[{}]",name);
+                List<Event> dropped = new ArrayList<>(size);
+                queue.drainTo(dropped);
+                for(Event droppedEvent : dropped){
+                    metricsOf.apply(droppedEvent).dequeued();
+                    dropHandler.accept(droppedEvent);
+                }
+            }
+            dropHandler.accept(event);
+            return false;
+        }
+        ListenerMetrics metrics = metricsOf.apply(event);
+        // 先计数再入队，避免处理线程先取出导致计数为负
+        metrics.enqueued();
+        try{
+            if(queue.offer(event, offerTimeout, TimeUnit.MILLISECONDS)){
+                log.trace("Inserting cn.edu.bupt.event into queue[size:{}]",queue.size());
+                return true;
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        metrics.dequeued();
+        log.warn("Event data was not accepted by the queue[{}]",name);
+        dropHandler.accept(event);
+        return false;
+    }
+
+    public Event take() throws InterruptedException {
+        Event event = queue.take();
+        metricsOf.apply(event).dequeued();
+        return event;
+    }
+
+    public Event poll(){
+        Event event = queue.poll();
+        if(event!=null){
+            metricsOf.apply(event).dequeued();
+        }
+        return event;
+    }
+
+    public int size(){
+        return queue.size();
+    }
+
+    public boolean isEmpty(){
+        return queue.isEmpty();
+    }
+}
@@ -0,0 +1,34 @@
+package cn.edu.bupt.listener;
+
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+
+/**
+ * @Description: FrameConsumer，需要解码后画面的功能(抓拍、移动侦测、缩略图、转码等)。
+ * 通过RtspVideoAdapter.attachFrameConsumer订阅，packet模式下由共享的DecodeListener解码，从下一个关键帧开始收到画面
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:07
+ * @Version: 1.0
+ */
+public interface FrameConsumer {
+
+    /**
+     * @Description 在解码线程中调用，frame由所有consumer共享并且会被复用，只在调用期间有效，不能修改，需要保留时自行复制
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param frame 解码后的画面
+     * @param createNanos 对应packet拉流时的System.nanoTime()
+     * @return void
+     */
+    void onFrame(AVFrame frame, long createNanos) throws Exception;
+
+    /**
+     * @Description 是否只需要关键帧。所有consumer都只需要关键帧时，非关键帧不解码
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param
+     * @return boolean
+     */
+    default boolean isKeyframesOnly() {
+        return false;
+    }
+}
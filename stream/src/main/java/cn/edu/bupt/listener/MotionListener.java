@@ -0,0 +1,340 @@
+package cn.edu.bupt.listener;
+
+import cn.edu.bupt.adapter.RtspVideoAdapter;
+import cn.edu.bupt.event.Event;
+import cn.edu.bupt.event.GrabEvent;
+import cn.edu.bupt.event.MotionEvent;
+import cn.edu.bupt.event.RTSPEvent;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import cn.edu.bupt.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static cn.edu.bupt.util.Constants.MOTION_LISTENER_NAME;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_GRAY8;
+import static org.bytedeco.ffmpeg.global.swscale.SWS_FAST_BILINEAR;
+import static org.bytedeco.ffmpeg.global.swscale.sws_freeContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_getCachedContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_scale;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.absdiff;
+import static org.bytedeco.opencv.global.opencv_core.countNonZero;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * @Description: MotionListener，轻量的移动侦测。
+ * usePacket模式下作为FrameConsumer订阅adapter的共享解码器，只接收关键帧，在解码线程中直接缩放为小尺寸灰度图；
+ * Frame模式下作为listener每interval帧取一帧，交给所有adapter共用的有界线程池，同一摄像头同时只处理一帧，处理不过来的帧直接丢弃。
+ * 相邻两次采样做帧差，变化像素的比例超过灵敏度对应的阈值即认为有运动
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:33
+ * @Version: 1.0
+ */
+@Slf4j
+public class MotionListener extends RtspListener implements FrameConsumer {
+
+    /**
+     * 检测使用的画面宽度，高度按比例计算
+     */
+    private static final int DETECT_WIDTH = 160;
+    private static final double PIXEL_THRESHOLD = 25;
+    private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS, WORKERS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(WORKERS * 4), new BasicThreadFactory.Builder().namingPattern("Motion-Pool-%d").daemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+    private static final List<Consumer<MotionEvent>> handlers = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final RtspVideoAdapter rtspVideoAdapter;
+    private final ListenerMetrics metrics;
+    private final int interval;
+    private volatile int sensitivity;
+    private volatile boolean closed;
+    /**
+     * 该摄像头是否有一帧正在处理，同时保证swscale与Mat只被一个线程使用
+     */
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private boolean released;
+    private int frameCount;
+    private boolean motion;
+
+    private SwsContext swsContext;
+    private final PointerPointer dstData = new PointerPointer(1);
+    private final IntPointer dstStride = new IntPointer(1);
+    private final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+    private final Size blurSize = new Size(5, 5);
+    /**
+     * 复用的检测缓存：当前帧、上一帧与差分结果，画面尺寸变化时重新分配
+     */
+    private Mat current, previous, diff, resized;
+    private boolean hasPrevious;
+
+    public MotionListener(RtspVideoAdapter rtspVideoAdapter, int sensitivity, int interval) {
+        this.name = MOTION_LISTENER_NAME;
+        this.rtspVideoAdapter = rtspVideoAdapter;
+        this.metrics = MetricsRegistry.getInstance().getStream(rtspVideoAdapter.getName()).getListener(name);
+        this.interval = Math.max(1, interval);
+        setSensitivity(sensitivity);
+    }
+
+    public MotionListener(RtspVideoAdapter rtspVideoAdapter, int sensitivity) {
+        this(rtspVideoAdapter, sensitivity, 25);
+    }
+
+    /**
+     * @Description 注册移动侦测事件的处理函数，对所有摄像头生效
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param handler
+     * @return void
+     */
+    public static void addHandler(Consumer<MotionEvent> handler) {
+        handlers.add(handler);
+    }
+
+    public static void removeHandler(Consumer<MotionEvent> handler) {
+        handlers.remove(handler);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int getSensitivity() {
+        return sensitivity;
+    }
+
+    /**
+     * @Description 设置灵敏度，1~100，越大越灵敏。100时0.1%的像素变化即认为有运动，1时需要10%
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param sensitivity
+     * @return void
+     */
+    public void setSensitivity(int sensitivity) {
+        this.sensitivity = Math.min(100, Math.max(1, sensitivity));
+    }
+
+    public boolean isMotion() {
+        return motion;
+    }
+
+    @Override
+    public void start() {
+        log.info("Motion detection started for [{}], sensitivity={}", rtspVideoAdapter.getName(), sensitivity);
+    }
+
+    /**
+     * @Description 关闭该listener，正在处理的帧完成后释放缓存
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param
+     * @return void
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (busy.compareAndSet(false, true)) {
+            release();
+        }
+        log.info("Motion detection stopped for [{}]", rtspVideoAdapter.getName());
+    }
+
+    @Override
+    public boolean isKeyframesOnly() {
+        return true;
+    }
+
+    /**
+     * @Description packet模式下由共享解码器在解码线程中调用，只收到关键帧
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param frame
+     * @param createNanos
+     * @return void
+     */
+    @Override
+    public void onFrame(AVFrame frame, long createNanos) {
+        if (closed || !busy.compareAndSet(false, true)) {
+            return;
+        }
+        boolean success = false;
+        try {
+            detect(scale(frame));
+            success = true;
+        } catch (Exception e) {
+            log.warn("Motion detection failed for [{}] : {}", rtspVideoAdapter.getName(), e.getMessage());
+        } finally {
+            if (success) {
+                metrics.output(createNanos);
+            } else {
+                metrics.outputError();
+            }
+            busy.set(false);
+            if (closed && busy.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * @Description frame模式下在拉流线程中调用，只做过滤，不需要的与处理不过来的event直接unref
+     * @author czx
+     * @date 2026-10-19 17:33
+     * @param event
+     * @return void
+     */
+    @Override
+    public void fireAfterEventInvoked(Event event) throws Exception {
+        ((RTSPEvent) event).setListener(this);
+        if (closed || !sample(event)) {
+            rtspVideoAdapter.unref(event, true);
+            return;
+        }
+        if (!busy.compareAndSet(false, true)) {
+            metrics.dropped();
+            rtspVideoAdapter.unref(event, false);
+            return;
+        }
+        try {
+            executor.execute(() -> process(event));
+        } catch (RejectedExecutionException e) {
+            busy.set(false);
+            metrics.dropped();
+            rtspVideoAdapter.unref(event, false);
+        }
+    }
+
+    private boolean sample(Event event) {
+        return event instanceof GrabEvent && frameCount++ % interval == 0;
+    }
+
+    private void process(Event event) {
+        boolean success = false;
+        try {
+            Mat gray = convert((GrabEvent) event);
+            if (gray != null) {
+                detect(gray);
+            }
+            success = true;
+        } catch (Exception e) {
+            log.warn("Motion detection failed for [{}] : {}", rtspVideoAdapter.getName(), e.getMessage());
+        } finally {
+            if (success) {
+                metrics.output(((RTSPEvent) event).getCreateNanos());
+            } else {
+                metrics.outputError();
+            }
+            rtspVideoAdapter.unref(event, success);
+            busy.set(false);
+            if (closed && busy.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * @Description 用swscale把解码后的画面直接缩放为DETECT_WIDTH宽的灰度图写入current
+     * @author czx
+     * @date 2026-10-19 18:07
+     * @param frame
+     * @return org.bytedeco.opencv.opencv_core.Mat
+     */
+    private Mat scale(AVFrame frame) {
+        int width = frame.width(), height = frame.height();
+        allocate(width, height);
+        swsContext = sws_getCachedContext(swsContext, width, height, frame.format(),
+                current.cols(), current.rows(), AV_PIX_FMT_GRAY8, SWS_FAST_BILINEAR, null, null, (DoublePointer) null);
+        dstData.put(0, current.data());
+        dstStride.put(0, (int) current.step());
+        sws_scale(swsContext, frame.data(), frame.linesize(), 0, height, dstData, dstStride);
+        return current;
+    }
+
+    private Mat convert(GrabEvent event) {
+        Mat image = converter.convert(event.getFrame());
+        if (image == null) {
+            return null;
+        }
+        allocate(image.cols(), image.rows());
+        resize(image, resized, current.size(), 0, 0, INTER_AREA);
+        cvtColor(resized, current, image.channels() == 4 ? COLOR_BGRA2GRAY : COLOR_BGR2GRAY);
+        return current;
+    }
+
+    private void allocate(int width, int height) {
+        int detectHeight = Math.max(2, (int) ((long) DETECT_WIDTH * height / width) & ~1);
+        if (current != null && current.rows() == detectHeight) {
+            return;
+        }
+        current = new Mat(detectHeight, DETECT_WIDTH, CV_8UC1);
+        previous = new Mat(detectHeight, DETECT_WIDTH, CV_8UC1);
+        diff = new Mat(detectHeight, DETECT_WIDTH, CV_8UC1);
+        resized = new Mat();
+        hasPrevious = false;
+    }
+
+    private void detect(Mat gray) {
+        GaussianBlur(gray, gray, blurSize, 0);
+        if (hasPrevious) {
+            absdiff(gray, previous, diff);
+            threshold(diff, diff, PIXEL_THRESHOLD, 255, THRESH_BINARY);
+            double score = (double) countNonZero(diff) / diff.total();
+            // sensitivity 1~100 对应面积阈值 10%~0.1%
+            boolean moving = score >= (101 - sensitivity) / 1000.0;
+            if (moving) {
+                rtspVideoAdapter.trigger();
+            }
+            if (moving != motion) {
+                motion = moving;
+                emit(new MotionEvent(rtspVideoAdapter, moving, score, System.currentTimeMillis()));
+            }
+        }
+        // 交换缓存，下一帧写入原来的previous
+        Mat swap = previous;
+        previous = gray;
+        current = swap;
+        hasPrevious = true;
+    }
+
+    private void emit(MotionEvent event) {
+        log.info("Motion {} on [{}], score={}", event.isMotion() ? "started" : "stopped", rtspVideoAdapter.getName(), event.getScore());
+        for (Consumer<MotionEvent> handler : handlers) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                log.warn("Motion handler failed : {}", e.getMessage());
+            }
+        }
+    }
+
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (swsContext != null) {
+            sws_freeContext(swsContext);
+            swsContext = null;
+        }
+        for (Mat mat : new Mat[]{current, previous, diff, resized}) {
+            if (mat != null) {
+                mat.release();
+            }
+        }
+    }
+}
@@ -5,10 +5,18 @@ import cn.edu.bupt.event.Event;
 import cn.edu.bupt.event.GrabEvent;
 import cn.edu.bupt.event.PacketEvent;
 import cn.edu.bupt.event.RTSPEvent;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import cn.edu.bupt.metrics.MetricsRegistry;
+import cn.edu.bupt.rtmp.RtmpPublisher;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
 import org.bytedeco.ffmpeg.avcodec.AVPacket;
 import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVRational;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.FFmpegFrameRecorder;
 
@@ -16,6 +24,12 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static cn.edu.bupt.util.Constants.PUSH_LISTENER_NAME;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_VIDEO;
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+import static org.bytedeco.ffmpeg.global.avutil.av_rescale_q;
 
 /**
  * @Usage: 1.Init进行初始化 2.Start启动监听器 3.Fire cn.edu.bupt.listener，开始Push Event
@@ -32,16 +46,23 @@ public class PushListener extends RtspListener {
     private static ExecutorService executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("Push-Pool-%d").daemon(false).build());
     private static final AtomicBoolean executorStarted = new AtomicBoolean(false);
     private FFmpegFrameRecorder pushRecorder;
-    private int queueThreshold;
     private String rtmpPath;
     private boolean isInit;
-    private boolean isStarted;
-    private static BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
-    private long offerTimeout;
+    private volatile boolean isStarted;
+    private static final EventQueue queue = new EventQueue("Push",1024,100L,true,PushListener::dropEvent,
+            event -> ((PushListener) ((RTSPEvent) event).getListener()).metrics);
     private boolean usePacket;
     private final RtspVideoAdapter rtspVideoAdapter;
     private AVFormatContext fc;
     private long lastDTS = 0;
+    private final ListenerMetrics metrics;
+    /**
+     * Netty推流，为null时使用pushRecorder
+     */
+    private RtmpPublisher publisher;
+    private int videoStreamIndex = -1;
+    private AVRational videoTimeBase;
+    private static final AVRational MILLIS = av_make_q(1,1000);
 
     private PushListener(String listenerName,RtspVideoAdapter rtspVideoAdapter){
         this.isStarted = false;
@@ -49,8 +70,7 @@ public class PushListener extends RtspListener {
         this.usePacket = false;
         this.name = listenerName;
         this.rtspVideoAdapter = rtspVideoAdapter;
-        this.queueThreshold = 1024;
-        this.offerTimeout = 100L;
+        this.metrics = MetricsRegistry.getInstance().getStream(rtspVideoAdapter.getName()).getListener(listenerName);
     }
 
     public PushListener(String listenerName,String rtmpPath,FFmpegFrameGrabber grabber,RtspVideoAdapter rtspVideoAdapter,boolean usePacket){
@@ -104,7 +124,11 @@ public class PushListener extends RtspListener {
     @Override
     public void start(){
         try {
-            if(isInit) {
+            if(isInit && publisher!=null) {
+                publisher.start();
+                isStarted = true;
+                log.info("Push publisher started: {}",rtmpPath);
+            }else if(isInit) {
                 pushRecorder.start(fc);
                 startExecutor();
                 isStarted = true;
@@ -127,9 +151,18 @@ public class PushListener extends RtspListener {
      */
     @Override
     public void close(){
-        try {
-            pushRecorder.stop();
+        if(publisher!=null){
             isStarted = false;
+            publisher.close();
+            log.info("Push publisher stopped: {}",rtmpPath);
+            return;
+        }
+        try {
+            // 与推流线程中的record互斥，避免在编码过程中释放recorder
+            synchronized (this) {
+                isStarted = false;
+                pushRecorder.stop();
+            }
             log.info("Push recorder stopped");
         }catch (Exception e){
             log.error("Push recorder failed to close");
@@ -146,12 +179,15 @@ public class PushListener extends RtspListener {
      */
     @Override
     public void fireAfterEventInvoked(Event event) throws Exception{
-        if(isStarted) {
+        if(isStarted && publisher!=null) {
+            publish((PacketEvent) event);
+        }else if(isStarted) {
             ((RTSPEvent)event).setListener(this);
             pushEvent(event);
         }else {
-            log.warn("Failed to fire the cn.edu.bupt.listener [{}].You should start this push recorder before you start pushing",name);
-            throw new Exception("Failed to fire the cn.edu.bupt.listener!");
+            //移除时正在分发的快照中仍有这个listener，不能抛出异常中断拉流，只需回收event
+            log.debug("Push listener [{}] is not started, skip the event",name);
+            rtspVideoAdapter.unref(event,false);
         }
     }
 
@@ -163,6 +199,10 @@ public class PushListener extends RtspListener {
      * @return void
      */
     private void pushRecorderInit(String rtmpPath,FFmpegFrameGrabber grabber){
+        if(usePacket && rtspVideoAdapter.isNettyEgress() && publisherInit(rtmpPath,grabber)){
+            this.isInit = true;
+            return;
+        }
         //若选择录制声音，会造成较高的延迟
         this.pushRecorder = new FFmpegFrameRecorder(rtmpPath,grabber.getImageWidth(),grabber.getImageHeight(),0);
         pushRecorder.setFrameRate(grabber.getFrameRate());
@@ -170,12 +210,92 @@ public class PushListener extends RtspListener {
         if(usePacket){
             fc = grabber.getFormatContext();
         }else{
+            rtspVideoAdapter.getCodecTuning().applyTo(pushRecorder,grabber,true);
             fc = null;
         }
         this.isInit = true;
     }
 
 
+    /**
+     * @Description 初始化Netty推流，只支持H.264视频，其余情况返回false并退回FFmpeg推流
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param rtmpPath, grabber
+     * @return boolean
+     */
+    private boolean publisherInit(String rtmpPath,FFmpegFrameGrabber grabber){
+        AVFormatContext formatContext = grabber.getFormatContext();
+        for(int i=0;formatContext!=null && i<formatContext.nb_streams();i++){
+            AVStream stream = formatContext.streams(i);
+            AVCodecParameters parameters = stream.codecpar();
+            if(parameters.codec_type()!=AVMEDIA_TYPE_VIDEO){
+                continue;
+            }
+            if(parameters.codec_id()!=AV_CODEC_ID_H264){
+                break;
+            }
+            byte[] extradata = null;
+            if(parameters.extradata()!=null && parameters.extradata_size()>0){
+                extradata = new byte[parameters.extradata_size()];
+                parameters.extradata().get(extradata);
+            }
+            try {
+                this.publisher = new RtmpPublisher(rtmpPath,grabber.getImageWidth(),grabber.getImageHeight(),grabber.getFrameRate(),extradata);
+            }catch (IllegalArgumentException e){
+                log.warn("Netty push does not support {}, fall back to ffmpeg: {}",rtmpPath,e.getMessage());
+                return false;
+            }
+            this.videoStreamIndex = i;
+            this.videoTimeBase = stream.time_base();
+            return true;
+        }
+        log.warn("Netty push only supports H.264 video, fall back to ffmpeg: {}",rtmpPath);
+        return false;
+    }
+
+    /**
+     * @Description Netty推流直接在adapter线程上发送，不经过推流队列；AVPacket的引用保留到数据写出socket后才unref，
+     * 发送缓冲满时publisher会丢帧直到下一个关键帧
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param event
+     * @return void
+     */
+    private void publish(PacketEvent event){
+        AVPacket avPacket = event.getFrame();
+        if(avPacket.stream_index()!=videoStreamIndex){
+            // 与FFmpeg推流一致，只推视频
+            rtspVideoAdapter.unref(event,false);
+            return;
+        }
+        long dts = avPacket.dts()==AV_NOPTS_VALUE?avPacket.pts():avPacket.dts();
+        if(dts<lastDTS){
+            metrics.late();
+            rtspVideoAdapter.unref(event,false);
+            return;
+        }
+        lastDTS = dts;
+        long pts = avPacket.pts()==AV_NOPTS_VALUE?dts:avPacket.pts();
+        long dtsMillis = av_rescale_q(dts,videoTimeBase,MILLIS);
+        int compositionTime = (int)(av_rescale_q(pts,videoTimeBase,MILLIS)-dtsMillis);
+        boolean keyframe = (avPacket.flags()&AV_PKT_FLAG_KEY)!=0;
+        ByteBuf data = Unpooled.wrappedBuffer(avPacket.data().capacity(avPacket.size()).asByteBuffer());
+        long createNanos = event.getCreateNanos();
+        boolean queued = publisher.publish(data,dtsMillis,compositionTime,keyframe,success -> {
+            if(success){
+                metrics.output(createNanos);
+            }else{
+                metrics.outputError();
+            }
+            rtspVideoAdapter.unref(event,success);
+        });
+        if(!queued){
+            metrics.dropped();
+            rtspVideoAdapter.unref(event,false);
+        }
+    }
+
     /**
      * @Description 将event推入队列中，通过新线程进行处理
      * @author czx
@@ -184,21 +304,20 @@ public class PushListener extends RtspListener {
      * @return void
      */
     private void pushEvent(Event event){
-        //将event推入queue
-        try{
-            if(queue.size() > this.queueThreshold) {
-                log.warn("Queue size is greater than threshold. queue size={} threshold={} timestamp={}", this.queue.size(), this.queueThreshold,System.currentTimeMillis());
-            }
-            if(queue.size() < 2 * this.queueThreshold){
-                queue.offer(event, this.offerTimeout, TimeUnit.MILLISECONDS);
-                log.trace("Inserting cn.edu.bupt.event into queue[size:{}]",queue.size());
-            }else {
-                log.warn("clear queue");
-                queue.clear();
-            }
-        }catch (Exception e){
-            log.warn("Event data was not accepted by the queue");
-        }
+        queue.offer(event);
+    }
+
+    /**
+     * @Description 队列丢弃的event同样需要unref，否则AVPacket与计数都不会被回收
+     * @author czx
+     * @date 2026-10-19 10:26
+     * @param event
+     * @return void
+     */
+    private static void dropEvent(Event event){
+        PushListener listener = (PushListener) ((RTSPEvent) event).getListener();
+        listener.metrics.dropped();
+        listener.rtspVideoAdapter.unref(event,false);
     }
 
     private void startExecutor(){
@@ -210,30 +329,46 @@ public class PushListener extends RtspListener {
                         while (true) {
                             Event event = queue.take();
                             PushListener listener = (PushListener) ((RTSPEvent) event).getListener();
-                            if (!listener.isStarted) {
-                                continue;
-                            }
                             FFmpegFrameRecorder pushRecorder = listener.pushRecorder;
                             boolean success = false;
+                            boolean late = false;
+                            boolean closed = false;
                             try {
-                                if (event instanceof PacketEvent) {
-                                    AVPacket avPacket = ((PacketEvent) event).getFrame();
-                                    if(avPacket.dts()<listener.lastDTS){
+                                synchronized (listener) {
+                                    // 已经关闭的listener剩余的event直接unref
+                                    if (!listener.isStarted) {
+                                        closed = true;
                                         continue;
-                                    }else{
-                                        listener.lastDTS = avPacket.dts();
                                     }
-                                    success = pushRecorder.recordPacket(avPacket);
-                                } else if (event instanceof GrabEvent) {
-                                    pushRecorder.record(((GrabEvent) event).getFrame());
-                                    success = true;
-                                } else {
-                                    throw new Exception("Unknown cn.edu.bupt.event type!");
+                                    if (event instanceof PacketEvent) {
+                                        AVPacket avPacket = ((PacketEvent) event).getFrame();
+                                        if(avPacket.dts()<listener.lastDTS){
+                                            late = true;
+                                            continue;
+                                        }else{
+                                            listener.lastDTS = avPacket.dts();
+                                        }
+                                        success = pushRecorder.recordPacket(avPacket);
+                                    } else if (event instanceof GrabEvent) {
+                                        pushRecorder.record(((GrabEvent) event).getFrame());
+                                        success = true;
+                                    } else {
+                                        throw new Exception("Unknown cn.edu.bupt.event type!");
+                                    }
                                 }
                             } catch (Exception e) {
                                 e.printStackTrace();
                                 log.warn("Push cn.edu.bupt.event failed for pushRecorder [{}]", getName());
                             } finally {
+                                if(success){
+                                    listener.metrics.output(((RTSPEvent) event).getCreateNanos());
+                                }else if(late){
+                                    listener.metrics.late();
+                                }else if(closed){
+                                    listener.metrics.dropped();
+                                }else{
+                                    listener.metrics.outputError();
+                                }
                                 listener.rtspVideoAdapter.unref(event, success);
                             }
                             if(queue.isEmpty()&&!executorStarted.get()){
@@ -5,6 +5,8 @@ import cn.edu.bupt.event.Event;
 import cn.edu.bupt.event.GrabEvent;
 import cn.edu.bupt.event.PacketEvent;
 import cn.edu.bupt.event.RTSPEvent;
+import cn.edu.bupt.metrics.ListenerMetrics;
+import cn.edu.bupt.metrics.MetricsRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.bytedeco.ffmpeg.avformat.AVFormatContext;
@@ -33,18 +35,18 @@ public class RecordListener extends RtspListener {
     private static ScheduledExecutorService executor = Executors.newScheduledThreadPool(1,new BasicThreadFactory.Builder().namingPattern("Record-Pool-%d").daemon(false).build());
     private static AtomicBoolean executorStarted = new AtomicBoolean(false);
     private FFmpegFrameRecorder fileRecorder;
-    private int queueThreshold;
     private String fileName;
     private boolean isInit;
     private boolean isStarted;
     private boolean isStopped;
-    private static BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
-    private long offerTimeout;
+    private static final EventQueue queue = new EventQueue("Record",1024,100L,false,RecordListener::dropEvent,
+            event -> ((RecordListener) ((RTSPEvent) event).getListener()).metrics);
     private long startTimestamp = -1;
     private boolean usePacket;
     private final RtspVideoAdapter rtspVideoAdapter;
     private AVFormatContext fc;
     private CountDownLatch closeCountDownLatch = new CountDownLatch(1);
+    private final ListenerMetrics metrics;
     /**
      * Listener的fire失败次数
      */
@@ -60,9 +62,8 @@ public class RecordListener extends RtspListener {
         this.usePacket = false;
         this.isStopped = false;
         this.name = listenerName;
-        this.queueThreshold = 1024;
-        this.offerTimeout = 100L;
         this.rtspVideoAdapter = rtspVideoAdapter;
+        this.metrics = MetricsRegistry.getInstance().getStream(rtspVideoAdapter.getName()).getListener(listenerName);
     }
 
     public RecordListener(String filename, FFmpegFrameGrabber grabber,RtspVideoAdapter rtspVideoAdapter) {
@@ -139,60 +140,61 @@ public class RecordListener extends RtspListener {
      * @return void
      */
     private void executorTask(){
-        if(queue==null){
-            log.warn("Queue is null");
-        }else{
-            Set<RecordListener> recordListeners = new HashSet<>();
-            while(!queue.isEmpty()){
-                Event event = queue.poll();
-                RecordListener listener = (RecordListener)((RTSPEvent) event).getListener();
-                FFmpegFrameRecorder fileRecorder = listener.fileRecorder;
-                if(listener.isStopped){
-                    recordListeners.add(listener);
-                }
-                boolean success = false;
-                try {
-                    if (event instanceof GrabEvent) {
-                        // 时间戳设置
-                        long timestamp = ((GrabEvent) event).getTimestamp();
-                        if (listener.startTimestamp == -1) {
-                            listener.startTimestamp = timestamp;
-                            timestamp = 0;
-                            fileRecorder.setTimestamp(timestamp);
-                        } else {
-                            timestamp -= listener.startTimestamp;
-                        }
-                        if (timestamp > fileRecorder.getTimestamp()) {
-                            fileRecorder.setTimestamp(timestamp);
-                        }
-                        fileRecorder.record(((GrabEvent) event).getFrame());
-                        success = true;
-                    } else if (event instanceof PacketEvent) {
-                        success = fileRecorder.recordPacket(((PacketEvent) event).getFrame());
+        Set<RecordListener> recordListeners = new HashSet<>();
+        while(!queue.isEmpty()){
+            Event event = queue.poll();
+            RecordListener listener = (RecordListener)((RTSPEvent) event).getListener();
+            FFmpegFrameRecorder fileRecorder = listener.fileRecorder;
+            if(listener.isStopped){
+                recordListeners.add(listener);
+            }
+            boolean success = false;
+            try {
+                if (event instanceof GrabEvent) {
+                    // 时间戳设置
+                    long timestamp = ((GrabEvent) event).getTimestamp();
+                    if (listener.startTimestamp == -1) {
+                        listener.startTimestamp = timestamp;
+                        timestamp = 0;
+                        fileRecorder.setTimestamp(timestamp);
                     } else {
-                        log.warn("Unknown cn.edu.bupt.event type!");
+                        timestamp -= listener.startTimestamp;
                     }
-                }catch (Exception e) {
-                    e.printStackTrace();
-                    log.warn("Record cn.edu.bupt.event failed for Recorder : {}", listener.getName());
-                }finally {
-                    listener.rtspVideoAdapter.unref(event,success);
+                    if (timestamp > fileRecorder.getTimestamp()) {
+                        fileRecorder.setTimestamp(timestamp);
+                    }
+                    fileRecorder.record(((GrabEvent) event).getFrame());
+                    success = true;
+                } else if (event instanceof PacketEvent) {
+                    success = fileRecorder.recordPacket(((PacketEvent) event).getFrame());
+                } else {
+                    log.warn("Unknown cn.edu.bupt.event type!");
+                }
+            }catch (Exception e) {
+                e.printStackTrace();
+                log.warn("Record cn.edu.bupt.event failed for Recorder : {}", listener.getName());
+            }finally {
+                if(success){
+                    listener.metrics.output(((RTSPEvent) event).getCreateNanos());
+                }else{
+                    listener.metrics.outputError();
                 }
+                listener.rtspVideoAdapter.unref(event,success);
             }
-            // 关闭recorder
-            if(!recordListeners.isEmpty()){
-                Iterator<RecordListener> iterator = recordListeners.iterator();
-                while(iterator.hasNext()){
-                    RecordListener recordListener = iterator.next();
-                    FFmpegFrameRecorder recorder = recordListener.fileRecorder;
-                    try {
-                        recorder.stop();
-                    }catch (Exception e){
-                        e.printStackTrace();
-                        log.warn("Failed to stop a file recorder");
-                    }finally {
-                        recordListener.closeCountDownLatch.countDown();
-                    }
+        }
+        // 关闭recorder
+        if(!recordListeners.isEmpty()){
+            Iterator<RecordListener> iterator = recordListeners.iterator();
+            while(iterator.hasNext()){
+                RecordListener recordListener = iterator.next();
+                FFmpegFrameRecorder recorder = recordListener.fileRecorder;
+                try {
+                    recorder.stop();
+                }catch (Exception e){
+                    e.printStackTrace();
+                    log.warn("Failed to stop a file recorder");
+                }finally {
+                    recordListener.closeCountDownLatch.countDown();
                 }
             }
         }
@@ -234,6 +236,7 @@ public class RecordListener extends RtspListener {
         }else if(isInit&&!isStopped){
             start();
             if(isStarted) {
+                ((RTSPEvent)event).setListener(this);
                 pushEvent(event);
                 failCount = 0;
             }else {
@@ -266,6 +269,7 @@ public class RecordListener extends RtspListener {
         if(usePacket){
             fc = grabber.getFormatContext();
         }else{
+            rtspVideoAdapter.getCodecTuning().applyTo(fileRecorder,grabber,false);
             fc = null;
         }
         this.isInit = true;
@@ -279,23 +283,19 @@ public class RecordListener extends RtspListener {
      * @return void
      */
     private void pushEvent(Event event){
-        //如果queue为null，初始化queue
-        if(queue == null){
-            log.trace("Creating cn.edu.bupt.event queue");
-            queue = new LinkedBlockingQueue<>();
-        }
+        queue.offer(event);
+    }
 
-        //将event推入queue
-        try{
-            if(queue.size() > this.queueThreshold) {
-                log.warn("Queue size is greater than threshold. queue size={} threshold={}", this.queue.size(), this.queueThreshold);
-            }
-            if(queue.size() < 2 * this.queueThreshold){
-                queue.offer(event, this.offerTimeout, TimeUnit.MILLISECONDS);
-                log.trace("Inserting cn.edu.bupt.event into queue[size:{}]",queue.size());
-            }
-        }catch (Exception e) {
-            log.warn("Event data was not accepted by the queue");
-        }
+    /**
+     * @Description 队列丢弃的event同样需要unref，否则AVPacket与计数都不会被回收
+     * @author czx
+     * @date 2026-10-19 10:26
+     * @param [event]
+     * @return void
+     */
+    private static void dropEvent(Event event){
+        RecordListener listener = (RecordListener) ((RTSPEvent) event).getListener();
+        listener.metrics.dropped();
+        listener.rtspVideoAdapter.unref(event,false);
     }
 }
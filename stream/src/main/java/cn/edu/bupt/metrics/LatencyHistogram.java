@@ -0,0 +1,97 @@
+package cn.edu.bupt.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: LatencyHistogram，基于HdrHistogram的延迟分布。
+ * 记录端通过Recorder无锁写入，每秒由MetricsRegistry的定时任务取出interval，
+ * 分位数基于最近一分钟的滑动窗口，sum与count为累计值
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * 2位有效数字（1%精度）已经足够，也能控制每个窗口histogram的内存
+     */
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final int WINDOW_SLOTS = 6;
+
+    private static final int TICKS_PER_SLOT = 10;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sumMicros = new LongAdder();
+
+    private final Histogram[] window = new Histogram[WINDOW_SLOTS];
+
+    private Histogram interval;
+
+    private int slot;
+
+    private int ticks;
+
+    public LatencyHistogram() {
+        for(int i = 0;i<WINDOW_SLOTS;i++){
+            window[i] = new Histogram(SIGNIFICANT_DIGITS);
+        }
+    }
+
+    /**
+     * @Description 记录一次延迟
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param nanos
+     * @return void
+     */
+    public void record(long nanos){
+        long micros = Math.max(0,TimeUnit.NANOSECONDS.toMicros(nanos));
+        recorder.recordValue(micros);
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    /**
+     * 将这一秒的数据并入窗口，每TICKS_PER_SLOT次切换到下一个槽位
+     */
+    synchronized void tick(){
+        interval = recorder.getIntervalHistogram(interval);
+        window[slot].add(interval);
+        if(++ticks>=TICKS_PER_SLOT){
+            ticks = 0;
+            slot = (slot+1)%WINDOW_SLOTS;
+            window[slot].reset();
+        }
+    }
+
+    /**
+     * @Description 合并窗口内的数据，用于输出分位数
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param
+     * @return org.HdrHistogram.Histogram
+     */
+    synchronized Histogram snapshot(){
+        Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+        for(Histogram histogram : window){
+            merged.add(histogram);
+        }
+        return merged;
+    }
+
+    public long getCount(){
+        return count.sum();
+    }
+
+    public long getSumMicros(){
+        return sumMicros.sum();
+    }
+}
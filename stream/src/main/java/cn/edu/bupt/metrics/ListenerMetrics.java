@@ -0,0 +1,118 @@
+package cn.edu.bupt.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: ListenerMetrics，单个listener（推流、录像）的输出统计，以及该listener在共享队列中等待的event数
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+public class ListenerMetrics {
+
+    private final String name;
+
+    private final LongAdder outputPackets = new LongAdder();
+
+    private final LongAdder outputErrors = new LongAdder();
+
+    private final LongAdder droppedPackets = new LongAdder();
+
+    private final LongAdder latePackets = new LongAdder();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private volatile double outputFps;
+
+    private long lastOutputPackets;
+
+    ListenerMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @Description 一个event输出成功，createNanos为event创建（拉流）时的System.nanoTime()
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param createNanos
+     * @return void
+     */
+    public void output(long createNanos){
+        outputPackets.increment();
+        latency.record(System.nanoTime()-createNanos);
+    }
+
+    public void outputError(){
+        outputErrors.increment();
+    }
+
+    /**
+     * 队列满时被丢弃
+     */
+    public void dropped(){
+        droppedPackets.increment();
+    }
+
+    /**
+     * dts小于上一个packet而被跳过
+     */
+    public void late(){
+        latePackets.increment();
+    }
+
+    /**
+     * event进入队列
+     */
+    public void enqueued(){
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * event离开队列，被处理或者被丢弃
+     */
+    public void dequeued(){
+        queueDepth.decrementAndGet();
+    }
+
+    void tick(double seconds){
+        long packets = outputPackets.sum();
+        outputFps = (packets-lastOutputPackets)/seconds;
+        lastOutputPackets = packets;
+        latency.tick();
+    }
+
+    public long getOutputPackets() {
+        return outputPackets.sum();
+    }
+
+    public long getOutputErrors() {
+        return outputErrors.sum();
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    public long getLatePackets() {
+        return latePackets.sum();
+    }
+
+    public double getOutputFps() {
+        return outputFps;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
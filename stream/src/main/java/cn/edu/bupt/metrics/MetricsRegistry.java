@@ -0,0 +1,111 @@
+package cn.edu.bupt.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: MetricsRegistry，全局的指标注册表。
+ * 计数使用LongAdder，写入端不加锁；每秒一次的定时任务计算fps、码率并滚动延迟窗口
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+@Slf4j
+public class MetricsRegistry {
+
+    private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("Metrics-%d").daemon(true).build());
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    /**
+     * 流停止后在这段时间内同名的流再次启动，计为一次重连
+     */
+    private static final long RESTART_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final Map<String,StreamMetrics> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 最近移除的流及其移除时间，超过RESTART_WINDOW_NANOS后清理
+     */
+    private final Map<String,Long> removed = new ConcurrentHashMap<>();
+
+    private long lastTick = System.nanoTime();
+
+    private MetricsRegistry(){
+        executor.scheduleAtFixedRate(this::tick,1,1,TimeUnit.SECONDS);
+    }
+
+    public static MetricsRegistry getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * @Description 获取某一路流的指标，不存在时创建
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param streamName adapter的名字
+     * @return cn.edu.bupt.metrics.StreamMetrics
+     */
+    public StreamMetrics getStream(String streamName){
+        return streams.computeIfAbsent(streamName==null ? "" : streamName,name -> {
+            StreamMetrics stream = new StreamMetrics(name);
+            if(removed.remove(name)!=null){
+                stream.restarted();
+            }
+            return stream;
+        });
+    }
+
+    /**
+     * @Description adapter结束时移除该流的指标，不再出现在输出中；只移除同一个实例，不影响同名的新adapter
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param stream
+     * @return void
+     */
+    public void removeStream(StreamMetrics stream){
+        if(stream!=null && streams.remove(stream.getName(),stream)){
+            removed.put(stream.getName(),System.nanoTime());
+        }
+    }
+
+    public Collection<StreamMetrics> getStreams(){
+        return streams.values();
+    }
+
+    /**
+     * @Description 以Prometheus文本格式输出全部指标
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param
+     * @return java.lang.String
+     */
+    public String scrape(){
+        return PrometheusFormatter.format(this);
+    }
+
+    private void tick(){
+        long now = System.nanoTime();
+        double seconds = (now-lastTick)/1e9;
+        lastTick = now;
+        if(seconds<=0){
+            return;
+        }
+        // 定时任务抛出异常后不会再被调度
+        try {
+            for(StreamMetrics stream : streams.values()){
+                stream.tick(seconds);
+            }
+            removed.values().removeIf(removedAt -> now-removedAt>RESTART_WINDOW_NANOS);
+        }catch (Exception e){
+            log.warn("Metrics tick failed",e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package cn.edu.bupt.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.bytedeco.javacpp.Pointer;
+
+import java.util.Locale;
+
+/**
+ * @Description: PrometheusFormatter，将MetricsRegistry输出为Prometheus的文本格式(0.0.4)
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+public final class PrometheusFormatter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusFormatter(){
+    }
+
+    /**
+     * @Description 输出全部指标
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param registry
+     * @return java.lang.String
+     */
+    public static String format(MetricsRegistry registry){
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb,"converter_stream_active","gauge","Whether the adapter of the stream is running.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_stream_active",stream,null,stream.isActive() ? 1 : 0);
+        }
+        header(sb,"converter_ingest_packets_total","counter","Packets (or frames in frame mode) grabbed from the source.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_ingest_packets_total",stream,null,stream.getIngestPackets());
+        }
+        header(sb,"converter_ingest_bytes_total","counter","Compressed bytes grabbed from the source, packet mode only.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_ingest_bytes_total",stream,null,stream.getIngestBytes());
+        }
+        header(sb,"converter_ingest_fps","gauge","Ingest packets per second over the last second.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_ingest_fps",stream,null,stream.getIngestFps());
+        }
+        header(sb,"converter_ingest_bitrate_bps","gauge","Ingest bitrate in bits per second over the last second.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_ingest_bitrate_bps",stream,null,stream.getIngestBitrate());
+        }
+        header(sb,"converter_grab_errors_total","counter","Exceptions thrown by the grabber.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_grab_errors_total",stream,null,stream.getGrabErrors());
+        }
+        header(sb,"converter_reconnects_total","counter","Times the stream was started again after the first start.");
+        for(StreamMetrics stream : registry.getStreams()){
+            sample(sb,"converter_reconnects_total",stream,null,stream.getReconnects());
+        }
+
+        header(sb,"converter_output_packets_total","counter","Packets written by the listener.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_output_packets_total",stream,listener,listener.getOutputPackets());
+            }
+        }
+        header(sb,"converter_output_fps","gauge","Packets written by the listener per second over the last second.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_output_fps",stream,listener,listener.getOutputFps());
+            }
+        }
+        header(sb,"converter_output_errors_total","counter","Packets the listener failed to write.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_output_errors_total",stream,listener,listener.getOutputErrors());
+            }
+        }
+        header(sb,"converter_dropped_packets_total","counter","Packets dropped because the listener queue was full.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_dropped_packets_total",stream,listener,listener.getDroppedPackets());
+            }
+        }
+        header(sb,"converter_late_packets_total","counter","Packets skipped because their dts went backwards.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_late_packets_total",stream,listener,listener.getLatePackets());
+            }
+        }
+        header(sb,"converter_output_latency_seconds","summary","Time from grab to written by the listener, quantiles over the last minute.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                LatencyHistogram latency = listener.getLatency();
+                Histogram histogram = latency.snapshot();
+                for(double quantile : QUANTILES){
+                    double value = histogram.getTotalCount()==0 ? Double.NaN : histogram.getValueAtPercentile(quantile*100)/1e6;
+                    sb.append("converter_output_latency_seconds{");
+                    labels(sb,stream,listener);
+                    sb.append(",quantile=\"").append(quantile).append("\"} ").append(number(value)).append('\n');
+                }
+                sample(sb,"converter_output_latency_seconds_sum",stream,listener,latency.getSumMicros()/1e6);
+                sample(sb,"converter_output_latency_seconds_count",stream,listener,latency.getCount());
+            }
+        }
+
+        header(sb,"converter_queue_depth","gauge","Events of the listener waiting in its queue.");
+        for(StreamMetrics stream : registry.getStreams()){
+            for(ListenerMetrics listener : stream.getListeners()){
+                sample(sb,"converter_queue_depth",stream,listener,listener.getQueueDepth());
+            }
+        }
+
+        header(sb,"converter_native_physical_bytes","gauge","Resident memory of the process as seen by JavaCPP.");
+        sb.append("converter_native_physical_bytes ").append(Pointer.physicalBytes()).append('\n');
+        header(sb,"converter_native_javacpp_bytes","gauge","Native memory allocated through JavaCPP and not yet deallocated.");
+        sb.append("converter_native_javacpp_bytes ").append(Pointer.totalBytes()).append('\n');
+        header(sb,"converter_native_javacpp_max_bytes","gauge","Limit of JavaCPP allocations before it forces a GC.");
+        sb.append("converter_native_javacpp_max_bytes ").append(Pointer.maxBytes()).append('\n');
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb,String name,String type,String help){
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb,String name,StreamMetrics stream,ListenerMetrics listener,double value){
+        sb.append(name).append('{');
+        labels(sb,stream,listener);
+        sb.append("} ").append(number(value)).append('\n');
+    }
+
+    private static void labels(StringBuilder sb,StreamMetrics stream,ListenerMetrics listener){
+        sb.append("stream=\"").append(escape(stream.getName())).append('"');
+        if(listener!=null){
+            sb.append(",listener=\"").append(escape(listener.getName())).append('"');
+        }
+    }
+
+    private static String number(double value){
+        if(Double.isNaN(value)){
+            return "NaN";
+        }
+        if(value==Math.rint(value) && !Double.isInfinite(value) && Math.abs(value)<1e15){
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT,"%.6g",value);
+    }
+
+    private static String escape(String value){
+        return value.replace("\\","\\\\").replace("\"","\\\"").replace("\n","\\n");
+    }
+}
@@ -0,0 +1,138 @@
+package cn.edu.bupt.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: StreamMetrics，单路视频流（以adapter名字即rtmp地址区分）的拉流统计，
+ * 以及该流下各listener的输出统计与队列长度。adapter结束时从MetricsRegistry中移除，一段时间内同名的流再次启动时计为一次重连
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+public class StreamMetrics {
+
+    private final String name;
+
+    private final LongAdder ingestPackets = new LongAdder();
+
+    private final LongAdder ingestBytes = new LongAdder();
+
+    private final LongAdder grabErrors = new LongAdder();
+
+    private final LongAdder reconnects = new LongAdder();
+
+    private final AtomicInteger starts = new AtomicInteger();
+
+    private final Map<String,ListenerMetrics> listeners = new ConcurrentHashMap<>();
+
+    private volatile boolean active;
+
+    private volatile double ingestFps;
+
+    private volatile double ingestBitrate;
+
+    private long lastPackets;
+
+    private long lastBytes;
+
+    StreamMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @Description adapter启动时调用，同名的流再次启动计为一次重连
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param
+     * @return void
+     */
+    public void started(){
+        if(starts.getAndIncrement()>0){
+            reconnects.increment();
+        }
+        active = true;
+    }
+
+    public void stopped(){
+        active = false;
+    }
+
+    /**
+     * 同名的流刚刚停止过，下一次started计为重连
+     */
+    void restarted(){
+        starts.set(1);
+    }
+
+    /**
+     * @Description 拉取到一个packet或frame，frame模式下拿不到压缩后的大小，bytes传0
+     * @author czx
+     * @date 2026-10-19 16:30
+     * @param bytes
+     * @return void
+     */
+    public void ingest(int bytes){
+        ingestPackets.increment();
+        ingestBytes.add(bytes);
+    }
+
+    public void grabError(){
+        grabErrors.increment();
+    }
+
+    public ListenerMetrics getListener(String listenerName){
+        return listeners.computeIfAbsent(listenerName,ListenerMetrics::new);
+    }
+
+    void tick(double seconds){
+        long packets = ingestPackets.sum();
+        long bytes = ingestBytes.sum();
+        ingestFps = (packets-lastPackets)/seconds;
+        ingestBitrate = (bytes-lastBytes)*8/seconds;
+        lastPackets = packets;
+        lastBytes = bytes;
+        for(ListenerMetrics listener : listeners.values()){
+            listener.tick(seconds);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getIngestPackets() {
+        return ingestPackets.sum();
+    }
+
+    public long getIngestBytes() {
+        return ingestBytes.sum();
+    }
+
+    public long getGrabErrors() {
+        return grabErrors.sum();
+    }
+
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    public double getIngestFps() {
+        return ingestFps;
+    }
+
+    public double getIngestBitrate() {
+        return ingestBitrate;
+    }
+
+    public Collection<ListenerMetrics> getListeners() {
+        return listeners.values();
+    }
+}
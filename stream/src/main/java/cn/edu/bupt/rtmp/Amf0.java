@@ -0,0 +1,133 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: Amf0，RTMP命令消息用到的AMF0编解码：Number、Boolean、String、Object、Null与ECMA Array
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+final class Amf0 {
+
+    private static final int NUMBER = 0;
+    private static final int BOOLEAN = 1;
+    private static final int STRING = 2;
+    private static final int OBJECT = 3;
+    private static final int NULL = 5;
+    private static final int UNDEFINED = 6;
+    private static final int ECMA_ARRAY = 8;
+    private static final int OBJECT_END = 9;
+
+    private Amf0() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static void write(ByteBuf buf, Object value) {
+        if (value == null) {
+            buf.writeByte(NULL);
+        } else if (value instanceof Number) {
+            buf.writeByte(NUMBER);
+            buf.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            buf.writeByte(BOOLEAN);
+            buf.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof String) {
+            buf.writeByte(STRING);
+            writeString(buf, (String) value);
+        } else if (value instanceof Map) {
+            buf.writeByte(OBJECT);
+            writeProperties(buf, (Map<String, Object>) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported amf0 value " + value);
+        }
+    }
+
+    static void writeEcmaArray(ByteBuf buf, Map<String, Object> properties) {
+        buf.writeByte(ECMA_ARRAY);
+        buf.writeInt(properties.size());
+        writeProperties(buf, properties);
+    }
+
+    private static void writeProperties(ByteBuf buf, Map<String, Object> properties) {
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            writeString(buf, entry.getKey());
+            write(buf, entry.getValue());
+        }
+        buf.writeShort(0);
+        buf.writeByte(OBJECT_END);
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    /**
+     * @Description 读取buf中剩余的所有值，遇到不支持的类型时停止
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param buf
+     * @return java.util.List<java.lang.Object>
+     */
+    static List<Object> readAll(ByteBuf buf) {
+        List<Object> values = new ArrayList<>();
+        try {
+            while (buf.isReadable()) {
+                values.add(read(buf));
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // 服务端的扩展字段不影响推流
+        }
+        return values;
+    }
+
+    private static Object read(ByteBuf buf) {
+        int marker = buf.readUnsignedByte();
+        switch (marker) {
+            case NUMBER:
+                return buf.readDouble();
+            case BOOLEAN:
+                return buf.readByte() != 0;
+            case STRING:
+                return readString(buf);
+            case OBJECT:
+                return readProperties(buf);
+            case ECMA_ARRAY:
+                buf.skipBytes(4);
+                return readProperties(buf);
+            case NULL:
+            case UNDEFINED:
+                return null;
+            default:
+                throw new IllegalArgumentException("Unsupported amf0 marker " + marker);
+        }
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = buf.readUnsignedShort();
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    private static Map<String, Object> readProperties(ByteBuf buf) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        while (buf.readableBytes() >= 3) {
+            if (buf.getUnsignedMedium(buf.readerIndex()) == OBJECT_END) {
+                buf.skipBytes(3);
+                break;
+            }
+            String key = readString(buf);
+            properties.put(key, read(buf));
+        }
+        return properties;
+    }
+}
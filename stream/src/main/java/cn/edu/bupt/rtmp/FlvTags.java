@@ -0,0 +1,243 @@
+package cn.edu.bupt.rtmp;
+
+import cn.edu.bupt.rtsp.NalUnits;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Description: FlvTags，生成RTMP视频/数据消息的FLV tag body：onMetaData、AVC sequence header与AVC NALU。
+ * Annex B的帧按NAL切片后在每段前加4字节长度，切片直接引用原始内存，不拷贝帧数据
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+final class FlvTags {
+
+    static final int CODEC_AVC = 7;
+
+    private static final int FRAME_KEY = 1;
+
+    private static final int FRAME_INTER = 2;
+
+    private static final int AVC_SEQUENCE_HEADER = 0;
+
+    private static final int AVC_NALU = 1;
+
+    private FlvTags() {
+    }
+
+    /**
+     * @Description @setDataFrame/onMetaData数据消息
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param alloc
+     * @param width
+     * @param height
+     * @param frameRate
+     * @return io.netty.buffer.ByteBuf
+     */
+    static ByteBuf metadata(ByteBufAllocator alloc, int width, int height, double frameRate) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("duration", 0);
+        if (width > 0 && height > 0) {
+            properties.put("width", width);
+            properties.put("height", height);
+        }
+        if (frameRate > 0) {
+            properties.put("framerate", frameRate);
+        }
+        properties.put("videocodecid", CODEC_AVC);
+        properties.put("encoder", "converter");
+        ByteBuf buf = alloc.heapBuffer(256);
+        Amf0.write(buf, "@setDataFrame");
+        Amf0.write(buf, "onMetaData");
+        Amf0.writeEcmaArray(buf, properties);
+        return buf;
+    }
+
+    /**
+     * @Description 由SPS/PPS生成AVCDecoderConfigurationRecord
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param alloc
+     * @param sps 不含起始码
+     * @param pps 不含起始码
+     * @return io.netty.buffer.ByteBuf
+     */
+    static ByteBuf avcSequenceHeader(ByteBufAllocator alloc, byte[] sps, byte[] pps) {
+        ByteBuf buf = alloc.heapBuffer(16 + sps.length + pps.length);
+        buf.writeByte(FRAME_KEY << 4 | CODEC_AVC);
+        buf.writeByte(AVC_SEQUENCE_HEADER);
+        buf.writeMedium(0);
+        buf.writeByte(1);
+        buf.writeByte(sps.length > 1 ? sps[1] : 0);
+        buf.writeByte(sps.length > 2 ? sps[2] : 0);
+        buf.writeByte(sps.length > 3 ? sps[3] : 0);
+        buf.writeByte(0xff);
+        buf.writeByte(0xe1);
+        buf.writeShort(sps.length);
+        buf.writeBytes(sps);
+        buf.writeByte(1);
+        buf.writeShort(pps.length);
+        buf.writeBytes(pps);
+        return buf;
+    }
+
+    /**
+     * @Description 生成一帧的AVC NALU tag。data为Annex B时按NAL切片加长度头；已是4字节长度前缀(AVCC)时整体引用。
+     * parameterSets不为null时，帧内出现与之不同的SPS/PPS会写回parameterSets[0]/[1]（新数组），
+     * 调用方据此判断是否需要重发sequence header。data的引用由返回值接管
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param alloc
+     * @param data
+     * @param keyframe
+     * @param compositionTime pts-dts，毫秒
+     * @param parameterSets
+     * @return io.netty.buffer.ByteBuf
+     */
+    static ByteBuf avcFrame(ByteBufAllocator alloc, ByteBuf data, boolean keyframe, int compositionTime, byte[][] parameterSets) {
+        CompositeByteBuf frame = alloc.compositeBuffer(Integer.MAX_VALUE);
+        try {
+            ByteBuf header = alloc.heapBuffer(5);
+            header.writeByte((keyframe ? FRAME_KEY : FRAME_INTER) << 4 | CODEC_AVC);
+            header.writeByte(AVC_NALU);
+            header.writeMedium(compositionTime);
+            frame.addComponent(true, header);
+
+            int index = data.readerIndex();
+            int end = data.writerIndex();
+            int start = startCodeEnd(data, index, end);
+            if (start < 0) {
+                frame.addComponent(true, data.retain());
+                return frame;
+            }
+            ByteBuf lengths = alloc.heapBuffer(64);
+            try {
+                while (start < end) {
+                    int next = findStartCode(data, start, end);
+                    int nalEnd = next < 0 ? end : next;
+                    while (nalEnd > start && data.getByte(nalEnd - 1) == 0) {
+                        nalEnd--;
+                    }
+                    if (nalEnd > start) {
+                        if (parameterSets != null) {
+                            collectParameterSet(data, start, nalEnd, parameterSets);
+                        }
+                        int lengthIndex = lengths.writerIndex();
+                        lengths.writeInt(nalEnd - start);
+                        frame.addComponent(true, lengths.retainedSlice(lengthIndex, 4));
+                        frame.addComponent(true, data.retainedSlice(start, nalEnd - start));
+                    }
+                    if (next < 0) {
+                        break;
+                    }
+                    start = startCodeEnd(data, next, end);
+                }
+            } finally {
+                lengths.release();
+            }
+            return frame;
+        } catch (RuntimeException e) {
+            frame.release();
+            throw e;
+        } finally {
+            data.release();
+        }
+    }
+
+    /**
+     * @Description 从extradata中取出SPS/PPS，支持Annex B与avcC两种格式
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param extradata
+     * @return byte[][] {sps, pps}，缺失的为null
+     */
+    static byte[][] parameterSets(byte[] extradata) {
+        byte[][] sets = new byte[2][];
+        if (extradata == null || extradata.length < 7) {
+            return sets;
+        }
+        if (extradata[0] == 1) {
+            int index = 5;
+            for (int round = 0; round < 2 && index < extradata.length; round++) {
+                int count = extradata[index++] & (round == 0 ? 0x1f : 0xff);
+                for (int i = 0; i < count && index + 2 <= extradata.length; i++) {
+                    int length = (extradata[index] & 0xff) << 8 | extradata[index + 1] & 0xff;
+                    index += 2;
+                    if (index + length > extradata.length) {
+                        return sets;
+                    }
+                    if (sets[round] == null) {
+                        sets[round] = Arrays.copyOfRange(extradata, index, index + length);
+                    }
+                    index += length;
+                }
+            }
+            return sets;
+        }
+        for (byte[] nal : NalUnits.splitAnnexB(Unpooled.wrappedBuffer(extradata))) {
+            int type = NalUnits.type(nal[0], false);
+            if (type == NalUnits.H264_SPS && sets[0] == null) {
+                sets[0] = nal;
+            } else if (type == NalUnits.H264_PPS && sets[1] == null) {
+                sets[1] = nal;
+            }
+        }
+        return sets;
+    }
+
+    private static void collectParameterSet(ByteBuf data, int start, int end, byte[][] parameterSets) {
+        int type = NalUnits.type(data.getByte(start), false);
+        int slot = type == NalUnits.H264_SPS ? 0 : type == NalUnits.H264_PPS ? 1 : -1;
+        if (slot < 0) {
+            return;
+        }
+        byte[] nal = new byte[end - start];
+        data.getBytes(start, nal);
+        if (!Arrays.equals(nal, parameterSets[slot])) {
+            parameterSets[slot] = nal;
+        }
+    }
+
+    /**
+     * 若index处是00 00 01或00 00 00 01，返回起始码之后的位置，否则返回-1
+     */
+    private static int startCodeEnd(ByteBuf data, int index, int end) {
+        if (end - index >= 3 && data.getByte(index) == 0 && data.getByte(index + 1) == 0) {
+            if (data.getByte(index + 2) == 1) {
+                return index + 3;
+            }
+            if (end - index >= 4 && data.getByte(index + 2) == 0 && data.getByte(index + 3) == 1) {
+                return index + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从from开始查找下一个00 00 01，返回其位置；按第三个字节跳跃前进，避免逐字节比较
+     */
+    private static int findStartCode(ByteBuf data, int from, int end) {
+        int i = from;
+        while (i + 2 < end) {
+            byte third = data.getByte(i + 2);
+            if (third > 1 || third < 0) {
+                i += 3;
+            } else if (third == 0) {
+                i++;
+            } else if (data.getByte(i + 1) == 0 && data.getByte(i) == 0) {
+                return i;
+            } else {
+                i += 3;
+            }
+        }
+        return -1;
+    }
+}
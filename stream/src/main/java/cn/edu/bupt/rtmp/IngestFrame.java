@@ -0,0 +1,31 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @Description: IngestFrame，接入服务收到的一帧H.264视频，data为Annex B格式，时间戳单位为毫秒
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+final class IngestFrame {
+
+    final ByteBuf data;
+
+    final long dts;
+
+    final int compositionTime;
+
+    final boolean keyframe;
+
+    IngestFrame(ByteBuf data, long dts, int compositionTime, boolean keyframe) {
+        this.data = data;
+        this.dts = dts;
+        this.compositionTime = compositionTime;
+        this.keyframe = keyframe;
+    }
+
+    void release() {
+        data.release();
+    }
+}
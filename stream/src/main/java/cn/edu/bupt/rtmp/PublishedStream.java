@@ -0,0 +1,218 @@
+package cn.edu.bupt.rtmp;
+
+import java.util.ArrayDeque;
+
+/**
+ * @Description: PublishedStream，推到RtmpServer上的一路流(app/stream)，同一时刻只有一个推流端与一个消费者(RtmpIngestGrabber)。
+ * 没有消费者时缓存最近一个GOP，消费者接入后先回放缓存，拉流端不必等待下一个关键帧；
+ * 推流端断开后，只要消费者还在，流就保留，同名重新推流时接着送给原来的消费者；
+ * 消费者先离开(例如adapter被停止)时断开推流端，推流端重连后作为新的流重新交给PublishListener
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+public class PublishedStream {
+
+    private static final long GOP_CACHE_BYTES = 8 * 1024 * 1024;
+
+    private final RtmpServer server;
+
+    private final String app;
+
+    private final String name;
+
+    private final ArrayDeque<IngestFrame> gop = new ArrayDeque<>();
+
+    private long gopBytes;
+
+    private Publisher publisher;
+
+    private Sink sink;
+
+    /**
+     * 已经从RtmpServer中移除，不能再用于推流
+     */
+    private boolean released;
+
+    private volatile int width;
+
+    private volatile int height;
+
+    private volatile double frameRate;
+
+    private volatile byte[][] parameterSets;
+
+    /**
+     * 推流端的连接
+     */
+    interface Publisher {
+
+        /**
+         * 断开连接，之后由连接的关闭回调调用stopPublishing
+         */
+        void close();
+    }
+
+    /**
+     * 消费者的回调，在IO线程或attach的线程上调用，调用时持有PublishedStream的锁，不能阻塞
+     */
+    interface Sink {
+
+        void onFrame(IngestFrame frame);
+
+        void onPublish();
+
+        void onUnpublish();
+    }
+
+    PublishedStream(RtmpServer server, String app, String name) {
+        this.server = server;
+        this.app = app;
+        this.name = name;
+    }
+
+    public String getApp() {
+        return app;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getKey() {
+        return app + "/" + name;
+    }
+
+    public String getUrl() {
+        return "rtmp://127.0.0.1:" + server.getPort() + "/" + getKey();
+    }
+
+    public synchronized boolean isPublishing() {
+        return publisher != null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return {sps, pps}，尚未收到AVC sequence header时为null
+     */
+    byte[][] getParameterSets() {
+        return parameterSets;
+    }
+
+    void setMetadata(int width, int height, double frameRate) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+    }
+
+    void setParameterSets(byte[][] parameterSets) {
+        this.parameterSets = parameterSets;
+    }
+
+    synchronized boolean isReleased() {
+        return released;
+    }
+
+    synchronized boolean startPublishing(Publisher session) {
+        if (publisher != null || released) {
+            return false;
+        }
+        publisher = session;
+        if (sink != null) {
+            sink.onPublish();
+        }
+        return true;
+    }
+
+    synchronized void stopPublishing(Publisher session) {
+        if (publisher != session) {
+            return;
+        }
+        publisher = null;
+        clearGop();
+        if (sink != null) {
+            sink.onUnpublish();
+        } else {
+            release();
+        }
+    }
+
+    /**
+     * @Description 收到一帧，frame的引用由本方法接管
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param session
+     * @param frame
+     * @return void
+     */
+    synchronized void onFrame(Publisher session, IngestFrame frame) {
+        if (publisher != session) {
+            frame.release();
+        } else if (sink != null) {
+            sink.onFrame(frame);
+        } else if (frame.keyframe || !gop.isEmpty()) {
+            if (frame.keyframe) {
+                clearGop();
+            }
+            gop.add(frame);
+            gopBytes += frame.data.readableBytes();
+            if (gopBytes > GOP_CACHE_BYTES) {
+                clearGop();
+            }
+        } else {
+            frame.release();
+        }
+    }
+
+    synchronized boolean attach(Sink sink) {
+        if (this.sink != null || released) {
+            return false;
+        }
+        this.sink = sink;
+        IngestFrame frame;
+        while ((frame = gop.poll()) != null) {
+            sink.onFrame(frame);
+        }
+        gopBytes = 0;
+        return true;
+    }
+
+    synchronized void detach(Sink sink) {
+        if (this.sink != sink) {
+            return;
+        }
+        this.sink = null;
+        if (publisher == null) {
+            release();
+        } else {
+            // 推流端还在，但不会再有消费者；断开它，重连后作为新的流触发PublishListener
+            clearGop();
+            publisher.close();
+        }
+    }
+
+    private void release() {
+        released = true;
+        clearGop();
+        server.release(this);
+    }
+
+    private void clearGop() {
+        IngestFrame frame;
+        while ((frame = gop.poll()) != null) {
+            frame.release();
+        }
+        gopBytes = 0;
+    }
+}
@@ -0,0 +1,188 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: RtmpChunkDecoder，解析握手与chunk流，输出Handshake与完整的RtmpMessage。
+ * 客户端一侧等待S0+S1+S2，服务端一侧等待C0+C1、再跳过C2；对端的Set Chunk Size在这里直接生效。
+ * 消息体从channel的allocator分配(接入服务使用池化内存)，由消息的接收方释放
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+final class RtmpChunkDecoder extends ByteToMessageDecoder {
+
+    static final int HANDSHAKE_SIZE = 1536;
+
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private final boolean server;
+
+    private final Map<Integer, ChunkStream> streams = new HashMap<>();
+
+    private boolean handshakeDone;
+
+    private boolean c2Skipped;
+
+    private int chunkSize = 128;
+
+    static final class Handshake {
+
+        /**
+         * 对端的S1或C1，作为C2或S2原样发回
+         */
+        final ByteBuf echo;
+
+        Handshake(ByteBuf echo) {
+            this.echo = echo;
+        }
+    }
+
+    private static final class ChunkStream {
+
+        int length;
+
+        int type;
+
+        int streamId;
+
+        /**
+         * 最近一次消息头中的时间戳字段：fmt 0为绝对时间，fmt 1/2为增量
+         */
+        long timestampField;
+
+        long timestamp;
+
+        ByteBuf payload;
+    }
+
+    RtmpChunkDecoder() {
+        this(false);
+    }
+
+    RtmpChunkDecoder(boolean server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (!handshakeDone) {
+            if (in.readableBytes() < 1 + (server ? 1 : 2) * HANDSHAKE_SIZE) {
+                return;
+            }
+            in.skipBytes(1);
+            out.add(new Handshake(in.readRetainedSlice(HANDSHAKE_SIZE)));
+            if (!server) {
+                in.skipBytes(HANDSHAKE_SIZE);
+            }
+            handshakeDone = true;
+        }
+        if (server && !c2Skipped) {
+            if (in.readableBytes() < HANDSHAKE_SIZE) {
+                return;
+            }
+            in.skipBytes(HANDSHAKE_SIZE);
+            c2Skipped = true;
+        }
+        while (in.isReadable()) {
+            int start = in.readerIndex();
+            if (!readChunk(ctx, in, out)) {
+                in.readerIndex(start);
+                return;
+            }
+        }
+    }
+
+    private boolean readChunk(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int basic = in.readUnsignedByte();
+        int fmt = basic >> 6;
+        int csid = basic & 0x3f;
+        if (csid == 0) {
+            if (!in.isReadable()) {
+                return false;
+            }
+            csid = 64 + in.readUnsignedByte();
+        } else if (csid == 1) {
+            if (in.readableBytes() < 2) {
+                return false;
+            }
+            csid = 64 + in.readUnsignedByte() + (in.readUnsignedByte() << 8);
+        }
+        int headerSize = fmt == 0 ? 11 : fmt == 1 ? 7 : fmt == 2 ? 3 : 0;
+        if (in.readableBytes() < headerSize) {
+            return false;
+        }
+        ChunkStream stream = streams.computeIfAbsent(csid, id -> new ChunkStream());
+        int length = stream.length;
+        int type = stream.type;
+        int streamId = stream.streamId;
+        long timestampField = stream.timestampField;
+        if (fmt <= 2) {
+            timestampField = in.readUnsignedMedium();
+            if (fmt <= 1) {
+                length = in.readUnsignedMedium();
+                type = in.readUnsignedByte();
+                if (fmt == 0) {
+                    streamId = in.readIntLE();
+                }
+            }
+        }
+        if (fmt <= 2 ? timestampField == 0xffffff : timestampField >= 0xffffff) {
+            if (in.readableBytes() < 4) {
+                return false;
+            }
+            long extended = in.readUnsignedInt();
+            if (fmt <= 2) {
+                timestampField = extended;
+            }
+        }
+        if (length > MAX_MESSAGE_SIZE) {
+            throw new IllegalStateException("Rtmp message too large: " + length);
+        }
+        boolean first = stream.payload == null;
+        int received = first ? 0 : stream.payload.readableBytes();
+        int size = Math.min(chunkSize, length - received);
+        if (in.readableBytes() < size) {
+            return false;
+        }
+        stream.length = length;
+        stream.type = type;
+        stream.streamId = streamId;
+        stream.timestampField = timestampField;
+        if (first) {
+            // fmt 3开始的新消息沿用上一条消息头的增量
+            stream.timestamp = fmt == 0 ? timestampField : stream.timestamp + timestampField;
+            stream.payload = ctx.alloc().buffer(length);
+        }
+        stream.payload.writeBytes(in, size);
+        if (stream.payload.readableBytes() >= length) {
+            ByteBuf payload = stream.payload;
+            stream.payload = null;
+            if (type == RtmpMessage.SET_CHUNK_SIZE && payload.readableBytes() >= 4) {
+                chunkSize = payload.getInt(payload.readerIndex()) & 0x7fffffff;
+                if (chunkSize == 0) {
+                    payload.release();
+                    throw new IllegalStateException("Illegal rtmp chunk size 0");
+                }
+            }
+            out.add(new RtmpMessage(csid, type, streamId, stream.timestamp & 0xffffffffL, payload));
+        }
+        return true;
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        for (ChunkStream stream : streams.values()) {
+            if (stream.payload != null) {
+                stream.payload.release();
+                stream.payload = null;
+            }
+        }
+    }
+}
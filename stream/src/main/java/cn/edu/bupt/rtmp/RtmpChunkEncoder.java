@@ -0,0 +1,86 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * @Description: RtmpChunkEncoder，把RtmpMessage切成chunk（首块fmt 0，后续fmt 3）。
+ * 每个chunk头单独写入一小块内存，payload只做切片，整条消息以CompositeByteBuf交给socket做gather write，不拷贝帧数据
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+final class RtmpChunkEncoder extends MessageToMessageEncoder<RtmpMessage> {
+
+    private int chunkSize = 128;
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RtmpMessage msg, List<Object> out) {
+        ByteBuf payload = msg.payload;
+        try {
+            int length = payload.readableBytes();
+            boolean extended = msg.timestamp >= 0xffffff;
+            int basicSize = msg.chunkStreamId < 64 ? 1 : msg.chunkStreamId < 320 ? 2 : 3;
+            int firstSize = basicSize + 11 + (extended ? 4 : 0);
+            int nextSize = basicSize + (extended ? 4 : 0);
+            int chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+
+            ByteBuf headers = ctx.alloc().buffer(firstSize + (chunks - 1) * nextSize);
+            CompositeByteBuf message = ctx.alloc().compositeBuffer(chunks * 2);
+            try {
+                writeBasicHeader(headers, 0, msg.chunkStreamId);
+                headers.writeMedium(extended ? 0xffffff : (int) msg.timestamp);
+                headers.writeMedium(length);
+                headers.writeByte(msg.type);
+                headers.writeIntLE(msg.streamId);
+                if (extended) {
+                    headers.writeInt((int) msg.timestamp);
+                }
+                message.addComponent(true, headers.retainedSlice(0, firstSize));
+                int offset = payload.readerIndex();
+                int remaining = length;
+                while (remaining > 0) {
+                    if (remaining < length) {
+                        int headerIndex = headers.writerIndex();
+                        writeBasicHeader(headers, 3, msg.chunkStreamId);
+                        if (extended) {
+                            headers.writeInt((int) msg.timestamp);
+                        }
+                        message.addComponent(true, headers.retainedSlice(headerIndex, nextSize));
+                    }
+                    int size = Math.min(chunkSize, remaining);
+                    message.addComponent(true, payload.retainedSlice(offset, size));
+                    offset += size;
+                    remaining -= size;
+                }
+            } catch (RuntimeException e) {
+                message.release();
+                throw e;
+            } finally {
+                headers.release();
+            }
+            if (msg.type == RtmpMessage.SET_CHUNK_SIZE) {
+                chunkSize = payload.getInt(payload.readerIndex()) & 0x7fffffff;
+            }
+            out.add(message);
+        } finally {
+            payload.release();
+        }
+    }
+
+    private static void writeBasicHeader(ByteBuf buf, int fmt, int csid) {
+        if (csid < 64) {
+            buf.writeByte(fmt << 6 | csid);
+        } else if (csid < 320) {
+            buf.writeByte(fmt << 6);
+            buf.writeByte(csid - 64);
+        } else {
+            buf.writeByte(fmt << 6 | 1);
+            buf.writeShortLE(csid - 64);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package cn.edu.bupt.rtmp;
+
+import cn.edu.bupt.codec.StreamCodecContext;
+import cn.edu.bupt.rtsp.NalUnits;
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_INPUT_BUFFER_PADDING_SIZE;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.av_new_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_alloc_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_free_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_new_stream;
+import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_VIDEO;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_d2q;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+import static org.bytedeco.ffmpeg.global.avutil.av_mallocz;
+
+/**
+ * @Description: RtmpIngestGrabber，从RtmpServer上推上来的流中取帧，代替FFmpeg拉流，只支持packet模式。
+ * IO线程把帧放入有界队列，grabPacket在拉流线程中取出并拷贝为AVPacket，时间基为1/1000；
+ * 与NettyRtspGrabber一样构造只有一路视频流的AVFormatContext，extradata为Annex B格式的SPS/PPS。
+ * 队列满时丢帧直到下一个关键帧；推流端重连后dts接着之前的继续
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpIngestGrabber extends FFmpegFrameGrabber {
+
+    private static final int QUEUE_CAPACITY = 128;
+
+    private static final long START_TIMEOUT_MILLIS = 10000;
+
+    private static final long FRAME_RATE_PROBE_MILLIS = 1000;
+
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+
+    private static final double DEFAULT_FRAME_RATE = 25;
+
+    private final PublishedStream stream;
+
+    private final Receiver receiver = new Receiver();
+
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * start时为了探测帧率而提前取出的帧
+     */
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+
+    private AVFormatContext formatContext;
+
+    private AVPacket packet;
+
+    private volatile boolean stopped;
+
+    private volatile long droppedFrames;
+
+    public RtmpIngestGrabber(PublishedStream stream) {
+        super(stream.getUrl());
+        this.stream = stream;
+    }
+
+    private static class Entry {
+
+        final IngestFrame frame;
+
+        final long dts;
+
+        Entry(IngestFrame frame, long dts) {
+            this.frame = frame;
+            this.dts = dts;
+        }
+    }
+
+    /**
+     * 在IO线程上调用，由PublishedStream的锁保证先后顺序
+     */
+    private class Receiver implements PublishedStream.Sink {
+
+        private boolean dropping = true;
+
+        private boolean rebase = true;
+
+        private long dtsOffset;
+
+        private long lastDts = -1;
+
+        private long frameDuration = Math.round(1000 / DEFAULT_FRAME_RATE);
+
+        @Override
+        public void onFrame(IngestFrame frame) {
+            if (stopped || (dropping && !frame.keyframe)) {
+                frame.release();
+                droppedFrames++;
+                return;
+            }
+            if (rebase) {
+                dtsOffset = lastDts < 0 ? -frame.dts : lastDts + frameDuration - frame.dts;
+                rebase = false;
+            }
+            long dts = frame.dts + dtsOffset;
+            if (lastDts >= 0 && dts > lastDts) {
+                frameDuration = Math.min(dts - lastDts, 1000);
+            }
+            lastDts = dts;
+            if (!queue.offer(new Entry(frame, dts))) {
+                frame.release();
+                droppedFrames++;
+                if (!dropping) {
+                    log.warn("Frame queue of [{}] is full, dropping until next keyframe", stream.getKey());
+                }
+                dropping = true;
+                return;
+            }
+            dropping = false;
+        }
+
+        @Override
+        public void onPublish() {
+            // 推流端重新推流，时间戳从头开始
+            rebase = true;
+            dropping = true;
+        }
+
+        @Override
+        public void onUnpublish() {
+            log.warn("Rtmp [{}] stopped publishing, waiting for it to come back", stream.getKey());
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        try {
+            if (!stream.attach(receiver)) {
+                throw new Exception("Rtmp stream " + stream.getKey() + " is gone or already consumed");
+            }
+            Entry first = queue.poll(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                throw new Exception("No keyframe received from " + stream.getKey());
+            }
+            pending.add(first);
+            Entry second = null;
+            if (stream.getFrameRate() <= 0) {
+                second = queue.poll(FRAME_RATE_PROBE_MILLIS, TimeUnit.MILLISECONDS);
+                if (second != null) {
+                    pending.add(second);
+                }
+            }
+            formatContext = createFormatContext(first, second);
+            packet = av_packet_alloc();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            throw new Exception("Interrupted while starting " + stream.getKey(), e);
+        } catch (Exception e) {
+            stop();
+            throw e;
+        }
+    }
+
+    private AVFormatContext createFormatContext(Entry first, Entry second) {
+        byte[][] sets = stream.getParameterSets();
+        if (sets == null) {
+            // 没有收到sequence header时，从码流中的第一个关键帧取参数集
+            sets = new byte[2][];
+            for (byte[] nal : NalUnits.splitAnnexB(first.frame.data)) {
+                int order = NalUnits.parameterSetOrder(NalUnits.type(nal[0], false), false);
+                if (order >= 0 && sets[order] == null) {
+                    sets[order] = nal;
+                }
+            }
+        }
+        int[] size = sets[0] == null ? null : NalUnits.h264Resolution(sets[0]);
+        if (size == null) {
+            size = new int[]{stream.getWidth(), stream.getHeight()};
+        }
+
+        double rate = stream.getFrameRate();
+        if (rate <= 0 && second != null && second.dts > first.dts) {
+            rate = 1000.0 / (second.dts - first.dts);
+        }
+        if (rate <= 0 || rate > 120) {
+            rate = DEFAULT_FRAME_RATE;
+        }
+
+        AVFormatContext fc = avformat_alloc_context();
+        AVStream avStream = avformat_new_stream(fc, null);
+        avStream.time_base(av_make_q(1, 1000));
+        avStream.avg_frame_rate(av_d2q(rate, 1001000));
+        avStream.r_frame_rate(av_d2q(rate, 1001000));
+        AVCodecParameters parameters = avStream.codecpar();
+        parameters.codec_type(AVMEDIA_TYPE_VIDEO);
+        parameters.codec_id(AV_CODEC_ID_H264);
+        parameters.width(size[0]);
+        parameters.height(size[1]);
+        parameters.format(AV_PIX_FMT_YUV420P);
+        int extradataSize = 0;
+        for (byte[] set : sets) {
+            extradataSize += set == null ? 0 : 4 + set.length;
+        }
+        if (extradataSize > 0) {
+            BytePointer extradata = new BytePointer(av_mallocz(extradataSize + AV_INPUT_BUFFER_PADDING_SIZE)).capacity(extradataSize);
+            int offset = 0;
+            for (byte[] set : sets) {
+                if (set != null) {
+                    extradata.position(offset).put(new byte[]{0, 0, 0, 1});
+                    extradata.position(offset + 4).put(set);
+                    offset += 4 + set.length;
+                }
+            }
+            parameters.extradata(extradata.position(0));
+            parameters.extradata_size(extradataSize);
+        }
+        StreamCodecContext.attach(avStream);
+
+        imageWidth = size[0];
+        imageHeight = size[1];
+        frameRate = rate;
+        videoCodec = AV_CODEC_ID_H264;
+        format = "flv";
+        log.info("Rtmp ingest grabber started for [{}]: H264 {}x{} {}fps", stream.getKey(), size[0], size[1], String.format("%.2f", rate));
+        return fc;
+    }
+
+    @Override
+    public AVPacket grabPacket() throws Exception {
+        Entry entry = pending.poll();
+        if (entry == null) {
+            try {
+                entry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        if (entry == null || packet == null) {
+            return null;
+        }
+        try {
+            ByteBuf data = entry.frame.data;
+            int size = data.readableBytes();
+            av_packet_unref(packet);
+            if (av_new_packet(packet, size) < 0) {
+                throw new Exception("av_new_packet() failed for " + size + " bytes");
+            }
+            data.getBytes(data.readerIndex(), packet.data().capacity(size).asByteBuffer());
+            packet.dts(entry.dts);
+            packet.pts(entry.dts + entry.frame.compositionTime);
+            packet.stream_index(0);
+            packet.flags(entry.frame.keyframe ? AV_PKT_FLAG_KEY : 0);
+            timestamp = entry.dts * 1000L;
+            frameNumber++;
+            return packet;
+        } finally {
+            entry.frame.release();
+        }
+    }
+
+    @Override
+    public AVFormatContext getFormatContext() {
+        return formatContext;
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        throw new Exception("RtmpIngestGrabber only supports packet mode");
+    }
+
+    @Override
+    public Frame grabImage() throws Exception {
+        throw new Exception("RtmpIngestGrabber only supports packet mode");
+    }
+
+    @Override
+    public Frame grabFrame(boolean doAudio, boolean doVideo, boolean doProcessing, boolean keyFrames) throws Exception {
+        throw new Exception("RtmpIngestGrabber only supports packet mode");
+    }
+
+    @Override
+    public void stop() throws Exception {
+        stopped = true;
+        stream.detach(receiver);
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            entry.frame.release();
+        }
+        while ((entry = queue.poll()) != null) {
+            entry.frame.release();
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+        if (formatContext != null) {
+            avformat_free_context(formatContext);
+            formatContext = null;
+        }
+        if (droppedFrames > 0) {
+            log.info("Rtmp ingest grabber for [{}] dropped {} frames", stream.getKey(), droppedFrames);
+        }
+    }
+
+    @Override
+    public void release() throws Exception {
+        stop();
+    }
+
+    public PublishedStream getStream() {
+        return stream;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
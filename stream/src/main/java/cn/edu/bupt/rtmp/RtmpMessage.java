@@ -0,0 +1,36 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @Description: RtmpMessage，一条完整的RTMP消息，payload的所有权随消息转移
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+final class RtmpMessage {
+
+    static final int SET_CHUNK_SIZE = 1;
+    static final int USER_CONTROL = 4;
+    static final int VIDEO = 9;
+    static final int DATA_AMF0 = 18;
+    static final int COMMAND_AMF0 = 20;
+
+    final int chunkStreamId;
+
+    final int type;
+
+    final int streamId;
+
+    final long timestamp;
+
+    final ByteBuf payload;
+
+    RtmpMessage(int chunkStreamId, int type, int streamId, long timestamp, ByteBuf payload) {
+        this.chunkStreamId = chunkStreamId;
+        this.type = type;
+        this.streamId = streamId;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,425 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: RtmpPublisher，基于Netty的RTMP推流客户端，只推H.264视频。
+ * 握手→connect→releaseStream/FCPublish/createStream→publish，收到NetStream.Publish.Start后开始发送FLV视频tag。
+ * 所有推流共用一组IO线程，帧数据以切片形式直接写socket；发送缓冲超过高水位时丢弃后续帧直到下一个关键帧，
+ * 断线后按1s到30s的退避自动重连，重连后重发metadata与sequence header并从关键帧开始
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:50
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpPublisher {
+
+    private static final Pattern URL = Pattern.compile("^rtmp://([^/:]+)(?::(\\d+))?/([^/]+)/(.+)$", Pattern.CASE_INSENSITIVE);
+
+    private static final int DEFAULT_PORT = 1935;
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final int CSID_CONTROL = 2;
+
+    private static final int CSID_COMMAND = 3;
+
+    private static final int CSID_VIDEO = 6;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final long PUBLISH_TIMEOUT_SECONDS = 10;
+
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private static final int WRITE_BUFFER_LOW = 512 * 1024;
+
+    private static final int WRITE_BUFFER_HIGH = 2 * 1024 * 1024;
+
+    private final String url;
+
+    private final String host;
+
+    private final int port;
+
+    private final String app;
+
+    private final String streamName;
+
+    private final int width;
+
+    private final int height;
+
+    private final double frameRate;
+
+    private final byte[][] parameterSets;
+
+    private volatile boolean closed;
+
+    private volatile Session session;
+
+    private int attempts;
+
+    /**
+     * 以下字段只在调用publish的线程上读写
+     */
+    private Session publishing;
+
+    private long timestampBase;
+
+    /**
+     * @param url rtmp://host[:port]/app/stream
+     * @param width
+     * @param height
+     * @param frameRate
+     * @param extradata 流的extradata(Annex B或avcC)，可为null，此时从第一个关键帧中取SPS/PPS
+     */
+    public RtmpPublisher(String url, int width, int height, double frameRate, byte[] extradata) {
+        Matcher matcher = URL.matcher(url.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Illegal rtmp url: " + url);
+        }
+        this.url = url.trim();
+        this.host = matcher.group(1);
+        this.port = matcher.group(2) == null ? DEFAULT_PORT : Integer.parseInt(matcher.group(2));
+        this.app = matcher.group(3);
+        this.streamName = matcher.group(4);
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.parameterSets = FlvTags.parameterSets(extradata);
+    }
+
+    /**
+     * @Description 开始连接，立即返回；推流就绪前publish的帧会被丢弃
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param
+     * @return void
+     */
+    public void start() {
+        connect();
+    }
+
+    /**
+     * @Description 发送deleteStream并断开连接，不再重连
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param
+     * @return void
+     */
+    public void close() {
+        closed = true;
+        Session current = session;
+        if (current != null) {
+            current.unpublish();
+        }
+    }
+
+    /**
+     * @Description 发送一帧H.264视频。data的引用由本方法接管；返回true时，数据写完或失败后在IO线程上回调onComplete，
+     * 回调前data引用的内存必须保持有效。返回false表示帧被丢弃（未就绪、发送缓冲已满或正在等待关键帧），不会回调。
+     * 同一个RtmpPublisher的publish必须由同一个线程依次调用
+     * @author czx
+     * @date 2026-10-19 18:50
+     * @param data Annex B或4字节长度前缀的帧数据
+     * @param dtsMillis
+     * @param compositionTime pts-dts，毫秒
+     * @param keyframe
+     * @param onComplete
+     * @return boolean
+     */
+    public boolean publish(ByteBuf data, long dtsMillis, int compositionTime, boolean keyframe, Consumer<Boolean> onComplete) {
+        Session current = session;
+        if (current == null || !current.ready || !current.channel.isWritable()) {
+            if (current != null) {
+                current.waitKeyframe = true;
+            }
+            data.release();
+            return false;
+        }
+        if (current.waitKeyframe) {
+            if (!keyframe) {
+                data.release();
+                return false;
+            }
+            current.waitKeyframe = false;
+        }
+        if (publishing != current) {
+            publishing = current;
+            timestampBase = dtsMillis;
+        }
+        long timestamp = dtsMillis - timestampBase;
+        if (timestamp < 0) {
+            data.release();
+            return false;
+        }
+        Channel channel = current.channel;
+        byte[] sps = parameterSets[0];
+        byte[] pps = parameterSets[1];
+        ByteBuf body = FlvTags.avcFrame(channel.alloc(), data, keyframe, compositionTime, keyframe ? parameterSets : null);
+        if (keyframe && (!current.sequenceHeaderSent || sps != parameterSets[0] || pps != parameterSets[1])
+                && parameterSets[0] != null && parameterSets[1] != null) {
+            current.sequenceHeaderSent = true;
+            ByteBuf header = FlvTags.avcSequenceHeader(channel.alloc(), parameterSets[0], parameterSets[1]);
+            channel.write(new RtmpMessage(CSID_VIDEO, RtmpMessage.VIDEO, current.streamId, timestamp, header));
+        }
+        if (!current.sequenceHeaderSent) {
+            body.release();
+            current.waitKeyframe = true;
+            return false;
+        }
+        channel.writeAndFlush(new RtmpMessage(CSID_VIDEO, RtmpMessage.VIDEO, current.streamId, timestamp, body))
+                .addListener(future -> onComplete.accept(future.isSuccess()));
+        return true;
+    }
+
+    public boolean isReady() {
+        Session current = session;
+        return current != null && current.ready;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private void connect() {
+        if (closed) {
+            return;
+        }
+        Session next = new Session();
+        session = next;
+        Bootstrap bootstrap = new Bootstrap()
+                .group(RtmpTransport.GROUP)
+                .channel(RtmpTransport.SOCKET_CHANNEL)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(WRITE_BUFFER_LOW, WRITE_BUFFER_HIGH))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new RtmpChunkDecoder(), new RtmpChunkEncoder(), next);
+                    }
+                });
+        bootstrap.connect(host, port).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                onSessionClosed(future.cause());
+            }
+        });
+    }
+
+    private void onSessionClosed(Throwable cause) {
+        session = null;
+        if (closed) {
+            return;
+        }
+        long delay = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(attempts++, 5));
+        log.warn("Rtmp {} disconnected, reconnecting in {} ms: {}", url, delay, cause == null ? "closed by server" : cause.toString());
+        RtmpTransport.GROUP.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一次连接的状态，除channel/streamId/ready/waitKeyframe/sequenceHeaderSent外都只在IO线程上访问
+     */
+    private class Session extends ChannelInboundHandlerAdapter {
+
+        private static final int TX_CONNECT = 1;
+
+        private static final int TX_CREATE_STREAM = 4;
+
+        private static final int TX_PUBLISH = 5;
+
+        private ChannelHandlerContext ctx;
+
+        private volatile Channel channel;
+
+        private ScheduledFuture<?> publishTimeout;
+
+        private Throwable cause;
+
+        volatile int streamId;
+
+        volatile boolean ready;
+
+        volatile boolean waitKeyframe = true;
+
+        volatile boolean sequenceHeaderSent;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+            this.channel = ctx.channel();
+            if (closed) {
+                ctx.close();
+                return;
+            }
+            ByteBuf c0c1 = ctx.alloc().heapBuffer(1 + RtmpChunkDecoder.HANDSHAKE_SIZE);
+            c0c1.writeByte(3);
+            c0c1.writeInt(0);
+            c0c1.writeInt(0);
+            byte[] random = new byte[RtmpChunkDecoder.HANDSHAKE_SIZE - 8];
+            ThreadLocalRandom.current().nextBytes(random);
+            c0c1.writeBytes(random);
+            ctx.writeAndFlush(c0c1);
+            publishTimeout = ctx.executor().schedule(() -> fail(new IOException("Rtmp publish timeout")),
+                    PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof RtmpChunkDecoder.Handshake) {
+                onHandshake(((RtmpChunkDecoder.Handshake) msg).echo);
+                return;
+            }
+            RtmpMessage message = (RtmpMessage) msg;
+            try {
+                if (message.type == RtmpMessage.COMMAND_AMF0) {
+                    onCommand(Amf0.readAll(message.payload));
+                } else if (message.type == RtmpMessage.USER_CONTROL) {
+                    onUserControl(message.payload);
+                }
+            } finally {
+                message.payload.release();
+            }
+        }
+
+        private void onHandshake(ByteBuf s1) {
+            ctx.write(s1);
+            ByteBuf chunkSize = ctx.alloc().heapBuffer(4).writeInt(CHUNK_SIZE);
+            ctx.write(new RtmpMessage(CSID_CONTROL, RtmpMessage.SET_CHUNK_SIZE, 0, 0, chunkSize));
+            Map<String, Object> properties = new LinkedHashMap<>();
+            properties.put("app", app);
+            properties.put("type", "nonprivate");
+            properties.put("flashVer", "FMLE/3.0 (compatible; converter)");
+            properties.put("tcUrl", "rtmp://" + host + ":" + port + "/" + app);
+            command(0, "connect", TX_CONNECT, properties);
+            ctx.flush();
+        }
+
+        private void onCommand(List<Object> values) {
+            if (values.size() < 2 || !(values.get(0) instanceof String)) {
+                return;
+            }
+            String name = (String) values.get(0);
+            int transaction = values.get(1) instanceof Double ? ((Double) values.get(1)).intValue() : 0;
+            if ("_result".equals(name)) {
+                if (transaction == TX_CONNECT) {
+                    command(0, "releaseStream", 2, null, streamName);
+                    command(0, "FCPublish", 3, null, streamName);
+                    command(0, "createStream", TX_CREATE_STREAM, (Object) null);
+                    ctx.flush();
+                } else if (transaction == TX_CREATE_STREAM) {
+                    streamId = values.size() > 3 && values.get(3) instanceof Double ? ((Double) values.get(3)).intValue() : 1;
+                    command(streamId, "publish", TX_PUBLISH, null, streamName, "live");
+                    ctx.flush();
+                }
+            } else if ("_error".equals(name) && (transaction == TX_CONNECT || transaction == TX_CREATE_STREAM)) {
+                fail(new IOException("Rtmp " + (transaction == TX_CONNECT ? "connect" : "createStream") + " rejected: " + values));
+            } else if ("onStatus".equals(name)) {
+                Object info = values.size() > 3 ? values.get(3) : null;
+                Object code = info instanceof Map ? ((Map<?, ?>) info).get("code") : null;
+                Object level = info instanceof Map ? ((Map<?, ?>) info).get("level") : null;
+                if ("NetStream.Publish.Start".equals(code)) {
+                    onPublishStart();
+                } else if ("error".equals(level)) {
+                    fail(new IOException("Rtmp publish failed: " + code));
+                }
+            }
+        }
+
+        private void onUserControl(ByteBuf payload) {
+            // PingRequest(6)原样以PingResponse(7)返回
+            if (payload.readableBytes() >= 6 && payload.getUnsignedShort(payload.readerIndex()) == 6) {
+                ByteBuf response = ctx.alloc().heapBuffer(6);
+                response.writeShort(7);
+                response.writeBytes(payload, payload.readerIndex() + 2, 4);
+                ctx.writeAndFlush(new RtmpMessage(CSID_CONTROL, RtmpMessage.USER_CONTROL, 0, 0, response));
+            }
+        }
+
+        private void onPublishStart() {
+            if (ready) {
+                return;
+            }
+            publishTimeout.cancel(false);
+            ctx.writeAndFlush(new RtmpMessage(CSID_VIDEO, RtmpMessage.DATA_AMF0, streamId, 0,
+                    FlvTags.metadata(ctx.alloc(), width, height, frameRate)));
+            attempts = 0;
+            ready = true;
+            log.info("Rtmp {} publishing", url);
+        }
+
+        private void command(int messageStreamId, String name, int transaction, Object... arguments) {
+            ByteBuf payload = ctx.alloc().heapBuffer(128);
+            Amf0.write(payload, name);
+            Amf0.write(payload, transaction);
+            for (Object argument : arguments) {
+                Amf0.write(payload, argument);
+            }
+            ctx.write(new RtmpMessage(CSID_COMMAND, RtmpMessage.COMMAND_AMF0, messageStreamId, 0, payload));
+        }
+
+        void unpublish() {
+            Channel current = channel;
+            if (current == null) {
+                // 尚未连上，channelActive中会检查closed后关闭
+                return;
+            }
+            current.eventLoop().execute(() -> {
+                if (ready && current.isActive()) {
+                    ready = false;
+                    command(0, "FCUnpublish", 6, null, streamName);
+                    command(0, "deleteStream", 7, null, streamId);
+                    ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                } else {
+                    ctx.close();
+                }
+            });
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(cause);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            ready = false;
+            if (publishTimeout != null) {
+                publishTimeout.cancel(false);
+            }
+            onSessionClosed(cause);
+        }
+
+        private void fail(Throwable cause) {
+            if (this.cause == null) {
+                this.cause = cause;
+            }
+            if (ctx != null) {
+                ctx.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: RtmpServer，基于Netty的RTMP接入服务，接收编码器、手机App、NVR转发等设备推上来的H.264视频。
+ * 支持简单握手、chunk解复用与connect/releaseStream/FCPublish/createStream/publish等AMF0命令，不支持播放。
+ * 所有连接共用RtmpTransport的IO线程，消息体使用池化内存，AVCC在原地改写为Annex B，每路流只占用一个连接，
+ * 推上来的流以PublishedStream的形式交给PublishListener，由RtmpIngestGrabber接入adapter
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtmpServer {
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final int WINDOW_SIZE = 2500000;
+
+    private static final int READ_TIMEOUT_SECONDS = 30;
+
+    private static final int CSID_CONTROL = 2;
+
+    private static final int CSID_COMMAND = 3;
+
+    private static final int CSID_STATUS = 5;
+
+    private static final int WINDOW_ACK_SIZE = 5;
+
+    private static final int SET_PEER_BANDWIDTH = 6;
+
+    private static final int ACKNOWLEDGEMENT = 3;
+
+    private static final int STREAM_BEGIN = 0;
+
+    private static final ByteBuf START_CODE = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[]{0, 0, 0, 1}));
+
+    private final int port;
+
+    private final PublishListener listener;
+
+    private final Map<String, PublishedStream> streams = new ConcurrentHashMap<>();
+
+    private volatile Channel serverChannel;
+
+    /**
+     * 有新的流开始推送时的回调
+     */
+    public interface PublishListener {
+
+        /**
+         * @Description 在IO线程上调用，不能阻塞；返回false时拒绝推流
+         * @author czx
+         * @date 2026-10-19 19:03
+         * @param stream
+         * @return boolean
+         */
+        boolean onPublish(PublishedStream stream);
+    }
+
+    /**
+     * @param port 监听端口，为0时随机选择
+     * @param listener 可为null，此时推上来的流只能通过getStream获取
+     */
+    public RtmpServer(int port, PublishListener listener) {
+        this.port = port;
+        this.listener = listener;
+    }
+
+    /**
+     * @Description 绑定端口，绑定成功后返回
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param
+     * @return void
+     */
+    public void start() throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(RtmpTransport.GROUP)
+                .channel(RtmpTransport.SERVER_CHANNEL)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        Session session = new Session();
+                        ch.pipeline().addLast(new ReadTimeoutHandler(READ_TIMEOUT_SECONDS), session.counter,
+                                new RtmpChunkDecoder(true), new RtmpChunkEncoder(), session);
+                    }
+                });
+        serverChannel = bootstrap.bind(port).sync().channel();
+        log.info("Rtmp server listening on {}", serverChannel.localAddress());
+    }
+
+    /**
+     * @Description 停止监听，已经建立的推流连接不受影响
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param
+     * @return void
+     */
+    public void close() {
+        Channel channel = serverChannel;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    public int getPort() {
+        Channel channel = serverChannel;
+        return channel == null ? port : ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    public PublishedStream getStream(String key) {
+        return streams.get(key);
+    }
+
+    public Collection<PublishedStream> getStreams() {
+        return Collections.unmodifiableCollection(new ArrayList<>(streams.values()));
+    }
+
+    /**
+     * @Description 开始推流，同名的流正在推送时返回null
+     * @author czx
+     * @date 2026-10-19 19:03
+     * @param app
+     * @param name
+     * @param session
+     * @return cn.edu.bupt.rtmp.PublishedStream
+     */
+    private synchronized PublishedStream publish(String app, String name, PublishedStream.Publisher session) {
+        String key = app + "/" + name;
+        PublishedStream stream = streams.get(key);
+        if (stream != null) {
+            if (stream.startPublishing(session)) {
+                return stream;
+            }
+            if (!stream.isReleased()) {
+                return null;
+            }
+        }
+        stream = new PublishedStream(this, app, name);
+        stream.startPublishing(session);
+        streams.put(key, stream);
+        boolean accepted;
+        try {
+            accepted = listener == null || listener.onPublish(stream);
+        } catch (RuntimeException e) {
+            log.warn("Rtmp publish listener failed for {}", key, e);
+            accepted = false;
+        }
+        if (!accepted) {
+            stream.stopPublishing(session);
+            return null;
+        }
+        return stream;
+    }
+
+    void release(PublishedStream stream) {
+        streams.remove(stream.getKey(), stream);
+    }
+
+    private static String stripQuery(Object value) {
+        if (!(value instanceof String)) {
+            return null;
+        }
+        String text = (String) value;
+        int query = text.indexOf('?');
+        text = query < 0 ? text : text.substring(0, query);
+        while (text.endsWith("/")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * 一个推流连接，只在IO线程上访问；counter放在解码器之前统计收到的字节数，用于回复Acknowledgement
+     */
+    private class Session extends ChannelInboundHandlerAdapter implements PublishedStream.Publisher {
+
+        private final ChannelInboundHandlerAdapter counter = new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                onBytes(((ByteBuf) msg).readableBytes());
+                ctx.fireChannelRead(msg);
+            }
+        };
+
+        private ChannelHandlerContext ctx;
+
+        private String app;
+
+        private PublishedStream stream;
+
+        private int lengthSize = 4;
+
+        private ByteBuf parameterSetPrefix;
+
+        private long received;
+
+        private long lastAck;
+
+        private long ackWindow = WINDOW_SIZE;
+
+        private long frames;
+
+        private boolean codecWarned;
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        private void onBytes(int bytes) {
+            received += bytes;
+            if (received - lastAck >= ackWindow && ctx != null) {
+                lastAck = received;
+                ByteBuf ack = ctx.alloc().buffer(4).writeInt((int) received);
+                ctx.writeAndFlush(new RtmpMessage(CSID_CONTROL, ACKNOWLEDGEMENT, 0, 0, ack));
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof RtmpChunkDecoder.Handshake) {
+                onHandshake(((RtmpChunkDecoder.Handshake) msg).echo);
+                return;
+            }
+            RtmpMessage message = (RtmpMessage) msg;
+            if (message.type == RtmpMessage.VIDEO) {
+                onVideo(message);
+                return;
+            }
+            try {
+                if (message.type == RtmpMessage.COMMAND_AMF0) {
+                    onCommand(message.streamId, Amf0.readAll(message.payload));
+                } else if (message.type == RtmpMessage.DATA_AMF0) {
+                    onData(Amf0.readAll(message.payload));
+                } else if (message.type == WINDOW_ACK_SIZE && message.payload.readableBytes() >= 4) {
+                    ackWindow = message.payload.getUnsignedInt(message.payload.readerIndex());
+                }
+                // 音频不进入adapter，与packet模式的推流一致只保留视频
+            } finally {
+                message.payload.release();
+            }
+        }
+
+        private void onHandshake(ByteBuf c1) {
+            ByteBuf s0s1 = ctx.alloc().buffer(1 + RtmpChunkDecoder.HANDSHAKE_SIZE);
+            s0s1.writeByte(3);
+            s0s1.writeInt(0);
+            s0s1.writeInt(0);
+            byte[] random = new byte[RtmpChunkDecoder.HANDSHAKE_SIZE - 8];
+            ThreadLocalRandom.current().nextBytes(random);
+            s0s1.writeBytes(random);
+            ctx.write(s0s1);
+            ctx.writeAndFlush(c1);
+        }
+
+        private void onCommand(int streamId, List<Object> values) {
+            if (values.size() < 2 || !(values.get(0) instanceof String)) {
+                return;
+            }
+            String name = (String) values.get(0);
+            double transaction = values.get(1) instanceof Double ? (Double) values.get(1) : 0;
+            switch (name) {
+                case "connect":
+                    Object properties = values.size() > 2 ? values.get(2) : null;
+                    app = stripQuery(properties instanceof Map ? ((Map<?, ?>) properties).get("app") : null);
+                    onConnect(transaction);
+                    break;
+                case "releaseStream":
+                case "FCPublish":
+                    if (transaction > 0) {
+                        command(0, CSID_COMMAND, "_result", transaction, (Object) null);
+                        ctx.flush();
+                    }
+                    break;
+                case "createStream":
+                    command(0, CSID_COMMAND, "_result", transaction, null, 1.0);
+                    ctx.flush();
+                    break;
+                case "publish":
+                    onPublish(streamId, transaction, stripQuery(values.size() > 3 ? values.get(3) : null));
+                    break;
+                case "FCUnpublish":
+                case "deleteStream":
+                case "closeStream":
+                    unpublish();
+                    break;
+                case "play":
+                    status(streamId, "error", "NetStream.Play.Failed", "Playback is not supported.");
+                    ctx.flush();
+                    ctx.close();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void onConnect(double transaction) {
+            ctx.write(new RtmpMessage(CSID_CONTROL, WINDOW_ACK_SIZE, 0, 0, ctx.alloc().buffer(4).writeInt(WINDOW_SIZE)));
+            ctx.write(new RtmpMessage(CSID_CONTROL, SET_PEER_BANDWIDTH, 0, 0, ctx.alloc().buffer(5).writeInt(WINDOW_SIZE).writeByte(2)));
+            ctx.write(new RtmpMessage(CSID_CONTROL, RtmpMessage.SET_CHUNK_SIZE, 0, 0, ctx.alloc().buffer(4).writeInt(CHUNK_SIZE)));
+            Map<String, Object> server = new LinkedHashMap<>();
+            server.put("fmsVer", "FMS/3,0,1,123");
+            server.put("capabilities", 31);
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("level", app == null ? "error" : "status");
+            info.put("code", app == null ? "NetConnection.Connect.Rejected" : "NetConnection.Connect.Success");
+            info.put("description", app == null ? "Missing app." : "Connection succeeded.");
+            info.put("objectEncoding", 0);
+            command(0, CSID_COMMAND, app == null ? "_error" : "_result", transaction, server, info);
+            ctx.flush();
+        }
+
+        private void onPublish(int streamId, double transaction, String name) {
+            if (stream != null) {
+                return;
+            }
+            PublishedStream published = app == null || name == null ? null : publish(app, name, this);
+            if (published == null) {
+                log.warn("Rtmp publish of {}/{} from {} rejected", app, name, ctx.channel().remoteAddress());
+                status(streamId, "error", "NetStream.Publish.BadName", "Stream already publishing or rejected.");
+                ctx.flush();
+                ctx.close();
+                return;
+            }
+            stream = published;
+            ByteBuf begin = ctx.alloc().buffer(6).writeShort(STREAM_BEGIN).writeInt(streamId);
+            ctx.write(new RtmpMessage(CSID_CONTROL, RtmpMessage.USER_CONTROL, 0, 0, begin));
+            status(streamId, "status", "NetStream.Publish.Start", name + " is now published.");
+            ctx.flush();
+            log.info("Rtmp {} publishing from {}", stream.getKey(), ctx.channel().remoteAddress());
+        }
+
+        private void unpublish() {
+            if (stream != null) {
+                stream.stopPublishing(this);
+                log.info("Rtmp {} unpublished, {} frames received", stream.getKey(), frames);
+                stream = null;
+            }
+        }
+
+        private void onData(List<Object> values) {
+            if (stream == null) {
+                return;
+            }
+            for (Object value : values) {
+                if (value instanceof Map) {
+                    Map<?, ?> metadata = (Map<?, ?>) value;
+                    stream.setMetadata(number(metadata.get("width")), number(metadata.get("height")),
+                            metadata.get("framerate") instanceof Double ? (Double) metadata.get("framerate") : 0);
+                }
+            }
+        }
+
+        private int number(Object value) {
+            return value instanceof Double ? ((Double) value).intValue() : 0;
+        }
+
+        private void onVideo(RtmpMessage message) {
+            ByteBuf payload = message.payload;
+            int index = payload.readerIndex();
+            if (stream == null || payload.readableBytes() < 5) {
+                payload.release();
+                return;
+            }
+            int frameType = payload.getUnsignedByte(index) >> 4;
+            int codec = payload.getUnsignedByte(index) & 0x0f;
+            if (codec != FlvTags.CODEC_AVC) {
+                if (!codecWarned) {
+                    codecWarned = true;
+                    log.warn("Rtmp {} publishes video codec {}, only H.264 is supported", stream.getKey(), codec);
+                }
+                payload.release();
+                return;
+            }
+            int packetType = payload.getUnsignedByte(index + 1);
+            if (packetType == 0) {
+                onSequenceHeader(payload, index + 5);
+                payload.release();
+            } else if (packetType == 1 && frameType != 5) {
+                boolean keyframe = frameType == 1;
+                int compositionTime = payload.getMedium(index + 2);
+                ByteBuf data = toAnnexB(payload, index + 5, keyframe);
+                if (data != null) {
+                    frames++;
+                    stream.onFrame(this, new IngestFrame(data, message.timestamp, compositionTime, keyframe));
+                }
+            } else {
+                payload.release();
+            }
+        }
+
+        private void onSequenceHeader(ByteBuf payload, int index) {
+            byte[] record = new byte[payload.writerIndex() - index];
+            payload.getBytes(index, record);
+            byte[][] sets = FlvTags.parameterSets(record);
+            if (record.length < 5 || sets[0] == null || sets[1] == null) {
+                log.warn("Rtmp {} sent an invalid AVC sequence header", stream.getKey());
+                return;
+            }
+            lengthSize = (record[4] & 0x03) + 1;
+            stream.setParameterSets(sets);
+            if (parameterSetPrefix != null) {
+                parameterSetPrefix.release();
+            }
+            parameterSetPrefix = Unpooled.buffer(8 + sets[0].length + sets[1].length)
+                    .writeBytes(START_CODE.duplicate()).writeBytes(sets[0])
+                    .writeBytes(START_CODE.duplicate()).writeBytes(sets[1]);
+        }
+
+        /**
+         * 把长度前缀的NAL改写为Annex B：4字节长度直接原地替换为起始码，其它长度用切片重新组合；
+         * 关键帧前补上sequence header中的SPS/PPS。格式错误时释放payload并返回null
+         */
+        private ByteBuf toAnnexB(ByteBuf payload, int start, boolean keyframe) {
+            int end = payload.writerIndex();
+            boolean inPlace = lengthSize == 4;
+            CompositeByteBuf composite = inPlace ? null : ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+            boolean hasSps = false;
+            int index = start;
+            while (index < end) {
+                if (end - index < lengthSize) {
+                    break;
+                }
+                long length = 0;
+                for (int i = 0; i < lengthSize; i++) {
+                    length = length << 8 | payload.getUnsignedByte(index + i);
+                }
+                if (length > end - index - lengthSize) {
+                    if (composite != null) {
+                        composite.release();
+                    }
+                    payload.release();
+                    return null;
+                }
+                int nal = index + lengthSize;
+                if (length > 0 && (payload.getByte(nal) & 0x1f) == 7) {
+                    hasSps = true;
+                }
+                if (inPlace) {
+                    payload.setInt(index, 1);
+                } else {
+                    composite.addComponent(true, START_CODE.duplicate());
+                    composite.addComponent(true, payload.retainedSlice(nal, (int) length));
+                }
+                index = nal + (int) length;
+            }
+            ByteBuf data;
+            if (inPlace) {
+                data = payload.readerIndex(start).writerIndex(index);
+            } else {
+                payload.release();
+                data = composite;
+            }
+            if (keyframe && !hasSps && parameterSetPrefix != null) {
+                CompositeByteBuf prefixed = ctx.alloc().compositeBuffer(2);
+                prefixed.addComponent(true, parameterSetPrefix.retainedDuplicate());
+                prefixed.addComponent(true, data);
+                return prefixed;
+            }
+            return data;
+        }
+
+        private void command(int streamId, int csid, String name, double transaction, Object... arguments) {
+            ByteBuf payload = ctx.alloc().buffer(256);
+            Amf0.write(payload, name);
+            Amf0.write(payload, transaction);
+            for (Object argument : arguments) {
+                Amf0.write(payload, argument);
+            }
+            ctx.write(new RtmpMessage(csid, RtmpMessage.COMMAND_AMF0, streamId, 0, payload));
+        }
+
+        private void status(int streamId, String level, String code, String description) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("level", level);
+            info.put("code", code);
+            info.put("description", description);
+            command(streamId, CSID_STATUS, "onStatus", 0, null, info);
+        }
+
+        @Override
+        public void close() {
+            log.info("Rtmp {} has no consumer any more, closing publisher {}", stream == null ? app : stream.getKey(),
+                    ctx.channel().remoteAddress());
+            ctx.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("Rtmp connection {} failed: {}", ctx.channel().remoteAddress(), cause.toString());
+            ctx.close();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            unpublish();
+            if (parameterSetPrefix != null) {
+                parameterSetPrefix.release();
+                parameterSetPrefix = null;
+            }
+        }
+    }
+}
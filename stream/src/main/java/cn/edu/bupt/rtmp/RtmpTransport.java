@@ -0,0 +1,47 @@
+package cn.edu.bupt.rtmp;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @Description: RtmpTransport，RTMP推流客户端与接入服务共用的IO线程组，Linux下使用epoll
+ * @Author: czx
+ * @CreateDate: 2026-10-19 19:03
+ * @Version: 1.0
+ */
+final class RtmpTransport {
+
+    static final EventLoopGroup GROUP;
+
+    static final Class<? extends SocketChannel> SOCKET_CHANNEL;
+
+    static final Class<? extends ServerSocketChannel> SERVER_CHANNEL;
+
+    static {
+        ThreadFactory threadFactory = new BasicThreadFactory.Builder().namingPattern("Rtmp-io-%d").daemon(true).build();
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (Epoll.isAvailable()) {
+            GROUP = new EpollEventLoopGroup(threads, threadFactory);
+            SOCKET_CHANNEL = EpollSocketChannel.class;
+            SERVER_CHANNEL = EpollServerSocketChannel.class;
+        } else {
+            GROUP = new NioEventLoopGroup(threads, threadFactory);
+            SOCKET_CHANNEL = NioSocketChannel.class;
+            SERVER_CHANNEL = NioServerSocketChannel.class;
+        }
+    }
+
+    private RtmpTransport() {
+    }
+}
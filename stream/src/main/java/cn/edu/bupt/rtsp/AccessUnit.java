@@ -0,0 +1,67 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @Description: AccessUnit，一帧完整的视频数据。data为Annex B格式(每个NAL前带4字节起始码)，使用池化的ByteBuf，
+ * 收到的一方用完之后必须调用release
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class AccessUnit {
+
+    private final ByteBuf data;
+
+    private final long timestamp;
+
+    private final boolean keyframe;
+
+    private final long wallClockMillis;
+
+    private final long arrivalNanos;
+
+    AccessUnit(ByteBuf data, long timestamp, boolean keyframe, long wallClockMillis, long arrivalNanos) {
+        this.data = data;
+        this.timestamp = timestamp;
+        this.keyframe = keyframe;
+        this.wallClockMillis = wallClockMillis;
+        this.arrivalNanos = arrivalNanos;
+    }
+
+    public ByteBuf getData() {
+        return data;
+    }
+
+    /**
+     * 展开为64位、不会回绕的RTP时间戳，单位为track的时钟频率
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * H.264的IDR或H.265的IRAP，且已经带上了参数集
+     */
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    /**
+     * 由RTCP SR换算的摄像头采集时间，还没有收到SR时为-1
+     */
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    /**
+     * 最后一个RTP包到达时的System.nanoTime()
+     */
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    public boolean release() {
+        return data.release();
+    }
+}
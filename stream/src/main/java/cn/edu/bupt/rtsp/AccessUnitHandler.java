@@ -0,0 +1,37 @@
+package cn.edu.bupt.rtsp;
+
+/**
+ * @Description: AccessUnitHandler，RtspClient的回调。所有方法都在该连接所属的Netty IO线程中调用，不能阻塞
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public interface AccessUnitHandler {
+
+    /**
+     * @Description PLAY成功，每次重连之后都会再次调用
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param track 正在接收的视频track
+     * @return void
+     */
+    void onStarted(MediaTrack track);
+
+    /**
+     * @Description 收到一帧完整的数据，所有权转移给handler，用完之后需要release
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param accessUnit
+     * @return void
+     */
+    void onAccessUnit(AccessUnit accessUnit);
+
+    /**
+     * @Description 连接断开，没有调用close时RtspClient会自动重连
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param cause 可能为null
+     * @return void
+     */
+    void onDisconnected(Throwable cause);
+}
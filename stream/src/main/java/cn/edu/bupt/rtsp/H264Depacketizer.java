@@ -0,0 +1,57 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Consumer;
+
+/**
+ * @Description: H264Depacketizer，RFC 6184 packetization-mode 0/1：单NAL、STAP-A与FU-A
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class H264Depacketizer extends RtpDepacketizer {
+
+    private static final int STAP_A = 24;
+
+    private static final int FU_A = 28;
+
+    H264Depacketizer(MediaTrack track, ByteBufAllocator allocator, Consumer<AccessUnit> output) {
+        super(track, allocator, output);
+    }
+
+    @Override
+    protected void onPayload(ByteBuf packet, int index, int length) {
+        int nalHeader = packet.getUnsignedByte(index);
+        int type = nalHeader & 0x1f;
+        if (type >= 1 && type <= 23) {
+            appendNal(packet, index, length);
+        } else if (type == STAP_A) {
+            int offset = index + 1;
+            int end = index + length;
+            while (offset + 2 <= end) {
+                int size = packet.getUnsignedShort(offset);
+                offset += 2;
+                if (size == 0 || offset + size > end) {
+                    markCorrupted();
+                    return;
+                }
+                appendNal(packet, offset, size);
+                offset += size;
+            }
+        } else if (type == FU_A) {
+            if (length < 2) {
+                return;
+            }
+            int fuHeader = packet.getUnsignedByte(index + 1);
+            if ((fuHeader & 0x80) != 0) {
+                beginFragment(new byte[]{(byte) ((nalHeader & 0xe0) | (fuHeader & 0x1f))});
+            }
+            appendFragment(packet, index + 2, length - 2, (fuHeader & 0x40) != 0);
+        } else {
+            // STAP-B、MTAP与FU-B只用于packetization-mode 2，摄像头基本不用
+            markCorrupted();
+        }
+    }
+}
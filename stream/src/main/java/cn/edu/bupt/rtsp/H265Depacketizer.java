@@ -0,0 +1,80 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Consumer;
+
+/**
+ * @Description: H265Depacketizer，RFC 7798：单NAL、AP与FU。sprop-max-don-diff大于0时负载中带有DONL/DOND，
+ * 这里只跳过，不按解码顺序重排
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class H265Depacketizer extends RtpDepacketizer {
+
+    private static final int AP = 48;
+
+    private static final int FU = 49;
+
+    private final boolean donl;
+
+    H265Depacketizer(MediaTrack track, ByteBufAllocator allocator, Consumer<AccessUnit> output) {
+        super(track, allocator, output);
+        String maxDonDiff = track.getFmtp().get("sprop-max-don-diff");
+        this.donl = maxDonDiff != null && !"0".equals(maxDonDiff.trim());
+    }
+
+    @Override
+    protected void onPayload(ByteBuf packet, int index, int length) {
+        if (length < 3) {
+            return;
+        }
+        int type = (packet.getUnsignedByte(index) >> 1) & 0x3f;
+        if (type < AP) {
+            if (donl) {
+                beginFragment(new byte[]{packet.getByte(index), packet.getByte(index + 1)});
+                appendFragment(packet, index + 4, length - 4, true);
+            } else {
+                appendNal(packet, index, length);
+            }
+        } else if (type == AP) {
+            int offset = index + 2;
+            int end = index + length;
+            boolean first = true;
+            while (true) {
+                if (donl) {
+                    offset += first ? 2 : 1;
+                }
+                first = false;
+                if (offset + 2 > end) {
+                    break;
+                }
+                int size = packet.getUnsignedShort(offset);
+                offset += 2;
+                if (size < 2 || offset + size > end) {
+                    markCorrupted();
+                    return;
+                }
+                appendNal(packet, offset, size);
+                offset += size;
+            }
+        } else if (type == FU) {
+            int fuHeader = packet.getUnsignedByte(index + 2);
+            boolean start = (fuHeader & 0x80) != 0;
+            int offset = index + 3;
+            if (start) {
+                int header0 = (packet.getUnsignedByte(index) & 0x81) | ((fuHeader & 0x3f) << 1);
+                beginFragment(new byte[]{(byte) header0, packet.getByte(index + 1)});
+                if (donl) {
+                    offset += 2;
+                }
+            }
+            appendFragment(packet, offset, index + length - offset, (fuHeader & 0x40) != 0);
+        } else {
+            // PACI
+            markCorrupted();
+        }
+    }
+}
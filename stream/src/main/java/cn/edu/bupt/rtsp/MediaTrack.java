@@ -0,0 +1,133 @@
+package cn.edu.bupt.rtsp;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @Description: MediaTrack，SDP中的一路媒体：payload type、编码、时钟频率、control地址与fmtp参数
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class MediaTrack {
+
+    private final String media;
+
+    private final int payloadType;
+
+    private final String encoding;
+
+    private final int clockRate;
+
+    private final String control;
+
+    private final Map<String, String> fmtp;
+
+    private final double frameRate;
+
+    MediaTrack(String media, int payloadType, String encoding, int clockRate, String control, Map<String, String> fmtp, double frameRate) {
+        this.media = media;
+        this.payloadType = payloadType;
+        this.encoding = encoding;
+        this.clockRate = clockRate;
+        this.control = control;
+        this.fmtp = Collections.unmodifiableMap(fmtp);
+        this.frameRate = frameRate;
+    }
+
+    public String getMedia() {
+        return media;
+    }
+
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    /**
+     * @Description rtpmap中的编码名，统一为大写，例如H264、H265
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return java.lang.String
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public int getClockRate() {
+        return clockRate;
+    }
+
+    /**
+     * 已经按Content-Base解析为绝对地址
+     */
+    public String getControl() {
+        return control;
+    }
+
+    public Map<String, String> getFmtp() {
+        return fmtp;
+    }
+
+    /**
+     * SDP中没有a=framerate时为0
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public boolean isH264() {
+        return "H264".equals(encoding);
+    }
+
+    public boolean isH265() {
+        return "H265".equals(encoding) || "HEVC".equals(encoding);
+    }
+
+    /**
+     * @Description fmtp中带外传输的参数集(不含起始码)：H.264为SPS、PPS，H.265为VPS、SPS、PPS
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return java.util.List<byte[]>
+     */
+    public List<byte[]> getParameterSets() {
+        List<byte[]> sets = new ArrayList<>();
+        if (isH264()) {
+            String sprop = fmtp.get("sprop-parameter-sets");
+            if (sprop != null) {
+                for (String set : sprop.split(",")) {
+                    addBase64(sets, set);
+                }
+            }
+        } else if (isH265()) {
+            addBase64(sets, fmtp.get("sprop-vps"));
+            addBase64(sets, fmtp.get("sprop-sps"));
+            addBase64(sets, fmtp.get("sprop-pps"));
+        }
+        return sets;
+    }
+
+    private static void addBase64(List<byte[]> sets, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        try {
+            byte[] set = Base64.getDecoder().decode(value.trim());
+            if (set.length > 0) {
+                sets.add(set);
+            }
+        } catch (IllegalArgumentException e) {
+            // 个别摄像头的sprop不合法，此时依赖码流中的参数集
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s %d %s/%d %s", media, payloadType, encoding, clockRate, control);
+    }
+}
@@ -0,0 +1,283 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Description: NalUnits，H.264/H.265 NAL的工具方法：NAL类型、Annex B切分以及从SPS中解析分辨率
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class NalUnits {
+
+    public static final int H264_IDR = 5;
+    public static final int H264_SPS = 7;
+    public static final int H264_PPS = 8;
+    public static final int H265_VPS = 32;
+    public static final int H265_SPS = 33;
+    public static final int H265_PPS = 34;
+
+    private NalUnits() {
+    }
+
+    public static int type(byte header, boolean h265) {
+        return h265 ? (header >> 1) & 0x3f : header & 0x1f;
+    }
+
+    public static boolean isKeyframe(int type, boolean h265) {
+        // H.265的IRAP：BLA、IDR与CRA
+        return h265 ? type >= 16 && type <= 21 : type == H264_IDR;
+    }
+
+    /**
+     * @Description 参数集在extradata中的顺序，不是参数集时返回-1
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param type
+     * @param h265
+     * @return int
+     */
+    public static int parameterSetOrder(int type, boolean h265) {
+        if (h265) {
+            return type >= H265_VPS && type <= H265_PPS ? type - H265_VPS : -1;
+        }
+        return type == H264_SPS ? 0 : type == H264_PPS ? 1 : -1;
+    }
+
+    /**
+     * @Description 按起始码切分Annex B数据，返回不含起始码的NAL，不改变readerIndex
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param data
+     * @return java.util.List<byte[]>
+     */
+    public static List<byte[]> splitAnnexB(ByteBuf data) {
+        List<byte[]> nals = new ArrayList<>();
+        int end = data.writerIndex();
+        int start = -1;
+        int i = data.readerIndex();
+        while (i + 2 < end) {
+            if (data.getByte(i) == 0 && data.getByte(i + 1) == 0 && data.getByte(i + 2) == 1) {
+                if (start >= 0) {
+                    addNal(nals, data, start, i);
+                }
+                i += 3;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (start >= 0) {
+            addNal(nals, data, start, end);
+        }
+        return nals;
+    }
+
+    private static void addNal(List<byte[]> nals, ByteBuf data, int start, int end) {
+        while (end > start && data.getByte(end - 1) == 0) {
+            end--;
+        }
+        if (end > start) {
+            byte[] nal = new byte[end - start];
+            data.getBytes(start, nal);
+            nals.add(nal);
+        }
+    }
+
+    /**
+     * @Description 从H.264的SPS(含1字节NAL头)中解析裁剪之后的宽高，解析失败时返回null
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param sps
+     * @return int[] {width, height}
+     */
+    public static int[] h264Resolution(byte[] sps) {
+        try {
+            BitReader r = new BitReader(sps, 1);
+            int profile = r.bits(8);
+            r.bits(16);
+            r.ue();
+            int chroma = 1;
+            if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44 || profile == 83
+                    || profile == 86 || profile == 118 || profile == 128 || profile == 138 || profile == 139
+                    || profile == 134 || profile == 135) {
+                chroma = r.ue();
+                if (chroma == 3) {
+                    r.bits(1);
+                }
+                r.ue();
+                r.ue();
+                r.bits(1);
+                if (r.bits(1) == 1) {
+                    for (int i = 0; i < (chroma == 3 ? 12 : 8); i++) {
+                        if (r.bits(1) == 1) {
+                            skipScalingList(r, i < 6 ? 16 : 64);
+                        }
+                    }
+                }
+            }
+            r.ue();
+            int pocType = r.ue();
+            if (pocType == 0) {
+                r.ue();
+            } else if (pocType == 1) {
+                r.bits(1);
+                r.se();
+                r.se();
+                int cycle = r.ue();
+                for (int i = 0; i < cycle; i++) {
+                    r.se();
+                }
+            }
+            r.ue();
+            r.bits(1);
+            int widthInMbs = r.ue() + 1;
+            int heightInMapUnits = r.ue() + 1;
+            int frameMbsOnly = r.bits(1);
+            if (frameMbsOnly == 0) {
+                r.bits(1);
+            }
+            r.bits(1);
+            int width = widthInMbs * 16;
+            int height = (2 - frameMbsOnly) * heightInMapUnits * 16;
+            if (r.bits(1) == 1) {
+                int cropUnitX = chroma == 0 || chroma == 3 ? 1 : 2;
+                int cropUnitY = (chroma == 1 ? 2 : 1) * (2 - frameMbsOnly);
+                width -= (r.ue() + r.ue()) * cropUnitX;
+                height -= (r.ue() + r.ue()) * cropUnitY;
+            }
+            return width > 0 && height > 0 ? new int[]{width, height} : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @Description 从H.265的SPS(含2字节NAL头)中解析裁剪之后的宽高，解析失败时返回null
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param sps
+     * @return int[] {width, height}
+     */
+    public static int[] h265Resolution(byte[] sps) {
+        try {
+            BitReader r = new BitReader(sps, 2);
+            r.bits(4);
+            int maxSubLayersMinus1 = r.bits(3);
+            r.bits(1);
+            // profile_tier_level：general部分共88位，之后是general_level_idc
+            r.skip(88);
+            r.bits(8);
+            boolean[] profilePresent = new boolean[maxSubLayersMinus1];
+            boolean[] levelPresent = new boolean[maxSubLayersMinus1];
+            for (int i = 0; i < maxSubLayersMinus1; i++) {
+                profilePresent[i] = r.bits(1) == 1;
+                levelPresent[i] = r.bits(1) == 1;
+            }
+            if (maxSubLayersMinus1 > 0) {
+                r.skip(2 * (8 - maxSubLayersMinus1));
+            }
+            for (int i = 0; i < maxSubLayersMinus1; i++) {
+                if (profilePresent[i]) {
+                    r.skip(88);
+                }
+                if (levelPresent[i]) {
+                    r.skip(8);
+                }
+            }
+            r.ue();
+            int chroma = r.ue();
+            if (chroma == 3) {
+                r.bits(1);
+            }
+            int width = r.ue();
+            int height = r.ue();
+            if (r.bits(1) == 1) {
+                int subWidth = chroma == 1 || chroma == 2 ? 2 : 1;
+                int subHeight = chroma == 1 ? 2 : 1;
+                width -= (r.ue() + r.ue()) * subWidth;
+                height -= (r.ue() + r.ue()) * subHeight;
+            }
+            return width > 0 && height > 0 ? new int[]{width, height} : null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static void skipScalingList(BitReader r, int size) {
+        int last = 8, next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) {
+                next = (last + r.se() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    /**
+     * RBSP的位读取，跳过防竞争字节(00 00 03)
+     */
+    private static class BitReader {
+
+        private final byte[] data;
+
+        private int byteIndex;
+
+        private int bitIndex;
+
+        private int zeros;
+
+        BitReader(byte[] data, int offset) {
+            this.data = data;
+            this.byteIndex = offset;
+        }
+
+        int bit() {
+            if (bitIndex == 0) {
+                if (zeros >= 2 && data[byteIndex] == 3) {
+                    byteIndex++;
+                    zeros = 0;
+                }
+                zeros = data[byteIndex] == 0 ? zeros + 1 : 0;
+            }
+            int value = (data[byteIndex] >> (7 - bitIndex)) & 1;
+            if (++bitIndex == 8) {
+                bitIndex = 0;
+                byteIndex++;
+            }
+            return value;
+        }
+
+        int bits(int n) {
+            int value = 0;
+            for (int i = 0; i < n; i++) {
+                value = (value << 1) | bit();
+            }
+            return value;
+        }
+
+        void skip(int n) {
+            for (int i = 0; i < n; i++) {
+                bit();
+            }
+        }
+
+        int ue() {
+            int leadingZeros = 0;
+            while (bit() == 0) {
+                if (++leadingZeros > 31) {
+                    throw new IndexOutOfBoundsException("Illegal exp-Golomb code");
+                }
+            }
+            return leadingZeros == 0 ? 0 : (1 << leadingZeros) - 1 + bits(leadingZeros);
+        }
+
+        int se() {
+            int value = ue();
+            return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package cn.edu.bupt.rtsp;
+
+import cn.edu.bupt.codec.StreamCodecContext;
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_HEVC;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_INPUT_BUFFER_PADDING_SIZE;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.av_new_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_alloc_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_free_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_new_stream;
+import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_VIDEO;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_d2q;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+import static org.bytedeco.ffmpeg.global.avutil.av_mallocz;
+
+/**
+ * @Description: NettyRtspGrabber，用RtspClient代替FFmpeg的rtsp demuxer拉流，只支持packet模式。
+ * IO线程组好的帧放入有界队列，grabPacket在拉流线程中取出并拷贝为AVPacket；
+ * 为下游的recorder与解码器构造一个只有一路视频流的AVFormatContext，extradata为Annex B格式的参数集。
+ * 队列满时丢帧直到下一个关键帧；重连之后pts接着之前的继续，分辨率以第一次连接为准
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+@Slf4j
+public class NettyRtspGrabber extends FFmpegFrameGrabber {
+
+    private static final int QUEUE_CAPACITY = 128;
+
+    private static final long START_TIMEOUT_MILLIS = 10000;
+
+    private static final long FRAME_RATE_PROBE_MILLIS = 1000;
+
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+
+    private static final double DEFAULT_FRAME_RATE = 25;
+
+    private final String url;
+
+    private final RtspClient client;
+
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * start时为了探测帧率而提前取出的帧
+     */
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+
+    private MediaTrack track;
+
+    private AVFormatContext formatContext;
+
+    private AVPacket packet;
+
+    private volatile boolean stopped;
+
+    private volatile long droppedUnits;
+
+    public NettyRtspGrabber(String url, RtspClient.Transport transport) {
+        super(url);
+        this.url = url;
+        this.client = new RtspClient(url, transport, new Receiver());
+    }
+
+    private static class Entry {
+
+        final AccessUnit accessUnit;
+
+        final long pts;
+
+        Entry(AccessUnit accessUnit, long pts) {
+            this.accessUnit = accessUnit;
+            this.pts = pts;
+        }
+    }
+
+    /**
+     * 在IO线程中执行
+     */
+    private class Receiver implements AccessUnitHandler {
+
+        private boolean dropping;
+
+        private boolean rebase = true;
+
+        private long ptsOffset;
+
+        private long lastPts = -1;
+
+        private long frameDuration;
+
+        @Override
+        public void onStarted(MediaTrack track) {
+            double rate = track.getFrameRate() > 0 ? track.getFrameRate() : DEFAULT_FRAME_RATE;
+            frameDuration = Math.round(track.getClockRate() / rate);
+            rebase = true;
+        }
+
+        @Override
+        public void onAccessUnit(AccessUnit accessUnit) {
+            if (stopped) {
+                accessUnit.release();
+                return;
+            }
+            if (dropping && !accessUnit.isKeyframe()) {
+                accessUnit.release();
+                droppedUnits++;
+                return;
+            }
+            if (rebase) {
+                // 重连之后RTP时间戳重新开始，保证pts单调递增
+                ptsOffset = lastPts < 0 ? -accessUnit.getTimestamp() : lastPts + frameDuration - accessUnit.getTimestamp();
+                rebase = false;
+            }
+            long pts = accessUnit.getTimestamp() + ptsOffset;
+            lastPts = pts;
+            if (!queue.offer(new Entry(accessUnit, pts))) {
+                accessUnit.release();
+                droppedUnits++;
+                if (!dropping) {
+                    log.warn("Access unit queue of [{}] is full, dropping until next keyframe", url);
+                }
+                dropping = true;
+                return;
+            }
+            if (accessUnit.isKeyframe()) {
+                dropping = false;
+            }
+        }
+
+        @Override
+        public void onDisconnected(Throwable cause) {
+            log.warn("Rtsp [{}] disconnected: {}", url, cause == null ? "closed by server" : cause.toString());
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        try {
+            track = client.start().get(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            Entry first = queue.poll(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                throw new Exception("No keyframe received from " + url);
+            }
+            pending.add(first);
+            Entry second = queue.poll(FRAME_RATE_PROBE_MILLIS, TimeUnit.MILLISECONDS);
+            if (second != null) {
+                pending.add(second);
+            }
+            formatContext = createFormatContext(first, second);
+            packet = av_packet_alloc();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            throw new Exception("Interrupted while starting " + url, e);
+        } catch (ExecutionException e) {
+            stop();
+            throw new Exception("Failed to start " + url, e.getCause());
+        } catch (TimeoutException e) {
+            stop();
+            throw new Exception("Timed out starting " + url, e);
+        } catch (Exception e) {
+            stop();
+            throw e;
+        }
+    }
+
+    private AVFormatContext createFormatContext(Entry first, Entry second) {
+        boolean h265 = track.isH265();
+        // 第一帧一定是关键帧，并且已经带上了码流中或SDP中的参数集
+        byte[][] sets = new byte[3][];
+        List<byte[]> nals = NalUnits.splitAnnexB(first.accessUnit.getData());
+        for (byte[] nal : nals) {
+            int order = NalUnits.parameterSetOrder(NalUnits.type(nal[0], h265), h265);
+            if (order >= 0 && sets[order] == null) {
+                sets[order] = nal;
+            }
+        }
+        byte[] sps = sets[h265 ? 1 : 0];
+        int[] size = sps == null ? null : h265 ? NalUnits.h265Resolution(sps) : NalUnits.h264Resolution(sps);
+        if (size == null) {
+            log.warn("Cannot parse resolution from the parameter sets of [{}]", url);
+            size = new int[]{0, 0};
+        }
+
+        double rate = track.getFrameRate();
+        if (rate <= 0 && second != null && second.pts > first.pts) {
+            rate = (double) track.getClockRate() / (second.pts - first.pts);
+        }
+        if (rate <= 0 || rate > 120) {
+            rate = DEFAULT_FRAME_RATE;
+        }
+
+        AVFormatContext fc = avformat_alloc_context();
+        AVStream stream = avformat_new_stream(fc, null);
+        stream.time_base(av_make_q(1, track.getClockRate()));
+        stream.avg_frame_rate(av_d2q(rate, 1001000));
+        stream.r_frame_rate(av_d2q(rate, 1001000));
+        AVCodecParameters parameters = stream.codecpar();
+        parameters.codec_type(AVMEDIA_TYPE_VIDEO);
+        parameters.codec_id(h265 ? AV_CODEC_ID_HEVC : AV_CODEC_ID_H264);
+        parameters.width(size[0]);
+        parameters.height(size[1]);
+        parameters.format(AV_PIX_FMT_YUV420P);
+        int extradataSize = 0;
+        for (byte[] set : sets) {
+            extradataSize += set == null ? 0 : 4 + set.length;
+        }
+        if (extradataSize > 0) {
+            BytePointer extradata = new BytePointer(av_mallocz(extradataSize + AV_INPUT_BUFFER_PADDING_SIZE)).capacity(extradataSize);
+            int offset = 0;
+            for (byte[] set : sets) {
+                if (set != null) {
+                    extradata.position(offset).put(new byte[]{0, 0, 0, 1});
+                    extradata.position(offset + 4).put(set);
+                    offset += 4 + set.length;
+                }
+            }
+            parameters.extradata(extradata.position(0));
+            parameters.extradata_size(extradataSize);
+        }
+        StreamCodecContext.attach(stream);
+
+        imageWidth = size[0];
+        imageHeight = size[1];
+        frameRate = rate;
+        videoCodec = parameters.codec_id();
+        format = "rtsp";
+        log.info("Netty grabber started for [{}]: {} {}x{} {}fps", url, track.getEncoding(), size[0], size[1], String.format("%.2f", rate));
+        return fc;
+    }
+
+    @Override
+    public AVPacket grabPacket() throws Exception {
+        Entry entry = pending.poll();
+        if (entry == null) {
+            try {
+                entry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        if (entry == null || packet == null) {
+            return null;
+        }
+        try {
+            ByteBuf data = entry.accessUnit.getData();
+            int size = data.readableBytes();
+            av_packet_unref(packet);
+            if (av_new_packet(packet, size) < 0) {
+                throw new Exception("av_new_packet() failed for " + size + " bytes");
+            }
+            data.getBytes(data.readerIndex(), packet.data().capacity(size).asByteBuffer());
+            packet.pts(entry.pts);
+            // 没有B帧的重排信息，dts与pts相同
+            packet.dts(entry.pts);
+            packet.stream_index(0);
+            packet.flags(entry.accessUnit.isKeyframe() ? AV_PKT_FLAG_KEY : 0);
+            timestamp = entry.pts * 1000000L / track.getClockRate();
+            frameNumber++;
+            return packet;
+        } finally {
+            entry.accessUnit.release();
+        }
+    }
+
+    @Override
+    public AVFormatContext getFormatContext() {
+        return formatContext;
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        throw new Exception("NettyRtspGrabber only supports packet mode");
+    }
+
+    @Override
+    public Frame grabImage() throws Exception {
+        throw new Exception("NettyRtspGrabber only supports packet mode");
+    }
+
+    @Override
+    public Frame grabFrame(boolean doAudio, boolean doVideo, boolean doProcessing, boolean keyFrames) throws Exception {
+        throw new Exception("NettyRtspGrabber only supports packet mode");
+    }
+
+    @Override
+    public void stop() throws Exception {
+        stopped = true;
+        client.close();
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            entry.accessUnit.release();
+        }
+        while ((entry = queue.poll()) != null) {
+            entry.accessUnit.release();
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+        if (formatContext != null) {
+            avformat_free_context(formatContext);
+            formatContext = null;
+        }
+        if (droppedUnits > 0) {
+            log.info("Netty grabber for [{}] dropped {} access units", url, droppedUnits);
+        }
+    }
+
+    @Override
+    public void release() throws Exception {
+        stop();
+    }
+
+    public long getDroppedUnits() {
+        return droppedUnits;
+    }
+}
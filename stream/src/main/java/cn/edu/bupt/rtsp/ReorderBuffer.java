@@ -0,0 +1,159 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @Description: ReorderBuffer，UDP传输时按RTP序号重排乱序的包。
+ * 缺失的包最多等待maxDelayNanos，超时或者窗口放不下时跳过缺口，由depacketizer按丢包处理。
+ * 只能在一个线程中使用
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+class ReorderBuffer {
+
+    private static final int WINDOW = 64;
+
+    private final ByteBuf[] packets = new ByteBuf[WINDOW];
+
+    private final long[] arrivals = new long[WINDOW];
+
+    private final RtpDepacketizer depacketizer;
+
+    private final long maxDelayNanos;
+
+    private int expected = -1;
+
+    private int stored;
+
+    private long oldestArrival;
+
+    private long reordered;
+
+    private long late;
+
+    ReorderBuffer(RtpDepacketizer depacketizer, long maxDelayNanos) {
+        this.depacketizer = depacketizer;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * @Description 收到一个RTP包，buffer的所有权转移给ReorderBuffer
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param arrivalNanos
+     * @return void
+     */
+    void offer(ByteBuf packet, long arrivalNanos) {
+        if (packet.readableBytes() < 12) {
+            packet.release();
+            return;
+        }
+        int seq = packet.getUnsignedShort(packet.readerIndex() + 2);
+        if (expected < 0) {
+            expected = seq;
+        }
+        int diff = (short) (seq - expected);
+        if (diff < 0) {
+            // 已经跳过的缺口或者重复包
+            late++;
+            packet.release();
+            return;
+        }
+        if (diff >= WINDOW) {
+            skipAll();
+            expected = seq;
+            diff = 0;
+        }
+        if (diff == 0) {
+            deliver(packet, arrivalNanos);
+            expected = (expected + 1) & 0xffff;
+            drain();
+        } else {
+            int slot = seq & (WINDOW - 1);
+            if (packets[slot] != null) {
+                packet.release();
+                return;
+            }
+            packets[slot] = packet;
+            arrivals[slot] = arrivalNanos;
+            if (stored++ == 0) {
+                oldestArrival = arrivalNanos;
+            }
+            reordered++;
+        }
+        if (stored > 0 && arrivalNanos - oldestArrival > maxDelayNanos) {
+            skipGap();
+        }
+    }
+
+    private void deliver(ByteBuf packet, long arrivalNanos) {
+        try {
+            depacketizer.onRtp(packet, arrivalNanos);
+        } finally {
+            packet.release();
+        }
+    }
+
+    private void drain() {
+        while (stored > 0) {
+            int slot = expected & (WINDOW - 1);
+            ByteBuf packet = packets[slot];
+            if (packet == null) {
+                break;
+            }
+            packets[slot] = null;
+            stored--;
+            deliver(packet, arrivals[slot]);
+            expected = (expected + 1) & 0xffff;
+        }
+        if (stored > 0) {
+            oldestArrival = Long.MAX_VALUE;
+            for (int i = 0; i < WINDOW; i++) {
+                if (packets[i] != null) {
+                    oldestArrival = Math.min(oldestArrival, arrivals[i]);
+                }
+            }
+        }
+    }
+
+    private void skipGap() {
+        while (packets[expected & (WINDOW - 1)] == null) {
+            expected = (expected + 1) & 0xffff;
+        }
+        drain();
+    }
+
+    private void skipAll() {
+        while (stored > 0) {
+            skipGap();
+        }
+    }
+
+    /**
+     * @Description 释放所有缓存的包
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return void
+     */
+    void clear() {
+        for (int i = 0; i < WINDOW; i++) {
+            if (packets[i] != null) {
+                packets[i].release();
+                packets[i] = null;
+            }
+        }
+        stored = 0;
+        expected = -1;
+    }
+
+    long getReordered() {
+        return reordered;
+    }
+
+    long getLate() {
+        return late;
+    }
+}
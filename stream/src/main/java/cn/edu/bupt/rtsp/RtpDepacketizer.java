@@ -0,0 +1,564 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.function.Consumer;
+
+/**
+ * @Description: RtpDepacketizer，把一路视频的RTP包组装为AccessUnit。
+ * 负责RTP头解析、序号与丢包统计(用于RTCP RR)、时间戳展开、SR时钟换算，具体的NAL拆包由子类实现。
+ * 丢包之后当前帧整帧丢弃，并一直丢到下一个关键帧，避免把花屏数据推给下游。
+ * 只能在一个线程中使用
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public abstract class RtpDepacketizer {
+
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private static final int MAX_DROPOUT = 3000;
+
+    private static final int MAX_MISORDER = 100;
+
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
+
+    private static final long NTP_UNIX_OFFSET_SECONDS = 2208988800L;
+
+    protected final MediaTrack track;
+
+    private final boolean h265;
+
+    private final ByteBufAllocator allocator;
+
+    private final Consumer<AccessUnit> output;
+
+    /**
+     * 按VPS、SPS、PPS的顺序缓存最新的参数集，码流中的会覆盖SDP中的
+     */
+    private final byte[][] parameterSets = new byte[3][];
+
+    private ByteBuf current;
+
+    private long currentTimestamp;
+
+    private boolean currentKeyframe;
+
+    private boolean currentHasParameterSets;
+
+    private boolean corrupted;
+
+    private boolean pendingLoss;
+
+    private boolean waitKeyframe = true;
+
+    private boolean inFragment;
+
+    private long lastArrivalNanos;
+
+    private int bufferSize = MIN_BUFFER_SIZE;
+
+    private boolean timestampInitialized;
+
+    private long lastRtpTimestamp;
+
+    private long extendedTimestamp;
+
+    private long ssrc;
+
+    private boolean sequenceInitialized;
+
+    private int maxSeq;
+
+    private long cycles;
+
+    private long baseSeq;
+
+    private long received;
+
+    private long expectedPrior;
+
+    private long receivedPrior;
+
+    private double jitter;
+
+    private long lastTransit;
+
+    private boolean hasTransit;
+
+    private long srNtpMillis = -1;
+
+    private long srRtpTimestamp;
+
+    private long srMiddleNtp;
+
+    private long srArrivalNanos;
+
+    private long accessUnits;
+
+    private long droppedUnits;
+
+    protected RtpDepacketizer(MediaTrack track, ByteBufAllocator allocator, Consumer<AccessUnit> output) {
+        this.track = track;
+        this.h265 = track.isH265();
+        this.allocator = allocator;
+        this.output = output;
+        for (byte[] set : track.getParameterSets()) {
+            int order = NalUnits.parameterSetOrder(NalUnits.type(set[0], h265), h265);
+            if (order >= 0) {
+                parameterSets[order] = set;
+            }
+        }
+    }
+
+    /**
+     * @Description 按track的编码创建对应的depacketizer
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param track
+     * @param allocator
+     * @param output
+     * @return cn.edu.bupt.rtsp.RtpDepacketizer
+     */
+    public static RtpDepacketizer create(MediaTrack track, ByteBufAllocator allocator, Consumer<AccessUnit> output) {
+        if (track.isH264()) {
+            return new H264Depacketizer(track, allocator, output);
+        }
+        if (track.isH265()) {
+            return new H265Depacketizer(track, allocator, output);
+        }
+        throw new IllegalArgumentException("Unsupported encoding: " + track.getEncoding());
+    }
+
+    /**
+     * @Description 处理一个RTP包，不会release传入的packet
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param arrivalNanos
+     * @return void
+     */
+    public void onRtp(ByteBuf packet, long arrivalNanos) {
+        int index = packet.readerIndex();
+        int length = packet.readableBytes();
+        if (length < 12) {
+            return;
+        }
+        int b0 = packet.getUnsignedByte(index);
+        if ((b0 >> 6) != 2) {
+            return;
+        }
+        int b1 = packet.getUnsignedByte(index + 1);
+        if (track.getPayloadType() >= 0 && (b1 & 0x7f) != track.getPayloadType()) {
+            return;
+        }
+        boolean marker = (b1 & 0x80) != 0;
+        int seq = packet.getUnsignedShort(index + 2);
+        long rtpTimestamp = packet.getUnsignedInt(index + 4);
+        ssrc = packet.getUnsignedInt(index + 8);
+        int header = 12 + (b0 & 0x0f) * 4;
+        if ((b0 & 0x10) != 0) {
+            if (length < header + 4) {
+                return;
+            }
+            header += 4 + 4 * packet.getUnsignedShort(index + header + 2);
+        }
+        int end = length;
+        if ((b0 & 0x20) != 0) {
+            end -= packet.getUnsignedByte(index + length - 1);
+        }
+        if (end <= header) {
+            return;
+        }
+        if (!updateSequence(seq)) {
+            return;
+        }
+        updateJitter(rtpTimestamp, arrivalNanos);
+        long timestamp = extendTimestamp(rtpTimestamp);
+        if (current != null) {
+            if (pendingLoss) {
+                // 无法判断丢的是上一帧的结尾还是新一帧的开头，两帧都丢弃
+                corrupted = true;
+            }
+            if (timestamp != currentTimestamp) {
+                // 上一帧的marker包丢失，或者摄像头没有设置marker
+                flush();
+            } else {
+                pendingLoss = false;
+            }
+        }
+        lastArrivalNanos = arrivalNanos;
+        if (current == null) {
+            begin(timestamp);
+        }
+        onPayload(packet, index + header, end - header);
+        if (marker) {
+            flush();
+        }
+    }
+
+    /**
+     * @Description 拆包一个RTP负载，index为packet中的绝对位置
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param index
+     * @param length
+     * @return void
+     */
+    protected abstract void onPayload(ByteBuf packet, int index, int length);
+
+    /**
+     * @Description 追加一个完整的NAL
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param index
+     * @param length
+     * @return void
+     */
+    protected void appendNal(ByteBuf packet, int index, int length) {
+        if (inFragment) {
+            // 分片的结尾包丢失
+            markCorrupted();
+        }
+        if (length <= 0) {
+            return;
+        }
+        int type = NalUnits.type(packet.getByte(index), h265);
+        onNalType(type);
+        int order = NalUnits.parameterSetOrder(type, h265);
+        if (order >= 0) {
+            byte[] set = new byte[length];
+            packet.getBytes(index, set);
+            parameterSets[order] = set;
+        }
+        current.writeBytes(START_CODE);
+        current.writeBytes(packet, index, length);
+    }
+
+    /**
+     * @Description 开始一个分片的NAL，header为重建之后的NAL头
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param header
+     * @return void
+     */
+    protected void beginFragment(byte[] header) {
+        if (inFragment) {
+            markCorrupted();
+        }
+        onNalType(NalUnits.type(header[0], h265));
+        current.writeBytes(START_CODE);
+        current.writeBytes(header);
+        inFragment = true;
+    }
+
+    /**
+     * @Description 追加分片数据，没有收到分片开头时视为丢包
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param index
+     * @param length
+     * @param last 是否为分片的最后一个包
+     * @return void
+     */
+    protected void appendFragment(ByteBuf packet, int index, int length, boolean last) {
+        if (!inFragment) {
+            markCorrupted();
+            return;
+        }
+        if (length > 0) {
+            current.writeBytes(packet, index, length);
+        }
+        if (last) {
+            inFragment = false;
+        }
+    }
+
+    protected void markCorrupted() {
+        corrupted = true;
+        inFragment = false;
+    }
+
+    private void onNalType(int type) {
+        if (NalUnits.isKeyframe(type, h265)) {
+            currentKeyframe = true;
+        } else if (type == (h265 ? NalUnits.H265_SPS : NalUnits.H264_SPS)) {
+            currentHasParameterSets = true;
+        }
+    }
+
+    private void begin(long timestamp) {
+        current = allocator.directBuffer(bufferSize);
+        currentTimestamp = timestamp;
+        currentKeyframe = false;
+        currentHasParameterSets = false;
+        corrupted = pendingLoss;
+        pendingLoss = false;
+        inFragment = false;
+    }
+
+    private void flush() {
+        ByteBuf data = current;
+        current = null;
+        if (data == null) {
+            return;
+        }
+        if (inFragment) {
+            corrupted = true;
+            inFragment = false;
+        }
+        if (corrupted || !data.isReadable()) {
+            data.release();
+            if (corrupted) {
+                droppedUnits++;
+                waitKeyframe = true;
+            }
+            return;
+        }
+        if (waitKeyframe && !currentKeyframe) {
+            data.release();
+            droppedUnits++;
+            return;
+        }
+        // 按指数平均估计下一帧的大小，尽量避免组帧时扩容
+        bufferSize = Math.max(MIN_BUFFER_SIZE, (bufferSize * 7 + data.readableBytes() * 2) / 8);
+        if (currentKeyframe && !currentHasParameterSets) {
+            data = prependParameterSets(data);
+        }
+        waitKeyframe = false;
+        accessUnits++;
+        output.accept(new AccessUnit(data, currentTimestamp, currentKeyframe, toWallClock(currentTimestamp), lastArrivalNanos));
+    }
+
+    private ByteBuf prependParameterSets(ByteBuf data) {
+        int size = 0;
+        for (byte[] set : parameterSets) {
+            if (set != null) {
+                size += START_CODE.length + set.length;
+            }
+        }
+        if (size == 0) {
+            return data;
+        }
+        ByteBuf withSets = allocator.directBuffer(size + data.readableBytes());
+        for (byte[] set : parameterSets) {
+            if (set != null) {
+                withSets.writeBytes(START_CODE);
+                withSets.writeBytes(set);
+            }
+        }
+        withSets.writeBytes(data);
+        data.release();
+        return withSets;
+    }
+
+    /**
+     * RFC 3550 附录A.1，返回false表示重复或过旧的包
+     */
+    private boolean updateSequence(int seq) {
+        if (!sequenceInitialized) {
+            resetSequence(seq);
+            sequenceInitialized = true;
+            received++;
+            return true;
+        }
+        int delta = (seq - maxSeq) & 0xffff;
+        if (delta == 0) {
+            return false;
+        }
+        if (delta < MAX_DROPOUT) {
+            if (seq < maxSeq) {
+                cycles += 1 << 16;
+            }
+            maxSeq = seq;
+            if (delta > 1) {
+                pendingLoss = true;
+            }
+        } else if (delta <= (1 << 16) - MAX_MISORDER) {
+            // 序号大幅跳变，一般是摄像头重启了编码器
+            resetSequence(seq);
+            pendingLoss = true;
+        } else {
+            return false;
+        }
+        received++;
+        return true;
+    }
+
+    private void resetSequence(int seq) {
+        maxSeq = seq;
+        baseSeq = seq;
+        cycles = 0;
+        received = 0;
+        expectedPrior = 0;
+        receivedPrior = 0;
+    }
+
+    private void updateJitter(long rtpTimestamp, long arrivalNanos) {
+        long arrival = arrivalNanos / 1000 * track.getClockRate() / 1000000;
+        long transit = arrival - rtpTimestamp;
+        if (hasTransit) {
+            long d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) / 16.0;
+        }
+        lastTransit = transit;
+        hasTransit = true;
+    }
+
+    private long extendTimestamp(long rtpTimestamp) {
+        if (!timestampInitialized) {
+            timestampInitialized = true;
+            extendedTimestamp = rtpTimestamp;
+        } else {
+            extendedTimestamp += (int) (rtpTimestamp - lastRtpTimestamp);
+        }
+        lastRtpTimestamp = rtpTimestamp;
+        return extendedTimestamp;
+    }
+
+    private long toWallClock(long timestamp) {
+        if (srNtpMillis < 0) {
+            return -1;
+        }
+        int delta = (int) ((timestamp & 0xffffffffL) - srRtpTimestamp);
+        return srNtpMillis + delta * 1000L / track.getClockRate();
+    }
+
+    /**
+     * @Description 处理一个RTCP复合包，只使用其中的SR，不会release传入的packet
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param packet
+     * @param arrivalNanos
+     * @return void
+     */
+    public void onRtcp(ByteBuf packet, long arrivalNanos) {
+        int index = packet.readerIndex();
+        int end = packet.writerIndex();
+        while (index + 8 <= end) {
+            if ((packet.getUnsignedByte(index) >> 6) != 2) {
+                return;
+            }
+            int type = packet.getUnsignedByte(index + 1);
+            int length = (packet.getUnsignedShort(index + 2) + 1) * 4;
+            if (index + length > end) {
+                return;
+            }
+            if (type == 200 && length >= 28) {
+                onSenderReport(packet.getUnsignedInt(index + 8), packet.getUnsignedInt(index + 12),
+                        packet.getUnsignedInt(index + 16), arrivalNanos);
+            }
+            index += length;
+        }
+    }
+
+    /**
+     * @Description 记录RTCP SR中NTP时间与RTP时间戳的对应关系
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param ntpSeconds
+     * @param ntpFraction
+     * @param rtpTimestamp
+     * @param arrivalNanos
+     * @return void
+     */
+    public void onSenderReport(long ntpSeconds, long ntpFraction, long rtpTimestamp, long arrivalNanos) {
+        srNtpMillis = (ntpSeconds - NTP_UNIX_OFFSET_SECONDS) * 1000 + (ntpFraction * 1000 >>> 32);
+        srRtpTimestamp = rtpTimestamp;
+        srMiddleNtp = ((ntpSeconds & 0xffff) << 16) | (ntpFraction >>> 16);
+        srArrivalNanos = arrivalNanos;
+    }
+
+    /**
+     * @Description 生成一个RTCP RR包，还没有收到RTP时返回null
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param localSsrc
+     * @param nowNanos
+     * @return io.netty.buffer.ByteBuf
+     */
+    public ByteBuf receiverReport(long localSsrc, long nowNanos) {
+        if (!sequenceInitialized) {
+            return null;
+        }
+        long extendedMax = cycles + maxSeq;
+        long expected = extendedMax - baseSeq + 1;
+        long lost = Math.max(-0x800000, Math.min(0x7fffff, expected - received));
+        long expectedInterval = expected - expectedPrior;
+        long lostInterval = expectedInterval - (received - receivedPrior);
+        expectedPrior = expected;
+        receivedPrior = received;
+        int fraction = expectedInterval <= 0 || lostInterval <= 0 ? 0 : (int) ((lostInterval << 8) / expectedInterval);
+        long delay = srNtpMillis < 0 ? 0 : (nowNanos - srArrivalNanos) * 65536 / 1000000000L;
+
+        ByteBuf rr = allocator.buffer(32);
+        // V=2, RC=1, PT=201, length=7
+        rr.writeByte(0x81);
+        rr.writeByte(201);
+        rr.writeShort(7);
+        rr.writeInt((int) localSsrc);
+        rr.writeInt((int) ssrc);
+        rr.writeInt((Math.min(fraction, 255) << 24) | (int) (lost & 0xffffff));
+        rr.writeInt((int) extendedMax);
+        rr.writeInt((int) jitter);
+        rr.writeInt(srNtpMillis < 0 ? 0 : (int) srMiddleNtp);
+        rr.writeInt((int) delay);
+        return rr;
+    }
+
+    /**
+     * @Description 释放还没有组装完成的帧，重连时序号与时间戳都重新开始
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return void
+     */
+    public void reset() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        waitKeyframe = true;
+        pendingLoss = false;
+        inFragment = false;
+        sequenceInitialized = false;
+        timestampInitialized = false;
+        hasTransit = false;
+        srNtpMillis = -1;
+    }
+
+    /**
+     * @Description 当前缓存的参数集(不含起始码)，按VPS、SPS、PPS的顺序
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return byte[][]
+     */
+    public byte[][] getParameterSets() {
+        return parameterSets.clone();
+    }
+
+    public long getReceivedPackets() {
+        return received;
+    }
+
+    public long getLostPackets() {
+        return sequenceInitialized ? cycles + maxSeq - baseSeq + 1 - received : 0;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public long getAccessUnits() {
+        return accessUnits;
+    }
+
+    public long getDroppedUnits() {
+        return droppedUnits;
+    }
+}
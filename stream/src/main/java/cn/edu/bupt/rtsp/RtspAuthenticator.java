@@ -0,0 +1,143 @@
+package cn.edu.bupt.rtsp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: RtspAuthenticator，根据401响应的WWW-Authenticate生成Authorization头，支持Basic与Digest(MD5，可选qop=auth)。
+ * 同时收到两种质询时优先使用Digest
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+class RtspAuthenticator {
+
+    private static final Pattern PARAM = Pattern.compile("(\\w+)\\s*=\\s*(?:\"([^\"]*)\"|([^,\\s]*))");
+
+    private final String username;
+
+    private final String password;
+
+    private boolean basic;
+
+    private String realm;
+
+    private String nonce;
+
+    private String opaque;
+
+    private boolean qopAuth;
+
+    private int nonceCount;
+
+    RtspAuthenticator(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    boolean hasCredentials() {
+        return username != null;
+    }
+
+    /**
+     * @Description 处理质询，返回false表示没有可用的认证方式
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param wwwAuthenticate 多个质询用换行分隔
+     * @return boolean
+     */
+    boolean challenge(String wwwAuthenticate) {
+        if (wwwAuthenticate == null || username == null) {
+            return false;
+        }
+        boolean found = false;
+        for (String challenge : wwwAuthenticate.split("\n")) {
+            String lower = challenge.trim().toLowerCase(Locale.ROOT);
+            if (lower.startsWith("digest")) {
+                Matcher matcher = PARAM.matcher(challenge.substring(6));
+                while (matcher.find()) {
+                    String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                    switch (matcher.group(1).toLowerCase(Locale.ROOT)) {
+                        case "realm":
+                            realm = value;
+                            break;
+                        case "nonce":
+                            nonce = value;
+                            break;
+                        case "opaque":
+                            opaque = value;
+                            break;
+                        case "qop":
+                            qopAuth = value.toLowerCase(Locale.ROOT).contains("auth");
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                basic = false;
+                nonceCount = 0;
+                return nonce != null;
+            }
+            if (lower.startsWith("basic")) {
+                basic = true;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @Description 生成Authorization头，还没有收到质询时返回null
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param method
+     * @param uri
+     * @return java.lang.String
+     */
+    String authorization(String method, String uri) {
+        if (basic) {
+            String token = username + ":" + password;
+            return "Basic " + Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+        }
+        if (nonce == null) {
+            return null;
+        }
+        String ha1 = md5(username + ":" + realm + ":" + password);
+        String ha2 = md5(method + ":" + uri);
+        StringBuilder header = new StringBuilder("Digest username=\"").append(username)
+                .append("\", realm=\"").append(realm)
+                .append("\", nonce=\"").append(nonce)
+                .append("\", uri=\"").append(uri).append('"');
+        if (qopAuth) {
+            String nc = String.format(Locale.ROOT, "%08x", ++nonceCount);
+            String cnonce = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            header.append(", qop=auth, nc=").append(nc).append(", cnonce=\"").append(cnonce).append('"')
+                    .append(", response=\"").append(md5(ha1 + ":" + nonce + ":" + nc + ":" + cnonce + ":auth:" + ha2)).append('"');
+        } else {
+            header.append(", response=\"").append(md5(ha1 + ":" + nonce + ":" + ha2)).append('"');
+        }
+        if (opaque != null) {
+            header.append(", opaque=\"").append(opaque).append('"');
+        }
+        return header.toString();
+    }
+
+    private static String md5(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(32);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,643 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: RtspClient，基于Netty的RTSP拉流客户端，只接收第一路H.264/H.265视频。
+ * OPTIONS→DESCRIBE→SETUP→PLAY，支持TCP interleaved与UDP两种传输、Basic/Digest认证、
+ * GET_PARAMETER(或OPTIONS)保活、RTCP SR/RR，断线后按1s到30s的退避自动重连。
+ * 所有连接共用一组IO线程，每路流只占用一个连接，不再需要单独的拉流线程
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+@Slf4j
+public class RtspClient {
+
+    public enum Transport {
+        TCP, UDP
+    }
+
+    private static final Pattern URL = Pattern.compile("^(rtsp://)(?:([^/]*)@)?([^/:?]+|\\[[^\\]]+\\])(?::(\\d+))?(.*)$", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern INTERLEAVED = Pattern.compile("interleaved=(\\d+)-(\\d+)");
+
+    private static final Pattern SERVER_PORT = Pattern.compile("server_port=(\\d+)(?:-(\\d+))?");
+
+    private static final String USER_AGENT = "converter";
+
+    private static final int DEFAULT_PORT = 554;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final long HANDSHAKE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final long MEDIA_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final long RECEIVER_REPORT_SECONDS = 5;
+
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private static final long REORDER_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final int UDP_PORT_MIN = 20000;
+
+    private static final int UDP_PORT_MAX = 60000;
+
+    private static final int UDP_RECEIVE_BUFFER = 2 * 1024 * 1024;
+
+    private static final int MAX_DATAGRAM_SIZE = 2048;
+
+    private static final EventLoopGroup GROUP;
+
+    private static final Class<? extends SocketChannel> SOCKET_CHANNEL;
+
+    private static final Class<? extends DatagramChannel> DATAGRAM_CHANNEL;
+
+    static {
+        ThreadFactory threadFactory = new BasicThreadFactory.Builder().namingPattern("Rtsp-io-%d").daemon(true).build();
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (Epoll.isAvailable()) {
+            GROUP = new EpollEventLoopGroup(threads, threadFactory);
+            SOCKET_CHANNEL = EpollSocketChannel.class;
+            DATAGRAM_CHANNEL = EpollDatagramChannel.class;
+        } else {
+            GROUP = new NioEventLoopGroup(threads, threadFactory);
+            SOCKET_CHANNEL = NioSocketChannel.class;
+            DATAGRAM_CHANNEL = NioDatagramChannel.class;
+        }
+    }
+
+    private final String url;
+
+    private final String host;
+
+    private final int port;
+
+    private final Transport transport;
+
+    private final AccessUnitHandler handler;
+
+    private final RtspAuthenticator authenticator;
+
+    private final long localSsrc = ThreadLocalRandom.current().nextInt() & 0xffffffffL;
+
+    private final CompletableFuture<MediaTrack> started = new CompletableFuture<>();
+
+    private volatile boolean closed;
+
+    private volatile Session session;
+
+    private int attempts;
+
+    /**
+     * @param url rtsp://[user:password@]host[:port]/path
+     * @param transport
+     * @param handler
+     */
+    public RtspClient(String url, Transport transport, AccessUnitHandler handler) {
+        Matcher matcher = URL.matcher(url.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Illegal rtsp url: " + url);
+        }
+        this.host = matcher.group(3).startsWith("[") ? matcher.group(3).substring(1, matcher.group(3).length() - 1) : matcher.group(3);
+        this.port = matcher.group(4) == null ? DEFAULT_PORT : Integer.parseInt(matcher.group(4));
+        this.url = matcher.group(1) + matcher.group(3) + (matcher.group(4) == null ? "" : ":" + matcher.group(4)) + matcher.group(5);
+        String userInfo = matcher.group(2);
+        if (userInfo == null) {
+            this.authenticator = new RtspAuthenticator(null, null);
+        } else {
+            int colon = userInfo.indexOf(':');
+            this.authenticator = colon < 0 ? new RtspAuthenticator(decode(userInfo), "")
+                    : new RtspAuthenticator(decode(userInfo.substring(0, colon)), decode(userInfo.substring(colon + 1)));
+        }
+        this.transport = transport;
+        this.handler = handler;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    /**
+     * @Description 开始拉流，PLAY成功后返回的future完成；第一次连接失败时future异常结束，不会重连
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return java.util.concurrent.CompletableFuture<cn.edu.bupt.rtsp.MediaTrack>
+     */
+    public CompletableFuture<MediaTrack> start() {
+        connect();
+        return started;
+    }
+
+    /**
+     * @Description 发送TEARDOWN并断开连接，不再重连
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param
+     * @return void
+     */
+    public void close() {
+        closed = true;
+        started.completeExceptionally(new IOException("RtspClient closed: " + url));
+        Session current = session;
+        if (current != null) {
+            current.teardown();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    private void connect() {
+        if (closed) {
+            return;
+        }
+        Session next = new Session();
+        session = next;
+        Bootstrap bootstrap = new Bootstrap()
+                .group(GROUP)
+                .channel(SOCKET_CHANNEL)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new RtspFrameDecoder(), next);
+                    }
+                });
+        bootstrap.connect(host, port).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                onSessionClosed(future.cause());
+            }
+        });
+    }
+
+    private void onSessionClosed(Throwable cause) {
+        session = null;
+        if (!started.isDone()) {
+            started.completeExceptionally(cause != null ? cause : new IOException("Connection closed before PLAY: " + url));
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        try {
+            handler.onDisconnected(cause);
+        } catch (RuntimeException e) {
+            log.warn("Rtsp handler failed on disconnect {}", url, e);
+        }
+        long delay = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(attempts++, 5));
+        log.warn("Rtsp {} disconnected, reconnecting in {} ms: {}", url, delay, cause == null ? "closed by server" : cause.toString());
+        GROUP.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Request {
+
+        final String method;
+
+        final String uri;
+
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        final Consumer<RtspFrameDecoder.RtspResponse> onSuccess;
+
+        boolean authRetried;
+
+        Request(String method, String uri, Consumer<RtspFrameDecoder.RtspResponse> onSuccess) {
+            this.method = method;
+            this.uri = uri;
+            this.onSuccess = onSuccess;
+        }
+
+        Request header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    /**
+     * 一次连接的状态，所有方法都在该连接的IO线程中执行
+     */
+    private class Session extends ChannelInboundHandlerAdapter {
+
+        private final Map<Integer, Request> pending = new HashMap<>();
+
+        private final List<ScheduledFuture<?>> timers = new ArrayList<>();
+
+        private volatile ChannelHandlerContext ctx;
+
+        private int cseq;
+
+        private Set<String> methods = Collections.emptySet();
+
+        private String contentBase;
+
+        private MediaTrack track;
+
+        private RtpDepacketizer depacketizer;
+
+        private ReorderBuffer reorder;
+
+        private String sessionId;
+
+        private int timeoutSeconds = 60;
+
+        private int rtpChannelId = 0;
+
+        private int rtcpChannelId = 1;
+
+        private Channel rtpUdp;
+
+        private Channel rtcpUdp;
+
+        private InetSocketAddress serverRtcp;
+
+        private boolean playing;
+
+        private boolean tornDown;
+
+        private long connectedNanos;
+
+        private long lastMediaNanos;
+
+        private Throwable cause;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+            connectedNanos = System.nanoTime();
+            timers.add(ctx.executor().scheduleAtFixedRate(this::watchdog, 1, 1, TimeUnit.SECONDS));
+            if (closed) {
+                ctx.close();
+                return;
+            }
+            send(new Request("OPTIONS", url, this::onOptions));
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof RtspFrameDecoder.InterleavedFrame) {
+                RtspFrameDecoder.InterleavedFrame frame = (RtspFrameDecoder.InterleavedFrame) msg;
+                try {
+                    onInterleaved(frame);
+                } finally {
+                    frame.payload.release();
+                }
+            } else if (msg instanceof RtspFrameDecoder.RtspResponse) {
+                onResponse((RtspFrameDecoder.RtspResponse) msg);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(cause);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+            if (rtpUdp != null) {
+                rtpUdp.close();
+            }
+            if (rtcpUdp != null) {
+                rtcpUdp.close();
+            }
+            if (reorder != null) {
+                reorder.clear();
+            }
+            if (depacketizer != null) {
+                log.info("Rtsp {} session closed, packets {}, lost {}, access units {}, dropped {}, jitter {}",
+                        url, depacketizer.getReceivedPackets(), depacketizer.getLostPackets(),
+                        depacketizer.getAccessUnits(), depacketizer.getDroppedUnits(), (long) depacketizer.getJitter());
+                depacketizer.reset();
+            }
+            onSessionClosed(cause);
+        }
+
+        private void fail(Throwable cause) {
+            if (this.cause == null) {
+                this.cause = cause;
+            }
+            if (ctx != null) {
+                ctx.close();
+            }
+        }
+
+        private ChannelFuture send(Request request) {
+            int seq = ++cseq;
+            pending.put(seq, request);
+            StringBuilder builder = new StringBuilder(256)
+                    .append(request.method).append(' ').append(request.uri).append(" RTSP/1.0\r\n")
+                    .append("CSeq: ").append(seq).append("\r\n")
+                    .append("User-Agent: ").append(USER_AGENT).append("\r\n");
+            String authorization = authenticator.authorization(request.method, request.uri);
+            if (authorization != null) {
+                builder.append("Authorization: ").append(authorization).append("\r\n");
+            }
+            if (sessionId != null) {
+                builder.append("Session: ").append(sessionId).append("\r\n");
+            }
+            request.headers.forEach((name, value) -> builder.append(name).append(": ").append(value).append("\r\n"));
+            builder.append("\r\n");
+            return ctx.writeAndFlush(Unpooled.copiedBuffer(builder, StandardCharsets.UTF_8));
+        }
+
+        private void onResponse(RtspFrameDecoder.RtspResponse response) {
+            Request request = pending.remove(response.cseq());
+            if (request == null) {
+                return;
+            }
+            if (response.status == 401 && !request.authRetried && authenticator.challenge(response.header("WWW-Authenticate"))) {
+                request.authRetried = true;
+                send(request);
+                return;
+            }
+            if (response.status != 200) {
+                if (playing) {
+                    // 保活请求失败不影响拉流，GET_PARAMETER不被支持时退回OPTIONS
+                    methods = Collections.emptySet();
+                    return;
+                }
+                fail(new IOException(request.method + " " + request.uri + " failed with status " + response.status));
+                return;
+            }
+            request.onSuccess.accept(response);
+        }
+
+        private void onOptions(RtspFrameDecoder.RtspResponse response) {
+            String publicMethods = response.header("Public");
+            if (publicMethods != null) {
+                methods = new HashSet<>();
+                for (String method : publicMethods.split(",")) {
+                    methods.add(method.trim().toUpperCase(Locale.ROOT));
+                }
+            }
+            send(new Request("DESCRIBE", url, this::onDescribe).header("Accept", "application/sdp"));
+        }
+
+        private void onDescribe(RtspFrameDecoder.RtspResponse response) {
+            contentBase = response.header("Content-Base");
+            if (contentBase == null) {
+                contentBase = response.header("Content-Location");
+            }
+            if (contentBase == null) {
+                contentBase = url;
+            }
+            for (MediaTrack candidate : SdpParser.parse(response.body, contentBase)) {
+                if ("video".equals(candidate.getMedia()) && (candidate.isH264() || candidate.isH265())) {
+                    track = candidate;
+                    break;
+                }
+            }
+            if (track == null) {
+                fail(new IOException("No H.264/H.265 video track in " + url));
+                return;
+            }
+            depacketizer = RtpDepacketizer.create(track, ctx.alloc(), this::onAccessUnit);
+            if (transport == Transport.UDP) {
+                bindUdp(0);
+            } else {
+                setup("RTP/AVP/TCP;unicast;interleaved=0-1");
+            }
+        }
+
+        private void setup(String transportHeader) {
+            send(new Request("SETUP", track.getControl(), this::onSetup).header("Transport", transportHeader));
+        }
+
+        private void onSetup(RtspFrameDecoder.RtspResponse response) {
+            String sessionHeader = response.header("Session");
+            if (sessionHeader != null) {
+                String[] parts = sessionHeader.split(";");
+                sessionId = parts[0].trim();
+                for (int i = 1; i < parts.length; i++) {
+                    String part = parts[i].trim();
+                    if (part.startsWith("timeout=")) {
+                        try {
+                            timeoutSeconds = Integer.parseInt(part.substring(8).trim());
+                        } catch (NumberFormatException e) {
+                            timeoutSeconds = 60;
+                        }
+                    }
+                }
+            }
+            String transportHeader = response.header("Transport");
+            if (transportHeader != null) {
+                if (transport == Transport.TCP) {
+                    Matcher matcher = INTERLEAVED.matcher(transportHeader);
+                    if (matcher.find()) {
+                        rtpChannelId = Integer.parseInt(matcher.group(1));
+                        rtcpChannelId = Integer.parseInt(matcher.group(2));
+                    }
+                } else {
+                    Matcher matcher = SERVER_PORT.matcher(transportHeader);
+                    if (matcher.find()) {
+                        int rtcpPort = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : Integer.parseInt(matcher.group(1)) + 1;
+                        serverRtcp = new InetSocketAddress(((InetSocketAddress) ctx.channel().remoteAddress()).getAddress(), rtcpPort);
+                    }
+                }
+            }
+            send(new Request("PLAY", contentBase, this::onPlay).header("Range", "npt=0.000-"));
+        }
+
+        private void onPlay(RtspFrameDecoder.RtspResponse response) {
+            playing = true;
+            lastMediaNanos = System.nanoTime();
+            attempts = 0;
+            long keepAlive = Math.max(5, timeoutSeconds / 2);
+            timers.add(ctx.executor().scheduleAtFixedRate(this::keepAlive, keepAlive, keepAlive, TimeUnit.SECONDS));
+            timers.add(ctx.executor().scheduleAtFixedRate(this::sendReceiverReport, RECEIVER_REPORT_SECONDS, RECEIVER_REPORT_SECONDS, TimeUnit.SECONDS));
+            log.info("Rtsp {} playing {} over {}", url, track, transport);
+            handler.onStarted(track);
+            started.complete(track);
+        }
+
+        private void onAccessUnit(AccessUnit accessUnit) {
+            if (closed) {
+                accessUnit.release();
+                return;
+            }
+            handler.onAccessUnit(accessUnit);
+        }
+
+        private void onInterleaved(RtspFrameDecoder.InterleavedFrame frame) {
+            if (depacketizer == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (frame.channel == rtpChannelId) {
+                lastMediaNanos = now;
+                depacketizer.onRtp(frame.payload, now);
+            } else if (frame.channel == rtcpChannelId) {
+                depacketizer.onRtcp(frame.payload, now);
+            }
+        }
+
+        private void bindUdp(int attempt) {
+            if (attempt >= 20) {
+                fail(new IOException("No free UDP port pair for " + url));
+                return;
+            }
+            int rtpPort = UDP_PORT_MIN + 2 * ThreadLocalRandom.current().nextInt((UDP_PORT_MAX - UDP_PORT_MIN) / 2);
+            udpBootstrap(true).bind(rtpPort).addListener((ChannelFutureListener) rtpFuture -> {
+                if (!rtpFuture.isSuccess()) {
+                    bindUdp(attempt + 1);
+                    return;
+                }
+                udpBootstrap(false).bind(rtpPort + 1).addListener((ChannelFutureListener) rtcpFuture -> {
+                    if (!rtcpFuture.isSuccess()) {
+                        rtpFuture.channel().close();
+                        bindUdp(attempt + 1);
+                        return;
+                    }
+                    rtpUdp = rtpFuture.channel();
+                    rtcpUdp = rtcpFuture.channel();
+                    if (!ctx.channel().isActive()) {
+                        rtpUdp.close();
+                        rtcpUdp.close();
+                        return;
+                    }
+                    reorder = new ReorderBuffer(depacketizer, REORDER_DELAY_NANOS);
+                    setup("RTP/AVP;unicast;client_port=" + rtpPort + "-" + (rtpPort + 1));
+                });
+            });
+        }
+
+        private Bootstrap udpBootstrap(boolean rtp) {
+            return new Bootstrap()
+                    .group(ctx.channel().eventLoop())
+                    .channel(DATAGRAM_CHANNEL)
+                    .option(ChannelOption.SO_RCVBUF, UDP_RECEIVE_BUFFER)
+                    // RTP包一般不超过MTU
+                    .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE))
+                    .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext udpCtx, DatagramPacket packet) {
+                            if (reorder == null || !playing) {
+                                return;
+                            }
+                            long now = System.nanoTime();
+                            if (rtp) {
+                                lastMediaNanos = now;
+                                reorder.offer(packet.content().retain(), now);
+                            } else {
+                                depacketizer.onRtcp(packet.content(), now);
+                            }
+                        }
+                    });
+        }
+
+        private void keepAlive() {
+            String method = methods.contains("GET_PARAMETER") ? "GET_PARAMETER" : "OPTIONS";
+            send(new Request(method, contentBase, response -> {
+            }));
+        }
+
+        private void sendReceiverReport() {
+            ByteBuf report = depacketizer.receiverReport(localSsrc, System.nanoTime());
+            if (report == null) {
+                return;
+            }
+            if (transport == Transport.UDP) {
+                if (rtcpUdp != null && serverRtcp != null) {
+                    rtcpUdp.writeAndFlush(new DatagramPacket(report, serverRtcp));
+                } else {
+                    report.release();
+                }
+            } else {
+                ByteBuf header = ctx.alloc().buffer(4);
+                header.writeByte('$').writeByte(rtcpChannelId).writeShort(report.readableBytes());
+                ctx.write(header);
+                ctx.writeAndFlush(report);
+            }
+        }
+
+        private void watchdog() {
+            long now = System.nanoTime();
+            if (!playing && now - connectedNanos > HANDSHAKE_TIMEOUT_NANOS) {
+                fail(new IOException("Rtsp handshake timed out: " + url));
+            } else if (playing && now - lastMediaNanos > MEDIA_TIMEOUT_NANOS) {
+                fail(new IOException("No media received for " + TimeUnit.NANOSECONDS.toSeconds(MEDIA_TIMEOUT_NANOS) + "s: " + url));
+            }
+        }
+
+        void teardown() {
+            ChannelHandlerContext context = ctx;
+            if (context == null) {
+                return;
+            }
+            context.executor().execute(() -> {
+                if (tornDown) {
+                    return;
+                }
+                tornDown = true;
+                if (sessionId != null && context.channel().isActive()) {
+                    send(new Request("TEARDOWN", contentBase, response -> {
+                    })).addListener(ChannelFutureListener.CLOSE);
+                } else {
+                    context.close();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cn.edu.bupt.rtsp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @Description: RtspFrameDecoder，拆分RTSP控制连接上的数据：'$'开头的interleaved帧(RFC 2326 10.12)与文本的RTSP响应。
+ * 服务端主动发来的请求直接忽略
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+class RtspFrameDecoder extends ByteToMessageDecoder {
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.isReadable()) {
+            int start = in.readerIndex();
+            if (in.getByte(start) == '$') {
+                if (in.readableBytes() < 4) {
+                    return;
+                }
+                int channel = in.getUnsignedByte(start + 1);
+                int length = in.getUnsignedShort(start + 2);
+                if (in.readableBytes() < 4 + length) {
+                    return;
+                }
+                in.skipBytes(4);
+                out.add(new InterleavedFrame(channel, in.readRetainedSlice(length)));
+                continue;
+            }
+            int headerEnd = indexOfHeaderEnd(in, start);
+            if (headerEnd < 0) {
+                if (in.readableBytes() > MAX_HEADER_SIZE) {
+                    throw new TooLongFrameException("RTSP header is larger than " + MAX_HEADER_SIZE + " bytes");
+                }
+                return;
+            }
+            String head = in.toString(start, headerEnd - start, StandardCharsets.UTF_8);
+            String[] lines = head.split("\r\n");
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    String value = lines[i].substring(colon + 1).trim();
+                    // 多个WWW-Authenticate之类的同名头用换行拼接
+                    headers.merge(name, value, (a, b) -> a + "\n" + b);
+                }
+            }
+            int contentLength = 0;
+            if (headers.containsKey("content-length")) {
+                contentLength = Integer.parseInt(headers.get("content-length").trim());
+            }
+            int total = headerEnd + 4 - start + contentLength;
+            if (in.readableBytes() < total) {
+                return;
+            }
+            String body = in.toString(headerEnd + 4, contentLength, StandardCharsets.UTF_8);
+            in.skipBytes(total);
+            if (lines[0].startsWith("RTSP/")) {
+                String[] status = lines[0].split(" ", 3);
+                out.add(new RtspResponse(Integer.parseInt(status[1]), headers, body));
+            }
+        }
+    }
+
+    private static int indexOfHeaderEnd(ByteBuf in, int start) {
+        int end = in.writerIndex() - 3;
+        for (int i = start; i < end; i++) {
+            if (in.getByte(i) == '\r' && in.getByte(i + 1) == '\n' && in.getByte(i + 2) == '\r' && in.getByte(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static class InterleavedFrame {
+
+        final int channel;
+
+        final ByteBuf payload;
+
+        InterleavedFrame(int channel, ByteBuf payload) {
+            this.channel = channel;
+            this.payload = payload;
+        }
+    }
+
+    static class RtspResponse {
+
+        final int status;
+
+        final Map<String, String> headers;
+
+        final String body;
+
+        RtspResponse(int status, Map<String, String> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        int cseq() {
+            String cseq = header("cseq");
+            return cseq == null ? -1 : Integer.parseInt(cseq.trim());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cn.edu.bupt.rtsp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @Description: SdpParser，只解析拉流需要的部分：m=、a=rtpmap、a=fmtp、a=control与a=framerate
+ * @Author: czx
+ * @CreateDate: 2026-10-19 18:41
+ * @Version: 1.0
+ */
+public class SdpParser {
+
+    private SdpParser() {
+    }
+
+    /**
+     * @Description 解析DESCRIBE返回的SDP
+     * @author czx
+     * @date 2026-10-19 18:41
+     * @param sdp
+     * @param baseUrl Content-Base(没有时为请求地址)，用于解析相对的control
+     * @return java.util.List<cn.edu.bupt.rtsp.MediaTrack>
+     */
+    public static List<MediaTrack> parse(String sdp, String baseUrl) {
+        List<MediaTrack> tracks = new ArrayList<>();
+        Builder current = null;
+        for (String raw : sdp.split("\n")) {
+            String line = raw.trim();
+            if (line.length() < 2 || line.charAt(1) != '=') {
+                continue;
+            }
+            char type = line.charAt(0);
+            String value = line.substring(2);
+            if (type == 'm') {
+                if (current != null) {
+                    tracks.add(current.build(baseUrl));
+                }
+                current = new Builder(value);
+            } else if (type == 'a' && current != null) {
+                current.attribute(value);
+            }
+        }
+        if (current != null) {
+            tracks.add(current.build(baseUrl));
+        }
+        return tracks;
+    }
+
+    static String resolve(String baseUrl, String control) {
+        if (control == null || control.isEmpty() || "*".equals(control)) {
+            return baseUrl;
+        }
+        if (control.regionMatches(true, 0, "rtsp://", 0, 7)) {
+            return control;
+        }
+        return baseUrl.endsWith("/") ? baseUrl + control : baseUrl + "/" + control;
+    }
+
+    private static class Builder {
+
+        private final String media;
+
+        private int payloadType = -1;
+
+        private String encoding = "";
+
+        private int clockRate = 90000;
+
+        private String control;
+
+        private final Map<String, String> fmtp = new HashMap<>();
+
+        private double frameRate;
+
+        Builder(String value) {
+            String[] parts = value.split("\\s+");
+            media = parts[0];
+            if (parts.length > 3) {
+                try {
+                    payloadType = Integer.parseInt(parts[3]);
+                } catch (NumberFormatException e) {
+                    payloadType = -1;
+                }
+            }
+        }
+
+        void attribute(String value) {
+            int colon = value.indexOf(':');
+            String name = colon < 0 ? value : value.substring(0, colon);
+            String content = colon < 0 ? "" : value.substring(colon + 1).trim();
+            switch (name) {
+                case "rtpmap": {
+                    // 96 H264/90000
+                    String[] parts = content.split("\\s+", 2);
+                    if (parts.length == 2 && parsePayloadType(parts[0]) == payloadType) {
+                        String[] codec = parts[1].split("/");
+                        encoding = codec[0].toUpperCase(Locale.ROOT);
+                        if (codec.length > 1) {
+                            clockRate = Integer.parseInt(codec[1].trim());
+                        }
+                    }
+                    break;
+                }
+                case "fmtp": {
+                    // 96 packetization-mode=1;sprop-parameter-sets=...
+                    String[] parts = content.split("\\s+", 2);
+                    if (parts.length == 2 && parsePayloadType(parts[0]) == payloadType) {
+                        for (String param : parts[1].split(";")) {
+                            int eq = param.indexOf('=');
+                            if (eq > 0) {
+                                fmtp.put(param.substring(0, eq).trim().toLowerCase(Locale.ROOT), param.substring(eq + 1).trim());
+                            }
+                        }
+                    }
+                    break;
+                }
+                case "control":
+                    control = content;
+                    break;
+                case "framerate":
+                    try {
+                        frameRate = Double.parseDouble(content);
+                    } catch (NumberFormatException e) {
+                        frameRate = 0;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        MediaTrack build(String baseUrl) {
+            return new MediaTrack(media, payloadType, encoding, clockRate, resolve(baseUrl, control), fmtp, frameRate);
+        }
+
+        private static int parsePayloadType(String value) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return -2;
+            }
+        }
+    }
+}
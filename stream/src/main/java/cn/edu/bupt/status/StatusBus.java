@@ -0,0 +1,179 @@
+package cn.edu.bupt.status;
+
+import cn.edu.bupt.metrics.MetricsRegistry;
+import cn.edu.bupt.metrics.StreamMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * @Description: StatusBus，推送各路流的状态变化，代替轮询/status、/feedback。
+ * adapter在状态变化(启动、停止、卡顿、录像开关等)时发布新的快照，fps与码率每秒采样一次，变化超过10%才发布；
+ * 每个订阅者有自己的推送周期，周期内同一路流的多次变化合并为最新的一个，订阅时先收到全部流的当前状态
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+@Slf4j
+public class StatusBus {
+
+    public static final long MIN_INTERVAL_MILLIS = 100;
+
+    private static final double RATE_CHANGE = 0.1;
+
+    private static ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, new BasicThreadFactory.Builder().namingPattern("Status-%d").daemon(true).build());
+
+    private static final StatusBus INSTANCE = new StatusBus();
+
+    private final Map<String,StreamStatus> current = new ConcurrentHashMap<>();
+
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+
+    private StatusBus(){
+        executor.scheduleAtFixedRate(this::sampleRates,1,1,TimeUnit.SECONDS);
+    }
+
+    public static StatusBus getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * @Description 发布一路流的新状态。快照在锁内生成并分发，并发发布时订阅者最终收到的总是最新的状态
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param name adapter的名字
+     * @param status 读取adapter当前的状态生成快照
+     * @return void
+     */
+    public void publish(String name,Supplier<StreamStatus> status){
+        current.compute(name,(key,old)->{
+            StreamStatus newStatus = status.get();
+            offer(newStatus);
+            return newStatus;
+        });
+    }
+
+    /**
+     * @Description 订阅状态变化
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param name 只订阅某一路流，为null时订阅全部
+     * @param intervalMillis 推送周期，不小于MIN_INTERVAL_MILLIS
+     * @param subscriber
+     * @return cn.edu.bupt.status.StatusBus.Subscription 关闭即取消订阅
+     */
+    public Subscription subscribe(String name,long intervalMillis,StatusSubscriber subscriber){
+        Subscription subscription = new Subscription(name,subscriber);
+        subscriptions.add(subscription);
+        for(StreamStatus status : current.values()){
+            subscription.offer(status);
+        }
+        subscription.future = executor.scheduleAtFixedRate(subscription::flush,0,
+                Math.max(intervalMillis,MIN_INTERVAL_MILLIS),TimeUnit.MILLISECONDS);
+        if(subscription.closed){
+            subscription.future.cancel(false);
+        }
+        return subscription;
+    }
+
+    public Collection<StreamStatus> getStatuses(){
+        return Collections.unmodifiableCollection(current.values());
+    }
+
+    public StreamStatus getStatus(String name){
+        return current.get(name);
+    }
+
+    private void offer(StreamStatus status){
+        for(Subscription subscription : subscriptions){
+            subscription.offer(status);
+        }
+    }
+
+    private void sampleRates(){
+        // 定时任务抛出异常后不会再被调度
+        try {
+            for(StreamMetrics metrics : MetricsRegistry.getInstance().getStreams()){
+                current.computeIfPresent(metrics.getName(),(key,status)->{
+                    if(status.getState()==StreamState.STOPPED
+                            || !changed(status.getFps(),metrics.getIngestFps()) && !changed(status.getBitrate(),metrics.getIngestBitrate())){
+                        return status;
+                    }
+                    StreamStatus newStatus = status.withRates(metrics.getIngestFps(),metrics.getIngestBitrate());
+                    offer(newStatus);
+                    return newStatus;
+                });
+            }
+        }catch (Exception e){
+            log.warn("Status sampling failed",e);
+        }
+    }
+
+    private static boolean changed(double old,double now){
+        return Math.abs(now-old)>old*RATE_CHANGE || (old==0)!=(now==0);
+    }
+
+    public class Subscription implements Closeable {
+
+        private final String name;
+
+        private final StatusSubscriber subscriber;
+
+        /**
+         * 尚未推送的变化，同一路流只保留最新的状态
+         */
+        private final Map<String,StreamStatus> pending = new ConcurrentHashMap<>();
+
+        private volatile ScheduledFuture<?> future;
+
+        private volatile boolean closed;
+
+        private Subscription(String name,StatusSubscriber subscriber) {
+            this.name = name;
+            this.subscriber = subscriber;
+        }
+
+        private void offer(StreamStatus status){
+            if(name==null || name.equals(status.getName())){
+                pending.put(status.getName(),status);
+            }
+        }
+
+        private void flush(){
+            if(closed || pending.isEmpty() || !subscriber.isReady()){
+                return;
+            }
+            List<StreamStatus> statuses = new ArrayList<>(pending.size());
+            for(String key : pending.keySet()){
+                StreamStatus status = pending.remove(key);
+                if(status!=null){
+                    statuses.add(status);
+                }
+            }
+            try {
+                subscriber.onStatus(statuses);
+            }catch (Exception e){
+                log.debug("Status subscriber failed and is removed : {}",e.getMessage());
+                close();
+            }
+        }
+
+        @Override
+        public void close(){
+            closed = true;
+            subscriptions.remove(this);
+            if(future!=null){
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package cn.edu.bupt.status;
+
+import java.util.List;
+
+/**
+ * @Description: StatusSubscriber，状态变化的订阅者，由StatusBus的线程调用，实现中不能长时间阻塞
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+public interface StatusSubscriber {
+
+    /**
+     * @Description 一个周期内发生变化的流，每一路流只有最新的一个状态
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param statuses
+     * @return void 抛出异常时取消订阅
+     */
+    void onStatus(List<StreamStatus> statuses) throws Exception;
+
+    /**
+     * @Description 订阅者暂时不能接收(例如连接的写缓冲区已满)时返回false，变化继续合并到下一个周期
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param
+     * @return boolean
+     */
+    default boolean isReady() {
+        return true;
+    }
+}
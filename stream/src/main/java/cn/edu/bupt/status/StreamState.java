@@ -0,0 +1,29 @@
+package cn.edu.bupt.status;
+
+/**
+ * @Description: StreamState，adapter的运行状态
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+public enum StreamState {
+
+    /**
+     * 正在连接摄像头
+     */
+    STARTING,
+
+    /**
+     * 同名的流停止后再次启动，正在重新连接
+     */
+    RECONNECTING,
+
+    RUNNING,
+
+    /**
+     * 连续拉取到空的packet，持续下去adapter会停止
+     */
+    STALLED,
+
+    STOPPED
+}
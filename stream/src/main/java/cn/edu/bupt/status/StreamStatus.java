@@ -0,0 +1,87 @@
+package cn.edu.bupt.status;
+
+/**
+ * @Description: StreamStatus，某一路流在某一时刻的状态快照。对象不可变，任何变化都生成新的快照
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+public class StreamStatus {
+
+    /**
+     * adapter的名字，即rtmp地址
+     */
+    private final String name;
+
+    private final String rtsp;
+
+    private final StreamState state;
+
+    private final boolean recording;
+
+    private final boolean triggerRecording;
+
+    private final boolean motionDetection;
+
+    private final double fps;
+
+    /**
+     * bit/s
+     */
+    private final double bitrate;
+
+    private final long timestamp;
+
+    public StreamStatus(String name, String rtsp, StreamState state, boolean recording, boolean triggerRecording,
+                        boolean motionDetection, double fps, double bitrate) {
+        this.name = name;
+        this.rtsp = rtsp;
+        this.state = state;
+        this.recording = recording;
+        this.triggerRecording = triggerRecording;
+        this.motionDetection = motionDetection;
+        this.fps = fps;
+        this.bitrate = bitrate;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    StreamStatus withRates(double fps, double bitrate) {
+        return new StreamStatus(name, rtsp, state, recording, triggerRecording, motionDetection, fps, bitrate);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRtsp() {
+        return rtsp;
+    }
+
+    public StreamState getState() {
+        return state;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public boolean isTriggerRecording() {
+        return triggerRecording;
+    }
+
+    public boolean isMotionDetection() {
+        return motionDetection;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public double getBitrate() {
+        return bitrate;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -15,6 +15,12 @@ public class Constants {
 
     public final static String PUSH_LISTENER_NAME = "Push-lis";
 
+    public final static String TRIGGER_RECORD_LISTENER_NAME = "Trigger-rec-lis";
+
+    public final static String MOTION_LISTENER_NAME = "Motion-lis";
+
+    public final static String DECODE_LISTENER_NAME = "Decode-lis";
+
     public final static String getRootDir(){
         String path = System.getProperty("RootDir");
         if(path!=null){
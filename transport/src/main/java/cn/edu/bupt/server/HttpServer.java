@@ -1,50 +1,136 @@
 package cn.edu.bupt.server;
 
+import cn.edu.bupt.server.handler.H2cPriorKnowledgeHandler;
 import cn.edu.bupt.server.handler.HttpHandler;
+import cn.edu.bupt.server.route.RouteTable;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpRequestDecoder;
-import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AsciiString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
 
 /**
- * @Description: HttpServer
+ * @Description: HttpServer。Linux上使用epoll，其他平台使用NIO；空闲的keep-alive连接60秒后关闭。
+ * 开启h2c时同时支持HTTP/1.1的Upgrade: h2c与直接发送preface的HTTP/2(prior knowledge)
  * @Author: czx
  * @CreateDate: 2019-05-30 22:30
  * @Version: 1.0
  */
+@Slf4j
 public class HttpServer {
 
+    private static final int MAX_CONTENT_LENGTH = 512 * 1024;
+
+    private static final int IDLE_SECONDS = 60;
+
     private final int port;
 
+    private final boolean h2c;
+
+    private EventLoopGroup group;
+
+    private Channel channel;
+
     public HttpServer(int port) {
+        this(port, Boolean.getBoolean("transport.h2c"));
+    }
+
+    public HttpServer(int port, boolean h2c) {
         this.port = port;
+        this.h2c = h2c;
     }
 
     public void start() throws Exception {
+        // 在接受请求之前完成controller扫描与路由绑定
+        RouteTable.getInstance();
+        boolean epoll = Epoll.isAvailable() && !Boolean.getBoolean("transport.nio");
+        Class<? extends ServerChannel> channelClass;
+        if (epoll) {
+            group = new EpollEventLoopGroup();
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            group = new NioEventLoopGroup();
+            channelClass = NioServerSocketChannel.class;
+        }
         ServerBootstrap b = new ServerBootstrap();
-        NioEventLoopGroup group = new NioEventLoopGroup();
         b.group(group)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
-                    public void initChannel(SocketChannel ch)
-                            throws Exception {
-                        System.out.println("initChannel ch:" + ch);
-                        ch.pipeline()
-                                .addLast("decoder", new HttpRequestDecoder())   // 1
-                                .addLast("encoder", new HttpResponseEncoder())  // 2
-                                .addLast("aggregator", new HttpObjectAggregator(512 * 1024))    // 3
-                                .addLast("handler", new HttpHandler());        // 4
+                    public void initChannel(SocketChannel ch) throws Exception {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        pipeline.addLast("idle", new IdleStateHandler(0, 0, IDLE_SECONDS, TimeUnit.SECONDS));
+                        HttpServerCodec codec = new HttpServerCodec();
+                        if (h2c) {
+                            pipeline.addLast("prior-knowledge", new H2cPriorKnowledgeHandler(HttpServer.this::http2Handler, "codec", "upgrade", "aggregator"));
+                        }
+                        pipeline.addLast("codec", codec);
+                        if (h2c) {
+                            pipeline.addLast("upgrade", new HttpServerUpgradeHandler(codec, protocol ->
+                                    AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                                            ? new Http2ServerUpgradeCodec(http2Handler()) : null, MAX_CONTENT_LENGTH));
+                        }
+                        pipeline.addLast("aggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH))
+                                .addLast("handler", new HttpHandler());
                     }
                 })
-                .option(ChannelOption.SO_BACKLOG, 128) // determining the number of connections queued
-                .childOption(ChannelOption.SO_KEEPALIVE, Boolean.TRUE);
+                .option(ChannelOption.SO_BACKLOG, 1024) // determining the number of connections queued
+                .childOption(ChannelOption.SO_KEEPALIVE, Boolean.TRUE)
+                .childOption(ChannelOption.TCP_NODELAY, Boolean.TRUE);
+
+        channel = b.bind(port).sync().channel();
+        log.info("HttpServer started on port {} [transport={}, h2c={}]", port, epoll ? "epoll" : "nio", h2c);
+    }
+
+    public void stop() {
+        if (channel != null) {
+            channel.close().syncUninterruptibly();
+        }
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+    }
 
-        b.bind(port).sync();
+    /**
+     * @Description HTTP/2连接处理器，HTTP/2的请求转换为FullHttpRequest交给HttpHandler，响应再转换回HTTP/2帧
+     * @author czx
+     * @date 2026-10-19 17:42
+     * @param
+     * @return io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler
+     */
+    private HttpToHttp2ConnectionHandler http2Handler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        return new HttpToHttp2ConnectionHandlerBuilder()
+                .connection(connection)
+                .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                        .maxContentLength(MAX_CONTENT_LENGTH)
+                        .propagateSettings(false)
+                        .validateHttpHeaders(false)
+                        .build())
+                .build();
     }
 }
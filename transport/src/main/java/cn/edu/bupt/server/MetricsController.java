@@ -0,0 +1,20 @@
+package cn.edu.bupt.server;
+
+import cn.edu.bupt.metrics.MetricsRegistry;
+import cn.edu.bupt.server.annotation.Controller;
+import cn.edu.bupt.server.annotation.RequestMapping;
+
+/**
+ * @Description: MetricsController，Prometheus格式的监控指标
+ * @Author: czx
+ * @CreateDate: 2026-10-19 16:30
+ * @Version: 1.0
+ */
+@Controller
+public class MetricsController {
+
+    @RequestMapping(value = "/metrics")
+    public String metrics(){
+        return MetricsRegistry.getInstance().scrape();
+    }
+}
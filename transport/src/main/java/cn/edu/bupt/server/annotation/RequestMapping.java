@@ -12,4 +12,14 @@ public @interface RequestMapping {
     RequestMethod[] method() default {};
 
     String value() default "";
+
+    /**
+     * 方法中有阻塞操作(打开RTSP、SDK调用、等待设备响应等)时设为true，在工作线程池中执行，不占用Netty的I/O线程
+     */
+    boolean blocking() default false;
+
+    /**
+     * 阻塞方法或者返回CompletableFuture的方法的超时时间(毫秒)，超时返回504；小于等于0时不限制
+     */
+    long timeout() default 30000;
 }
@@ -0,0 +1,53 @@
+package cn.edu.bupt.server.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * @Description: H2cPriorKnowledgeHandler，连接的前24个字节是HTTP/2的connection preface时直接切换为HTTP/2，
+ * 否则移除自己，保留HTTP/1.1(以及Upgrade: h2c)的处理
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:42
+ * @Version: 1.0
+ */
+public class H2cPriorKnowledgeHandler extends ByteToMessageDecoder {
+
+    private static final ByteBuf PREFACE = Http2CodecUtil.connectionPrefaceBuf();
+
+    private final Supplier<ChannelHandler> http2Handler;
+
+    private final String[] http1Handlers;
+
+    /**
+     * @param http2Handler 创建HTTP/2连接处理器
+     * @param http1Handlers 切换为HTTP/2时需要移除的HTTP/1.1处理器名字
+     */
+    public H2cPriorKnowledgeHandler(Supplier<ChannelHandler> http2Handler, String... http1Handlers) {
+        this.http2Handler = http2Handler;
+        this.http1Handlers = http1Handlers;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int length = Math.min(in.readableBytes(), PREFACE.readableBytes());
+        if (!ByteBufUtil.equals(PREFACE, PREFACE.readerIndex(), in, in.readerIndex(), length)) {
+            ctx.pipeline().remove(this);
+        } else if (length == PREFACE.readableBytes()) {
+            for (String name : http1Handlers) {
+                if (ctx.pipeline().get(name) != null) {
+                    ctx.pipeline().remove(name);
+                }
+            }
+            ctx.pipeline().addAfter(ctx.name(), null, http2Handler.get());
+            ctx.pipeline().remove(this);
+        }
+        // 不足24个字节并且目前为止都匹配时等待更多数据，移除时剩余的数据交给后面的处理器
+    }
+}
@@ -1,27 +1,221 @@
 package cn.edu.bupt.server.handler;
 
 import cn.edu.bupt.server.scanners.Scanner;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AsciiString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
- * @Description: HttpHandler
+ * @Description: HttpHandler，处理聚合后的请求，每个连接一个实例。
+ * 连接默认保持(keep-alive)，同一连接上流水线发送的请求按顺序响应：阻塞的方法在工作线程中执行，
+ * 先完成的响应在队列中等待前面的响应，全部在连接的EventLoop中写出；
+ * 响应体直接写入分配器的池化direct buffer，并带有Content-Length。HTTP/2(h2c)的请求经过转换后同样由这里处理；
+ * 状态推送的WebSocket握手请求交给StatusWebSocketHandler
  * @Author: czx
  * @CreateDate: 2019-05-30 22:33
  * @Version: 1.0
  */
+@Slf4j
 public class HttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
-    private Scanner scanner = Scanner.getInstance();
+    private static final AsciiString TEXT_PLAIN = new AsciiString("text/plain; charset=UTF-8");
+
+    private static final AsciiString ALLOW_ORIGIN = new AsciiString("Access-Control-Allow-Origin");
+
+    private static final AsciiString ALLOW_METHOD = new AsciiString("Access-Control-Allow-Method");
+
+    private static final AsciiString ANY = new AsciiString("*");
+
+    private static final AsciiString METHODS = new AsciiString("POST,GET");
+
+    private static final AsciiString STREAM_ID = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text();
+
+    private final Scanner scanner = Scanner.getInstance();
+
+    /**
+     * 按请求顺序排列的响应，只在EventLoop中访问
+     */
+    private final Deque<PendingResponse> pending = new ArrayDeque<>();
+
+    private boolean closing;
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
-        String res = (String)scanner.invokeMethod(msg);
-        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(res.getBytes()));
-        response.headers().add("Access-Control-Allow-Origin", "*").add("Access-Control-Allow-Method", "POST,GET");
-        ctx.writeAndFlush(response);
-        ctx.channel().close();
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+        if (pending.isEmpty() && request.headers().get(STREAM_ID) == null && StatusWebSocketHandler.isHandshake(request)) {
+            // 连接升级为WebSocket之后不再处理HTTP请求
+            StatusWebSocketHandler.handshake(ctx, request);
+            return;
+        }
+        PendingResponse pendingResponse = new PendingResponse(request);
+        pending.add(pendingResponse);
+        CompletableFuture<Object> result;
+        try {
+            result = scanner.invokeAsync(request);
+        } catch (Exception e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        if (result.isDone()) {
+            complete(ctx, pendingResponse, result);
+            drain(ctx, false);
+        } else {
+            CompletableFuture<Object> future = result;
+            future.whenComplete((r, e) -> ctx.executor().execute(() -> {
+                if (closing) {
+                    // 连接关闭时drain已经丢弃了这个请求，不再分配响应
+                    return;
+                }
+                complete(ctx, pendingResponse, future);
+                drain(ctx, true);
+            }));
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closing = true;
+        drain(ctx, false);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            if (pending.isEmpty()) {
+                ctx.close();
+            }
+        } else if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+            // h2c升级请求本身作为stream 1进行响应，UpgradeEvent带有引用计数，用完后释放
+            HttpServerUpgradeHandler.UpgradeEvent upgrade = (HttpServerUpgradeHandler.UpgradeEvent) evt;
+            try {
+                FullHttpRequest request = upgrade.upgradeRequest();
+                request.headers().set(STREAM_ID, 1);
+                channelRead0(ctx, request);
+                ctx.flush();
+            } finally {
+                upgrade.release();
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("Http connection {} failed : {}", ctx.channel().remoteAddress(), cause.getMessage());
+        ctx.close();
+    }
+
+    /**
+     * @Description 按顺序写出已经完成的响应，遇到没有完成的响应即停止
+     * @author czx
+     * @date 2026-10-19 17:48
+     * @param ctx
+     * @param flush 不在channelRead中调用时需要自己flush
+     * @return void
+     */
+    private void drain(ChannelHandlerContext ctx, boolean flush) {
+        while (!pending.isEmpty() && (pending.peek().response != null || closing)) {
+            PendingResponse pendingResponse = pending.poll();
+            FullHttpResponse response = pendingResponse.response;
+            if (closing) {
+                // 连接已经关闭或者即将关闭，后面的响应不再发送
+                if (response != null) {
+                    response.release();
+                }
+                continue;
+            }
+            if (pendingResponse.keepAlive) {
+                ctx.write(response);
+            } else {
+                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+                closing = true;
+            }
+        }
+        if (flush) {
+            ctx.flush();
+        }
+    }
+
+    private void complete(ChannelHandlerContext ctx, PendingResponse pendingResponse, CompletableFuture<Object> result) {
+        HttpResponseStatus status = HttpResponseStatus.OK;
+        String body;
+        try {
+            Object res = result.join();
+            body = res == null ? "" : res.toString();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                status = HttpResponseStatus.SERVICE_UNAVAILABLE;
+            } else if (cause instanceof TimeoutException) {
+                status = HttpResponseStatus.GATEWAY_TIMEOUT;
+            } else if ("404".equals(cause.getMessage())) {
+                status = HttpResponseStatus.NOT_FOUND;
+            } else {
+                status = HttpResponseStatus.INTERNAL_SERVER_ERROR;
+            }
+            if (status != HttpResponseStatus.NOT_FOUND) {
+                log.warn("Request {} failed : {}", pendingResponse.uri, cause.toString());
+            }
+            body = String.valueOf(cause.getMessage());
+        }
+        ByteBuf content = ByteBufUtil.writeUtf8(ctx.alloc(), body);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+        response.headers()
+                .set(ALLOW_ORIGIN, ANY)
+                .set(ALLOW_METHOD, METHODS)
+                .set(HttpHeaderNames.CONTENT_TYPE, TEXT_PLAIN)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        if (pendingResponse.streamId != null) {
+            // HTTP/2的响应需要带上请求的stream id
+            response.headers().set(STREAM_ID, pendingResponse.streamId);
+        }
+        if (pendingResponse.keepAlive && pendingResponse.http10) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        }
+        pendingResponse.response = response;
+    }
+
+    /**
+     * 请求被释放前需要保留的信息，以及完成后的响应
+     */
+    private static class PendingResponse {
+
+        final String uri;
+
+        final boolean keepAlive;
+
+        final boolean http10;
+
+        final String streamId;
+
+        FullHttpResponse response;
+
+        PendingResponse(FullHttpRequest request) {
+            this.uri = request.uri();
+            this.keepAlive = HttpUtil.isKeepAlive(request);
+            this.http10 = request.protocolVersion() == HttpVersion.HTTP_1_0;
+            this.streamId = request.headers().get(STREAM_ID);
+        }
     }
 }
@@ -0,0 +1,160 @@
+package cn.edu.bupt.server.handler;
+
+import cn.edu.bupt.status.StatusBus;
+import cn.edu.bupt.status.StatusSubscriber;
+import cn.edu.bupt.status.StreamStatus;
+import com.google.gson.Gson;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * @Description: StatusWebSocketHandler，通过WebSocket推送视频流的状态变化(/statusEvents?rtmp=&interval=)。
+ * 握手之后替换连接上的HttpHandler；每个周期发送一个JSON数组的文本帧，写缓冲区满时变化合并到下一个周期；空闲时发送ping保持连接
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:52
+ * @Version: 1.0
+ */
+@Slf4j
+public class StatusWebSocketHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+    public static final String PATH = "/statusEvents";
+
+    private static final long DEFAULT_INTERVAL = 1000;
+
+    private static final Gson GSON = new Gson();
+
+    private final WebSocketServerHandshaker handshaker;
+
+    private StatusBus.Subscription subscription;
+
+    private StatusWebSocketHandler(WebSocketServerHandshaker handshaker) {
+        this.handshaker = handshaker;
+    }
+
+    /**
+     * @Description 是否为状态推送的WebSocket握手请求
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param request
+     * @return boolean
+     */
+    static boolean isHandshake(FullHttpRequest request) {
+        String uri = request.uri();
+        int endIndex = uri.indexOf('?');
+        return PATH.equals(endIndex == -1 ? uri : uri.substring(0, endIndex))
+                && HttpHeaderValues.WEBSOCKET.contentEqualsIgnoreCase(request.headers().get(HttpHeaderNames.UPGRADE, ""));
+    }
+
+    /**
+     * @Description 完成握手，用新的handler替换name对应的handler，握手成功后开始订阅
+     * @author czx
+     * @date 2026-10-19 17:52
+     * @param ctx 被替换的handler的context
+     * @param request
+     * @return void
+     */
+    static void handshake(ChannelHandlerContext ctx, FullHttpRequest request) {
+        String location = "ws://" + request.headers().get(HttpHeaderNames.HOST, "localhost") + PATH;
+        WebSocketServerHandshaker handshaker = new WebSocketServerHandshakerFactory(location, null, false).newHandshaker(request);
+        if (handshaker == null) {
+            WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
+            return;
+        }
+        QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+        String rtmp = parameter(decoder, "rtmp");
+        String interval = parameter(decoder, "interval");
+        long intervalMillis = interval == null ? DEFAULT_INTERVAL : Long.parseLong(interval);
+
+        StatusWebSocketHandler handler = new StatusWebSocketHandler(handshaker);
+        ctx.pipeline().replace(ctx.name(), "websocket", handler);
+        Channel channel = ctx.channel();
+        handshaker.handshake(channel, request).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                handler.subscribe(channel, rtmp, intervalMillis);
+            } else {
+                channel.close();
+            }
+        });
+    }
+
+    private void subscribe(Channel channel, String rtmp, long intervalMillis) {
+        subscription = StatusBus.getInstance().subscribe(rtmp, intervalMillis, new StatusSocket(channel));
+        if (!channel.isActive()) {
+            subscription.close();
+        }
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        if (frame instanceof CloseWebSocketFrame) {
+            handshaker.close(ctx.channel(), (CloseWebSocketFrame) frame.retain());
+        } else if (frame instanceof PingWebSocketFrame) {
+            ctx.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+        }
+        // 客户端发送的其他帧忽略
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (subscription != null) {
+            subscription.close();
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            ctx.writeAndFlush(new PingWebSocketFrame());
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("Status websocket {} failed : {}", ctx.channel().remoteAddress(), cause.getMessage());
+        ctx.close();
+    }
+
+    private static String parameter(QueryStringDecoder decoder, String name) {
+        List<String> values = decoder.parameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * 由StatusBus的线程调用，Netty的写操作是线程安全的
+     */
+    private static class StatusSocket implements StatusSubscriber {
+
+        private final Channel channel;
+
+        StatusSocket(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void onStatus(List<StreamStatus> statuses) throws Exception {
+            if (!channel.isActive()) {
+                throw new IllegalStateException("Channel closed");
+            }
+            channel.writeAndFlush(new TextWebSocketFrame(GSON.toJson(statuses)));
+        }
+
+        @Override
+        public boolean isReady() {
+            return channel.isWritable();
+        }
+    }
+}
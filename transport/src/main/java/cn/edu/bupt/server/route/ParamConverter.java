@@ -0,0 +1,56 @@
+package cn.edu.bupt.server.route;
+
+/**
+ * @Description: ParamConverter，把请求参数转换为方法参数的类型，在构建路由表时按参数类型确定，请求时不再判断类型
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:39
+ * @Version: 1.0
+ */
+@FunctionalInterface
+public interface ParamConverter {
+
+    Object convert(String value);
+
+    /**
+     * @Description 根据参数类型获取转换器。基本类型的参数缺失时抛出IllegalArgumentException，包装类型与String为null
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param type
+     * @param name 参数名，用于错误信息
+     * @return cn.edu.bupt.server.route.ParamConverter
+     */
+    static ParamConverter forType(Class<?> type, String name) {
+        ParamConverter converter = forType(type);
+        if (!type.isPrimitive()) {
+            return value -> value == null ? null : converter.convert(value);
+        }
+        return value -> {
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return converter.convert(value);
+        };
+    }
+
+    static ParamConverter forType(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return Integer::valueOf;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean::valueOf;
+        } else if (type == float.class || type == Float.class) {
+            return Float::valueOf;
+        } else if (type == long.class || type == Long.class) {
+            return Long::valueOf;
+        } else if (type == double.class || type == Double.class) {
+            return Double::valueOf;
+        } else if (type == char.class || type == Character.class) {
+            return value -> value.charAt(0);
+        } else if (type == short.class || type == Short.class) {
+            return Short::valueOf;
+        } else if (type == byte.class || type == Byte.class) {
+            return Byte::valueOf;
+        } else {
+            return value -> value;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package cn.edu.bupt.server.route;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Map;
+
+/**
+ * @Description: Route，预先绑定的请求处理方法：controller单例、展开为Object[]参数的MethodHandle以及每个参数的名字与转换器
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:39
+ * @Version: 1.0
+ */
+public class Route {
+
+    private final String path;
+
+    /**
+     * (Object[])Object，已经绑定controller实例
+     */
+    private final MethodHandle invoker;
+
+    private final String[] names;
+
+    private final ParamConverter[] converters;
+
+    private final boolean blocking;
+
+    private final long timeoutMillis;
+
+    Route(String path, MethodHandle invoker, String[] names, ParamConverter[] converters, boolean blocking, long timeoutMillis) {
+        this.path = path;
+        this.invoker = invoker;
+        this.names = names;
+        this.converters = converters;
+        this.blocking = blocking;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @Description 转换参数并调用处理方法
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param params
+     * @return java.lang.Object
+     */
+    public Object invoke(Map<String, String> params) throws Throwable {
+        Object[] args = new Object[names.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = converters[i].convert(params.get(names[i]));
+        }
+        return (Object) invoker.invokeExact(args);
+    }
+}
@@ -0,0 +1,191 @@
+package cn.edu.bupt.server.route;
+
+import cn.edu.bupt.server.annotation.RequestMapping;
+import cn.edu.bupt.server.annotation.RequestParam;
+import cn.edu.bupt.server.scanners.Scanner;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @Description: RouteTable，启动时扫描一次所有@Controller，把 路径 -> Route 放入HashMap。
+ * 请求时只需要一次哈希查找，不再遍历controller与方法、读取注解或者创建controller实例。
+ * blocking的方法在有界的工作线程池中执行，队列满时拒绝(503)；返回CompletableFuture的方法直接组合结果，两者都有超时(504)
+ * @Author: czx
+ * @CreateDate: 2026-10-19 17:39
+ * @Version: 1.0
+ */
+@Slf4j
+public class RouteTable {
+
+    private static final int WORKERS = Integer.getInteger("transport.workers", Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final int QUEUE_SIZE = Integer.getInteger("transport.queue", 256);
+
+    private static volatile RouteTable instance;
+
+    private final Map<String, Route> routes;
+
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), new BasicThreadFactory.Builder().namingPattern("Transport-worker-%d").daemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("Transport-timeout-%d").daemon(true).build());
+
+    public RouteTable(Collection<Class<?>> controllers) throws Exception {
+        Map<String, Route> map = new HashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Class<?> cls : controllers) {
+            String prefix = cls.getAnnotation(RequestMapping.class) == null ? "" : cls.getAnnotation(RequestMapping.class).value();
+            Object controller = null;
+            for (Method method : cls.getDeclaredMethods()) {
+                RequestMapping annotation = method.getAnnotation(RequestMapping.class);
+                if (annotation == null || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                if (controller == null) {
+                    controller = cls.newInstance();
+                }
+                Route route = bind(lookup, controller, method, prefix + annotation.value(), annotation);
+                Route previous = map.put(route.getPath(), route);
+                if (previous != null) {
+                    throw new IllegalStateException("Duplicate route " + route.getPath() + " in " + cls.getName());
+                }
+            }
+        }
+        this.routes = map;
+        log.info("Route table built with {} routes : {}", map.size(), map.keySet());
+    }
+
+    /**
+     * @Description 全局路由表，第一次调用时扫描cn.edu.bupt下的所有@Controller，HttpServer启动时即完成
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param
+     * @return cn.edu.bupt.server.route.RouteTable
+     */
+    public static RouteTable getInstance() throws Exception {
+        if (instance == null) {
+            synchronized (RouteTable.class) {
+                if (instance == null) {
+                    instance = new RouteTable(Scanner.getInstance().getControllers());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @Description 根据url(可以带查询参数)找到处理方法并调用
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param url
+     * @param params
+     * @return java.lang.Object
+     */
+    public Object dispatch(String url, Map<String, String> params) throws Exception {
+        int endIndex = url.indexOf('?');
+        Route route = routes.get(endIndex == -1 ? url : url.substring(0, endIndex));
+        if (route == null) {
+            throw new Exception("404");
+        }
+        try {
+            return route.invoke(params);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new Exception(t);
+        }
+    }
+
+    /**
+     * @Description 异步调用，结果在工作线程、CompletableFuture完成的线程或者当前线程(非阻塞的同步方法)中完成
+     * @author czx
+     * @date 2026-10-19 17:48
+     * @param url
+     * @param params
+     * @return java.util.concurrent.CompletableFuture<java.lang.Object> 队列满时以RejectedExecutionException完成，超时以TimeoutException完成
+     */
+    public CompletableFuture<Object> dispatchAsync(String url, Map<String, String> params) {
+        int endIndex = url.indexOf('?');
+        Route route = routes.get(endIndex == -1 ? url : url.substring(0, endIndex));
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (route == null) {
+            future.completeExceptionally(new Exception("404"));
+            return future;
+        }
+        if (route.isBlocking()) {
+            try {
+                workers.execute(() -> invoke(route, params, future));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+        } else {
+            invoke(route, params, future);
+        }
+        if (!future.isDone() && route.getTimeoutMillis() > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> future.completeExceptionally(
+                    new TimeoutException(route.getPath() + " timed out after " + route.getTimeoutMillis() + "ms")),
+                    route.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            future.whenComplete((r, e) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    public Route getRoute(String path) {
+        return routes.get(path);
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(routes.keySet());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void invoke(Route route, Map<String, String> params, CompletableFuture<Object> future) {
+        try {
+            Object result = route.invoke(params);
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<Object>) result).whenComplete((r, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    } else {
+                        future.complete(r);
+                    }
+                });
+            } else {
+                future.complete(result);
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static Route bind(MethodHandles.Lookup lookup, Object controller, Method method, String path, RequestMapping annotation) throws IllegalAccessException {
+        Parameter[] parameters = method.getParameters();
+        String[] names = new String[parameters.length];
+        ParamConverter[] converters = new ParamConverter[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            RequestParam requestParam = parameters[i].getAnnotation(RequestParam.class);
+            if (requestParam == null) {
+                throw new IllegalStateException("Parameter " + parameters[i].getName() + " of " + method + " has no @RequestParam");
+            }
+            names[i] = requestParam.value();
+            converters[i] = ParamConverter.forType(parameters[i].getType(), names[i]);
+        }
+        MethodHandle invoker = lookup.unreflect(method)
+                .bindTo(controller)
+                .asSpreader(Object[].class, parameters.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return new Route(path, invoker, names, converters, annotation.blocking(), annotation.timeout());
+    }
+}
@@ -1,21 +1,18 @@
 package cn.edu.bupt.server.scanners;
 
 import cn.edu.bupt.server.annotation.Controller;
-import cn.edu.bupt.server.annotation.RequestMapping;
-import cn.edu.bupt.server.annotation.RequestParam;
 import cn.edu.bupt.server.parser.RequestParser;
+import cn.edu.bupt.server.route.RouteTable;
 import io.netty.handler.codec.http.FullHttpRequest;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.lang.reflect.Type;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -43,73 +40,38 @@ public class Scanner {
         return invokeMethod(request.uri(),params);
     }
 
-    public Object invokeMethod(String url,Map<String,String> params) throws Exception{
-        for (Class<?> cls : getControllers()) {
-
-            // 判断Controller的URL前缀
-            String prefix = "";
-            if(cls.getAnnotation(RequestMapping.class)!=null) {
-                prefix = cls.getAnnotation(RequestMapping.class).value();
-                if (!url.startsWith(prefix)) {
-                    continue;
-                }
-            }
-
-            // 获取Controller下的方法
-            Method[] methods = cls.getDeclaredMethods();
-            for (Method method : methods) {
-                // 获取方法的URL
-                RequestMapping annotation = method.getAnnotation(RequestMapping.class);
-                if (annotation != null) {
-                    //找到RequestMapping的注入value值
-                    String value = annotation.value();
-                    //提取不带参数的URL
-                    int endIndex = url.indexOf('?');
-                    if(endIndex==-1){
-                        endIndex=url.length();
-                    }
-                    String urlWithoutParam = url.substring(prefix.length(),endIndex);
-
-                    // 判断方法是否符合
-                    if (value.equals(urlWithoutParam)) {
-                        Parameter[] parameters = method.getParameters();
-                        Object[] paramValues = new Object[parameters.length];
-                        for(int i = 0;i<paramValues.length;i++){
-                            String paramStr = params.get(parameters[i].getAnnotation(RequestParam.class).value());
-                            paramValues[i]=typeCast(parameters[i].getType(),paramStr);
-                        }
-                        return method.invoke(cls.newInstance(), paramValues);
-                    }
-                }
-            }
-        }
-        throw new Exception("404");
+    /**
+     * @Description 异步调用，blocking的方法在工作线程池中执行
+     * @author czx
+     * @date 2026-10-19 17:48
+     * @param request
+     * @return java.util.concurrent.CompletableFuture<java.lang.Object>
+     */
+    public CompletableFuture<Object> invokeAsync(FullHttpRequest request) throws Exception{
+        Map<String,String> params = RequestParser.parse(request);
+        return RouteTable.getInstance().dispatchAsync(request.uri(),params);
     }
 
-    public Object typeCast(Type type, String paramStr){
-        String typeName = type.getTypeName();
-        if(typeName.equals("int")||typeName.equals("java.lang.Integer")){
-            return Integer.valueOf(paramStr);
-        }else if(typeName.equals("boolean")||typeName.equals("java.lang.Boolean")){
-            return Boolean.valueOf(paramStr);
-        }else if(typeName.equals("float")||typeName.equals("java.lang.Float")){
-            return Float.valueOf(paramStr);
-        }else if(typeName.equals("long")||typeName.equals("java.lang.Long")){
-            return Long.valueOf(paramStr);
-        }else if(typeName.equals("double")||typeName.equals("java.lang.Double")){
-            return Double.valueOf(paramStr);
-        }else if(typeName.equals("char")||typeName.equals("java.lang.Character")){
-            return paramStr.charAt(0);
-        }else if(typeName.equals("short")||typeName.equals("java.lang.Short")){
-            return Short.valueOf(paramStr);
-        }else if(typeName.equals("byte")||typeName.equals("java.lang.Byte")){
-            return Byte.valueOf(paramStr);
-        }else{
-            return paramStr;
-        }
+    /**
+     * @Description 路由在启动时已经构建到RouteTable中，这里只做一次哈希查找
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param url
+     * @param params
+     * @return java.lang.Object
+     */
+    public Object invokeMethod(String url,Map<String,String> params) throws Exception{
+        return RouteTable.getInstance().dispatch(url,params);
     }
 
-    private Set<Class<?>> getControllers() throws Exception{
+    /**
+     * @Description 扫描cn.edu.bupt下所有带有@Controller注解的类，只在构建路由表时调用一次
+     * @author czx
+     * @date 2026-10-19 17:39
+     * @param
+     * @return java.util.Set<java.lang.Class<?>>
+     */
+    public Set<Class<?>> getControllers() throws Exception{
         if (controllers == null) {
             synchronized (Scanner.class){
                 if(controllers==null) {